@@ -20,10 +20,7 @@ import io.modelcontextprotocol.kotlin.sdk.ResourceTemplate
 import io.modelcontextprotocol.kotlin.sdk.Root
 import io.modelcontextprotocol.kotlin.sdk.Tool
 import java.util.concurrent.atomic.AtomicBoolean
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
-import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
@@ -55,7 +52,7 @@ private constructor(
     private val isRunning = AtomicBoolean(false)
     private val isInitialized = AtomicBoolean(false)
     private var serverJob: Job? = null
-    private val serverScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val serverScope = McpDispatchers.scope(TAG)
 
     // Feature providers
     private lateinit var toolProvider: ToolProvider
@@ -163,6 +160,7 @@ private constructor(
         serverJob?.cancel()
         serverJob?.join()
         isRunning.set(false)
+        if (isInitialized.get()) toolProvider.notifyServerStopped()
 
         Log.i(TAG, "Android MCP server stopped successfully")
     }
@@ -3,8 +3,18 @@ package dev.jasonpearson.androidmcpsdk.core
 import android.content.Context
 import android.util.Log
 import dev.jasonpearson.androidmcpsdk.core.features.prompts.PromptProvider
+import dev.jasonpearson.androidmcpsdk.core.features.resources.FileRange
+import dev.jasonpearson.androidmcpsdk.core.features.resources.FileRangeReader
 import dev.jasonpearson.androidmcpsdk.core.features.resources.ResourceProvider
+import dev.jasonpearson.androidmcpsdk.core.features.resources.ResourceUpdateStats
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolCallOutcome
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolContributor
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolExecutionPolicy
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolMetricsInput
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolMetricsReport
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolPriority
 import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolProvider
+import dev.jasonpearson.androidmcpsdk.core.features.tools.addTool
 import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
 import dev.jasonpearson.androidmcpsdk.core.models.AndroidTool
 import dev.jasonpearson.androidmcpsdk.core.models.ComprehensiveServerInfo
@@ -21,6 +31,7 @@ import io.modelcontextprotocol.kotlin.sdk.server.ServerOptions
 import io.modelcontextprotocol.kotlin.sdk.server.mcp
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlinx.coroutines.*
+import kotlinx.serialization.json.Json
 
 /**
  * Android-specific wrapper for MCP Server functionality. Provides easy integration of MCP servers
@@ -46,6 +57,8 @@ private constructor(
 
     companion object {
         private const val TAG = "McpAndroidServer"
+        private const val METRICS_RESOURCE_URI = "android://mcp/metrics"
+        private const val METRICS_TOOL_NAME = "mcp_tool_metrics"
 
         /** Get the MCP SDK version. */
         fun getMcpSdkVersion(): String {
@@ -61,11 +74,14 @@ private constructor(
     private val isRunning = AtomicBoolean(false)
     private val isInitialized = AtomicBoolean(false)
     private var serverJob: Job? = null
-    private val serverScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val serverScope = McpDispatchers.scope(TAG)
 
     // MCP SDK server instance - now using proper types
     private var mcpServer: Server? = null
 
+    // Mirrors provider registration changes into mcpServer while it is live
+    private var registrationBridge: McpServerRegistrationBridge? = null
+
     // Ktor server for SSE transport
     private var ktorServer: EmbeddedServer<*, *>? = null
     private val ssePort = 8080
@@ -125,6 +141,7 @@ private constructor(
 
         // Add default Android tools
         addDefaultTools()
+        addMetricsFeatures()
 
         isInitialized.set(true)
         Log.i(TAG, "MCP server initialized successfully with ${availableTools.size} tools")
@@ -184,6 +201,10 @@ private constructor(
         ktorServer?.stop(1000, 5000)
         ktorServer = null
 
+        // Don't leave tool calls running against a server that is gone
+        toolProvider.scheduler.cancelAll("MCP server stopped")
+        toolProvider.notifyServerStopped()
+
         // Stop server
         serverJob?.cancel()
         serverJob?.join()
@@ -262,16 +283,42 @@ private constructor(
             )
         }
 
-        return try {
-            val result = tool.execute(context, arguments)
-            ToolExecutionResult(success = true, result = result, error = null)
-        } catch (e: Exception) {
-            Log.e(TAG, "Error executing tool $toolName", e)
-            ToolExecutionResult(
-                success = false,
-                result = null,
-                error = "Tool execution failed: ${e.message}",
-            )
+        return toolProvider.metrics.record(
+            toolName,
+            arguments,
+            block = {
+                try {
+                    val result = tool.execute(context, arguments)
+                    ToolExecutionResult(success = true, result = result, error = null)
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error executing tool $toolName", e)
+                    ToolExecutionResult(
+                        success = false,
+                        result = null,
+                        error = "Tool execution failed: ${e.message}",
+                    )
+                }
+            },
+        ) { result ->
+            ToolCallOutcome(!result.success, (result.result?.length ?: 0).toLong())
+        }
+    }
+
+    /** Get per-tool call metrics: latency percentiles, in-flight calls, errors and payload sizes */
+    fun getToolMetrics(): ToolMetricsReport {
+        return if (isInitialized()) {
+            metricsReport()
+        } else {
+            ToolMetricsReport(windowMs = 0, tools = emptyList())
+        }
+    }
+
+    /** Get resource update notification counters: delivered, coalesced and dropped updates */
+    fun getResourceUpdateStats(): ResourceUpdateStats {
+        return if (isInitialized()) {
+            resourceProvider.getUpdateStats()
+        } else {
+            ResourceUpdateStats.EMPTY
         }
     }
 
@@ -345,6 +392,18 @@ private constructor(
         }
     }
 
+    /**
+     * Register a tool contributor (such as the debug-bridge module). Its tools become visible to
+     * connected clients immediately, even if the server is already running.
+     */
+    fun registerToolContributor(contributor: ToolContributor) {
+        if (isInitialized()) {
+            toolProvider.registerContributor(contributor)
+        } else {
+            Log.w(TAG, "Cannot register tool contributor, server not initialized")
+        }
+    }
+
     /** Remove a custom MCP tool */
     fun removeMcpTool(name: String): Boolean {
         return if (isInitialized()) {
@@ -369,6 +428,20 @@ private constructor(
         }
     }
 
+    /** Remove a custom MCP resource */
+    fun removeMcpResource(uri: String): Boolean {
+        return if (isInitialized()) {
+            val result = resourceProvider.removeResource(uri)
+            if (result) {
+                Log.i(TAG, "Removed custom MCP resource: $uri")
+            }
+            result
+        } else {
+            Log.w(TAG, "Cannot remove resource, server not initialized")
+            false
+        }
+    }
+
     /** Add a custom MCP resource template */
     fun addMcpResourceTemplate(template: ResourceTemplate) {
         if (isInitialized()) {
@@ -450,21 +523,34 @@ private constructor(
         addTool(tool)
     }
 
-    /** Create and add a simple file-based resource */
+    /** Create and add a simple file-based resource; [tailLines] serves a growing file's end */
     fun addFileResource(
         uri: String,
         name: String,
         description: String,
         filePath: String,
         mimeType: String = "text/plain",
+        tailLines: Int? = null,
     ) {
         val resource =
             Resource(uri = uri, name = name, description = description, mimeType = mimeType)
+        // At most FileRangeReader.DEFAULT_MAX_BYTES per read: the start of the file, or its last
+        // tailLines lines for a growing file such as a log. The fixed uri can't page, so a cut-off
+        // read says so in its text instead
+        val range = FileRange(tailLines = tailLines)
         addMcpResource(resource) {
             try {
                 val file = java.io.File(filePath)
                 if (file.exists() && file.isFile) {
-                    AndroidResourceContent(uri = uri, text = file.readText(), mimeType = mimeType)
+                    withContext(McpDispatchers.io) {
+                        FileRangeReader.readContent(
+                            uri,
+                            file,
+                            range,
+                            mimeType,
+                            rangedUri = false,
+                        )
+                    }
                 } else {
                     AndroidResourceContent(uri = uri, text = "File not found: $filePath")
                 }
@@ -501,7 +587,11 @@ private constructor(
             embeddedServer(Netty, port = ssePort, host = sseHost) {
                 install(SSE)
 
-                routing { route("mcp") { mcp { mcpServer ?: createMcpServerWithSDK() } } }
+                routing {
+                    route("mcp") {
+                        mcp { mcpServer ?: createMcpServerWithSDK().also { mcpServer = it } }
+                    }
+                }
             }
 
         ktorServer?.start(wait = false)
@@ -515,51 +605,22 @@ private constructor(
         // Use the sdkServerCapabilities defined at class level for SDK Server instance
         val serverOptions = ServerOptions(capabilities = sdkServerCapabilities)
 
-        return Server(serverInfo = implementation, options = serverOptions).apply {
-            // Register all tools from the tool provider
-            toolProvider.getAllTools().forEach { tool ->
-                addTool(
-                    name = tool.name,
-                    description = tool.description ?: "",
-                    inputSchema = tool.inputSchema,
-                ) { request ->
-                    toolProvider.callTool(request.name, request.arguments ?: emptyMap())
-                }
-            }
-
-            // Register all resources from the resource provider
-            resourceProvider.getAllResources().forEach { resource ->
-                addResource(
-                    uri = resource.uri,
-                    name = resource.name ?: "",
-                    description = resource.description ?: "",
-                    mimeType = resource.mimeType ?: "text/plain",
-                ) { request ->
-                    val content = resourceProvider.readResource(request.uri)
-                    ReadResourceResult(
-                        contents =
-                            listOf(
-                                TextResourceContents(
-                                    text = content.text ?: "",
-                                    uri = content.uri,
-                                    mimeType = content.mimeType ?: "text/plain",
-                                )
-                            )
-                    )
-                }
-            }
-
-            // Register all prompts from the prompt provider
-            promptProvider.getAllPrompts().forEach { prompt ->
-                addPrompt(
-                    name = prompt.name,
-                    description = prompt.description ?: "",
-                    arguments = prompt.arguments ?: emptyList(),
-                ) { request ->
-                    promptProvider.getPrompt(request.name, request.arguments ?: emptyMap())
-                }
-            }
-        }
+        val server = Server(serverInfo = implementation, options = serverOptions)
+
+        // Register everything the providers hold now and keep mirroring later changes, so tools,
+        // resources and prompts added after startup reach connected clients without a restart
+        registrationBridge?.detach()
+        registrationBridge =
+            McpServerRegistrationBridge(
+                    server = server,
+                    toolProvider = toolProvider,
+                    resourceProvider = resourceProvider,
+                    promptProvider = promptProvider,
+                    scope = serverScope,
+                )
+                .also { it.attach() }
+
+        return server
     }
 
     // This creates the local model type, used for ComprehensiveServerInfo DTO.
@@ -568,6 +629,45 @@ private constructor(
         return serverCapabilitiesModel // Simply return the pre-defined local model instance
     }
 
+    /** Expose tool call metrics as a JSON resource and as a tool */
+    private fun addMetricsFeatures() {
+        resourceProvider.addResource(
+            Resource(
+                uri = METRICS_RESOURCE_URI,
+                name = "Tool Metrics",
+                description = "Per-tool latency percentiles, throughput, errors and payload sizes.",
+                mimeType = "application/json",
+            )
+        ) {
+            AndroidResourceContent(
+                uri = METRICS_RESOURCE_URI,
+                text = Json.encodeToString(metricsReport()),
+                mimeType = "application/json",
+            )
+        }
+
+        toolProvider.addTool<ToolMetricsInput>(
+            name = METRICS_TOOL_NAME,
+            description =
+                "Get latency percentiles, throughput, error rates and payload sizes for MCP tools",
+        ) { input ->
+            val metrics = toolProvider.metrics
+            val text = metrics.formatReport(metricsReport(input.toolName))
+            if (input.reset) metrics.reset()
+            CallToolResult(content = listOf(TextContent(text = text)), isError = false)
+        }
+        // Checking on a stuck server shouldn't wait behind the calls that are stuck
+        toolProvider.setExecutionPolicy(
+            METRICS_TOOL_NAME,
+            ToolExecutionPolicy(priority = ToolPriority.INTERACTIVE),
+        )
+    }
+
+    private fun metricsReport(toolName: String? = null): ToolMetricsReport =
+        toolProvider.metrics
+            .report(toolName)
+            .copy(scheduler = toolProvider.scheduler.stats(), cache = toolProvider.cache.stats())
+
     /** Add default Android-specific tools */
     private fun addDefaultTools() {
         // Device information tool
@@ -0,0 +1,108 @@
+package dev.jasonpearson.androidmcpsdk.core
+
+import android.os.Process
+import android.util.Log
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.CoroutineContext
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineExceptionHandler
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancelChildren
+
+/**
+ * Threads the SDK does its own blocking work on.
+ *
+ * Agent tool calls used to run on the shared [Dispatchers.IO], competing with the host app's own
+ * disk and network work and showing up in its perf traces. [io] is a small, bounded pool whose
+ * threads run at [Process.THREAD_PRIORITY_BACKGROUND], so SDK work yields to the app's threads.
+ *
+ * Subsystems get a named [scope] on that pool, each a child of one root job so a scope drops out as
+ * soon as it is cancelled. [shutdown] cancels the work in every scope and stops the threads; the
+ * pool is started again the next time something is dispatched to it, so scopes stay usable after
+ * the server restarts.
+ */
+object McpDispatchers {
+
+    private const val TAG = "McpDispatchers"
+    private const val KEEP_ALIVE_SECONDS = 30L
+
+    /** Number of SDK threads, kept small so a burst of tool calls can't crowd out the app */
+    val poolSize: Int = (Runtime.getRuntime().availableProcessors() / 2).coerceIn(2, 4)
+
+    private val threadCount = AtomicInteger()
+    private val threadFactory = ThreadFactory { runnable ->
+        Thread(
+                {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+                    runnable.run()
+                },
+                "mcp-io-${threadCount.incrementAndGet()}",
+            )
+            .apply { isDaemon = true }
+    }
+
+    private var executor: ThreadPoolExecutor? = null
+    private val rootJob = SupervisorJob()
+
+    /** Bounded, low-priority dispatcher for blocking SDK work. Use instead of [Dispatchers.IO]. */
+    val io: CoroutineDispatcher =
+        object : CoroutineDispatcher() {
+            override fun dispatch(context: CoroutineContext, block: Runnable) {
+                try {
+                    executor().execute(block)
+                } catch (e: RejectedExecutionException) {
+                    // Raced with shutdown; the work still has to run somewhere to finish cancelling
+                    Dispatchers.IO.dispatch(context, block)
+                }
+            }
+
+            override fun toString(): String = "McpDispatchers.io"
+        }
+
+    /**
+     * Long-lived scope for a subsystem, named after it for debugging. Failures are logged instead
+     * of cancelling sibling work.
+     */
+    fun scope(name: String): CoroutineScope {
+        val handler = CoroutineExceptionHandler { _, throwable ->
+            Log.e(TAG, "Uncaught exception in $name", throwable)
+        }
+        return CoroutineScope(SupervisorJob(rootJob) + io + CoroutineName(name) + handler)
+    }
+
+    /** Number of scopes that haven't been cancelled */
+    internal val scopeCount: Int
+        get() = rootJob.children.count()
+
+    /** Cancel the work running in every [scope] and let the threads go. */
+    fun shutdown() {
+        // Cancel each scope's work rather than the scope itself, which its owner may reuse
+        rootJob.children.forEach { it.cancelChildren() }
+        val stopped = synchronized(this) { executor.also { executor = null } }
+        stopped?.shutdown()
+        Log.i(TAG, "SDK dispatcher shut down")
+    }
+
+    private fun executor(): ThreadPoolExecutor =
+        synchronized(this) {
+            executor
+                ?: ThreadPoolExecutor(
+                        poolSize,
+                        poolSize,
+                        KEEP_ALIVE_SECONDS,
+                        TimeUnit.SECONDS,
+                        LinkedBlockingQueue(),
+                        threadFactory,
+                    )
+                    .apply { allowCoreThreadTimeOut(true) }
+                    .also { executor = it }
+        }
+}
@@ -4,6 +4,8 @@ import android.app.Application
 import android.content.Context
 import android.util.Log
 import androidx.annotation.VisibleForTesting
+import dev.jasonpearson.androidmcpsdk.core.features.resources.ResourceUpdateStats
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolMetricsReport
 import dev.jasonpearson.androidmcpsdk.core.lifecycle.McpLifecycleManager
 import dev.jasonpearson.androidmcpsdk.core.models.*
 import kotlinx.coroutines.*
@@ -87,10 +89,10 @@ class McpServerManager private constructor() {
         return mcpServer!!.start()
     }
 
-    /** Stop the MCP server */
+    /** Stop the MCP server and release the SDK's worker threads */
     suspend fun stopServer(): Result<Unit> {
         checkInitialized()
-        return mcpServer!!.stop()
+        return mcpServer!!.stop().also { McpDispatchers.shutdown() }
     }
 
     /** Check if the server is currently running */
@@ -167,6 +169,18 @@ class McpServerManager private constructor() {
         return mcpServer!!.getMcpTools()
     }
 
+    /** Get per-tool call metrics: latency percentiles, in-flight calls, errors and payload sizes */
+    fun getToolMetrics(): ToolMetricsReport {
+        checkInitialized()
+        return mcpServer!!.getToolMetrics()
+    }
+
+    /** Get resource update notification counters: delivered, coalesced and dropped updates */
+    fun getResourceUpdateStats(): ResourceUpdateStats {
+        checkInitialized()
+        return mcpServer!!.getResourceUpdateStats()
+    }
+
     /** Call an MCP tool by name */
     suspend fun callMcpTool(
         name: String,
@@ -212,6 +226,14 @@ class McpServerManager private constructor() {
         mcpServer!!.addMcpTool(tool, handler)
     }
 
+    /** Register a tool contributor, e.g. the debug-bridge module */
+    fun registerToolContributor(
+        contributor: dev.jasonpearson.androidmcpsdk.core.features.tools.ToolContributor
+    ) {
+        checkInitialized()
+        mcpServer!!.registerToolContributor(contributor)
+    }
+
     /** Remove a custom MCP tool */
     fun removeMcpTool(name: String): Boolean {
         checkInitialized()
@@ -227,6 +249,12 @@ class McpServerManager private constructor() {
         mcpServer!!.addMcpResource(resource, contentProvider)
     }
 
+    /** Remove a custom MCP resource */
+    fun removeMcpResource(uri: String): Boolean {
+        checkInitialized()
+        return mcpServer!!.removeMcpResource(uri)
+    }
+
     /** Add a custom MCP resource template */
     fun addMcpResourceTemplate(template: io.modelcontextprotocol.kotlin.sdk.ResourceTemplate) {
         checkInitialized()
@@ -279,16 +307,17 @@ class McpServerManager private constructor() {
         mcpServer!!.addSimpleTool(name, description, parameters, handler)
     }
 
-    /** Create and add a simple file-based resource */
+    /** Create and add a simple file-based resource; [tailLines] serves a growing file's end */
     fun addFileResource(
         uri: String,
         name: String,
         description: String,
         filePath: String,
         mimeType: String = "text/plain",
+        tailLines: Int? = null,
     ) {
         checkInitialized()
-        mcpServer!!.addFileResource(uri, name, description, filePath, mimeType)
+        mcpServer!!.addFileResource(uri, name, description, filePath, mimeType, tailLines)
     }
 
     /** Create and add a simple text-based prompt */
@@ -0,0 +1,274 @@
+package dev.jasonpearson.androidmcpsdk.core
+
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.features.prompts.PromptProvider
+import dev.jasonpearson.androidmcpsdk.core.features.prompts.PromptRegistrationListener
+import dev.jasonpearson.androidmcpsdk.core.features.resources.ResourceProvider
+import dev.jasonpearson.androidmcpsdk.core.features.resources.ResourceRegistrationListener
+import dev.jasonpearson.androidmcpsdk.core.features.resources.ResourceUpdateCoalescer
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolProvider
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolRegistrationListener
+import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
+import io.modelcontextprotocol.kotlin.sdk.BlobResourceContents
+import io.modelcontextprotocol.kotlin.sdk.EmptyRequestResult
+import io.modelcontextprotocol.kotlin.sdk.ListPromptsRequest
+import io.modelcontextprotocol.kotlin.sdk.ListPromptsResult
+import io.modelcontextprotocol.kotlin.sdk.ListResourcesRequest
+import io.modelcontextprotocol.kotlin.sdk.ListResourcesResult
+import io.modelcontextprotocol.kotlin.sdk.ListToolsRequest
+import io.modelcontextprotocol.kotlin.sdk.ListToolsResult
+import io.modelcontextprotocol.kotlin.sdk.Method
+import io.modelcontextprotocol.kotlin.sdk.Prompt
+import io.modelcontextprotocol.kotlin.sdk.ReadResourceRequest
+import io.modelcontextprotocol.kotlin.sdk.ReadResourceResult
+import io.modelcontextprotocol.kotlin.sdk.Resource
+import io.modelcontextprotocol.kotlin.sdk.ResourceUpdatedNotification
+import io.modelcontextprotocol.kotlin.sdk.SubscribeRequest
+import io.modelcontextprotocol.kotlin.sdk.TextResourceContents
+import io.modelcontextprotocol.kotlin.sdk.Tool
+import io.modelcontextprotocol.kotlin.sdk.UnsubscribeRequest
+import io.modelcontextprotocol.kotlin.sdk.server.Server
+import java.nio.ByteBuffer
+import java.util.Base64
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.serialization.json.JsonObject
+
+/**
+ * Keeps the SDK [Server] in sync with the feature providers while it is running.
+ *
+ * On [attach] the bridge registers everything the providers currently hold and then listens for
+ * later additions and removals, pushing each change into the live server and sending the matching
+ * `notifications/{tools,resources,prompts}/list_changed`. Notifications are coalesced: a burst of
+ * registrations (for example a [dev.jasonpearson.androidmcpsdk.core.features.tools.ToolContributor]
+ * adding dozens of tools) results in a single notification per list.
+ */
+internal class McpServerRegistrationBridge(
+    private val server: Server,
+    private val toolProvider: ToolProvider,
+    private val resourceProvider: ResourceProvider,
+    private val promptProvider: PromptProvider,
+    private val scope: CoroutineScope,
+) : ToolRegistrationListener, ResourceRegistrationListener, PromptRegistrationListener {
+
+    companion object {
+        private const val TAG = "McpRegistrationBridge"
+        private val EMPTY_ARGUMENTS = JsonObject(emptyMap())
+        // A multiple of 3 so chunks concatenate without padding in between
+        private const val BASE64_CHUNK_BYTES = 48 * 1024
+    }
+
+    private val toolListChangePending = AtomicBoolean(false)
+    private val resourceListChangePending = AtomicBoolean(false)
+    private val promptListChangePending = AtomicBoolean(false)
+    private var resourceUpdates: ResourceUpdateCoalescer? = null
+
+    /** Register the current provider contents and start mirroring later changes */
+    fun attach() {
+        // Listen before taking the snapshot so nothing registered in between is lost. Registering
+        // an entry twice simply replaces it in the server.
+        toolProvider.addRegistrationListener(this)
+        resourceProvider.addRegistrationListener(this)
+        promptProvider.addRegistrationListener(this)
+
+        toolProvider.getAllTools().forEach(::registerTool)
+        resourceProvider.getAllResources().forEach(::registerResource)
+        promptProvider.getAllPrompts().forEach(::registerPrompt)
+        installPaginatedListHandlers()
+        installSubscriptionHandlers()
+
+        Log.d(TAG, "Bridge attached to server")
+    }
+
+    /** Stop mirroring provider changes into the server */
+    fun detach() {
+        toolProvider.removeRegistrationListener(this)
+        resourceProvider.removeRegistrationListener(this)
+        promptProvider.removeRegistrationListener(this)
+        resourceUpdates?.let(resourceProvider::removeUpdateSubscriber)
+        resourceUpdates = null
+        Log.d(TAG, "Bridge detached from server")
+    }
+
+    override fun onToolAdded(tool: Tool) {
+        registerTool(tool)
+        notifyListChanged(toolListChangePending, "tools") { server.sendToolListChanged() }
+    }
+
+    override fun onToolRemoved(name: String) {
+        if (server.removeTool(name)) {
+            notifyListChanged(toolListChangePending, "tools") { server.sendToolListChanged() }
+        }
+    }
+
+    override fun onResourceAdded(resource: Resource) {
+        registerResource(resource)
+        notifyListChanged(resourceListChangePending, "resources") {
+            server.sendResourceListChanged()
+        }
+    }
+
+    override fun onResourceRemoved(uri: String) {
+        if (server.removeResource(uri)) {
+            notifyListChanged(resourceListChangePending, "resources") {
+                server.sendResourceListChanged()
+            }
+        }
+    }
+
+    override fun onPromptAdded(prompt: Prompt) {
+        registerPrompt(prompt)
+        notifyListChanged(promptListChangePending, "prompts") { server.sendPromptListChanged() }
+    }
+
+    override fun onPromptRemoved(name: String) {
+        if (server.removePrompt(name)) {
+            notifyListChanged(promptListChangePending, "prompts") {
+                server.sendPromptListChanged()
+            }
+        }
+    }
+
+    /**
+     * Replace the SDK's list handlers, which send every entry on each request, with cursor
+     * paginated ones served from the providers' cached catalogs. Calls still go through the
+     * entries registered with the SDK; reads go to the resource provider so that template URIs,
+     * such as ranged `file://` reads, which are never registered, can be read too.
+     */
+    private fun installPaginatedListHandlers() {
+        server.setRequestHandler<ListToolsRequest>(Method.Defined.ToolsList) { request, _ ->
+            val page = toolProvider.listTools(request.cursor)
+            ListToolsResult(tools = page.items, nextCursor = page.nextCursor)
+        }
+        server.setRequestHandler<ListResourcesRequest>(Method.Defined.ResourcesList) { request, _ ->
+            val page = resourceProvider.listResources(request.cursor)
+            ListResourcesResult(resources = page.items, nextCursor = page.nextCursor)
+        }
+        server.setRequestHandler<ListPromptsRequest>(Method.Defined.PromptsList) { request, _ ->
+            val page = promptProvider.listPrompts(request.cursor)
+            ListPromptsResult(prompts = page.items, nextCursor = page.nextCursor)
+        }
+        server.setRequestHandler<ReadResourceRequest>(Method.Defined.ResourcesRead) { request, _ ->
+            readResult(resourceProvider.readResource(request.uri))
+        }
+    }
+
+    /**
+     * Route resources/subscribe and resources/unsubscribe to the resource provider and send
+     * `notifications/resources/updated` for changes, coalesced per URI so a burst of writes to one
+     * file becomes one notification without delaying notifications for other URIs.
+     */
+    private fun installSubscriptionHandlers() {
+        server.setRequestHandler<SubscribeRequest>(Method.Defined.ResourcesSubscribe) {
+            request,
+            _ ->
+            resourceProvider.subscribe(request.uri)
+            EmptyRequestResult()
+        }
+        server.setRequestHandler<UnsubscribeRequest>(Method.Defined.ResourcesUnsubscribe) {
+            request,
+            _ ->
+            resourceProvider.unsubscribe(request.uri)
+            EmptyRequestResult()
+        }
+        resourceUpdates?.let(resourceProvider::removeUpdateSubscriber)
+        resourceUpdates =
+            resourceProvider.addUpdateSubscriber(scope) { uri ->
+                server.sendResourceUpdated(
+                    ResourceUpdatedNotification(ResourceUpdatedNotification.Params(uri = uri))
+                )
+            }
+    }
+
+    private fun registerTool(tool: Tool) {
+        server.addTool(
+            name = tool.name,
+            description = tool.description ?: "",
+            inputSchema = tool.inputSchema,
+        ) { request ->
+            // Pass the SDK's JsonObject through untouched; typed tools decode it directly
+            toolProvider.callTool(request.name, request.arguments ?: EMPTY_ARGUMENTS)
+        }
+    }
+
+    private fun registerResource(resource: Resource) {
+        server.addResource(
+            uri = resource.uri,
+            name = resource.name ?: "",
+            description = resource.description ?: "",
+            mimeType = resource.mimeType ?: "text/plain",
+        ) { request ->
+            readResult(resourceProvider.readResource(request.uri))
+        }
+    }
+
+    private fun readResult(content: AndroidResourceContent): ReadResourceResult {
+        val blob = content.blob
+        val contents =
+            if (blob != null) {
+                BlobResourceContents(
+                    blob = encodeBase64(blob),
+                    uri = content.uri,
+                    mimeType = content.mimeType,
+                )
+            } else {
+                TextResourceContents(
+                    text = content.text ?: "",
+                    uri = content.uri,
+                    mimeType = content.mimeType ?: "text/plain",
+                )
+            }
+        return ReadResourceResult(contents = listOf(contents))
+    }
+
+    /**
+     * Base64 of [bytes], encoded a chunk at a time straight into a presized builder rather than
+     * through a second full-size byte array
+     */
+    private fun encodeBase64(bytes: ByteArray): String {
+        val encoder = Base64.getEncoder()
+        val out = StringBuilder((bytes.size + 2) / 3 * 4)
+        var offset = 0
+        while (offset < bytes.size) {
+            val end = minOf(bytes.size, offset + BASE64_CHUNK_BYTES)
+            val chunk = encoder.encode(ByteBuffer.wrap(bytes, offset, end - offset))
+            while (chunk.hasRemaining()) out.append(chunk.get().toInt().toChar())
+            offset = end
+        }
+        return out.toString()
+    }
+
+    private fun registerPrompt(prompt: Prompt) {
+        server.addPrompt(
+            name = prompt.name,
+            description = prompt.description ?: "",
+            arguments = prompt.arguments ?: emptyList(),
+        ) { request ->
+            promptProvider.getPrompt(request.name, request.arguments ?: emptyMap())
+        }
+    }
+
+    /**
+     * Send a list_changed notification unless one is already queued. The pending flag is cleared
+     * right before sending, so changes made while a notification is in flight trigger another one.
+     */
+    private fun notifyListChanged(
+        pending: AtomicBoolean,
+        listName: String,
+        send: suspend () -> Unit,
+    ) {
+        if (!pending.compareAndSet(false, true)) return
+
+        scope.launch {
+            pending.set(false)
+            try {
+                send()
+                Log.d(TAG, "Sent $listName list_changed notification")
+            } catch (e: Exception) {
+                // No client connected yet; it will fetch the current list when it initializes
+                Log.d(TAG, "Skipped $listName list_changed notification: ${e.message}")
+            }
+        }
+    }
+}
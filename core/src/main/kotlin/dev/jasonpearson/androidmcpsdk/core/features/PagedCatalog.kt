@@ -0,0 +1,85 @@
+package dev.jasonpearson.androidmcpsdk.core.features
+
+import java.util.Base64
+import java.util.concurrent.atomic.AtomicLong
+
+/** One page of a [PagedCatalog]; [nextCursor] is null on the last page. */
+data class CatalogPage<T>(val items: List<T>, val nextCursor: String?)
+
+/**
+ * Cached, versioned list backing a paginated MCP list endpoint (tools, resources, prompts).
+ *
+ * [build] runs only after [invalidate], not on every list request. Cursors are opaque to clients
+ * and name the catalog version they were issued for, so a client paging through a list that
+ * changed in between gets an error instead of silently skipped or repeated entries; the
+ * list_changed notification it receives tells it to start over.
+ *
+ * Entries that come from outside the provider, such as files on disk, can't call [invalidate].
+ * [sourceVersion] covers those: a cheap stamp of that state, checked on every read, that rebuilds
+ * the catalog when it differs from the one the current snapshot was built with.
+ */
+class PagedCatalog<T>(
+    private val pageSize: Int = DEFAULT_PAGE_SIZE,
+    private val sourceVersion: () -> Any? = { null },
+    private val build: () -> List<T>,
+) {
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 50
+    }
+
+    private class Snapshot<T>(val version: Long, val source: Any?, val items: List<T>)
+
+    private val version = AtomicLong()
+    @Volatile private var snapshot: Snapshot<T>? = null
+
+    /** Mark the catalog stale; the next read rebuilds it */
+    fun invalidate() {
+        version.incrementAndGet()
+    }
+
+    /** Every entry, rebuilt only if the catalog changed since the last read */
+    fun items(): List<T> = current().items
+
+    /**
+     * The page starting at [cursor], or the first page if it is null.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or from an older catalog version
+     */
+    fun page(cursor: String?): CatalogPage<T> {
+        val current = current()
+        val offset =
+            if (cursor == null) 0
+            else decodeCursor(cursor, current.version).coerceAtMost(current.items.size)
+        val end = minOf(offset + pageSize, current.items.size)
+        val nextCursor = if (end < current.items.size) encodeCursor(current.version, end) else null
+        return CatalogPage(current.items.subList(offset, end), nextCursor)
+    }
+
+    private fun current(): Snapshot<T> {
+        val source = sourceVersion()
+        // An outside change counts as an invalidate, so cursors from before it are rejected too
+        snapshot?.let { if (it.source != source) version.compareAndSet(it.version, it.version + 1) }
+        // Read the version before building so a change made during the build forces another one
+        val expected = version.get()
+        snapshot?.let { if (it.version == expected) return it }
+        return Snapshot(expected, source, build().toList()).also { snapshot = it }
+    }
+
+    private fun encodeCursor(version: Long, offset: Int): String =
+        Base64.getUrlEncoder().withoutPadding().encodeToString("$version:$offset".toByteArray())
+
+    private fun decodeCursor(cursor: String, currentVersion: Long): Int {
+        val parts =
+            runCatching { String(Base64.getUrlDecoder().decode(cursor)).split(':') }.getOrNull()
+        val cursorVersion = parts?.getOrNull(0)?.toLongOrNull()
+        val offset = parts?.getOrNull(1)?.toIntOrNull()
+        require(parts?.size == 2 && cursorVersion != null && offset != null && offset >= 0) {
+            "Invalid cursor: $cursor"
+        }
+        require(cursorVersion == currentVersion) {
+            "The list changed since this cursor was issued; request it again without a cursor"
+        }
+        return offset
+    }
+}
@@ -11,8 +11,8 @@ import android.provider.MediaStore
 import androidx.core.content.ContextCompat
 import androidx.core.net.toUri
 import androidx.documentfile.provider.DocumentFile
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import java.io.File
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 
 /**
@@ -54,7 +54,7 @@ class FilePermissionManager(private val context: Context) {
 
     /** Checks if the app can access a file at the given URI or path. */
     suspend fun checkFileAccess(uri: String): FileAccessResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 when {
                     uri.startsWith("content://") -> checkContentUriAccess(uri.toUri())
@@ -191,7 +191,7 @@ class FilePermissionManager(private val context: Context) {
 
     /** Validates a document URI from Storage Access Framework. */
     suspend fun validateDocumentUri(uri: Uri): FileAccessResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val documentFile =
                     DocumentFile.fromSingleUri(context, uri)
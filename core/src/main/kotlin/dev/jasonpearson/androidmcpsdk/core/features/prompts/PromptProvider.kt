@@ -2,8 +2,23 @@ package dev.jasonpearson.androidmcpsdk.core.features.prompts
 
 import android.content.Context
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.features.CatalogPage
+import dev.jasonpearson.androidmcpsdk.core.features.PagedCatalog
 import io.modelcontextprotocol.kotlin.sdk.*
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Observes custom prompt registration changes on a [PromptProvider]. Used to mirror prompts that
+ * are added or removed after startup into an already running MCP server.
+ */
+interface PromptRegistrationListener {
+    /** Called after a prompt has been added or replaced */
+    fun onPromptAdded(prompt: Prompt)
+
+    /** Called after a prompt has been removed */
+    fun onPromptRemoved(name: String)
+}
 
 /**
  * Provider for MCP prompts that enables servers to expose reusable prompt templates.
@@ -21,13 +36,20 @@ class PromptProvider(private val context: Context) {
     private val customPrompts =
         ConcurrentHashMap<String, Pair<Prompt, suspend (Map<String, Any?>) -> GetPromptResult>>()
 
-    /** Get all available prompts including built-in and custom prompts */
-    fun getAllPrompts(): List<Prompt> {
-        val builtInPrompts = createBuiltInPrompts()
-        val customPromptList = customPrompts.values.map { it.first }
-        return builtInPrompts + customPromptList
+    // Listeners mirroring registration changes into a running server
+    private val registrationListeners = CopyOnWriteArrayList<PromptRegistrationListener>()
+
+    // Built-ins first, then custom prompts by name; rebuilt only when a prompt is added or removed
+    private val promptCatalog = PagedCatalog {
+        createBuiltInPrompts() + customPrompts.values.map { it.first }.sortedBy { it.name }
     }
 
+    /** Get all available prompts including built-in and custom prompts */
+    fun getAllPrompts(): List<Prompt> = promptCatalog.items()
+
+    /** Get one page of prompts for a paginated prompts/list request */
+    fun listPrompts(cursor: String?): CatalogPage<Prompt> = promptCatalog.page(cursor)
+
     /** Get a specific prompt by name with the provided arguments */
     suspend fun getPrompt(
         name: String,
@@ -73,18 +95,32 @@ class PromptProvider(private val context: Context) {
     /** Add a custom prompt with its handler */
     fun addPrompt(prompt: Prompt, handler: suspend (Map<String, Any?>) -> GetPromptResult) {
         customPrompts[prompt.name] = Pair(prompt, handler)
+        promptCatalog.invalidate()
         Log.i(TAG, "Added custom prompt: ${prompt.name}")
+        registrationListeners.forEach { it.onPromptAdded(prompt) }
     }
 
     /** Remove a custom prompt */
     fun removePrompt(name: String): Boolean {
         val removed = customPrompts.remove(name) != null
         if (removed) {
+            promptCatalog.invalidate()
             Log.i(TAG, "Removed custom prompt: $name")
+            registrationListeners.forEach { it.onPromptRemoved(name) }
         }
         return removed
     }
 
+    /** Add a listener that is notified whenever a custom prompt is added or removed */
+    fun addRegistrationListener(listener: PromptRegistrationListener) {
+        registrationListeners.addIfAbsent(listener)
+    }
+
+    /** Remove a previously added registration listener */
+    fun removeRegistrationListener(listener: PromptRegistrationListener) {
+        registrationListeners.remove(listener)
+    }
+
     /** Create built-in Android-specific prompts */
     private fun createBuiltInPrompts(): List<Prompt> {
         return listOf(
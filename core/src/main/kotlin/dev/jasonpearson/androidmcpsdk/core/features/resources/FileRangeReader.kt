@@ -0,0 +1,220 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
+import java.io.File
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * The part of a file a `file://` resource read asks for, from the URI's query:
+ * - `?offset=N&length=N` for a byte range
+ * - `?startLine=N&lines=N` for a window of lines, counted from 1
+ * - `?tail=N` for the last N lines of a growing file such as a log
+ *
+ * Without a query the read starts at the beginning of the file. Every read is capped at
+ * [FileRangeReader.DEFAULT_MAX_BYTES] no matter what is asked for.
+ */
+internal data class FileRange(
+    val offset: Long = 0,
+    val length: Int? = null,
+    val startLine: Long? = null,
+    val lines: Int? = null,
+    val tailLines: Int? = null,
+) {
+    companion object {
+        fun parse(uri: String): FileRange {
+            val params =
+                uri.substringAfter('?', "")
+                    .split('&')
+                    .filter { it.isNotEmpty() }
+                    .associate { it.substringBefore('=') to it.substringAfter('=', "") }
+            return FileRange(
+                offset = params["offset"]?.toLongOrNull()?.coerceAtLeast(0) ?: 0,
+                length = params["length"]?.toIntOrNull()?.coerceAtLeast(0),
+                startLine = params["startLine"]?.toLongOrNull()?.coerceAtLeast(1),
+                lines = params["lines"]?.toIntOrNull()?.coerceAtLeast(0),
+                tailLines = params["tail"]?.toIntOrNull()?.coerceAtLeast(1),
+            )
+        }
+    }
+}
+
+/** Bytes read from [offset] of a file that was [fileSize] bytes long at the time */
+internal class FileSlice(val bytes: ByteArray, val offset: Long, val fileSize: Long) {
+
+    val coversWholeFile: Boolean
+        get() = offset == 0L && bytes.size.toLong() == fileSize
+
+    /** Whether this looks like binary data: a NUL byte near the start, as `grep` and `git` use */
+    fun looksBinary(): Boolean {
+        for (i in 0 until minOf(bytes.size, SNIFF_BYTES)) if (bytes[i] == 0.toByte()) return true
+        return false
+    }
+
+    /**
+     * This slice without a partial UTF-8 character at either end, so a range that starts or ends in
+     * the middle of a multi-byte character still decodes cleanly. [offset] moves accordingly.
+     */
+    fun utf8Aligned(): FileSlice {
+        var start = 0
+        if (offset > 0) {
+            while (start < bytes.size && start < 3 && isContinuation(bytes[start])) start++
+        }
+        var end = bytes.size
+        if (offset + bytes.size < fileSize) end = completeUtf8End(start, end)
+        if (start == 0 && end == bytes.size) return this
+        return FileSlice(bytes.copyOfRange(start, end), offset + start, fileSize)
+    }
+
+    private fun completeUtf8End(start: Int, end: Int): Int {
+        var lead = end - 1
+        while (lead >= start && end - lead <= 3 && isContinuation(bytes[lead])) lead--
+        if (lead < start) return end
+        val b = bytes[lead].toInt() and 0xff
+        val length =
+            when {
+                b >= 0xf0 -> 4
+                b >= 0xe0 -> 3
+                b >= 0xc0 -> 2
+                else -> 1
+            }
+        return if (end - lead < length) lead else end
+    }
+
+    private fun isContinuation(b: Byte) = (b.toInt() and 0xc0) == 0x80
+
+    private companion object {
+        const val SNIFF_BYTES = 8192
+    }
+}
+
+/**
+ * Reads bounded slices of files through memory-mapped [FileChannel]s.
+ *
+ * Only the requested window is mapped and copied, and line windows are found by scanning the file
+ * a few MB at a time, so memory use depends on [DEFAULT_MAX_BYTES] rather than the file size. A
+ * 200 MB log costs the same heap to read as a 2 MB one.
+ */
+internal object FileRangeReader {
+
+    /** Most bytes a single read returns */
+    const val DEFAULT_MAX_BYTES = 1 shl 20
+    private const val SCAN_WINDOW_BYTES = 4L shl 20
+    private const val NEWLINE = '\n'.code.toByte()
+
+    fun read(file: File, range: FileRange, maxBytes: Int = DEFAULT_MAX_BYTES): FileSlice =
+        FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+            val size = channel.size()
+            val start: Long
+            val end: Long
+            when {
+                range.tailLines != null -> {
+                    start = tailStart(channel, size, range.tailLines, maxBytes)
+                    end = size
+                }
+                range.startLine != null -> {
+                    start = afterNewlines(channel, 0, size, range.startLine - 1)
+                    val limit = minOf(size, start + maxBytes)
+                    val lines = range.lines?.toLong() ?: Long.MAX_VALUE
+                    end = afterNewlines(channel, start, limit, lines)
+                }
+                else -> {
+                    start = minOf(range.offset, size)
+                    end = minOf(size, start + minOf(range.length ?: maxBytes, maxBytes))
+                }
+            }
+            FileSlice(map(channel, start, end), start, size)
+        }
+
+    /**
+     * Read [range] of [file] as resource content: a blob if the bytes or [mimeType] say it is
+     * binary, UTF-8 text otherwise. A partial read is returned under a URI naming exactly the bytes
+     * it holds, so a client can page on from where it ends.
+     *
+     * [uri] is kept as is when it can't take a range query ([rangedUri] false), such as a fixed
+     * resource registered for one file. Partial text then ends with a note saying which bytes it
+     * holds, so a cut-off file never passes for the whole thing.
+     */
+    fun readContent(
+        uri: String,
+        file: File,
+        range: FileRange,
+        mimeType: String?,
+        rangedUri: Boolean = true,
+    ): AndroidResourceContent {
+        val slice = read(file, range)
+        return if (slice.looksBinary() || (mimeType != null && !isTextMimeType(mimeType))) {
+            AndroidResourceContent(
+                uri = if (rangedUri) servedUri(uri, slice) else uri,
+                text = null,
+                blob = slice.bytes,
+                mimeType = mimeType ?: "application/octet-stream",
+            )
+        } else {
+            val text = slice.utf8Aligned()
+            val decoded = String(text.bytes, Charsets.UTF_8)
+            AndroidResourceContent(
+                uri = if (rangedUri) servedUri(uri, text) else uri,
+                text =
+                    if (rangedUri || text.coversWholeFile) decoded
+                    else decoded + truncationNote(text),
+                mimeType = mimeType ?: "text/plain",
+            )
+        }
+    }
+
+    private fun servedUri(uri: String, slice: FileSlice): String =
+        if (slice.coversWholeFile) uri
+        else "${uri.substringBefore('?')}?offset=${slice.offset}&length=${slice.bytes.size}"
+
+    private fun truncationNote(slice: FileSlice): String {
+        val end = slice.offset + slice.bytes.size
+        return "\n[Truncated: showing bytes ${slice.offset}-$end of ${slice.fileSize}]"
+    }
+
+    private fun isTextMimeType(mimeType: String): Boolean =
+        mimeType.startsWith("text/") ||
+            mimeType.endsWith("json") ||
+            mimeType.endsWith("xml") ||
+            mimeType.endsWith("javascript")
+
+    private fun map(channel: FileChannel, start: Long, end: Long): ByteArray {
+        val bytes = ByteArray((end - start).toInt())
+        if (bytes.isNotEmpty()) {
+            channel.map(FileChannel.MapMode.READ_ONLY, start, bytes.size.toLong()).get(bytes)
+        }
+        return bytes
+    }
+
+    /** Position just past the [count]th newline from [from], or [limit] if there are fewer */
+    private fun afterNewlines(channel: FileChannel, from: Long, limit: Long, count: Long): Long {
+        if (count <= 0) return from
+        var remaining = count
+        var position = from
+        while (position < limit) {
+            val window = minOf(SCAN_WINDOW_BYTES, limit - position)
+            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window)
+            for (i in 0 until window.toInt()) {
+                if (buffer.get(i) == NEWLINE && --remaining == 0L) return position + i + 1
+            }
+            position += window
+        }
+        return limit
+    }
+
+    /** Start of the last [lines] lines, looking back no further than [maxBytes] from the end */
+    private fun tailStart(channel: FileChannel, size: Long, lines: Int, maxBytes: Int): Long {
+        val windowStart = maxOf(0L, size - maxBytes)
+        if (size == windowStart) return size
+        val buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size - windowStart)
+        var i = buffer.limit() - 1
+        // A trailing newline ends the last line rather than starting an empty one
+        if (buffer.get(i) == NEWLINE) i--
+        var seen = 0
+        while (i >= 0) {
+            if (buffer.get(i) == NEWLINE && ++seen == lines) return windowStart + i + 1
+            i--
+        }
+        return windowStart
+    }
+}
@@ -0,0 +1,147 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import android.os.FileObserver
+import android.util.Log
+import java.io.File
+
+/**
+ * Shares one [FileObserver] per directory between every subscribed URI under it.
+ *
+ * inotify watches are per directory and events carry the name of the file that changed, so a single
+ * watcher can serve any number of file subscriptions in that directory: events are fanned out to
+ * the URIs subscribed to that file name, plus any URI subscribed to the directory itself. Watchers
+ * are reference counted and stop when their last URI is unwatched, which keeps the number of
+ * inotify watches at the number of distinct directories rather than the number of files.
+ */
+internal class FileWatchMultiplexer(
+    private val maxWatchers: () -> Int,
+    private val onChanged: (uri: String) -> Unit,
+) {
+
+    companion object {
+        private const val TAG = "FileWatchMultiplexer"
+
+        private const val EVENT_MASK =
+            FileObserver.MODIFY or
+                FileObserver.DELETE or
+                FileObserver.MOVED_FROM or
+                FileObserver.MOVED_TO or
+                FileObserver.CREATE or
+                FileObserver.DELETE_SELF or
+                FileObserver.MOVE_SELF
+
+        private const val SELF_EVENTS = FileObserver.DELETE_SELF or FileObserver.MOVE_SELF
+    }
+
+    /** What a URI is watching: a file name inside [directory], or the directory itself. */
+    private data class Target(val directory: String, val fileName: String?)
+
+    private inner class DirectoryWatch(val directory: String) {
+        val urisByFileName = HashMap<String, MutableSet<String>>()
+        val directoryUris = HashSet<String>()
+
+        val observer: FileObserver =
+            object : FileObserver(directory, EVENT_MASK) {
+                override fun onEvent(event: Int, path: String?) {
+                    dispatch(this@DirectoryWatch, event and ALL_EVENTS, path)
+                }
+            }
+
+        fun isEmpty(): Boolean = urisByFileName.isEmpty() && directoryUris.isEmpty()
+    }
+
+    private val lock = Any()
+    private val watches = HashMap<String, DirectoryWatch>()
+    private val targets = HashMap<String, Target>()
+
+    /** Number of directories currently being watched */
+    val watcherCount: Int
+        get() = synchronized(lock) { watches.size }
+
+    /**
+     * Start delivering changes to [file] as [uri]. Returns the directory's shared observer, or null
+     * if watching it would need a new watcher and [maxWatchers] are already in use.
+     */
+    fun watch(uri: String, file: File): FileObserver? {
+        val target =
+            if (file.isDirectory) Target(file.absolutePath, null)
+            else Target(file.parentFile?.absolutePath ?: file.absolutePath, file.name)
+
+        var replaced: FileObserver? = null
+        val (observer, started) =
+            synchronized(lock) {
+                if (target.directory !in watches && watches.size >= maxWatchers()) return null
+                // Re-watching a URI moves it, e.g. when a file it waited for was created
+                replaced = targets[uri]?.let { unwatchLocked(uri, it) }
+                val existing = watches[target.directory]
+                val watch =
+                    existing
+                        ?: DirectoryWatch(target.directory).also { watches[target.directory] = it }
+                if (target.fileName == null) watch.directoryUris.add(uri)
+                else watch.urisByFileName.getOrPut(target.fileName) { HashSet() }.add(uri)
+                targets[uri] = target
+                watch.observer to (existing == null)
+            }
+
+        replaced?.stopWatching()
+        if (started) {
+            observer.startWatching()
+            Log.d(TAG, "Watching ${target.directory}")
+        }
+        return observer
+    }
+
+    /** Stop delivering changes to [uri]; its directory's observer stops once nobody uses it */
+    fun unwatch(uri: String) {
+        val stopped = synchronized(lock) { targets[uri]?.let { unwatchLocked(uri, it) } }
+        stopped?.stopWatching()
+    }
+
+    /** Stop every observer and forget all URIs */
+    fun stopAll() {
+        val observers =
+            synchronized(lock) {
+                watches.values.map { it.observer }.also {
+                    watches.clear()
+                    targets.clear()
+                }
+            }
+        observers.forEach { observer ->
+            try {
+                observer.stopWatching()
+            } catch (e: Exception) {
+                Log.w(TAG, "Error stopping FileObserver", e)
+            }
+        }
+    }
+
+    /** Remove [uri] from its watch and return the observer if the watch became unused. */
+    private fun unwatchLocked(uri: String, target: Target): FileObserver? {
+        targets.remove(uri)
+        val watch = watches[target.directory] ?: return null
+        if (target.fileName == null) {
+            watch.directoryUris.remove(uri)
+        } else {
+            watch.urisByFileName[target.fileName]?.let { uris ->
+                uris.remove(uri)
+                if (uris.isEmpty()) watch.urisByFileName.remove(target.fileName)
+            }
+        }
+        if (!watch.isEmpty()) return null
+        watches.remove(target.directory)
+        return watch.observer
+    }
+
+    private fun dispatch(watch: DirectoryWatch, event: Int, path: String?) {
+        val uris =
+            synchronized(lock) {
+                if (path == null || (event and SELF_EVENTS) != 0) {
+                    // The directory itself went away: everything under it changed
+                    watch.directoryUris + watch.urisByFileName.values.flatten()
+                } else {
+                    watch.directoryUris + watch.urisByFileName[path].orEmpty()
+                }
+            }
+        uris.forEach(onChanged)
+    }
+}
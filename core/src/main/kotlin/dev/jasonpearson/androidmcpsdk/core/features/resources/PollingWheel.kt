@@ -0,0 +1,216 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import android.os.SystemClock
+import android.util.Log
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+
+/**
+ * Hierarchical timing wheel that runs every periodic poll from a single driver coroutine.
+ *
+ * Time is cut into ticks of [tickMs], aligned to the clock rather than to when each poll was
+ * scheduled, so every poll due in the same tick runs in the same wakeup. Polls due within
+ * [SLOTS] ticks sit in the inner wheel; later ones sit in the outer wheel, one slot per inner
+ * revolution, and cascade inward as their revolution comes up. The driver sleeps until the next
+ * occupied slot and only runs while something is scheduled, so an idle wheel costs no wakeups at
+ * all.
+ *
+ * Due tasks are launched in [scope] rather than awaited, so a slow poll doesn't hold back the
+ * others. A key whose previous run hasn't finished yet is held back a tick instead of overlapping.
+ *
+ * A task returns the delay until its next run, which is how callers apply per-key backoff; zero
+ * or less stops it. Each schedule is tied to a [Job] handle: cancelling the handle removes it.
+ */
+internal class PollingWheel(
+    private val scope: CoroutineScope,
+    private val tickMs: Long = DEFAULT_TICK_MS,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+) {
+
+    companion object {
+        private const val TAG = "PollingWheel"
+        const val DEFAULT_TICK_MS = 1_000L
+        private const val SLOTS = 64
+    }
+
+    private class Entry(
+        val key: String,
+        val handle: Job,
+        val task: suspend () -> Long,
+        var deadlineTick: Long,
+    )
+
+    private val lock = Any()
+    private val inner = Array(SLOTS) { ArrayList<Entry>() }
+    private val outer = Array(SLOTS) { ArrayList<Entry>() }
+    private val entries = HashMap<String, Entry>()
+    private val running = HashMap<String, Entry>()
+    private val wakeups = Channel<Unit>(Channel.CONFLATED)
+    private var currentTick = 0L
+    private var wakeTick = Long.MAX_VALUE
+    private var driver: Job? = null
+
+    /** Number of scheduled keys, including ones whose task is running right now */
+    val size: Int
+        get() = synchronized(lock) { entries.size }
+
+    /** Run [task] for [key] after [delayMs], replacing anything already scheduled for [key] */
+    fun schedule(key: String, delayMs: Long, handle: Job, task: suspend () -> Long) {
+        if (!handle.isActive) return
+        val entry = Entry(key, handle, task, deadlineTick = 0)
+        synchronized(lock) {
+            if (entries.isEmpty()) currentTick = tickOf(clock())
+            entries[key] = entry
+            insert(entry, delayMs)
+            if (driver?.isActive != true) driver = scope.launch { drive() }
+        }
+        handle.invokeOnCompletion { remove(entry) }
+    }
+
+    /** Stop running [key]'s task */
+    fun cancel(key: String) {
+        synchronized(lock) { entries.remove(key) }
+    }
+
+    private fun remove(entry: Entry) {
+        synchronized(lock) { if (entries[entry.key] === entry) entries.remove(entry.key) }
+    }
+
+    private fun tickOf(timeMs: Long): Long = timeMs / tickMs
+
+    /** Place [entry] in the slot for [delayMs] from now. Caller holds [lock]. */
+    private fun insert(entry: Entry, delayMs: Long) {
+        val ticks = ((delayMs + tickMs - 1) / tickMs).coerceAtLeast(1)
+        entry.deadlineTick = currentTick + ticks
+        // The driver is asleep past this deadline, so wake it to sleep again for less
+        if (entry.deadlineTick < wakeTick) wakeups.trySend(Unit)
+        if (ticks < SLOTS) {
+            inner[(entry.deadlineTick % SLOTS).toInt()].add(entry)
+        } else {
+            // Beyond the outer wheel's range too: park it in the furthest slot and let it cascade
+            val revolutions = minOf(ticks / SLOTS, SLOTS - 1L)
+            outer[((currentTick / SLOTS + revolutions) % SLOTS).toInt()].add(entry)
+        }
+    }
+
+    private suspend fun drive() {
+        while (true) {
+            val due =
+                synchronized(lock) {
+                    if (entries.isEmpty()) {
+                        driver = null
+                        return
+                    }
+                    advanceTo(tickOf(clock())).filter { entry ->
+                        if (running.containsKey(entry.key)) {
+                            insert(entry, tickMs)
+                            false
+                        } else {
+                            running[entry.key] = entry
+                            true
+                        }
+                    }
+                }
+            due.forEach { scope.launch { run(it) } }
+
+            // Sleep to the tick boundary of the next occupied slot, so polls of every key line up
+            // on the same wakeup, or until a schedule lands before it
+            val sleepMs =
+                synchronized(lock) {
+                    wakeTick = nextOccupiedTick() ?: Long.MAX_VALUE
+                    if (wakeTick == Long.MAX_VALUE) null else wakeTick * tickMs - clock()
+                }
+            when {
+                // Everything left is running; its rescheduling will wake the driver
+                sleepMs == null -> wakeups.receive()
+                sleepMs > 0 -> withTimeoutOrNull(sleepMs) { wakeups.receive() }
+            }
+        }
+    }
+
+    /**
+     * The first tick after the current one whose inner slot or, on a revolution boundary, outer
+     * slot holds anything, or null if both wheels are empty. Caller holds [lock].
+     */
+    private fun nextOccupiedTick(): Long? {
+        val innerTick =
+            (1 until SLOTS)
+                .map { currentTick + it }
+                .firstOrNull { inner[(it % SLOTS).toInt()].isNotEmpty() }
+        val outerTick =
+            (1..SLOTS)
+                .map { (currentTick / SLOTS + it) * SLOTS }
+                .firstOrNull { outer[((it / SLOTS) % SLOTS).toInt()].isNotEmpty() }
+        return listOfNotNull(innerTick, outerTick).minOrNull()
+    }
+
+    /** Advance the wheel to [tick] and collect everything that became due. Caller holds [lock]. */
+    private fun advanceTo(tick: Long): List<Entry> {
+        val due = ArrayList<Entry>()
+        while (currentTick < tick) {
+            currentTick++
+            if (currentTick % SLOTS == 0L) {
+                // Inner wheel wrapped: bring this revolution's entries in from the outer wheel
+                val slot = outer[((currentTick / SLOTS) % SLOTS).toInt()]
+                val cascading = slot.toList()
+                slot.clear()
+                cascading.forEach { entry ->
+                    if (entries[entry.key] !== entry) return@forEach
+                    if (entry.deadlineTick <= currentTick) {
+                        due.add(entry)
+                    } else {
+                        insert(entry, (entry.deadlineTick - currentTick) * tickMs)
+                    }
+                }
+            }
+            val slot = inner[(currentTick % SLOTS).toInt()]
+            val iterator = slot.iterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                when {
+                    entries[entry.key] !== entry -> iterator.remove()
+                    entry.deadlineTick <= currentTick -> {
+                        iterator.remove()
+                        due.add(entry)
+                    }
+                }
+            }
+        }
+        return due
+    }
+
+    private suspend fun run(entry: Entry) {
+        try {
+            poll(entry)
+        } finally {
+            synchronized(lock) { if (running[entry.key] === entry) running.remove(entry.key) }
+        }
+    }
+
+    private suspend fun poll(entry: Entry) {
+        if (!entry.handle.isActive) return
+        val nextDelayMs =
+            try {
+                entry.task()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.e(TAG, "Polling task for ${entry.key} failed; dropping it", e)
+                0L
+            }
+        synchronized(lock) {
+            if (entries[entry.key] !== entry) return
+            if (nextDelayMs > 0 && entry.handle.isActive) {
+                insert(entry, nextDelayMs)
+            } else {
+                entries.remove(entry.key)
+                // Let an idle driver see that nothing is left and stop
+                if (entries.isEmpty()) wakeups.trySend(Unit)
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
+import kotlinx.serialization.Serializable
+
+@Serializable
+data class ResourceCacheStats(
+    val entries: Int,
+    val bytes: Long,
+    val maxBytes: Long,
+    val hits: Long,
+    val misses: Long,
+    val evictions: Long,
+)
+
+/**
+ * Byte-bounded LRU cache of resource reads, keyed by URI and validated by a version string.
+ *
+ * The version is whatever identifies the content without reading it: the canonical path, mtime and
+ * size of a file, or the change counter of a SharedPreferences file. A lookup with a different
+ * version is a miss, so a stale entry can never be served even if an invalidation is missed, and
+ * [invalidate] lets change observers drop entries early. Callers must compute the version before
+ * reading the content, so a change made during the read leaves the entry already stale.
+ */
+internal class ResourceContentCache(private val maxBytes: Long = DEFAULT_MAX_BYTES) {
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 8L * 1024 * 1024
+        // One large file shouldn't push out everything else
+        private const val MAX_ENTRY_FRACTION = 4
+        private const val ENTRY_OVERHEAD_BYTES = 64L
+    }
+
+    private class Entry(val version: String, val content: AndroidResourceContent, val bytes: Long)
+
+    private val lock = Any()
+    private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+    private var totalBytes = 0L
+    private var hits = 0L
+    private var misses = 0L
+    private var evictions = 0L
+
+    /** The content cached for [uri] at [version], or null */
+    fun get(uri: String, version: String): AndroidResourceContent? =
+        synchronized(lock) {
+            val entry = entries[uri]
+            if (entry?.version == version) {
+                hits++
+                entry.content
+            } else {
+                misses++
+                null
+            }
+        }
+
+    fun put(uri: String, version: String, content: AndroidResourceContent) {
+        val bytes = sizeOf(content)
+        synchronized(lock) {
+            entries.remove(uri)?.let { totalBytes -= it.bytes }
+            if (bytes > maxBytes / MAX_ENTRY_FRACTION) return
+            entries[uri] = Entry(version, content, bytes)
+            totalBytes += bytes
+            val iterator = entries.values.iterator()
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                totalBytes -= iterator.next().bytes
+                iterator.remove()
+                evictions++
+            }
+        }
+    }
+
+    /** Drop [uri], including every ranged read of it (`uri?offset=...`) */
+    fun invalidate(uri: String) {
+        val base = uri.substringBefore('?')
+        synchronized(lock) {
+            val iterator = entries.entries.iterator()
+            while (iterator.hasNext()) {
+                val (key, entry) = iterator.next()
+                if (key == base || key.startsWith("$base?")) {
+                    totalBytes -= entry.bytes
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    fun clear() {
+        synchronized(lock) {
+            entries.clear()
+            totalBytes = 0
+        }
+    }
+
+    fun stats(): ResourceCacheStats =
+        synchronized(lock) {
+            ResourceCacheStats(entries.size, totalBytes, maxBytes, hits, misses, evictions)
+        }
+
+    private fun sizeOf(content: AndroidResourceContent): Long =
+        (content.text?.length ?: 0) * 2L + (content.blob?.size ?: 0) + ENTRY_OVERHEAD_BYTES
+}
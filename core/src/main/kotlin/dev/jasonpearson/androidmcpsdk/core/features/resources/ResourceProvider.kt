@@ -4,26 +4,26 @@ import android.content.Context
 import android.os.Environment
 import android.os.FileObserver
 import android.util.Log
+import android.webkit.MimeTypeMap
 import androidx.core.net.toUri
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
+import dev.jasonpearson.androidmcpsdk.core.features.CatalogPage
+import dev.jasonpearson.androidmcpsdk.core.features.PagedCatalog
 import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
 import io.modelcontextprotocol.kotlin.sdk.Resource
 import io.modelcontextprotocol.kotlin.sdk.ResourceTemplate
 import java.io.File
 import java.io.IOException
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 import kotlin.math.pow
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineExceptionHandler
 import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.Job
-import kotlinx.coroutines.SupervisorJob
-import kotlinx.coroutines.channels.Channel
-import kotlinx.coroutines.delay
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.debounce
-import kotlinx.coroutines.flow.receiveAsFlow
-import kotlinx.coroutines.isActive
+import kotlinx.coroutines.flow.callbackFlow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 
@@ -38,19 +38,52 @@ class ResourceProvider(private val context: Context) {
         ConcurrentHashMap<String, Pair<Resource, suspend () -> AndroidResourceContent>>()
     private val customResourceTemplates = ConcurrentHashMap<String, ResourceTemplate>()
 
-    private val subscriptionManager = ResourceSubscriptionManager(context)
+    // Listeners mirroring registration changes into a running server
+    private val registrationListeners = CopyOnWriteArrayList<ResourceRegistrationListener>()
+
+    // File and preferences reads, validated by file stat or preferences change count
+    private val contentCache = ResourceContentCache()
+
+    private val subscriptionManager =
+        ResourceSubscriptionManager(
+            context,
+            readContent = ::readResource,
+            onChanged = contentCache::invalidate,
+        )
     private val sharedPreferencesResourceProvider = SharedPreferencesResourceProvider(context)
 
     // Flow for resource update notifications
-    @OptIn(FlowPreview::class)
     val resourceUpdates: Flow<String> = subscriptionManager.resourceUpdates
 
-    fun getAllResources(): List<Resource> {
-        val builtIn = createBuiltInResources()
-        val custom = customResources.values.map { it.first }
-        return builtIn + custom
+    /**
+     * Deliver each change to a subscribed resource to [deliver], at most once per URI every
+     * [windowMs]. Producers never wait on [deliver]; see [ResourceUpdateCoalescer].
+     */
+    fun addUpdateSubscriber(
+        scope: CoroutineScope,
+        windowMs: Long = ResourceUpdateCoalescer.DEFAULT_WINDOW_MS,
+        deliver: suspend (uri: String) -> Unit,
+    ): ResourceUpdateCoalescer = subscriptionManager.addUpdateSubscriber(scope, windowMs, deliver)
+
+    fun removeUpdateSubscriber(subscriber: ResourceUpdateCoalescer) {
+        subscriptionManager.removeUpdateSubscriber(subscriber)
     }
 
+    /** Offered, delivered, coalesced and dropped update counts across all subscribers */
+    fun getUpdateStats(): ResourceUpdateStats = subscriptionManager.updateStats()
+
+    // Built-ins first, then custom resources by URI; rebuilt only when a resource is added or
+    // removed, or a SharedPreferences file is created or deleted
+    private val resourceCatalog =
+        PagedCatalog(sourceVersion = sharedPreferencesResourceProvider::catalogVersion) {
+            createBuiltInResources() + customResources.values.map { it.first }.sortedBy { it.uri }
+        }
+
+    fun getAllResources(): List<Resource> = resourceCatalog.items()
+
+    /** Get one page of resources for a paginated resources/list request */
+    fun listResources(cursor: String?): CatalogPage<Resource> = resourceCatalog.page(cursor)
+
     fun getAllResourceTemplates(): List<ResourceTemplate> {
         val builtIn = createBuiltInResourceTemplates()
         val custom = customResourceTemplates.values.toList()
@@ -69,7 +102,13 @@ class ResourceProvider(private val context: Context) {
 
         // Check if the resource is handled by SharedPreferencesResourceProvider
         if (uri.startsWith("android://preferences/")) {
-            return sharedPreferencesResourceProvider.readSharedPreferencesResource(uri)
+            val version = sharedPreferencesResourceProvider.contentVersion(uri)
+            contentCache.get(uri, version)?.let {
+                return it
+            }
+            return sharedPreferencesResourceProvider.readSharedPreferencesResource(uri).also {
+                contentCache.put(uri, version, it)
+            }
         }
 
         return AndroidResourceContent(uri = uri, text = "Resource not found: $uri")
@@ -77,9 +116,34 @@ class ResourceProvider(private val context: Context) {
 
     fun addResource(resource: Resource, contentProvider: suspend () -> AndroidResourceContent) {
         customResources[resource.uri] = Pair(resource, contentProvider)
+        resourceCatalog.invalidate()
         Log.i(TAG, "Added custom resource: ${resource.uri}")
+        registrationListeners.forEach { it.onResourceAdded(resource) }
     }
 
+    fun removeResource(uri: String): Boolean {
+        val removed = customResources.remove(uri) != null
+        if (removed) {
+            resourceCatalog.invalidate()
+            Log.i(TAG, "Removed custom resource: $uri")
+            registrationListeners.forEach { it.onResourceRemoved(uri) }
+        }
+        return removed
+    }
+
+    /** Add a listener that is notified whenever a custom resource is added or removed */
+    fun addRegistrationListener(listener: ResourceRegistrationListener) {
+        registrationListeners.addIfAbsent(listener)
+    }
+
+    /** Remove a previously added registration listener */
+    fun removeRegistrationListener(listener: ResourceRegistrationListener) {
+        registrationListeners.remove(listener)
+    }
+
+    /** Hit, miss and size counters for cached file and preferences reads */
+    fun getContentCacheStats(): ResourceCacheStats = contentCache.stats()
+
     fun addResourceTemplate(template: ResourceTemplate) {
         customResourceTemplates[template.uriTemplate] = template
         Log.i(TAG, "Added custom resource template: ${template.uriTemplate}")
@@ -121,17 +185,20 @@ class ResourceProvider(private val context: Context) {
     private fun createBuiltInResourceTemplates(): List<ResourceTemplate> {
         return listOf(
             ResourceTemplate(
-                uriTemplate = "file://{path}",
+                uriTemplate = "file://{path}{?offset,length,startLine,lines,tail}",
                 name = "File Content",
                 description =
-                    "Read content of a file from app's private storage or allowed public directories.",
+                    "Read content of a file from app's private storage or allowed public " +
+                        "directories. Reads return at most 1 MiB; use offset/length, " +
+                        "startLine/lines or tail " +
+                        "(last N lines) to page through larger files.",
                 mimeType = "text/plain",
             )
         )
     }
 
     private suspend fun readFileResource(fileUri: String): AndroidResourceContent {
-        return withContext(Dispatchers.IO) {
+        return withContext(McpDispatchers.io) {
             try {
                 val requestedFile =
                     getAndVerifyAccessibleFile(fileUri)
@@ -147,12 +214,26 @@ class ResourceProvider(private val context: Context) {
                     )
                 }
 
-                val content = requestedFile.readText()
-                AndroidResourceContent(
-                    uri = fileUri,
-                    text = content,
-                    mimeType = context.contentResolver.getType(fileUri.toUri()) ?: "text/plain",
-                )
+                // Stat before reading, so a write during the read leaves the entry stale
+                val version =
+                    "${requestedFile.canonicalPath}:${requestedFile.lastModified()}:" +
+                        requestedFile.length()
+                contentCache.get(fileUri, version)?.let {
+                    return@withContext it
+                }
+
+                // Bounded, memory-mapped read of the requested range instead of the whole file
+                val mimeType =
+                    context.contentResolver.getType(fileUri.toUri())
+                        ?: MimeTypeMap.getSingleton()
+                            .getMimeTypeFromExtension(requestedFile.extension.lowercase())
+                FileRangeReader.readContent(
+                        fileUri,
+                        requestedFile,
+                        FileRange.parse(fileUri),
+                        mimeType,
+                    )
+                    .also { contentCache.put(fileUri, version, it) }
             } catch (e: IOException) {
                 Log.e(TAG, "Error reading file resource $fileUri", e)
                 AndroidResourceContent(uri = fileUri, text = "Error reading file: ${e.message}")
@@ -228,12 +309,17 @@ class ResourceProvider(private val context: Context) {
 }
 
 /** Manages resource subscriptions and notifications. */
-internal class ResourceSubscriptionManager(private val context: Context) {
+internal class ResourceSubscriptionManager(
+    private val context: Context,
+    private val readContent: suspend (uri: String) -> AndroidResourceContent,
+    private val onChanged: (uri: String) -> Unit = {},
+) {
     companion object {
         private const val TAG = "ResourceSubscriptionManager"
-        internal const val DEBOUNCE_TIME_MS = 500L // For debouncing notifications
-        internal var MAX_FILE_OBSERVERS =
-            50 // Limit number of active file observers (var for testability)
+        // Default per-URI coalescing window for update notifications
+        internal const val DEBOUNCE_TIME_MS = ResourceUpdateCoalescer.DEFAULT_WINDOW_MS
+        // Limit on watched directories; any number of files per directory share one observer
+        internal var MAX_FILE_OBSERVERS = 50 // var for testability
         private const val DEFAULT_POLL_INTERVAL_MS = 15000L
         private const val MAX_POLL_INTERVAL_MS = 60000L
         private const val MIN_POLL_INTERVAL_MS = 5000L
@@ -258,16 +344,44 @@ internal class ResourceSubscriptionManager(private val context: Context) {
     }
 
     private val subscriptions = ConcurrentHashMap<String, ActiveSubscription>()
-    private val _resourceUpdates = Channel<String>(Channel.BUFFERED)
+    private val fileWatches =
+        FileWatchMultiplexer(
+            maxWatchers = { MAX_FILE_OBSERVERS },
+            onChanged = ::notifyResourceChanged,
+        )
+    // One conflating pipeline per subscriber, so a slow client never holds up the others
+    private val updateSubscribers = CopyOnWriteArrayList<ResourceUpdateCoalescer>()
+
+    val resourceUpdates: Flow<String> = callbackFlow {
+        val subscriber = addUpdateSubscriber(this) { uri -> send(uri) }
+        awaitClose { removeUpdateSubscriber(subscriber) }
+    }
+
+    /** Deliver changed URIs to [deliver], coalescing changes to each URI over [windowMs] */
+    fun addUpdateSubscriber(
+        scope: CoroutineScope,
+        windowMs: Long = DEBOUNCE_TIME_MS,
+        deliver: suspend (uri: String) -> Unit,
+    ): ResourceUpdateCoalescer =
+        ResourceUpdateCoalescer(scope, windowMs, deliver = deliver).also {
+            updateSubscribers.add(it)
+        }
+
+    fun removeUpdateSubscriber(subscriber: ResourceUpdateCoalescer) {
+        updateSubscribers.remove(subscriber)
+        subscriber.clear()
+    }
 
-    @OptIn(kotlinx.coroutines.FlowPreview::class) // For debounce
-    val resourceUpdates: Flow<String> = _resourceUpdates.receiveAsFlow().debounce(DEBOUNCE_TIME_MS)
+    fun updateStats(): ResourceUpdateStats =
+        updateSubscribers.fold(ResourceUpdateStats.EMPTY) { total, it -> total + it.stats() }
 
     private val coroutineExceptionHandler = CoroutineExceptionHandler { _, throwable ->
         Log.e(TAG, "Coroutine exception in ResourceSubscriptionManager", throwable)
     }
-    private val coroutineScope =
-        CoroutineScope(Dispatchers.IO + SupervisorJob() + coroutineExceptionHandler)
+    private val coroutineScope = McpDispatchers.scope(TAG) + coroutineExceptionHandler
+
+    // All dynamic subscriptions share one timer instead of a delay loop each
+    private val pollingWheel = PollingWheel(coroutineScope)
 
     fun subscribeToResource(uri: String) {
         if (subscriptions.containsKey(uri)) {
@@ -277,20 +391,6 @@ internal class ResourceSubscriptionManager(private val context: Context) {
 
         Log.i(TAG, "Subscribing to resource: $uri")
         if (uri.startsWith("file://")) {
-            if (
-                subscriptions.count { it.value.type == SubscriptionType.FILE } >= MAX_FILE_OBSERVERS
-            ) {
-                Log.w(
-                    TAG,
-                    "Max file observers limit reached ($MAX_FILE_OBSERVERS). Fallback to dynamic polling for file: $uri",
-                )
-                startDynamicResourcePolling(
-                    uri,
-                    pollIntervalMs = MAX_POLL_INTERVAL_MS,
-                    isFallback = true,
-                )
-                return
-            }
             try {
                 val filePath =
                     (context.applicationContext as ResourceProviderContainer)
@@ -299,11 +399,20 @@ internal class ResourceSubscriptionManager(private val context: Context) {
                         ?.absolutePath
 
                 if (filePath != null) {
-                    val file = File(filePath)
-                    val pathToObserve =
-                        if (file.exists()) filePath else file.parentFile?.absolutePath ?: filePath
-                    val fileObserver = createFileObserver(pathToObserve, uri)
-                    fileObserver.startWatching()
+                    val fileObserver = fileWatches.watch(uri, File(filePath))
+                    if (fileObserver == null) {
+                        Log.w(
+                            TAG,
+                            "Max watched directories reached ($MAX_FILE_OBSERVERS). " +
+                                "Fallback to dynamic polling for file: $uri",
+                        )
+                        startDynamicResourcePolling(
+                            uri,
+                            pollIntervalMs = MAX_POLL_INTERVAL_MS,
+                            isFallback = true,
+                        )
+                        return
+                    }
                     subscriptions[uri] =
                         ActiveSubscription(
                             uri,
@@ -311,7 +420,7 @@ internal class ResourceSubscriptionManager(private val context: Context) {
                             fileObserver,
                             currentPollIntervalMs = DEFAULT_POLL_INTERVAL_MS,
                         ) // Ensure correct interval is set
-                    Log.d(TAG, "Started FileObserver for $uri on path $pathToObserve")
+                    Log.d(TAG, "Watching $uri (${fileWatches.watcherCount} directories watched)")
                 } else {
                     Log.e(
                         TAG,
@@ -331,7 +440,8 @@ internal class ResourceSubscriptionManager(private val context: Context) {
     fun unsubscribeFromResource(uri: String) {
         Log.i(TAG, "Unsubscribing from resource: $uri")
         subscriptions.remove(uri)?.let { activeSubscription ->
-            activeSubscription.fileObserver?.stopWatching()
+            // The observer is shared with other files in the same directory
+            if (activeSubscription.type == SubscriptionType.FILE) fileWatches.unwatch(uri)
             activeSubscription.pollingJob?.cancel()
             Log.d(TAG, "Stopped observer/poller for $uri")
         }
@@ -343,14 +453,8 @@ internal class ResourceSubscriptionManager(private val context: Context) {
 
     fun stopAllObservers() {
         Log.i(TAG, "Stopping all resource observers and pollers.")
-        subscriptions.values.forEach { sub ->
-            try {
-                sub.fileObserver?.stopWatching()
-            } catch (e: Exception) {
-                Log.w(TAG, "Error stopping FileObserver for ${sub.uri}", e)
-            }
-            sub.pollingJob?.cancel()
-        }
+        fileWatches.stopAll()
+        subscriptions.values.forEach { sub -> sub.pollingJob?.cancel() }
     }
 
     fun restartActiveObservers() {
@@ -363,30 +467,6 @@ internal class ResourceSubscriptionManager(private val context: Context) {
         currentSubs.keys.forEach { uri -> subscribeToResource(uri) }
     }
 
-    private fun createFileObserver(filePathToObserve: String, originalUri: String): FileObserver {
-        val eventMask =
-            FileObserver.MODIFY or
-                FileObserver.DELETE or
-                FileObserver.MOVED_FROM or
-                FileObserver.MOVED_TO or
-                FileObserver.CREATE or
-                FileObserver.DELETE_SELF or
-                FileObserver.MOVE_SELF
-
-        return object : FileObserver(filePathToObserve, eventMask) {
-            override fun onEvent(event: Int, path: String?) {
-                Log.d(
-                    TAG,
-                    "FileObserver event $event for URI $originalUri, observed path $filePathToObserve, event path $path",
-                )
-                // If observing a directory, path will be relative name of file/dir that changed.
-                // We are interested in changes to the originalUri.
-                // More specific handling might be needed if originalUri is a directory itself.
-                notifyResourceChanged(originalUri)
-            }
-        }
-    }
-
     private fun startDynamicResourcePolling(
         uri: String,
         pollIntervalMs: Long = DEFAULT_POLL_INTERVAL_MS,
@@ -404,98 +484,104 @@ internal class ResourceSubscriptionManager(private val context: Context) {
         val initialPollInterval = if (isFallback) MAX_POLL_INTERVAL_MS else pollIntervalMs
         Log.i(TAG, "Starting dynamic polling for resource: $uri every $initialPollInterval ms")
 
-        // Ensure new or existing subscription has the correct initial poll interval
+        existingSub?.pollingJob?.cancel()
         val currentSub =
-            subscriptions
-                .computeIfAbsent(uri) {
-                    ActiveSubscription(
-                        uri,
-                        SubscriptionType.DYNAMIC,
-                        currentPollIntervalMs = initialPollInterval,
-                    )
-                }
-                .apply {
-                    this.currentPollIntervalMs =
-                        initialPollInterval // Explicitly set/reset interval
-                    this.pollingErrorCount = 0 // Reset error count
-                }
-
-        currentSub.pollingJob =
-            coroutineScope.launch {
-                try {
-                    val initialContentData = readAndProcessDynamicResource(uri)
-                    currentSub.lastModifiedOrHash = initialContentData.hashOrTimestamp
-                } catch (e: Exception) {
-                    Log.w(TAG, "Initial content read failed for $uri, will continue polling", e)
-                    currentSub.lastModifiedOrHash = "" // Start with empty hash
-                }
-
-                while (isActive) {
-                    delay(currentSub.currentPollIntervalMs)
-                    try {
-                        val newContentData = readAndProcessDynamicResource(uri)
-                        if (newContentData.hashOrTimestamp != currentSub.lastModifiedOrHash) {
-                            Log.d(
-                                TAG,
-                                "Dynamic resource $uri changed (old: ${currentSub.lastModifiedOrHash}, new: ${newContentData.hashOrTimestamp}), notifying.",
-                            )
-                            currentSub.lastModifiedOrHash = newContentData.hashOrTimestamp
-                            notifyResourceChanged(uri)
-                            currentSub.pollingErrorCount = 0
-                            currentSub.currentPollIntervalMs = initialPollInterval
-                        } else {
-                            if (currentSub.pollingErrorCount > 0) currentSub.pollingErrorCount = 0
-                            currentSub.currentPollIntervalMs = initialPollInterval
-                        }
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error during polling for $uri", e)
-                        currentSub.pollingErrorCount++
-                        val backoffDelay =
-                            (initialPollInterval *
-                                    POLLING_BACKOFF_FACTOR.pow(currentSub.pollingErrorCount))
-                                .toLong()
-                        currentSub.currentPollIntervalMs =
-                            minOf(backoffDelay, MAX_POLL_INTERVAL_MS) // Corrected usage of min
-                        currentSub.currentPollIntervalMs =
-                            maxOf(
-                                currentSub.currentPollIntervalMs,
-                                MIN_POLL_INTERVAL_MS,
-                            ) // Ensure it doesn't go below min
+            ActiveSubscription(
+                uri,
+                SubscriptionType.DYNAMIC,
+                // Handle for this subscription's slot in the polling wheel, not a coroutine
+                pollingJob = Job(),
+                currentPollIntervalMs = initialPollInterval,
+            )
+        subscriptions[uri] = currentSub
+        val handle = currentSub.pollingJob!!
 
-                        Log.w(
-                            TAG,
-                            "Polling for $uri failed ${currentSub.pollingErrorCount} times. Next attempt in ${currentSub.currentPollIntervalMs} ms.",
-                        )
-                    }
-                }
-                Log.d(TAG, "Polling job for $uri cancelled or completed.")
+        coroutineScope.launch {
+            try {
+                val initialContentData = readAndProcessDynamicResource(uri)
+                currentSub.lastModifiedOrHash = initialContentData.hashOrTimestamp
+            } catch (e: Exception) {
+                Log.w(TAG, "Initial content read failed for $uri, will continue polling", e)
+                currentSub.lastModifiedOrHash = "" // Start with empty hash
             }
-        // Ensure the subscription in the map is updated with the new job and correct type/interval.
-        subscriptions[uri] =
-            currentSub.copy(
-                type = SubscriptionType.DYNAMIC,
-                pollingJob = currentSub.pollingJob,
-                currentPollIntervalMs = currentSub.currentPollIntervalMs,
-            )
+            pollingWheel.schedule(uri, initialPollInterval, handle) {
+                pollDynamicResource(currentSub, initialPollInterval)
+            }
+        }
     }
 
-    private fun notifyResourceChanged(uri: String) {
-        Log.d(TAG, "Queueing resource change notification for URI: $uri")
-        val sent = _resourceUpdates.trySend(uri).isSuccess
-        if (!sent) {
+    /** Poll [sub] once and return the delay until its next poll, backing off on errors */
+    private suspend fun pollDynamicResource(
+        sub: ActiveSubscription,
+        initialPollInterval: Long,
+    ): Long {
+        val uri = sub.uri
+        try {
+            val newContentData = readAndProcessDynamicResource(uri)
+            if (newContentData.hashOrTimestamp != sub.lastModifiedOrHash) {
+                Log.d(
+                    TAG,
+                    "Dynamic resource $uri changed (old: ${sub.lastModifiedOrHash}, " +
+                        "new: ${newContentData.hashOrTimestamp}), notifying.",
+                )
+                sub.lastModifiedOrHash = newContentData.hashOrTimestamp
+                notifyResourceChanged(uri)
+            }
+            sub.pollingErrorCount = 0
+            sub.currentPollIntervalMs = initialPollInterval
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Error during polling for $uri", e)
+            sub.pollingErrorCount++
+            val backoffDelay =
+                (initialPollInterval * POLLING_BACKOFF_FACTOR.pow(sub.pollingErrorCount)).toLong()
+            sub.currentPollIntervalMs =
+                backoffDelay.coerceIn(MIN_POLL_INTERVAL_MS, MAX_POLL_INTERVAL_MS)
+
             Log.w(
                 TAG,
-                "Failed to queue resource update for $uri, channel buffer might be full or closed.",
+                "Polling for $uri failed ${sub.pollingErrorCount} times. " +
+                    "Next attempt in ${sub.currentPollIntervalMs} ms.",
             )
         }
+        return sub.currentPollIntervalMs
+    }
+
+    private fun notifyResourceChanged(uri: String) {
+        Log.d(TAG, "Queueing resource change notification for URI: $uri")
+        onChanged(uri)
+        updateSubscribers.forEach { it.offer(uri) }
     }
 
     private data class DynamicResourceData(val content: String, val hashOrTimestamp: String)
 
+    /** Read [uri] through its registered content provider and hash it for change detection */
     private suspend fun readAndProcessDynamicResource(uri: String): DynamicResourceData {
-        val content = "Dynamic content for $uri at ${System.currentTimeMillis()}"
-        return DynamicResourceData(content, content.hashCode().toString())
+        val resource = readContent(uri)
+        val content = resource.text ?: ""
+        return DynamicResourceData(content, contentHash(resource))
     }
+
+    /** 64-bit FNV-1a over the text and blob; String.hashCode collides too easily for large text */
+    private fun contentHash(resource: AndroidResourceContent): String {
+        var hash = -0x340d631b7bdddcdbL // FNV offset basis
+        resource.text?.forEach { c -> hash = (hash xor c.code.toLong()) * 0x100000001b3L }
+        resource.blob?.forEach { b -> hash = (hash xor (b.toLong() and 0xff)) * 0x100000001b3L }
+        return java.lang.Long.toHexString(hash)
+    }
+}
+
+/**
+ * Observes custom resource registration changes on a [ResourceProvider]. Used to mirror resources
+ * that are added or removed after startup into an already running MCP server.
+ */
+interface ResourceRegistrationListener {
+    /** Called after a resource has been added or replaced */
+    fun onResourceAdded(resource: Resource)
+
+    /** Called after a resource has been removed */
+    fun onResourceRemoved(uri: String)
 }
 
 // Interface to allow ResourceSubscriptionManager to access ResourceProvider's methods if needed
@@ -0,0 +1,167 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import android.util.Log
+import java.util.concurrent.atomic.AtomicLong
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.serialization.Serializable
+
+/** Counters for one or more [ResourceUpdateCoalescer]s */
+@Serializable
+data class ResourceUpdateStats(
+    val subscribers: Int,
+    val offered: Long,
+    val delivered: Long,
+    val coalesced: Long,
+    val dropped: Long,
+    val failed: Long,
+    val pending: Int,
+) {
+    operator fun plus(other: ResourceUpdateStats) =
+        ResourceUpdateStats(
+            subscribers = subscribers + other.subscribers,
+            offered = offered + other.offered,
+            delivered = delivered + other.delivered,
+            coalesced = coalesced + other.coalesced,
+            dropped = dropped + other.dropped,
+            failed = failed + other.failed,
+            pending = pending + other.pending,
+        )
+
+    companion object {
+        val EMPTY = ResourceUpdateStats(0, 0, 0, 0, 0, 0, 0)
+    }
+}
+
+/**
+ * Per-subscriber update pipeline that conflates resource change notifications by URI.
+ *
+ * Each URI has at most one pending notification: the first change opens a coalescing window and
+ * every change to the same URI until it closes folds into the one notification sent at the end.
+ * A change arriving while that notification is being delivered queues exactly one more, so the
+ * subscriber always hears about the latest state. Changes to different URIs never merge.
+ *
+ * [offer] never suspends or blocks the producer (file observers, pollers). When [maxPendingUris]
+ * distinct URIs are already waiting the change is dropped and counted instead. A slow [deliver]
+ * only delays its own subscriber.
+ */
+class ResourceUpdateCoalescer(
+    private val scope: CoroutineScope,
+    private val defaultWindowMs: Long = DEFAULT_WINDOW_MS,
+    private val maxPendingUris: Int = DEFAULT_MAX_PENDING_URIS,
+    private val deliver: suspend (uri: String) -> Unit,
+) {
+
+    companion object {
+        private const val TAG = "ResourceUpdateCoalescer"
+        const val DEFAULT_WINDOW_MS = 500L
+        const val DEFAULT_MAX_PENDING_URIS = 1024
+    }
+
+    private class Pending {
+        var delivering = false
+        var again = false
+    }
+
+    private val lock = Any()
+    private val pending = HashMap<String, Pending>()
+    private val windowsByPrefix = LinkedHashMap<String, Long>()
+
+    private val offered = AtomicLong()
+    private val delivered = AtomicLong()
+    private val coalesced = AtomicLong()
+    private val dropped = AtomicLong()
+    private val failed = AtomicLong()
+
+    /** Use [windowMs] for URIs starting with [uriPrefix]; the longest matching prefix wins */
+    fun setWindow(uriPrefix: String, windowMs: Long) {
+        require(windowMs >= 0) { "windowMs must not be negative" }
+        synchronized(lock) { windowsByPrefix[uriPrefix] = windowMs }
+    }
+
+    /** Record a change to [uri]. Returns false if it was dropped because too much is pending. */
+    fun offer(uri: String): Boolean {
+        offered.incrementAndGet()
+        val entry = Pending()
+        synchronized(lock) {
+            val existing = pending[uri]
+            when {
+                existing == null -> {
+                    if (pending.size >= maxPendingUris) {
+                        dropped.incrementAndGet()
+                        Log.w(TAG, "Dropped update for $uri, $maxPendingUris URIs pending")
+                        return false
+                    }
+                    pending[uri] = entry
+                }
+                // Already being sent, so the client may read stale content: send one more after
+                existing.delivering && !existing.again -> {
+                    existing.again = true
+                    return true
+                }
+                else -> {
+                    coalesced.incrementAndGet()
+                    return true
+                }
+            }
+        }
+        scope.launch { flush(uri, entry) }
+        return true
+    }
+
+    /** Forget every pending notification */
+    fun clear() {
+        synchronized(lock) { pending.clear() }
+    }
+
+    fun stats(): ResourceUpdateStats =
+        ResourceUpdateStats(
+            subscribers = 1,
+            offered = offered.get(),
+            delivered = delivered.get(),
+            coalesced = coalesced.get(),
+            dropped = dropped.get(),
+            failed = failed.get(),
+            pending = synchronized(lock) { pending.size },
+        )
+
+    private suspend fun flush(uri: String, entry: Pending) {
+        try {
+            do {
+                delay(windowFor(uri))
+                synchronized(lock) {
+                    // Cleared while waiting; a later offer has its own flush
+                    if (pending[uri] !== entry) return
+                    entry.delivering = true
+                    entry.again = false
+                }
+                try {
+                    deliver(uri)
+                    delivered.incrementAndGet()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    failed.incrementAndGet()
+                    Log.w(TAG, "Failed to deliver update for $uri", e)
+                }
+                val sendAgain =
+                    synchronized(lock) {
+                        entry.delivering = false
+                        entry.again && pending[uri] === entry
+                    }
+            } while (sendAgain)
+        } finally {
+            synchronized(lock) { if (pending[uri] === entry) pending.remove(uri) }
+        }
+    }
+
+    private fun windowFor(uri: String): Long =
+        synchronized(lock) {
+            windowsByPrefix.entries
+                .filter { uri.startsWith(it.key) }
+                .maxByOrNull { it.key.length }
+                ?.value ?: defaultWindowMs
+        }
+}
@@ -1,11 +1,14 @@
 package dev.jasonpearson.androidmcpsdk.core.features.resources
 
 import android.content.Context
+import android.content.SharedPreferences
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
 import io.modelcontextprotocol.kotlin.sdk.Resource
 import java.io.File
-import kotlinx.coroutines.Dispatchers
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
@@ -15,10 +18,82 @@ class SharedPreferencesResourceProvider(private val context: Context) {
 
     companion object {
         private const val TAG = "SharedPreferencesResourceProvider"
+        private const val DEFAULT_PREFERENCES_NAME = "default_prefs"
     }
 
-    /** Create built-in SharedPreferences resources */
+    /** Counts writes to one preferences file; holds the listener, which prefs keep only weakly */
+    private class ChangeCounter {
+        val count = AtomicLong()
+        val listener =
+            SharedPreferences.OnSharedPreferenceChangeListener { _, _ -> count.incrementAndGet() }
+    }
+
+    private val changeCounters = ConcurrentHashMap<String, ChangeCounter>()
+
+    private val sharedPrefsDir: File
+        get() = File(context.applicationInfo.dataDir, "shared_prefs")
+
+    /**
+     * Changes whenever a preferences file is created, deleted or rewritten, so the resource list
+     * built by [createSharedPreferencesResources] is rebuilt. One stat, no directory listing.
+     */
+    fun catalogVersion(): Long = sharedPrefsDir.lastModified()
+
+    /**
+     * A version string for [uri] that changes whenever its content would, computed without reading
+     * it. Each file contributes its change counter plus its mtime and length, since not every
+     * write reaches listeners (`Editor.clear()` doesn't before API 30); "all" also covers the file
+     * list.
+     */
+    fun contentVersion(uri: String): String =
+        when {
+            uri == "android://preferences/default" -> fileVersion(DEFAULT_PREFERENCES_NAME)
+            uri == "android://preferences/all" -> {
+                val files = preferenceFileNames().joinToString(",") { fileVersion(it) }
+                "${catalogVersion()}:${files.hashCode()}"
+            }
+            else -> fileVersion(uri.substringAfterLast("/"))
+        }
+
+    private fun fileVersion(name: String): String {
+        val file = File(sharedPrefsDir, "$name.xml")
+        // Only files that exist get a listener, so unknown names don't pin preferences instances
+        if (!file.exists()) return "absent"
+        return "${changeCount(name)}:${file.lastModified()}:${file.length()}"
+    }
+
+    private fun preferenceFileNames(): List<String> =
+        sharedPrefsDir
+            .list { _, name -> name.endsWith(".xml") }
+            .orEmpty()
+            .map { it.removeSuffix(".xml") }
+            .sorted()
+
+    private fun changeCount(fileName: String): Long =
+        changeCounters
+            .computeIfAbsent(fileName) { name ->
+                ChangeCounter().also {
+                    context
+                        .getSharedPreferences(name, Context.MODE_PRIVATE)
+                        .registerOnSharedPreferenceChangeListener(it.listener)
+                }
+            }
+            .count
+            .get()
+
+    /** Create built-in SharedPreferences resources, plus one for each preferences file on disk */
     fun createSharedPreferencesResources(): List<Resource> {
+        val files =
+            preferenceFileNames()
+                .filter { it != DEFAULT_PREFERENCES_NAME && it != "default" && it != "all" }
+                .map { name ->
+                    Resource(
+                        uri = "android://preferences/$name",
+                        name = "SharedPreferences: $name",
+                        description = "Contents of the $name SharedPreferences file",
+                        mimeType = "application/json",
+                    )
+                }
         return listOf(
             Resource(
                 uri = "android://preferences/default",
@@ -32,12 +107,12 @@ class SharedPreferencesResourceProvider(private val context: Context) {
                 description = "List of all SharedPreferences files in the application",
                 mimeType = "application/json",
             ),
-        )
+        ) + files
     }
 
     /** Read SharedPreferences resource content */
     suspend fun readSharedPreferencesResource(uri: String): AndroidResourceContent =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             return@withContext when {
                 uri == "android://preferences/default" -> readDefaultPreferences()
                 uri == "android://preferences/all" -> readAllPreferencesFiles()
@@ -48,9 +123,10 @@ class SharedPreferencesResourceProvider(private val context: Context) {
         }
 
     private suspend fun readDefaultPreferences(): AndroidResourceContent =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
-                val prefs = context.getSharedPreferences("default_prefs", Context.MODE_PRIVATE)
+                val prefs =
+                    context.getSharedPreferences(DEFAULT_PREFERENCES_NAME, Context.MODE_PRIVATE)
                 val prefsMap = prefs.all
 
                 val content = buildString {
@@ -92,7 +168,7 @@ class SharedPreferencesResourceProvider(private val context: Context) {
         }
 
     private suspend fun readAllPreferencesFiles(): AndroidResourceContent =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val prefsFiles = mutableListOf<Map<String, Any>>()
 
@@ -142,7 +218,7 @@ class SharedPreferencesResourceProvider(private val context: Context) {
         }
 
     private suspend fun readSpecificPreferencesFile(uri: String): AndroidResourceContent =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 // Extract file name from URI: android://preferences/filename
                 val fileName = uri.substringAfterLast("/")
@@ -5,6 +5,11 @@ import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.TextContent
 import io.modelcontextprotocol.kotlin.sdk.Tool
 import java.util.concurrent.ConcurrentHashMap
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.serialization.json.JsonObject
 
 /**
  * Default implementation of ToolRegistry that manages tool registration and delegation to tool
@@ -16,13 +21,32 @@ class DefaultToolRegistry : ToolRegistry {
         private const val TAG = "DefaultToolRegistry"
     }
 
+    /**
+     * Typed tools take the SDK's [JsonObject] as is; raw tools take the arguments as a Map. A
+     * [JsonObject] is itself a Map, so either kind can be called with SDK arguments without
+     * conversion.
+     */
+    private sealed interface ToolHandler {
+        class MapHandler(val handler: suspend (Map<String, Any>) -> CallToolResult) : ToolHandler
+
+        class JsonHandler(val handler: suspend (JsonObject) -> CallToolResult) : ToolHandler
+    }
+
     // Storage for tools and their handlers
-    private val tools =
-        ConcurrentHashMap<String, Pair<Tool, suspend (Map<String, Any>) -> CallToolResult>>()
+    private val tools = ConcurrentHashMap<String, Pair<Tool, ToolHandler>>()
 
     // Track contributors for debugging
     private val contributors = mutableSetOf<String>()
 
+    /** Latency, error and payload metrics for every call routed through this registry */
+    val metrics = ToolMetricsRegistry()
+
+    /** Concurrency limits, priorities and timeouts for calls routed through this registry */
+    val scheduler = ToolScheduler()
+
+    /** Results of tools that opted into caching; hits skip the scheduler entirely */
+    val cache = ToolResultCache()
+
     override fun getAllTools(): List<Tool> {
         return tools.values.map { it.first }
     }
@@ -33,14 +57,26 @@ class DefaultToolRegistry : ToolRegistry {
         val toolHandler = tools[name]?.second
         return if (toolHandler != null) {
             try {
-                toolHandler.invoke(arguments)
+                cache.getOrCompute(name, arguments) {
+                    scheduler.execute(name) {
+                        metrics.record(name, arguments) { toolHandler.invoke(arguments) }
+                    }
+                }
+            } catch (e: TimeoutCancellationException) {
+                // Only the scheduler's deadline; a tool's own timeout lands in the generic catch
+                val timeoutMs = scheduler.policyFor(name).timeoutMs
+                Log.w(TAG, "Tool $name timed out after ${timeoutMs}ms")
+                errorResult("Tool $name timed out after ${timeoutMs}ms")
+            } catch (e: ToolRejectedException) {
+                Log.w(TAG, "Rejected call to tool $name: ${e.message}")
+                errorResult("Tool $name rejected: ${e.message}")
+            } catch (e: CancellationException) {
+                // Rethrow if the caller went away; otherwise the server cancelled the call
+                currentCoroutineContext().ensureActive()
+                errorResult("Tool $name was cancelled: ${e.message}")
             } catch (e: Exception) {
                 Log.e(TAG, "Error calling tool $name", e)
-                CallToolResult(
-                    content =
-                        listOf(TextContent(text = "Error executing tool $name: ${e.message}")),
-                    isError = true,
-                )
+                errorResult("Error executing tool $name: ${e.message}")
             }
         } else {
             CallToolResult(
@@ -50,14 +86,30 @@ class DefaultToolRegistry : ToolRegistry {
         }
     }
 
+    private fun errorResult(message: String) =
+        CallToolResult(content = listOf(TextContent(text = message)), isError = true)
+
     override fun addTool(tool: Tool, handler: suspend (Map<String, Any>) -> CallToolResult) {
-        tools[tool.name] = Pair(tool, handler)
+        tools[tool.name] = Pair(tool, ToolHandler.MapHandler(handler))
+        Log.i(TAG, "Added tool: ${tool.name}")
+    }
+
+    override fun addJsonTool(tool: Tool, handler: suspend (JsonObject) -> CallToolResult) {
+        tools[tool.name] = Pair(tool, ToolHandler.JsonHandler(handler))
         Log.i(TAG, "Added tool: ${tool.name}")
     }
 
+    private suspend fun ToolHandler.invoke(arguments: Map<String, Any>): CallToolResult =
+        when (this) {
+            is ToolHandler.MapHandler -> handler(arguments)
+            is ToolHandler.JsonHandler ->
+                handler(arguments as? JsonObject ?: mapToJsonObject(arguments))
+        }
+
     override fun removeTool(name: String): Boolean {
         val removed = tools.remove(name) != null
         if (removed) {
+            cache.invalidateTool(name)
             Log.i(TAG, "Removed tool: $name")
         }
         return removed
@@ -0,0 +1,284 @@
+package dev.jasonpearson.androidmcpsdk.core.features.tools
+
+import android.os.SystemClock
+import io.modelcontextprotocol.kotlin.sdk.CallToolResult
+import io.modelcontextprotocol.kotlin.sdk.TextContent
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+import kotlin.math.ceil
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.JsonPrimitive
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Each power of two is split into [SUB_BUCKETS] linear buckets, so any recorded value is reported
+ * within 1/[SUB_BUCKETS] of its true value across the whole range. Recording is a couple of shifts
+ * and one atomic increment. Values are in microseconds.
+ */
+class LatencyHistogram {
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 3
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+
+        // Covers up to 2^40us, roughly 12 days, which is more than any tool call should take
+        private const val MAX_EXPONENT = 40
+        private const val BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS
+
+        internal fun bucketIndex(value: Long): Int {
+            if (value < SUB_BUCKETS) return value.coerceAtLeast(0).toInt()
+            val exponent = 63 - value.countLeadingZeroBits()
+            if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1
+            val subBucket = (value ushr (exponent - SUB_BUCKET_BITS)).toInt() and (SUB_BUCKETS - 1)
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket
+        }
+
+        /** Largest value that falls into [index]. */
+        internal fun bucketUpperBound(index: Int): Long {
+            if (index < SUB_BUCKETS) return index.toLong()
+            val exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1
+            val subBucket = (index % SUB_BUCKETS).toLong()
+            val width = 1L shl (exponent - SUB_BUCKET_BITS)
+            return (1L shl exponent) + (subBucket + 1) * width - 1
+        }
+    }
+
+    private val buckets = AtomicLongArray(BUCKET_COUNT)
+    private val count = LongAdder()
+    private val sum = LongAdder()
+    private val max = AtomicLong()
+
+    fun record(valueMicros: Long) {
+        buckets.incrementAndGet(bucketIndex(valueMicros))
+        count.increment()
+        sum.add(valueMicros)
+        var current = max.get()
+        while (valueMicros > current && !max.compareAndSet(current, valueMicros)) {
+            current = max.get()
+        }
+    }
+
+    val totalCount: Long
+        get() = count.sum()
+
+    val maxMicros: Long
+        get() = max.get()
+
+    val meanMicros: Double
+        get() = totalCount.takeIf { it > 0 }?.let { sum.sum().toDouble() / it } ?: 0.0
+
+    /** Value at [percentile] (0-100), rounded up to its bucket bound and capped at the maximum. */
+    fun percentileMicros(percentile: Double): Long {
+        val total = totalCount
+        if (total == 0L) return 0
+        val target = ceil(total * percentile / 100.0).toLong().coerceIn(1, total)
+        var seen = 0L
+        for (index in 0 until BUCKET_COUNT) {
+            seen += buckets.get(index)
+            if (seen >= target) return minOf(bucketUpperBound(index), maxMicros)
+        }
+        return maxMicros
+    }
+}
+
+/** Counters for a single tool. All updates are lock-free. */
+class ToolCallMetrics(val toolName: String) {
+    val latency = LatencyHistogram()
+    val inFlight = AtomicInteger()
+    val calls = LongAdder()
+    val errors = LongAdder()
+    val exceptions = LongAdder()
+    val argumentBytes = LongAdder()
+    val resultBytes = LongAdder()
+    val maxResultBytes = AtomicLong()
+
+    fun snapshot(elapsedMs: Long): ToolMetricsSnapshot {
+        val callCount = calls.sum()
+        return ToolMetricsSnapshot(
+            toolName = toolName,
+            calls = callCount,
+            inFlight = inFlight.get(),
+            errors = errors.sum(),
+            exceptions = exceptions.sum(),
+            errorRate = if (callCount > 0) errors.sum().toDouble() / callCount else 0.0,
+            callsPerMinute = if (elapsedMs > 0) callCount * 60_000.0 / elapsedMs else 0.0,
+            meanMs = latency.meanMicros / 1000.0,
+            p50Ms = latency.percentileMicros(50.0) / 1000.0,
+            p90Ms = latency.percentileMicros(90.0) / 1000.0,
+            p99Ms = latency.percentileMicros(99.0) / 1000.0,
+            maxMs = latency.maxMicros / 1000.0,
+            meanArgumentBytes = if (callCount > 0) argumentBytes.sum() / callCount else 0,
+            meanResultBytes = if (callCount > 0) resultBytes.sum() / callCount else 0,
+            maxResultBytes = maxResultBytes.get(),
+        )
+    }
+}
+
+@Serializable
+data class ToolMetricsSnapshot(
+    val toolName: String,
+    val calls: Long,
+    val inFlight: Int,
+    val errors: Long,
+    val exceptions: Long,
+    val errorRate: Double,
+    val callsPerMinute: Double,
+    val meanMs: Double,
+    val p50Ms: Double,
+    val p90Ms: Double,
+    val p99Ms: Double,
+    val maxMs: Double,
+    val meanArgumentBytes: Long,
+    val meanResultBytes: Long,
+    val maxResultBytes: Long,
+)
+
+data class ToolCallOutcome(val isError: Boolean, val resultSize: Long)
+
+@Serializable
+data class ToolMetricsReport(
+    val windowMs: Long,
+    val tools: List<ToolMetricsSnapshot>,
+    val scheduler: ToolSchedulerStats? = null,
+    val cache: ToolCacheStats? = null,
+)
+
+@Serializable data class ToolMetricsInput(val toolName: String? = null, val reset: Boolean = false)
+
+/**
+ * Collects per-tool call metrics: latency histogram, in-flight count, error counts and payload
+ * sizes. Payload sizes are character counts of the arguments and text content, which is close
+ * enough to bytes to spot oversized results without serializing anything.
+ */
+class ToolMetricsRegistry {
+
+    private val metrics = ConcurrentHashMap<String, ToolCallMetrics>()
+
+    @Volatile private var windowStart = SystemClock.elapsedRealtime()
+
+    /** Run [block] as a call to [toolName] and record how it went. */
+    suspend fun record(
+        toolName: String,
+        arguments: Map<String, Any>,
+        block: suspend () -> CallToolResult,
+    ): CallToolResult =
+        record(toolName, arguments, block) { result ->
+            ToolCallOutcome(isError = result.isError == true, resultSize = resultSize(result))
+        }
+
+    /**
+     * Run [block] as a call to [toolName] for results that aren't a [CallToolResult]. [outcome]
+     * reports whether the result is an error and how large it is.
+     */
+    suspend fun <T> record(
+        toolName: String,
+        arguments: Map<String, Any>,
+        block: suspend () -> T,
+        outcome: (T) -> ToolCallOutcome,
+    ): T {
+        val toolMetrics = metrics.getOrPut(toolName) { ToolCallMetrics(toolName) }
+        toolMetrics.inFlight.incrementAndGet()
+        val start = System.nanoTime()
+        try {
+            val result = block()
+            val (isError, size) = outcome(result)
+            if (isError) toolMetrics.errors.increment()
+            toolMetrics.resultBytes.add(size)
+            toolMetrics.maxResultBytes.accumulateAndGet(size) { a, b -> maxOf(a, b) }
+            return result
+        } catch (e: Throwable) {
+            toolMetrics.errors.increment()
+            toolMetrics.exceptions.increment()
+            throw e
+        } finally {
+            toolMetrics.latency.record((System.nanoTime() - start) / 1000)
+            toolMetrics.calls.increment()
+            toolMetrics.argumentBytes.add(payloadSize(arguments))
+            toolMetrics.inFlight.decrementAndGet()
+        }
+    }
+
+    /** Snapshot of every tool seen since the last [reset], slowest p99 first. */
+    fun report(toolName: String? = null): ToolMetricsReport {
+        val elapsedMs = SystemClock.elapsedRealtime() - windowStart
+        val tools =
+            metrics.values
+                .filter { toolName == null || it.toolName == toolName }
+                .map { it.snapshot(elapsedMs) }
+                .sortedByDescending { it.p99Ms }
+        return ToolMetricsReport(windowMs = elapsedMs, tools = tools)
+    }
+
+    /** Clear all counters and start a new throughput window. */
+    fun reset() {
+        metrics.clear()
+        windowStart = SystemClock.elapsedRealtime()
+    }
+
+    fun formatReport(report: ToolMetricsReport): String = buildString {
+        appendLine("Tool Metrics (window: ${report.windowMs / 1000}s):")
+        report.scheduler?.let { scheduler ->
+            appendLine(
+                "- Scheduler: ${scheduler.runningCalls}/${scheduler.maxConcurrentCalls} running, " +
+                    "queued ${scheduler.queuedByPriority}"
+            )
+            appendLine(
+                "- Queue wait ms: p50 %.2f, p99 %.2f, max %.2f"
+                    .format(scheduler.waitP50Ms, scheduler.waitP99Ms, scheduler.waitMaxMs)
+            )
+            appendLine(
+                "- Timed out: ${scheduler.timedOutCalls}, " +
+                    "cancelled: ${scheduler.cancelledCalls}, rejected: ${scheduler.rejectedCalls}"
+            )
+        }
+        report.cache?.let { cache ->
+            appendLine(
+                "- Result cache: ${cache.entries} entries, ${cache.hits} hits, " +
+                    "${cache.misses} misses (%.1f%% hit rate), ${cache.coalesced} coalesced"
+                        .format(cache.hitRate * 100)
+            )
+        }
+        if (report.tools.isEmpty()) {
+            appendLine("No tool calls recorded")
+            return@buildString
+        }
+        report.tools.forEach { tool ->
+            appendLine()
+            appendLine("${tool.toolName}:")
+            appendLine(
+                "- Calls: ${tool.calls} (%.1f/min), in flight: ${tool.inFlight}"
+                    .format(tool.callsPerMinute)
+            )
+            appendLine(
+                "- Errors: ${tool.errors} (%.1f%%), exceptions: ${tool.exceptions}"
+                    .format(tool.errorRate * 100)
+            )
+            appendLine(
+                "- Latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f"
+                    .format(tool.meanMs, tool.p50Ms, tool.p90Ms, tool.p99Ms, tool.maxMs)
+            )
+            appendLine(
+                "- Payload: args ~${tool.meanArgumentBytes}B, " +
+                    "result ~${tool.meanResultBytes}B (max ${tool.maxResultBytes}B)"
+            )
+        }
+    }
+
+    private fun resultSize(result: CallToolResult): Long =
+        result.content.sumOf { content -> ((content as? TextContent)?.text?.length ?: 0).toLong() }
+
+    private fun payloadSize(value: Any?): Long =
+        when (value) {
+            null -> 4
+            is String -> value.length.toLong() + 2
+            is JsonPrimitive -> value.content.length.toLong() + if (value.isString) 2 else 0
+            is Map<*, *> ->
+                value.entries.sumOf { (key, item) -> key.toString().length + 4 + payloadSize(item) }
+            is Collection<*> -> value.sumOf { payloadSize(it) + 1 }
+            else -> value.toString().length.toLong()
+        }
+}
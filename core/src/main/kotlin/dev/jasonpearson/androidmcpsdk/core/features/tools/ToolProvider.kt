@@ -2,8 +2,11 @@ package dev.jasonpearson.androidmcpsdk.core.features.tools
 
 import android.content.Context
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.features.CatalogPage
+import dev.jasonpearson.androidmcpsdk.core.features.PagedCatalog
 import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.Tool
+import java.util.concurrent.CopyOnWriteArrayList
 import kotlinx.serialization.descriptors.PrimitiveKind
 import kotlinx.serialization.descriptors.SerialDescriptor
 import kotlinx.serialization.descriptors.SerialKind
@@ -16,6 +19,7 @@ import kotlinx.serialization.json.JsonObject
 import kotlinx.serialization.json.JsonPrimitive
 import kotlinx.serialization.json.buildJsonObject
 import kotlinx.serialization.json.decodeFromJsonElement
+import kotlinx.serialization.json.encodeToJsonElement
 import kotlinx.serialization.json.jsonObject
 import kotlinx.serialization.serializer
 
@@ -33,6 +37,12 @@ interface McpToolProvider {
     /** Remove a custom tool */
     fun removeTool(name: String): Boolean
 
+    /** Set the priority, concurrency limit and timeout used when calling tool [name] */
+    fun setExecutionPolicy(name: String, policy: ToolExecutionPolicy)
+
+    /** Cache results of tool [name], or declare which cached results it makes stale */
+    fun setCachePolicy(name: String, policy: ToolCachePolicy)
+
     // Utility functions for serialization
     fun convertMapToJsonElement(map: Map<*, *>): JsonElement
 }
@@ -72,15 +82,37 @@ inline fun <reified T> McpToolProvider.addTool(
 
 // Utility extensions for serialization
 inline fun <reified T> McpToolProvider.toJsonObject(value: T): JsonObject {
-    val jsonString = Json.encodeToString(value)
-    return Json.parseToJsonElement(jsonString).jsonObject
+    return Json.encodeToJsonElement(value).jsonObject
 }
 
 inline fun <reified T> McpToolProvider.toDataClass(map: Map<String, Any>): T {
-    val jsonElement = convertMapToJsonElement(map)
+    val jsonElement = map as? JsonObject ?: convertMapToJsonElement(map)
     return Json.decodeFromJsonElement(jsonElement)
 }
 
+/**
+ * Convert tool arguments to a [JsonObject]. Values that already are [JsonElement]s, as the SDK
+ * delivers them, are kept as they are instead of being stringified.
+ */
+internal fun mapToJsonObject(map: Map<*, *>): JsonObject {
+    if (map is JsonObject) return map
+    return buildJsonObject {
+        map.forEach { (key, value) -> put(key.toString(), toJsonElement(value)) }
+    }
+}
+
+private fun toJsonElement(value: Any?): JsonElement =
+    when (value) {
+        is JsonElement -> value
+        is Map<*, *> -> mapToJsonObject(value)
+        is List<*> -> JsonArray(value.map(::toJsonElement))
+        is String -> JsonPrimitive(value)
+        is Number -> JsonPrimitive(value)
+        is Boolean -> JsonPrimitive(value)
+        null -> JsonNull
+        else -> JsonPrimitive(value.toString())
+    }
+
 /**
  * Main tool provider for the MCP server that manages tool registration and provides type-safe tool
  * creation utilities.
@@ -122,38 +154,16 @@ class ToolProvider(private val context: Context) : McpToolProvider {
 
     private val registry = DefaultToolRegistry()
 
-    // Helper function to convert Map to JsonElement recursively
-    override fun convertMapToJsonElement(map: Map<*, *>): JsonElement {
-        return buildJsonObject {
-            map.forEach { (key, value) ->
-                when (value) {
-                    is Map<*, *> -> put(key.toString(), convertMapToJsonElement(value))
-                    is List<*> ->
-                        put(
-                            key.toString(),
-                            JsonArray(
-                                value.map { item ->
-                                    when (item) {
-                                        is Map<*, *> -> convertMapToJsonElement(item)
-                                        is String -> JsonPrimitive(item)
-                                        is Number -> JsonPrimitive(item)
-                                        is Boolean -> JsonPrimitive(item)
-                                        null -> JsonNull
-                                        else -> JsonPrimitive(item.toString())
-                                    }
-                                }
-                            ),
-                        )
+    // Sorted by name so cursors stay meaningful; rebuilt only when a tool is added or removed
+    private val toolCatalog = PagedCatalog { registry.getAllTools().sortedBy { it.name } }
 
-                    is String -> put(key.toString(), JsonPrimitive(value))
-                    is Number -> put(key.toString(), JsonPrimitive(value))
-                    is Boolean -> put(key.toString(), JsonPrimitive(value))
-                    null -> put(key.toString(), JsonNull)
-                    else -> put(key.toString(), JsonPrimitive(value.toString()))
-                }
-            }
-        }
-    }
+    // Listeners mirroring registration changes into a running server
+    private val registrationListeners = CopyOnWriteArrayList<ToolRegistrationListener>()
+
+    private val contributors = CopyOnWriteArrayList<ToolContributor>()
+
+    // Helper function to convert Map to JsonElement recursively
+    override fun convertMapToJsonElement(map: Map<*, *>): JsonElement = mapToJsonObject(map)
 
     /**
      * Recursively flatten a JsonObject to extract all field paths using dot notation.
@@ -312,8 +322,33 @@ class ToolProvider(private val context: Context) : McpToolProvider {
         return fieldPaths
     }
 
+    /** Per-tool call metrics collected by the registry */
+    val metrics: ToolMetricsRegistry
+        get() = registry.metrics
+
+    /** Scheduler that bounds concurrent tool calls */
+    val scheduler: ToolScheduler
+        get() = registry.scheduler
+
+    override fun setExecutionPolicy(name: String, policy: ToolExecutionPolicy) {
+        registry.scheduler.setPolicy(name, policy)
+        Log.i(TAG, "Execution policy for $name: $policy")
+    }
+
+    /** Cache of results for tools with a [ToolCachePolicy] */
+    val cache: ToolResultCache
+        get() = registry.cache
+
+    override fun setCachePolicy(name: String, policy: ToolCachePolicy) {
+        registry.cache.setPolicy(name, policy)
+        Log.i(TAG, "Cache policy for $name: $policy")
+    }
+
     /** Get all available tools including built-in and custom tools */
-    fun getAllTools(): List<Tool> = registry.getAllTools()
+    fun getAllTools(): List<Tool> = toolCatalog.items()
+
+    /** Get one page of tools for a paginated tools/list request */
+    fun listTools(cursor: String?): CatalogPage<Tool> = toolCatalog.page(cursor)
 
     /** Call a specific tool by name with the provided arguments */
     internal suspend fun callTool(name: String, arguments: Map<String, Any>): CallToolResult {
@@ -323,7 +358,41 @@ class ToolProvider(private val context: Context) : McpToolProvider {
     /** Internal method to add a tool with its handler (used by type-safe methods) */
     public fun addToolInternal(tool: Tool, handler: suspend (Map<String, Any>) -> CallToolResult) {
         registry.addTool(tool, handler)
+        toolCatalog.invalidate()
         Log.i(TAG, "Added custom tool: ${tool.name}")
+        registrationListeners.forEach { it.onToolAdded(tool) }
+    }
+
+    /**
+     * Add a tool whose handler receives the SDK's JSON arguments directly (used by type-safe
+     * methods, which decode them without converting to a Map first)
+     */
+    public fun addJsonToolInternal(tool: Tool, handler: suspend (JsonObject) -> CallToolResult) {
+        registry.addJsonTool(tool, handler)
+        toolCatalog.invalidate()
+        Log.i(TAG, "Added custom tool: ${tool.name}")
+        registrationListeners.forEach { it.onToolAdded(tool) }
+    }
+
+    /** Add a listener that is notified whenever a tool is added or removed */
+    fun addRegistrationListener(listener: ToolRegistrationListener) {
+        registrationListeners.addIfAbsent(listener)
+    }
+
+    /** Remove a previously added registration listener */
+    fun removeRegistrationListener(listener: ToolRegistrationListener) {
+        registrationListeners.remove(listener)
+    }
+
+    /** Tell every registered contributor that the server has stopped */
+    fun notifyServerStopped() {
+        contributors.forEach { contributor ->
+            try {
+                contributor.onServerStopped()
+            } catch (e: Exception) {
+                Log.w(TAG, "Contributor ${contributor.getProviderName()} failed to stop", e)
+            }
+        }
     }
 
     /** Register a tool contributor with this provider */
@@ -336,6 +405,7 @@ class ToolProvider(private val context: Context) : McpToolProvider {
 
         // Track the contributor in the registry
         registry.registerContributor(contributor)
+        contributors.addIfAbsent(contributor)
 
         Log.i(
             TAG,
@@ -484,10 +554,10 @@ class ToolProvider(private val context: Context) : McpToolProvider {
 
         val tool = Tool(name = name, description = description, inputSchema = inputSchema)
 
-        // Wrapper handler that converts Map to typed input
-        val typedHandler: suspend (Map<String, Any>) -> CallToolResult = { arguments ->
+        // Decode the JSON arguments straight into the input type with the serializer resolved above
+        val typedHandler: suspend (JsonObject) -> CallToolResult = { arguments ->
             try {
-                val typedInput = toDataClass<T>(arguments)
+                val typedInput = Json.decodeFromJsonElement(serializer, arguments)
                 handler(typedInput)
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to parse tool arguments for $name", e)
@@ -503,9 +573,16 @@ class ToolProvider(private val context: Context) : McpToolProvider {
             }
         }
 
-        addToolInternal(tool, typedHandler)
+        addJsonToolInternal(tool, typedHandler)
     }
 
     /** Remove a custom tool */
-    override fun removeTool(name: String): Boolean = registry.removeTool(name)
+    override fun removeTool(name: String): Boolean {
+        val removed = registry.removeTool(name)
+        if (removed) {
+            toolCatalog.invalidate()
+            registrationListeners.forEach { it.onToolRemoved(name) }
+        }
+        return removed
+    }
 }
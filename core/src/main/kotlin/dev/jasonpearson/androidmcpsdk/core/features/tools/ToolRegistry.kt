@@ -2,6 +2,7 @@ package dev.jasonpearson.androidmcpsdk.core.features.tools
 
 import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.Tool
+import kotlinx.serialization.json.JsonObject
 
 /**
  * Registry for MCP tools that can be implemented by different modules.
@@ -19,6 +20,9 @@ internal interface ToolRegistry {
     /** Add a tool with its handler */
     fun addTool(tool: Tool, handler: suspend (Map<String, Any>) -> CallToolResult)
 
+    /** Add a tool whose handler decodes the SDK's JSON arguments directly */
+    fun addJsonTool(tool: Tool, handler: suspend (JsonObject) -> CallToolResult)
+
     /** Remove a tool by name */
     fun removeTool(name: String): Boolean
 
@@ -39,4 +43,22 @@ interface ToolContributor {
 
     /** Get the name of this tool provider */
     fun getProviderName(): String
+
+    /**
+     * Release what the contributed tools hold open, such as database connections, once the server
+     * stops. The tools stay registered and must reopen anything they need on their next call.
+     */
+    fun onServerStopped() {}
+}
+
+/**
+ * Observes tool registration changes on a [ToolProvider]. Used to mirror tools that are added or
+ * removed after startup into an already running MCP server.
+ */
+interface ToolRegistrationListener {
+    /** Called after a tool has been added or replaced */
+    fun onToolAdded(tool: Tool)
+
+    /** Called after a tool has been removed */
+    fun onToolRemoved(name: String)
 }
@@ -0,0 +1,274 @@
+package dev.jasonpearson.androidmcpsdk.core.features.tools
+
+import android.os.SystemClock
+import io.modelcontextprotocol.kotlin.sdk.CallToolResult
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.JsonNull
+import kotlinx.serialization.json.JsonPrimitive
+
+/**
+ * Caching behaviour of a tool. Tools without a policy, or with a [ttlMs] of zero, always run.
+ *
+ * Cached results can be tagged with [invalidationKeys]; a tool that changes state lists the same
+ * keys in [invalidates] so its successful calls drop the results it made stale.
+ */
+data class ToolCachePolicy(
+    val ttlMs: Long = 0,
+    val invalidationKeys: Set<String> = emptySet(),
+    val invalidates: Set<String> = emptySet(),
+)
+
+@Serializable
+data class ToolCacheToolStats(
+    val toolName: String,
+    val hits: Long,
+    val misses: Long,
+    val coalesced: Long,
+)
+
+@Serializable
+data class ToolCacheStats(
+    val entries: Int,
+    val hits: Long,
+    val misses: Long,
+    val coalesced: Long,
+    val invalidations: Long,
+    val hitRate: Double,
+    val tools: List<ToolCacheToolStats>,
+)
+
+/**
+ * Opt-in cache of tool results keyed on the tool name and its canonicalized arguments.
+ *
+ * Only successful results are cached. Identical calls that arrive while one is already running
+ * wait for that call instead of running again (single-flight), whether or not the result ends up
+ * cached. If the call they wait on is cancelled because its own caller went away, the waiters
+ * don't inherit that: the next one runs the tool itself and the rest wait on it. A result whose
+ * tool or invalidation keys were invalidated while it was being computed is returned but not
+ * cached.
+ */
+class ToolResultCache(
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+) {
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 256
+        private const val TOOL_GENERATION_PREFIX = "tool:"
+    }
+
+    private class Entry(
+        val toolName: String,
+        val result: CallToolResult,
+        val expiresAt: Long,
+        val invalidationKeys: Set<String>,
+    )
+
+    private class Counters {
+        val hits = LongAdder()
+        val misses = LongAdder()
+        val coalesced = LongAdder()
+    }
+
+    private val policies = ConcurrentHashMap<String, ToolCachePolicy>()
+    private val entries = ConcurrentHashMap<String, Entry>()
+    private val inFlight = ConcurrentHashMap<String, CompletableDeferred<CallToolResult>>()
+    private val counters = ConcurrentHashMap<String, Counters>()
+    private val invalidations = LongAdder()
+    /** Bumped by each invalidation of an invalidation key or, prefixed, of a tool name */
+    private val generations = ConcurrentHashMap<String, Long>()
+
+    fun setPolicy(toolName: String, policy: ToolCachePolicy) {
+        policies[toolName] = policy
+        invalidateTool(toolName)
+    }
+
+    /** Return a fresh cached result for this call, or run [compute] once for all identical calls */
+    suspend fun getOrCompute(
+        toolName: String,
+        arguments: Map<String, Any>,
+        compute: suspend () -> CallToolResult,
+    ): CallToolResult {
+        val policy = policies[toolName] ?: return compute()
+        if (policy.ttlMs <= 0) return compute().also { invalidateAfter(policy, it) }
+
+        val toolCounters = counters.getOrPut(toolName) { Counters() }
+        val key = cacheKey(toolName, arguments)
+        entries[key]?.let { entry ->
+            if (entry.expiresAt > clock()) {
+                toolCounters.hits.increment()
+                return entry.result
+            }
+            entries.remove(key, entry)
+        }
+
+        while (true) {
+            val call = CompletableDeferred<CallToolResult>()
+            val running = inFlight.putIfAbsent(key, call)
+            if (running == null) return computeShared(key, call, toolName, policy, compute)
+
+            toolCounters.coalesced.increment()
+            try {
+                return running.await()
+            } catch (e: TimeoutCancellationException) {
+                throw e
+            } catch (e: CancellationException) {
+                // Only the call we joined was cancelled, not ours: run it again, or join whichever
+                // identical call took its place
+                currentCoroutineContext().ensureActive()
+            }
+        }
+    }
+
+    private suspend fun computeShared(
+        key: String,
+        call: CompletableDeferred<CallToolResult>,
+        toolName: String,
+        policy: ToolCachePolicy,
+        compute: suspend () -> CallToolResult,
+    ): CallToolResult {
+        counters.getOrPut(toolName) { Counters() }.misses.increment()
+        val generation = generationOf(toolName, policy)
+        val result =
+            try {
+                compute()
+            } catch (e: Throwable) {
+                // Unregister before waking the waiters so a retry can't find this call again
+                inFlight.remove(key, call)
+                call.completeExceptionally(e)
+                throw e
+            }
+        if (result.isError != true) {
+            val entry = Entry(toolName, result, clock() + policy.ttlMs, policy.invalidationKeys)
+            put(key, entry)
+            // Invalidations bump before they remove, so one we miss here removes the entry itself
+            if (generationOf(toolName, policy) != generation) entries.remove(key, entry)
+        }
+        invalidateAfter(policy, result)
+        inFlight.remove(key, call)
+        call.complete(result)
+        return result
+    }
+
+    /** Drop every cached result tagged with [invalidationKey] */
+    fun invalidate(invalidationKey: String) {
+        generations.merge(invalidationKey, 1L, Long::plus)
+        removeIf { invalidationKey in it.invalidationKeys }
+    }
+
+    /** Drop every cached result of [toolName] */
+    fun invalidateTool(toolName: String) {
+        generations.merge(TOOL_GENERATION_PREFIX + toolName, 1L, Long::plus)
+        removeIf { it.toolName == toolName }
+    }
+
+    fun clear() {
+        entries.clear()
+        counters.clear()
+    }
+
+    fun stats(): ToolCacheStats {
+        val tools =
+            counters.entries
+                .map { (name, c) ->
+                    ToolCacheToolStats(name, c.hits.sum(), c.misses.sum(), c.coalesced.sum())
+                }
+                .sortedBy { it.toolName }
+        val hits = tools.sumOf { it.hits }
+        val misses = tools.sumOf { it.misses }
+        return ToolCacheStats(
+            entries = entries.size,
+            hits = hits,
+            misses = misses,
+            coalesced = tools.sumOf { it.coalesced },
+            invalidations = invalidations.sum(),
+            hitRate = if (hits + misses > 0) hits.toDouble() / (hits + misses) else 0.0,
+            tools = tools,
+        )
+    }
+
+    // Generations only grow, so the sum changes whenever any of them does
+    private fun generationOf(toolName: String, policy: ToolCachePolicy): Long =
+        (generations[TOOL_GENERATION_PREFIX + toolName] ?: 0L) +
+            policy.invalidationKeys.sumOf { generations[it] ?: 0L }
+
+    private fun invalidateAfter(policy: ToolCachePolicy, result: CallToolResult) {
+        if (result.isError != true) policy.invalidates.forEach { invalidate(it) }
+    }
+
+    private fun put(key: String, entry: Entry) {
+        entries[key] = entry
+        if (entries.size <= maxEntries) return
+        val now = clock()
+        entries.entries.removeIf { it.value.expiresAt <= now }
+        // Still full of live entries: drop the ones closest to expiring
+        while (entries.size > maxEntries) {
+            val oldest = entries.entries.minByOrNull { it.value.expiresAt } ?: break
+            entries.remove(oldest.key, oldest.value)
+        }
+    }
+
+    private inline fun removeIf(predicate: (Entry) -> Boolean) {
+        val iterator = entries.values.iterator()
+        while (iterator.hasNext()) {
+            if (predicate(iterator.next())) {
+                iterator.remove()
+                invalidations.increment()
+            }
+        }
+    }
+
+    /** Same key for the same arguments regardless of key order or Map vs JSON representation */
+    internal fun cacheKey(toolName: String, arguments: Map<String, Any>): String = buildString {
+        append(toolName)
+        append(':')
+        appendCanonical(arguments)
+    }
+
+    private fun StringBuilder.appendCanonical(value: Any?) {
+        when (value) {
+            null,
+            JsonNull -> append("null")
+            is JsonPrimitive ->
+                if (value.isString) appendQuoted(value.content) else append(value.content)
+            is String -> appendQuoted(value)
+            is Map<*, *> -> {
+                append('{')
+                value.entries
+                    .sortedBy { it.key.toString() }
+                    .forEachIndexed { index, (key, item) ->
+                        if (index > 0) append(',')
+                        appendQuoted(key.toString())
+                        append(':')
+                        appendCanonical(item)
+                    }
+                append('}')
+            }
+            is Iterable<*> -> appendList(value)
+            is Array<*> -> appendList(value.asIterable())
+            else -> append(value.toString())
+        }
+    }
+
+    private fun StringBuilder.appendList(values: Iterable<*>) {
+        append('[')
+        values.forEachIndexed { index, item ->
+            if (index > 0) append(',')
+            appendCanonical(item)
+        }
+        append(']')
+    }
+
+    private fun StringBuilder.appendQuoted(text: String) {
+        append('"')
+        text.forEach { c -> if (c == '"' || c == '\\') append('\\').append(c) else append(c) }
+        append('"')
+    }
+}
@@ -0,0 +1,275 @@
+package dev.jasonpearson.androidmcpsdk.core.features.tools
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.job
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+import kotlinx.serialization.Serializable
+
+/** Scheduling lane of a tool. Waiting calls in a higher lane always get the next free slot. */
+enum class ToolPriority {
+    /** Cheap lookups an agent is blocked on, such as device info or finding a view */
+    INTERACTIVE,
+    NORMAL,
+    /** Long-running or expensive work such as load tests */
+    BACKGROUND,
+}
+
+/** How the [ToolScheduler] runs a single tool. */
+data class ToolExecutionPolicy(
+    val priority: ToolPriority = ToolPriority.NORMAL,
+    val maxConcurrency: Int = ToolScheduler.DEFAULT_PER_TOOL_CONCURRENCY,
+    /** Covers both the time spent queued and the time spent running */
+    val timeoutMs: Long = ToolScheduler.DEFAULT_TIMEOUT_MS,
+)
+
+/** Thrown when a call can't be queued because too many calls are already waiting. */
+class ToolRejectedException(message: String) : IllegalStateException(message)
+
+/**
+ * Deadline of the tool call running in the current coroutine. Handlers that loop or page through
+ * data can check [remainingMs] and stop early instead of being cancelled mid-way.
+ */
+class ToolDeadline(val toolName: String, private val deadlineNanos: Long) :
+    AbstractCoroutineContextElement(Key) {
+
+    companion object Key : CoroutineContext.Key<ToolDeadline>
+
+    fun remainingMs(): Long = ((deadlineNanos - System.nanoTime()) / 1_000_000).coerceAtLeast(0)
+}
+
+/** Deadline of the tool call running in the current coroutine, if any. */
+suspend fun currentToolDeadline(): ToolDeadline? = currentCoroutineContext()[ToolDeadline]
+
+@Serializable
+data class ToolQueueStats(
+    val toolName: String,
+    val priority: String,
+    val maxConcurrency: Int,
+    val timeoutMs: Long,
+    val queued: Int,
+    val running: Int,
+)
+
+@Serializable
+data class ToolSchedulerStats(
+    val maxConcurrentCalls: Int,
+    val runningCalls: Int,
+    val queuedByPriority: Map<String, Int>,
+    val rejectedCalls: Long,
+    val timedOutCalls: Long,
+    val cancelledCalls: Long,
+    val waitP50Ms: Double,
+    val waitP99Ms: Double,
+    val waitMaxMs: Double,
+    val tools: List<ToolQueueStats>,
+)
+
+/**
+ * Bounds how many tool calls run at once so one slow tool can't stall every other agent.
+ *
+ * A call first waits for a slot of its own tool ([ToolExecutionPolicy.maxConcurrency]) and then
+ * for one of [maxConcurrentCalls] global slots, which are handed out by [ToolPriority]. The
+ * policy's timeout covers the whole call, queueing included, and is visible to the handler as a
+ * [ToolDeadline]. Calls run in the caller's coroutine, so a caller that goes away cancels its call
+ * whether it is queued or running.
+ */
+class ToolScheduler(
+    val maxConcurrentCalls: Int = DEFAULT_GLOBAL_CONCURRENCY,
+    private val maxQueuedCalls: Int = DEFAULT_MAX_QUEUED_CALLS,
+) {
+
+    companion object {
+        const val DEFAULT_GLOBAL_CONCURRENCY = 8
+        const val DEFAULT_PER_TOOL_CONCURRENCY = 2
+        const val DEFAULT_TIMEOUT_MS = 60_000L
+        const val DEFAULT_MAX_QUEUED_CALLS = 64
+    }
+
+    private class ToolState(val policy: ToolExecutionPolicy) {
+        val permits = Semaphore(policy.maxConcurrency.coerceAtLeast(1))
+        val queued = AtomicInteger()
+        val running = AtomicInteger()
+    }
+
+    private val policies = ConcurrentHashMap<String, ToolExecutionPolicy>()
+    private val toolStates = ConcurrentHashMap<String, ToolState>()
+    private val globalPermits = PriorityPermits(maxConcurrentCalls)
+    private val queuedCalls = AtomicInteger()
+    private val runningJobs = ConcurrentHashMap.newKeySet<Job>()
+    private val waitTime = LatencyHistogram()
+    private val rejectedCalls = LongAdder()
+    private val timedOutCalls = LongAdder()
+    private val cancelledCalls = LongAdder()
+
+    /** Set the policy for [toolName]. Calls already queued keep the policy they started with. */
+    fun setPolicy(toolName: String, policy: ToolExecutionPolicy) {
+        policies[toolName] = policy
+        toolStates.remove(toolName)
+    }
+
+    fun policyFor(toolName: String): ToolExecutionPolicy =
+        policies[toolName] ?: ToolExecutionPolicy()
+
+    /**
+     * Run [block] as a call to [toolName] once the tool and a global slot are free.
+     *
+     * @throws ToolRejectedException if too many calls are already queued
+     * @throws TimeoutCancellationException if the call doesn't finish within the policy's timeout.
+     *   A timeout of the tool's own surfaces as an [IllegalStateException] instead.
+     */
+    suspend fun <T> execute(toolName: String, block: suspend () -> T): T {
+        val state = toolStates.getOrPut(toolName) { ToolState(policyFor(toolName)) }
+        val policy = state.policy
+
+        if (queuedCalls.incrementAndGet() > maxQueuedCalls) {
+            queuedCalls.decrementAndGet()
+            rejectedCalls.increment()
+            throw ToolRejectedException(
+                "Too many queued tool calls ($maxQueuedCalls), try again later"
+            )
+        }
+        state.queued.incrementAndGet()
+        val enqueuedAt = System.nanoTime()
+        var dequeued = false
+        fun markDequeued() {
+            if (dequeued) return
+            dequeued = true
+            queuedCalls.decrementAndGet()
+            state.queued.decrementAndGet()
+        }
+
+        try {
+            return withTimeout(policy.timeoutMs) {
+                val deadline = ToolDeadline(toolName, enqueuedAt + policy.timeoutMs * 1_000_000)
+                state.permits.withPermit {
+                    globalPermits.withPermit(policy.priority) {
+                        markDequeued()
+                        waitTime.record((System.nanoTime() - enqueuedAt) / 1000)
+                        val job = coroutineContext.job
+                        runningJobs.add(job)
+                        state.running.incrementAndGet()
+                        try {
+                            withContext(deadline) { block() }
+                        } catch (e: TimeoutCancellationException) {
+                            // Only our timeout cancels this job; otherwise the tool's own fired
+                            if (job.isCancelled) throw e
+                            throw IllegalStateException(e.message, e)
+                        } finally {
+                            state.running.decrementAndGet()
+                            runningJobs.remove(job)
+                        }
+                    }
+                }
+            }
+        } catch (e: TimeoutCancellationException) {
+            timedOutCalls.increment()
+            throw e
+        } catch (e: CancellationException) {
+            cancelledCalls.increment()
+            throw e
+        } finally {
+            markDequeued()
+        }
+    }
+
+    /** Cancel every running call, for example when the server stops. Queued calls stay queued. */
+    fun cancelAll(reason: String) {
+        runningJobs.forEach { it.cancel(CancellationException(reason)) }
+    }
+
+    fun stats(): ToolSchedulerStats =
+        ToolSchedulerStats(
+            maxConcurrentCalls = maxConcurrentCalls,
+            runningCalls = runningJobs.size,
+            queuedByPriority = globalPermits.queuedByPriority(),
+            rejectedCalls = rejectedCalls.sum(),
+            timedOutCalls = timedOutCalls.sum(),
+            cancelledCalls = cancelledCalls.sum(),
+            waitP50Ms = waitTime.percentileMicros(50.0) / 1000.0,
+            waitP99Ms = waitTime.percentileMicros(99.0) / 1000.0,
+            waitMaxMs = waitTime.maxMicros / 1000.0,
+            tools =
+                toolStates.entries
+                    .map { (name, state) ->
+                        ToolQueueStats(
+                            toolName = name,
+                            priority = state.policy.priority.name,
+                            maxConcurrency = state.policy.maxConcurrency,
+                            timeoutMs = state.policy.timeoutMs,
+                            queued = state.queued.get(),
+                            running = state.running.get(),
+                        )
+                    }
+                    .filter { it.queued > 0 || it.running > 0 }
+                    .sortedBy { it.toolName },
+        )
+}
+
+/**
+ * Counting semaphore that hands released permits to the oldest waiter of the highest [ToolPriority]
+ * lane. Waiters are [CompletableDeferred]s so a permit handed to a waiter that was cancelled at the
+ * same moment can be detected and passed on.
+ */
+private class PriorityPermits(private var available: Int) {
+
+    private val lanes = Array(ToolPriority.entries.size) { ArrayDeque<CompletableDeferred<Unit>>() }
+
+    suspend inline fun <T> withPermit(priority: ToolPriority, block: () -> T): T {
+        acquire(priority)
+        try {
+            return block()
+        } finally {
+            release()
+        }
+    }
+
+    suspend fun acquire(priority: ToolPriority) {
+        val waiter: CompletableDeferred<Unit>
+        synchronized(this) {
+            if (available > 0 && lanes.all { it.isEmpty() }) {
+                available--
+                return
+            }
+            waiter = CompletableDeferred()
+            lanes[priority.ordinal].addLast(waiter)
+        }
+
+        try {
+            waiter.await()
+        } catch (e: CancellationException) {
+            synchronized(this) {
+                // Still queued means no permit was handed over; otherwise pass it on
+                if (!lanes[priority.ordinal].remove(waiter)) releaseLocked()
+            }
+            throw e
+        }
+    }
+
+    fun release() {
+        synchronized(this) { releaseLocked() }
+    }
+
+    fun queuedByPriority(): Map<String, Int> =
+        synchronized(this) { ToolPriority.entries.associate { it.name to lanes[it.ordinal].size } }
+
+    private fun releaseLocked() {
+        for (lane in lanes) {
+            val waiter = lane.removeFirstOrNull() ?: continue
+            waiter.complete(Unit)
+            return
+        }
+        available++
+    }
+}
@@ -0,0 +1,59 @@
+package dev.jasonpearson.androidmcpsdk.core
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.withContext
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class McpDispatchersTest {
+
+    @Test
+    fun `io should run work on SDK threads`() = runTest {
+        // Act
+        val threadName = withContext(McpDispatchers.io) { Thread.currentThread().name }
+
+        // Assert
+        assertTrue(threadName, threadName.startsWith("mcp-io-"))
+    }
+
+    @Test
+    fun `shutdown should cancel scope work and leave the scope usable`() = runTest {
+        // Arrange
+        val scope = McpDispatchers.scope("test")
+        val started = CompletableDeferred<Unit>()
+        val job =
+            scope.launch {
+                started.complete(Unit)
+                awaitCancellation()
+            }
+        started.await()
+
+        // Act
+        McpDispatchers.shutdown()
+        job.join()
+        val afterRestart = scope.async { "still running" }.await()
+
+        // Assert
+        assertTrue(job.isCancelled)
+        assertEquals("still running", afterRestart)
+    }
+
+    @Test
+    fun `a cancelled scope should no longer be tracked`() {
+        // Arrange
+        val scope = McpDispatchers.scope("short-lived")
+        val before = McpDispatchers.scopeCount
+
+        // Act
+        scope.cancel()
+
+        // Assert
+        assertEquals(before - 1, McpDispatchers.scopeCount)
+    }
+}
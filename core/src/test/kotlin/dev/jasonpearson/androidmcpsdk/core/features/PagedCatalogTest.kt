@@ -0,0 +1,78 @@
+package dev.jasonpearson.androidmcpsdk.core.features
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PagedCatalogTest {
+
+    private var builds = 0
+    private var source = (1..5).toList()
+    private val catalog = PagedCatalog(pageSize = 2) { source.also { builds++ } }
+
+    @Test
+    fun `pages should cover every item once`() {
+        // Act
+        val seen = mutableListOf<Int>()
+        var cursor: String? = null
+        var pages = 0
+        do {
+            val page = catalog.page(cursor)
+            seen += page.items
+            cursor = page.nextCursor
+            pages++
+        } while (cursor != null)
+
+        // Assert
+        assertEquals(source, seen)
+        assertEquals(3, pages)
+        assertEquals(1, builds)
+    }
+
+    @Test
+    fun `catalog should only rebuild after invalidate`() {
+        // Act
+        catalog.items()
+        catalog.items()
+        source = listOf(9)
+        val beforeInvalidate = catalog.items()
+        catalog.invalidate()
+        val afterInvalidate = catalog.items()
+
+        // Assert
+        assertEquals(listOf(1, 2, 3, 4, 5), beforeInvalidate)
+        assertEquals(listOf(9), afterInvalidate)
+        assertEquals(2, builds)
+        assertNull(catalog.page(null).nextCursor)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `cursor from before a change should be rejected`() {
+        val cursor = catalog.page(null).nextCursor
+        catalog.invalidate()
+        catalog.page(cursor)
+    }
+
+    @Test
+    fun `catalog should rebuild when its source version changes`() {
+        // Arrange
+        var stamp = 1L
+        val tracked = PagedCatalog(pageSize = 2, sourceVersion = { stamp }) { source }
+        val cursor = tracked.page(null).nextCursor
+
+        // Act
+        source = listOf(7, 8, 9)
+        stamp = 2L
+        val rebuilt = tracked.items()
+
+        // Assert
+        assertEquals(listOf(7, 8, 9), rebuilt)
+        assertTrue(runCatching { tracked.page(cursor) }.isFailure)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `malformed cursor should be rejected`() {
+        catalog.page("not-a-cursor")
+    }
+}
@@ -0,0 +1,137 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import java.io.File
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FileRangeReaderTest {
+
+    private val file = File.createTempFile("range", ".log")
+    private val uri = "file://${file.absolutePath}"
+
+    @After
+    fun tearDown() {
+        file.delete()
+    }
+
+    private fun writeLines(count: Int) {
+        file.writeText((1..count).joinToString("") { "line $it\n" })
+    }
+
+    @Test
+    fun `byte range should return exactly that range under a ranged uri`() {
+        // Arrange
+        file.writeText("0123456789")
+
+        // Act
+        val content =
+            FileRangeReader.readContent("$uri?offset=2&length=3", file, FileRange(2, 3), null)
+
+        // Assert
+        assertEquals("234", content.text)
+        assertEquals("$uri?offset=2&length=3", content.uri)
+    }
+
+    @Test
+    fun `whole small file should keep the original uri`() {
+        // Arrange
+        file.writeText("hello")
+
+        // Act
+        val content = FileRangeReader.readContent(uri, file, FileRange(), "text/plain")
+
+        // Assert
+        assertEquals("hello", content.text)
+        assertEquals(uri, content.uri)
+    }
+
+    @Test
+    fun `partial read under a fixed uri should say it was truncated`() {
+        // Arrange
+        writeLines(200_000)
+
+        // Act
+        val content =
+            FileRangeReader.readContent("app://log", file, FileRange(), null, rangedUri = false)
+
+        // Assert
+        assertEquals("app://log", content.uri)
+        assertTrue(
+            content.text!!.endsWith(
+                "\n[Truncated: showing bytes 0-${FileRangeReader.DEFAULT_MAX_BYTES} of " +
+                    "${file.length()}]"
+            )
+        )
+    }
+
+    @Test
+    fun `line window should start at the requested line`() {
+        // Arrange
+        writeLines(100)
+
+        // Act
+        val slice = FileRangeReader.read(file, FileRange.parse("$uri?startLine=10&lines=3"))
+
+        // Assert
+        assertEquals("line 10\nline 11\nline 12\n", String(slice.bytes))
+    }
+
+    @Test
+    fun `tail should return the last lines of the file`() {
+        // Arrange
+        writeLines(1_000)
+
+        // Act
+        val slice = FileRangeReader.read(file, FileRange.parse("$uri?tail=2"))
+
+        // Assert
+        assertEquals("line 999\nline 1000\n", String(slice.bytes))
+    }
+
+    @Test
+    fun `reads should never exceed the byte limit`() {
+        // Arrange
+        writeLines(10_000)
+
+        // Act
+        val head = FileRangeReader.read(file, FileRange(length = 1_000_000), maxBytes = 64)
+        val tail = FileRangeReader.read(file, FileRange(tailLines = 5_000), maxBytes = 64)
+
+        // Assert
+        assertEquals(64, head.bytes.size)
+        assertEquals(file.length(), tail.offset + tail.bytes.size)
+        assertTrue(tail.bytes.size <= 64)
+    }
+
+    @Test
+    fun `range ending inside a multi-byte character should drop the partial character`() {
+        // Arrange
+        file.writeText("aé b") // é is two bytes in UTF-8
+
+        // Act
+        val content = FileRangeReader.readContent(uri, file, FileRange(0, 2), null)
+
+        // Assert
+        assertEquals("a", content.text)
+        assertEquals("$uri?offset=0&length=1", content.uri)
+    }
+
+    @Test
+    fun `binary files should be returned as a blob`() {
+        // Arrange
+        val bytes = byteArrayOf(0x53, 0x51, 0x00, 0x01, 0x7f)
+        file.writeBytes(bytes)
+
+        // Act
+        val content = FileRangeReader.readContent(uri, file, FileRange(), null)
+
+        // Assert
+        assertNull(content.text)
+        assertArrayEquals(bytes, content.blob)
+        assertEquals("application/octet-stream", content.mimeType)
+    }
+}
@@ -0,0 +1,95 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import android.os.FileObserver
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import java.io.File
+import java.nio.file.Files
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class FileWatchMultiplexerTest {
+
+    private lateinit var directory: File
+    private val changed = mutableListOf<String>()
+    private val multiplexer =
+        FileWatchMultiplexer(maxWatchers = { 2 }, onChanged = { changed.add(it) })
+
+    @Before
+    fun setUp() {
+        directory = Files.createTempDirectory("watch").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        multiplexer.stopAll()
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun `files in one directory should share an observer and get only their own events`() {
+        // Arrange
+        val a = multiplexer.watch("uri-a", File(directory, "a.txt"))
+        val b = multiplexer.watch("uri-b", File(directory, "b.txt"))
+        val dir = multiplexer.watch("uri-dir", directory)
+
+        // Act
+        a!!.onEvent(FileObserver.MODIFY, "a.txt")
+
+        // Assert
+        assertSame(a, b)
+        assertSame(a, dir)
+        assertEquals(1, multiplexer.watcherCount)
+        assertEquals(setOf("uri-a", "uri-dir"), changed.toSet())
+    }
+
+    @Test
+    fun `directory removal should notify every uri under it`() {
+        // Arrange
+        val observer = multiplexer.watch("uri-a", File(directory, "a.txt"))
+        multiplexer.watch("uri-b", File(directory, "b.txt"))
+
+        // Act
+        observer!!.onEvent(FileObserver.DELETE_SELF, null)
+
+        // Assert
+        assertEquals(setOf("uri-a", "uri-b"), changed.toSet())
+    }
+
+    @Test
+    fun `watcher should stop only after its last uri is unwatched`() {
+        // Arrange
+        multiplexer.watch("uri-a", File(directory, "a.txt"))
+        multiplexer.watch("uri-b", File(directory, "b.txt"))
+
+        // Act & Assert
+        multiplexer.unwatch("uri-a")
+        assertEquals(1, multiplexer.watcherCount)
+        multiplexer.unwatch("uri-b")
+        assertEquals(0, multiplexer.watcherCount)
+    }
+
+    @Test
+    fun `new directories beyond the limit should be refused`() {
+        // Arrange
+        val dirs = (1..3).map { File(directory, "d$it").apply { mkdirs() } }
+
+        // Act
+        val first = multiplexer.watch("1", File(dirs[0], "f"))
+        val second = multiplexer.watch("2", File(dirs[1], "f"))
+        val third = multiplexer.watch("3", File(dirs[2], "f"))
+        val sameDirAsFirst = multiplexer.watch("4", File(dirs[0], "g"))
+
+        // Assert
+        assertNotNull(first)
+        assertNotNull(second)
+        assertNull(third)
+        assertSame(first, sameDirAsFirst)
+    }
+}
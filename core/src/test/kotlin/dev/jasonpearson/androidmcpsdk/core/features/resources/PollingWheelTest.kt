@@ -0,0 +1,138 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class PollingWheelTest {
+
+    private fun TestScope.wheel() =
+        PollingWheel(backgroundScope, tickMs = 1_000, clock = { testScheduler.currentTime })
+
+    @Test
+    fun `polls due in the same tick should run on the same wakeup`() = runTest {
+        // Arrange
+        val wheel = wheel()
+        val runs = mutableListOf<Pair<String, Long>>()
+
+        // Act
+        wheel.schedule("a", 400, Job()) { 0L.also { runs += "a" to testScheduler.currentTime } }
+        wheel.schedule("b", 900, Job()) { 0L.also { runs += "b" to testScheduler.currentTime } }
+        advanceTimeBy(5_000)
+        runCurrent()
+
+        // Assert
+        assertEquals(setOf("a" to 1_000L, "b" to 1_000L), runs.toSet())
+        assertEquals(0, wheel.size)
+    }
+
+    @Test
+    fun `returned delay should reschedule the task`() = runTest {
+        // Arrange
+        val wheel = wheel()
+        val delays = ArrayDeque(listOf(1_000L, 2_000L, 0L))
+        val runTimes = mutableListOf<Long>()
+
+        // Act
+        wheel.schedule("key", 1_000, Job()) {
+            runTimes += testScheduler.currentTime
+            delays.removeFirst()
+        }
+        advanceTimeBy(10_000)
+        runCurrent()
+
+        // Assert
+        assertEquals(listOf(1_000L, 2_000L, 4_000L), runTimes)
+        assertEquals(0, wheel.size)
+    }
+
+    @Test
+    fun `cancelling the handle should stop the task`() = runTest {
+        // Arrange
+        val wheel = wheel()
+        val handle = Job()
+        var runs = 0
+        wheel.schedule("key", 1_000, handle) { 1_000L.also { runs++ } }
+        advanceTimeBy(1_500)
+        runCurrent()
+
+        // Act
+        handle.cancel()
+        advanceTimeBy(5_000)
+        runCurrent()
+
+        // Assert
+        assertEquals(1, runs)
+        assertEquals(0, wheel.size)
+    }
+
+    @Test
+    fun `long delays should cascade from the outer wheel and run on time`() = runTest {
+        // Arrange
+        val wheel = wheel()
+        val runTimes = mutableListOf<Long>()
+
+        // Act
+        wheel.schedule("key", 100_000, Job()) { 0L.also { runTimes += testScheduler.currentTime } }
+        advanceTimeBy(200_000)
+        runCurrent()
+
+        // Assert
+        assertEquals(listOf(100_000L), runTimes)
+    }
+
+    @Test
+    fun `a slow poll should not hold back the others`() = runTest {
+        // Arrange
+        val wheel = wheel()
+        val fastRuns = mutableListOf<Long>()
+        var slowRuns = 0
+
+        // Act
+        wheel.schedule("slow", 1_000, Job()) {
+            slowRuns++
+            delay(10_000)
+            1_000L
+        }
+        wheel.schedule("fast", 1_000, Job()) {
+            fastRuns += testScheduler.currentTime
+            if (fastRuns.size < 4) 1_000L else 0L
+        }
+        advanceTimeBy(5_000)
+        runCurrent()
+
+        // Assert
+        assertEquals(listOf(1_000L, 2_000L, 3_000L, 4_000L), fastRuns)
+        assertEquals(1, slowRuns)
+    }
+
+    @Test
+    fun `the driver should sleep until the earliest deadline`() = runTest {
+        // Arrange
+        var clockReads = 0
+        val wheel =
+            PollingWheel(
+                backgroundScope,
+                tickMs = 1_000,
+                clock = { testScheduler.currentTime.also { clockReads++ } },
+            )
+        var runs = 0
+
+        // Act
+        wheel.schedule("key", 30_000, Job()) { 0L.also { runs++ } }
+        advanceTimeBy(40_000)
+        runCurrent()
+
+        // Assert
+        assertEquals(1, runs)
+        assertTrue("clock read $clockReads times", clockReads < 20)
+    }
+}
@@ -0,0 +1,80 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import dev.jasonpearson.androidmcpsdk.core.models.AndroidResourceContent
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ResourceContentCacheTest {
+
+    private fun content(uri: String, chars: Int = 10) =
+        AndroidResourceContent(uri = uri, text = "x".repeat(chars))
+
+    @Test
+    fun `lookup should hit only for the version that was stored`() {
+        // Arrange
+        val cache = ResourceContentCache()
+        val stored = content("file:///a")
+        cache.put("file:///a", "path:100:10", stored)
+
+        // Act
+        val sameVersion = cache.get("file:///a", "path:100:10")
+        val changedFile = cache.get("file:///a", "path:200:12")
+
+        // Assert
+        assertSame(stored, sameVersion)
+        assertNull(changedFile)
+        assertEquals(1, cache.stats().hits)
+        assertEquals(1, cache.stats().misses)
+    }
+
+    @Test
+    fun `least recently used entries should be evicted to stay within the byte limit`() {
+        // Arrange: each entry is 2 * 100 + 64 bytes, so four fit in 1100
+        val cache = ResourceContentCache(maxBytes = 1_100)
+        listOf("a", "b", "c", "d").forEach { cache.put(it, "1", content(it, 100)) }
+        cache.get("a", "1")
+
+        // Act
+        cache.put("e", "1", content("e", 100))
+
+        // Assert
+        assertNotNull(cache.get("a", "1"))
+        assertNull(cache.get("b", "1"))
+        assertEquals(1, cache.stats().evictions)
+        assertTrue(cache.stats().bytes <= 1_100)
+    }
+
+    @Test
+    fun `invalidate should drop ranged reads of the same file`() {
+        // Arrange
+        val cache = ResourceContentCache()
+        cache.put("file:///log", "v", content("file:///log"))
+        cache.put("file:///log?tail=10", "v", content("file:///log?tail=10"))
+        cache.put("file:///log2", "v", content("file:///log2"))
+
+        // Act
+        cache.invalidate("file:///log")
+
+        // Assert
+        assertNull(cache.get("file:///log", "v"))
+        assertNull(cache.get("file:///log?tail=10", "v"))
+        assertNotNull(cache.get("file:///log2", "v"))
+    }
+
+    @Test
+    fun `entries larger than a quarter of the cache should not be stored`() {
+        // Arrange
+        val cache = ResourceContentCache(maxBytes = 1_000)
+
+        // Act
+        cache.put("big", "1", content("big", 200))
+
+        // Assert
+        assertNull(cache.get("big", "1"))
+        assertEquals(0, cache.stats().entries)
+    }
+}
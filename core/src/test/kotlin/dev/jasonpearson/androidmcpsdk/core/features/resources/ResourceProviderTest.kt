@@ -91,6 +91,39 @@ class ResourceProviderTest {
         // No manual clearing is needed for modern Robolectric versions
     }
 
+    @Test
+    fun `resource list should pick up a new SharedPreferences file`() {
+        resourceProvider.getAllResources()
+
+        context
+            .getSharedPreferences("feature_flags", Context.MODE_PRIVATE)
+            .edit()
+            .putBoolean("enabled", true)
+            .commit()
+        val uris = resourceProvider.getAllResources().map { it.uri }
+
+        assertTrue(uris.contains("android://preferences/feature_flags"))
+        context.deleteSharedPreferences("feature_flags")
+    }
+
+    @Test
+    fun `preferences version should change when a file is cleared`() {
+        // Arrange
+        val preferences = SharedPreferencesResourceProvider(context)
+        val prefs = context.getSharedPreferences("session", Context.MODE_PRIVATE)
+        prefs.edit().putString("token", "abc123").commit()
+        val before = preferences.contentVersion("android://preferences/session")
+
+        // Act
+        prefs.edit().clear().commit()
+        val after = preferences.contentVersion("android://preferences/session")
+
+        // Assert
+        assertFalse(before == after)
+        assertEquals("absent", preferences.contentVersion("android://preferences/missing"))
+        context.deleteSharedPreferences("session")
+    }
+
     // --- getAndVerifyAccessibleFile Tests ---
     @Test
     fun `getAndVerifyAccessibleFile - allows app-internal file`() {
@@ -254,10 +287,8 @@ class ResourceProviderTest {
         }
 
     @Test
-    fun `MAX_FILE_OBSERVERS limit falls back to dynamic polling`() =
+    fun `files in one directory share a single watcher`() =
         testScope.runTest {
-            // Instead of modifying the limit via reflection, create enough subscriptions
-            // to exceed the default limit and verify some fall back to dynamic polling
             val uris =
                 (1..55).map { i ->
                     File(testAppFilesDir, "limit_test_$i.txt")
@@ -265,35 +296,66 @@ class ResourceProviderTest {
                         .let { "file://${it.absolutePath}" }
                 }
 
-            // Subscribe to all URIs
             uris.forEach { resourceProvider.subscribe(it) }
 
-            // Check that at least some subscriptions are using dynamic polling (fallback)
             val subscriptions = uris.mapNotNull { subscriptionManager.getSubscriptionForTest(it) }
-            val fileSubscriptions =
-                subscriptions.filter {
-                    it.type == ResourceSubscriptionManager.SubscriptionType.FILE
-                }
-            val dynamicSubscriptions =
-                subscriptions.filter {
-                    it.type == ResourceSubscriptionManager.SubscriptionType.DYNAMIC
-                }
-
-            assertTrue("Should have some file subscriptions", fileSubscriptions.isNotEmpty())
+            assertEquals(uris.size, subscriptions.size)
             assertTrue(
-                "Should have some dynamic subscriptions (fallback)",
-                dynamicSubscriptions.isNotEmpty(),
+                "All files should be watched, not polled",
+                subscriptions.all { it.type == ResourceSubscriptionManager.SubscriptionType.FILE },
             )
-            assertTrue(
-                "Total subscriptions should equal requested URIs",
-                subscriptions.size == uris.size,
+            assertEquals(
+                "Files in one directory should share one observer",
+                1,
+                subscriptions.map { it.fileObserver }.distinct().size,
             )
 
-            // Clean up polling jobs
-            dynamicSubscriptions.forEach { it.pollingJob?.cancel() }
+            uris.forEach { resourceProvider.unsubscribe(it) }
             uris.forEach { File(it.removePrefix("file://")).delete() }
         }
 
+    @Test
+    fun `MAX_FILE_OBSERVERS limit falls back to dynamic polling`() =
+        testScope.runTest {
+            val previousLimit = ResourceSubscriptionManager.MAX_FILE_OBSERVERS
+            ResourceSubscriptionManager.MAX_FILE_OBSERVERS = MAX_FILE_OBSERVERS_FOR_TEST_CONST
+            try {
+                // One file per directory, so each needs its own watcher
+                val uris =
+                    (1..MAX_FILE_OBSERVERS_FOR_TEST_CONST + 2).map { i ->
+                        File(testAppFilesDir, "dir_$i/limit_test.txt")
+                            .apply {
+                                parentFile?.mkdirs()
+                                writeText("data")
+                            }
+                            .let { "file://${it.absolutePath}" }
+                    }
+
+                uris.forEach { resourceProvider.subscribe(it) }
+
+                val subscriptions =
+                    uris.mapNotNull { subscriptionManager.getSubscriptionForTest(it) }
+                val fileSubscriptions =
+                    subscriptions.filter {
+                        it.type == ResourceSubscriptionManager.SubscriptionType.FILE
+                    }
+                val dynamicSubscriptions =
+                    subscriptions.filter {
+                        it.type == ResourceSubscriptionManager.SubscriptionType.DYNAMIC
+                    }
+
+                assertEquals(MAX_FILE_OBSERVERS_FOR_TEST_CONST, fileSubscriptions.size)
+                assertEquals(2, dynamicSubscriptions.size)
+                assertEquals(uris.size, subscriptions.size)
+
+                // Clean up polling jobs
+                dynamicSubscriptions.forEach { it.pollingJob?.cancel() }
+                uris.forEach { resourceProvider.unsubscribe(it) }
+            } finally {
+                ResourceSubscriptionManager.MAX_FILE_OBSERVERS = previousLimit
+            }
+        }
+
     @Test
     fun `dynamic polling uses exponential backoff on error`() =
         testScope.runTest {
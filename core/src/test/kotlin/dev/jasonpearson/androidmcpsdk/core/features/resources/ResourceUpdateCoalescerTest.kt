@@ -0,0 +1,112 @@
+package dev.jasonpearson.androidmcpsdk.core.features.resources
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class ResourceUpdateCoalescerTest {
+
+    private val windowMs = 500L
+    private val delivered = mutableListOf<String>()
+
+    private fun TestScope.coalescer(maxPendingUris: Int = 16, deliveryMs: Long = 0) =
+        ResourceUpdateCoalescer(backgroundScope, windowMs, maxPendingUris) { uri ->
+            delivered += uri
+            if (deliveryMs > 0) delay(deliveryMs)
+        }
+
+    private fun TestScope.advance(ms: Long) {
+        advanceTimeBy(ms)
+        runCurrent()
+    }
+
+    @Test
+    fun `burst of changes to one uri should become one notification`() = runTest {
+        // Arrange
+        val coalescer = coalescer()
+
+        // Act
+        repeat(10) { coalescer.offer("file://a") }
+        advance(windowMs + 100)
+
+        // Assert
+        assertEquals(listOf("file://a"), delivered)
+        assertEquals(9, coalescer.stats().coalesced)
+        assertEquals(0, coalescer.stats().pending)
+    }
+
+    @Test
+    fun `changes to different uris should not merge`() = runTest {
+        // Arrange
+        val coalescer = coalescer()
+
+        // Act
+        coalescer.offer("file://a")
+        coalescer.offer("file://b")
+        coalescer.offer("file://a")
+        advance(windowMs + 100)
+
+        // Assert
+        assertEquals(setOf("file://a", "file://b"), delivered.toSet())
+        assertEquals(2, coalescer.stats().delivered)
+    }
+
+    @Test
+    fun `change during delivery should send exactly one more notification`() = runTest {
+        // Arrange
+        val coalescer = coalescer(deliveryMs = 1_000)
+        coalescer.offer("file://a")
+        advance(windowMs + 100)
+
+        // Act
+        coalescer.offer("file://a")
+        coalescer.offer("file://a")
+        advance(5_000)
+
+        // Assert
+        assertEquals(listOf("file://a", "file://a"), delivered)
+        assertEquals(1, coalescer.stats().coalesced)
+    }
+
+    @Test
+    fun `offers beyond the pending limit should be dropped without blocking`() = runTest {
+        // Arrange
+        val coalescer = coalescer(maxPendingUris = 2)
+
+        // Act
+        coalescer.offer("file://a")
+        coalescer.offer("file://b")
+        val accepted = coalescer.offer("file://c")
+        advance(windowMs + 100)
+
+        // Assert
+        assertFalse(accepted)
+        assertEquals(1, coalescer.stats().dropped)
+        assertEquals(setOf("file://a", "file://b"), delivered.toSet())
+    }
+
+    @Test
+    fun `longest matching prefix should choose the window`() = runTest {
+        // Arrange
+        val coalescer = coalescer()
+        coalescer.setWindow("android://", 5_000)
+        coalescer.setWindow("android://fast/", 100)
+
+        // Act
+        coalescer.offer("android://slow/x")
+        coalescer.offer("android://fast/y")
+        advance(200)
+
+        // Assert
+        assertEquals(listOf("android://fast/y"), delivered)
+        advance(5_000)
+        assertEquals(listOf("android://fast/y", "android://slow/x"), delivered)
+    }
+}
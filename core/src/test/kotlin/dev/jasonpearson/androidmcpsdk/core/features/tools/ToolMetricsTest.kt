@@ -0,0 +1,75 @@
+package dev.jasonpearson.androidmcpsdk.core.features.tools
+
+import io.modelcontextprotocol.kotlin.sdk.CallToolResult
+import io.modelcontextprotocol.kotlin.sdk.TextContent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class ToolMetricsTest {
+
+    @Test
+    fun `histogram buckets should keep values within one sub-bucket`() {
+        listOf(0L, 7L, 8L, 17L, 1_000L, 123_456L, 10_000_000L).forEach { value ->
+            val upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value))
+            assertTrue("$value -> $upper", upper >= value && upper <= value + value / 8)
+        }
+    }
+
+    @Test
+    fun `histogram percentiles should follow the recorded distribution`() {
+        // Arrange
+        val histogram = LatencyHistogram()
+
+        // Act
+        (1L..100L).forEach { histogram.record(it * 1000) }
+
+        // Assert
+        assertEquals(100, histogram.totalCount)
+        assertEquals(100_000, histogram.maxMicros)
+        assertEquals(50_000.0, histogram.percentileMicros(50.0).toDouble(), 50_000 / 8.0)
+        assertEquals(100_000, histogram.percentileMicros(100.0))
+    }
+
+    @Test
+    fun `registry should count calls, errors, exceptions and result sizes`() = runTest {
+        // Arrange
+        val registry = ToolMetricsRegistry()
+        val ok = CallToolResult(content = listOf(TextContent(text = "12345")), isError = false)
+        val error = CallToolResult(content = listOf(TextContent(text = "no")), isError = true)
+
+        // Act
+        registry.record("query", mapOf("sql" to "SELECT 1")) { ok }
+        registry.record("query", emptyMap()) { error }
+        try {
+            registry.record("query", emptyMap()) { throw IllegalStateException("boom") }
+            fail("Expected exception to propagate")
+        } catch (e: IllegalStateException) {
+            // Expected
+        }
+
+        // Assert
+        val snapshot = registry.report().tools.single()
+        assertEquals("query", snapshot.toolName)
+        assertEquals(3, snapshot.calls)
+        assertEquals(2, snapshot.errors)
+        assertEquals(1, snapshot.exceptions)
+        assertEquals(0, snapshot.inFlight)
+        assertEquals(5, snapshot.maxResultBytes)
+    }
+
+    @Test
+    fun `reset should clear recorded tools`() = runTest {
+        // Arrange
+        val registry = ToolMetricsRegistry()
+        registry.record("tool", emptyMap()) { CallToolResult(content = emptyList()) }
+
+        // Act
+        registry.reset()
+
+        // Assert
+        assertTrue(registry.report().tools.isEmpty())
+    }
+}
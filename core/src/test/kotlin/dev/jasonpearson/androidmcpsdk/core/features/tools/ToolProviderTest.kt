@@ -6,6 +6,7 @@ import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.TextContent
 import kotlinx.coroutines.test.runTest
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.JsonArray
 import kotlinx.serialization.json.JsonPrimitive
 import kotlinx.serialization.json.buildJsonObject
 import org.junit.Assert.assertEquals
@@ -430,6 +431,72 @@ class ToolProviderTest {
         assertFalse(removed)
     }
 
+    @Test
+    fun `should notify registration listeners on add and remove`() {
+        val added = mutableListOf<String>()
+        val removed = mutableListOf<String>()
+        val listener =
+            object : ToolRegistrationListener {
+                override fun onToolAdded(tool: io.modelcontextprotocol.kotlin.sdk.Tool) {
+                    added.add(tool.name)
+                }
+
+                override fun onToolRemoved(name: String) {
+                    removed.add(name)
+                }
+            }
+        toolProvider.addRegistrationListener(listener)
+
+        toolProvider.addTool<SimpleInput>(name = "live_tool", description = "Live tool") {
+            CallToolResult(content = listOf(TextContent(text = "OK")))
+        }
+        toolProvider.removeTool("live_tool")
+        toolProvider.removeTool("non_existent_tool")
+
+        toolProvider.removeRegistrationListener(listener)
+        toolProvider.addTool<SimpleInput>(name = "after_removal", description = "Not observed") {
+            CallToolResult(content = listOf(TextContent(text = "OK")))
+        }
+
+        assertEquals(listOf("live_tool"), added)
+        assertEquals(listOf("live_tool"), removed)
+    }
+
+    @Test
+    fun `should decode SDK json arguments directly into typed input`() = runTest {
+        var receivedInput: NestedInput? = null
+        toolProvider.addTool<NestedInput>(name = "json_tool", description = "JSON tool") { input ->
+            receivedInput = input
+            CallToolResult(content = listOf(TextContent(text = "OK")))
+        }
+
+        val arguments = buildJsonObject {
+            put("user", buildJsonObject { put("theme", JsonPrimitive("dark")) })
+            put("enabled", JsonPrimitive(true))
+        }
+        val result = toolProvider.callTool("json_tool", arguments)
+
+        assertFalse(result.isError ?: true)
+        assertEquals("dark", receivedInput?.user?.theme)
+        assertEquals(true, receivedInput?.enabled)
+    }
+
+    @Test
+    fun `should keep json values nested in map arguments intact`() {
+        val converted =
+            toolProvider.convertMapToJsonElement(
+                mapOf("name" to JsonPrimitive("test"), "tags" to listOf(JsonPrimitive(1), "a"))
+            )
+
+        assertEquals(
+            buildJsonObject {
+                put("name", JsonPrimitive("test"))
+                put("tags", JsonArray(listOf(JsonPrimitive(1), JsonPrimitive("a"))))
+            },
+            converted,
+        )
+    }
+
     // Extension function for creating OptionalFields in tests
     private fun List<String>.asOptional() = McpToolProvider.OptionalFields(this)
 }
@@ -0,0 +1,181 @@
+package dev.jasonpearson.androidmcpsdk.core.features.tools
+
+import io.modelcontextprotocol.kotlin.sdk.CallToolResult
+import io.modelcontextprotocol.kotlin.sdk.TextContent
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class ToolResultCacheTest {
+
+    private var now = 0L
+    private val cache = ToolResultCache(clock = { now })
+    private var computeCount = 0
+
+    private fun result(text: String, isError: Boolean = false) =
+        CallToolResult(content = listOf(TextContent(text = text)), isError = isError)
+
+    private suspend fun call(tool: String, arguments: Map<String, Any> = emptyMap()) =
+        cache.getOrCompute(tool, arguments) {
+            computeCount++
+            result("$tool #$computeCount")
+        }
+
+    @Test
+    fun `cached result should be reused until its ttl expires`() = runTest {
+        // Arrange
+        cache.setPolicy("device_info", ToolCachePolicy(ttlMs = 1_000))
+
+        // Act
+        val first = call("device_info")
+        now += 999
+        val second = call("device_info")
+        now += 1
+        call("device_info")
+
+        // Assert
+        assertSame(first, second)
+        assertEquals(2, computeCount)
+        assertEquals(1, cache.stats().hits)
+        assertEquals(2, cache.stats().misses)
+    }
+
+    @Test
+    fun `cache key should ignore argument order and representation`() {
+        // Arrange
+        val map = mapOf<String, Any>("b" to 2, "a" to "x")
+        val json = buildJsonObject {
+            put("a", "x")
+            put("b", 2)
+        }
+
+        // Assert
+        assertEquals(cache.cacheKey("tool", map), cache.cacheKey("tool", json))
+        assertEquals(
+            "tool:{\"a\":\"x\",\"b\":2}",
+            cache.cacheKey("tool", mapOf("b" to JsonPrimitive(2), "a" to "x")),
+        )
+    }
+
+    @Test
+    fun `concurrent identical calls should run once`() = runTest {
+        // Arrange
+        cache.setPolicy("slow", ToolCachePolicy(ttlMs = 1_000))
+        val gate = CompletableDeferred<Unit>()
+        val compute: suspend () -> CallToolResult = {
+            computeCount++
+            gate.await()
+            result("slow")
+        }
+
+        // Act
+        val calls = List(3) { async { cache.getOrCompute("slow", emptyMap(), compute) } }
+        runCurrent()
+        gate.complete(Unit)
+        val results = calls.map { it.await() }
+
+        // Assert
+        assertEquals(1, computeCount)
+        assertEquals(1, results.toSet().size)
+        assertEquals(2, cache.stats().coalesced)
+    }
+
+    @Test
+    fun `waiting call should run itself when the call it joined is cancelled`() = runTest {
+        // Arrange
+        cache.setPolicy("slow", ToolCachePolicy(ttlMs = 1_000))
+        val gate = CompletableDeferred<Unit>()
+        val compute: suspend () -> CallToolResult = {
+            computeCount++
+            gate.await()
+            result("slow #$computeCount")
+        }
+        val first = async { cache.getOrCompute("slow", emptyMap(), compute) }
+        runCurrent()
+        val second = async { cache.getOrCompute("slow", emptyMap(), compute) }
+        runCurrent()
+
+        // Act
+        first.cancel()
+        runCurrent()
+        gate.complete(Unit)
+        val result = second.await()
+
+        // Assert
+        assertTrue(first.isCancelled)
+        assertEquals("slow #2", (result.content.single() as TextContent).text)
+        assertEquals(2, computeCount)
+    }
+
+    @Test
+    fun `error results should not be cached`() = runTest {
+        // Arrange
+        cache.setPolicy("flaky", ToolCachePolicy(ttlMs = 1_000))
+
+        // Act
+        repeat(2) {
+            cache.getOrCompute("flaky", emptyMap()) {
+                computeCount++
+                result("failed", isError = true)
+            }
+        }
+
+        // Assert
+        assertEquals(2, computeCount)
+        assertEquals(0, cache.stats().entries)
+    }
+
+    @Test
+    fun `state-changing tool should invalidate tagged results`() = runTest {
+        // Arrange
+        cache.setPolicy("list", ToolCachePolicy(ttlMs = 1_000, invalidationKeys = setOf("db")))
+        cache.setPolicy("other", ToolCachePolicy(ttlMs = 1_000))
+        cache.setPolicy("insert", ToolCachePolicy(invalidates = setOf("db")))
+        call("list")
+        call("other")
+
+        // Act
+        call("insert")
+        call("list")
+        call("other")
+
+        // Assert
+        assertEquals(4, computeCount)
+        assertEquals(1, cache.stats().invalidations)
+    }
+
+    @Test
+    fun `result computed across an invalidation should not be cached`() = runTest {
+        // Arrange
+        cache.setPolicy("list", ToolCachePolicy(ttlMs = 1_000, invalidationKeys = setOf("db")))
+        val gate = CompletableDeferred<Unit>()
+        val read = async {
+            cache.getOrCompute("list", emptyMap()) {
+                computeCount++
+                gate.await()
+                result("stale")
+            }
+        }
+        runCurrent()
+
+        // Act
+        cache.invalidate("db")
+        gate.complete(Unit)
+        read.await()
+        call("list")
+
+        // Assert
+        assertEquals(2, computeCount)
+        assertEquals(0, cache.stats().hits)
+    }
+}
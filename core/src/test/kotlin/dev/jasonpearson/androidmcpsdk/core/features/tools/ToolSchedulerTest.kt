@@ -0,0 +1,181 @@
+package dev.jasonpearson.androidmcpsdk.core.features.tools
+
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.advanceUntilIdle
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.withTimeout
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class ToolSchedulerTest {
+
+    @Test
+    fun `per-tool limit should cap concurrent calls of one tool`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler()
+        scheduler.setPolicy("slow", ToolExecutionPolicy(maxConcurrency = 1))
+        val gate = CompletableDeferred<Unit>()
+        val running = AtomicInteger()
+        var maxRunning = 0
+
+        // Act
+        repeat(3) {
+            launch {
+                scheduler.execute("slow") {
+                    maxRunning = maxOf(maxRunning, running.incrementAndGet())
+                    gate.await()
+                    running.decrementAndGet()
+                }
+            }
+        }
+        runCurrent()
+        val stats = scheduler.stats().tools.single()
+        gate.complete(Unit)
+
+        // Assert
+        assertEquals(1, stats.running)
+        assertEquals(2, stats.queued)
+        advanceUntilIdle()
+        assertEquals(1, maxRunning)
+    }
+
+    @Test
+    fun `free global slot should go to the highest priority waiter`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler(maxConcurrentCalls = 1)
+        scheduler.setPolicy("load", ToolExecutionPolicy(priority = ToolPriority.BACKGROUND))
+        scheduler.setPolicy("lookup", ToolExecutionPolicy(priority = ToolPriority.INTERACTIVE))
+        val gate = CompletableDeferred<Unit>()
+        val order = mutableListOf<String>()
+        launch { scheduler.execute("busy") { gate.await() } }
+        runCurrent()
+
+        // Act
+        launch { scheduler.execute("load") { order.add("load") } }
+        runCurrent()
+        launch { scheduler.execute("lookup") { order.add("lookup") } }
+        runCurrent()
+        val queued = scheduler.stats().queuedByPriority
+        gate.complete(Unit)
+        advanceUntilIdle()
+
+        // Assert
+        assertEquals(1, queued["INTERACTIVE"])
+        assertEquals(1, queued["BACKGROUND"])
+        assertEquals(listOf("lookup", "load"), order)
+    }
+
+    @Test
+    fun `timeout should cover the call and be visible as a deadline`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler()
+        scheduler.setPolicy("hang", ToolExecutionPolicy(timeoutMs = 50))
+        var deadline: ToolDeadline? = null
+
+        // Act
+        try {
+            scheduler.execute("hang") {
+                deadline = currentToolDeadline()
+                delay(1_000)
+            }
+            fail("Expected timeout")
+        } catch (e: TimeoutCancellationException) {
+            // Expected
+        }
+
+        // Assert
+        assertNotNull(deadline)
+        assertEquals("hang", deadline?.toolName)
+        assertEquals(1, scheduler.stats().timedOutCalls)
+        assertEquals(0, scheduler.stats().runningCalls)
+    }
+
+    @Test
+    fun `a timeout inside the tool should not count as a scheduler timeout`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler()
+        scheduler.setPolicy("poll", ToolExecutionPolicy(timeoutMs = 1_000))
+
+        // Act
+        try {
+            scheduler.execute("poll") { withTimeout(50) { delay(100) } }
+            fail("Expected the tool's own timeout")
+        } catch (e: IllegalStateException) {
+            // Expected
+        }
+
+        // Assert
+        assertEquals(0, scheduler.stats().timedOutCalls)
+    }
+
+    @Test
+    fun `calls beyond the queue limit should be rejected`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler(maxConcurrentCalls = 1, maxQueuedCalls = 1)
+        val gate = CompletableDeferred<Unit>()
+        launch { scheduler.execute("a") { gate.await() } }
+        runCurrent()
+        launch { scheduler.execute("b") {} }
+        runCurrent()
+
+        // Act
+        try {
+            scheduler.execute("c") {}
+            fail("Expected rejection")
+        } catch (e: ToolRejectedException) {
+            // Expected
+        }
+        gate.complete(Unit)
+
+        // Assert
+        assertEquals(1, scheduler.stats().rejectedCalls)
+    }
+
+    @Test
+    fun `cancelled waiter should not keep its slot`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler(maxConcurrentCalls = 1)
+        val gate = CompletableDeferred<Unit>()
+        launch { scheduler.execute("a") { gate.await() } }
+        runCurrent()
+        val waiter = launch { scheduler.execute("b") {} }
+        runCurrent()
+
+        // Act
+        waiter.cancel()
+        runCurrent()
+        gate.complete(Unit)
+        advanceUntilIdle()
+        val result = scheduler.execute("c") { "done" }
+
+        // Assert
+        assertEquals("done", result)
+        assertEquals(1, scheduler.stats().cancelledCalls)
+    }
+
+    @Test
+    fun `cancelAll should cancel running calls`() = runTest {
+        // Arrange
+        val scheduler = ToolScheduler()
+        val call = launch { scheduler.execute("hang") { delay(10_000) } }
+        runCurrent()
+
+        // Act
+        scheduler.cancelAll("stopping")
+        advanceUntilIdle()
+
+        // Assert
+        assertTrue(call.isCompleted)
+        assertEquals(0, scheduler.stats().runningCalls)
+    }
+}
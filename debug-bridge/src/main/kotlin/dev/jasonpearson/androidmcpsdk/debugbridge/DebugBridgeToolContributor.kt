@@ -3,7 +3,11 @@ package dev.jasonpearson.androidmcpsdk.debugbridge
 import android.content.Context
 import android.util.Log
 import dev.jasonpearson.androidmcpsdk.core.features.tools.McpToolProvider
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolCachePolicy
 import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolContributor
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolExecutionPolicy
+import dev.jasonpearson.androidmcpsdk.core.features.tools.ToolPriority
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseConnectionPool
 import dev.jasonpearson.androidmcpsdk.debugbridge.tools.AccessibilityInspectionToolProvider
 import dev.jasonpearson.androidmcpsdk.debugbridge.tools.AndroidSystemToolProvider
 import dev.jasonpearson.androidmcpsdk.debugbridge.tools.ApplicationInfoToolProvider
@@ -25,8 +29,66 @@ class DebugBridgeToolContributor(private val context: Context) : ToolContributor
 
     companion object {
         private const val TAG = "DebugBridgeContrib"
+
+        // Quick lookups an agent usually waits on before doing anything else
+        private val INTERACTIVE_TOOLS =
+            listOf(
+                "device_info",
+                "app_info",
+                "system_time",
+                "view_find_by_text",
+                "view_find_by_id",
+                "view_find_by_class",
+                "database_list",
+                "database_list_tables",
+                "preferences_list",
+            )
+
+        // Tools that can keep the app busy for a long time; one at a time, behind everything else
+        private val BACKGROUND_TOOLS =
+            listOf("network_load_test", "network_batch_replay", "accessibility_capture")
+
+        private const val BACKGROUND_TIMEOUT_MS = 5 * 60_000L
+
+        private const val DATABASE_KEY = "database"
+        private const val PREFERENCES_KEY = "preferences"
+
+        // Results agents ask for over and over with the same arguments. Short TTLs for values
+        // that drift on their own, invalidation keys for values only our own tools change.
+        private val CACHED_TOOLS =
+            mapOf(
+                "device_info" to ToolCachePolicy(ttlMs = 5 * 60_000L),
+                "app_info" to ToolCachePolicy(ttlMs = 60_000L),
+                "memory_info" to ToolCachePolicy(ttlMs = 1_000L),
+                "battery_info" to ToolCachePolicy(ttlMs = 10_000L),
+                "database_list" to
+                    ToolCachePolicy(ttlMs = 30_000L, invalidationKeys = setOf(DATABASE_KEY)),
+                "database_list_tables" to
+                    ToolCachePolicy(ttlMs = 30_000L, invalidationKeys = setOf(DATABASE_KEY)),
+                "database_schema" to
+                    ToolCachePolicy(ttlMs = 30_000L, invalidationKeys = setOf(DATABASE_KEY)),
+                "preferences_list" to
+                    ToolCachePolicy(ttlMs = 10_000L, invalidationKeys = setOf(PREFERENCES_KEY)),
+            )
+
+        private val INVALIDATING_TOOLS =
+            mapOf(
+                "database_insert" to DATABASE_KEY,
+                "database_update" to DATABASE_KEY,
+                "database_delete" to DATABASE_KEY,
+                "database_schema_aware_insert" to DATABASE_KEY,
+                "database_schema_aware_update" to DATABASE_KEY,
+                "database_schema_aware_delete" to DATABASE_KEY,
+                "preferences_set" to PREFERENCES_KEY,
+                "preferences_remove" to PREFERENCES_KEY,
+                "preferences_clear" to PREFERENCES_KEY,
+                "preferences_batch_edit" to PREFERENCES_KEY,
+            )
     }
 
+    // Every database tool shares these connections; closed when the server stops
+    private val connectionPool = DatabaseConnectionPool()
+
     override fun registerTools(toolProvider: McpToolProvider) {
         Log.i(TAG, "Registering debug-bridge tools")
 
@@ -39,7 +101,7 @@ class DebugBridgeToolContributor(private val context: Context) : ToolContributor
         val filePermissionProvider = FilePermissionToolProvider(context)
         val viewHierarchyProvider = ViewHierarchyToolProvider(context)
         val accessibilityProvider = AccessibilityInspectionToolProvider(context)
-        val databaseProvider = DatabaseToolProvider(context)
+        val databaseProvider = DatabaseToolProvider(context, connectionPool)
         val sharedPreferencesProvider = SharedPreferencesToolProvider(context)
 
         // Register all tools from each provider
@@ -54,8 +116,33 @@ class DebugBridgeToolContributor(private val context: Context) : ToolContributor
         databaseProvider.registerTools(toolProvider)
         sharedPreferencesProvider.registerTools(toolProvider)
 
+        INTERACTIVE_TOOLS.forEach { name ->
+            toolProvider.setExecutionPolicy(
+                name,
+                ToolExecutionPolicy(priority = ToolPriority.INTERACTIVE),
+            )
+        }
+        BACKGROUND_TOOLS.forEach { name ->
+            toolProvider.setExecutionPolicy(
+                name,
+                ToolExecutionPolicy(
+                    priority = ToolPriority.BACKGROUND,
+                    maxConcurrency = 1,
+                    timeoutMs = BACKGROUND_TIMEOUT_MS,
+                ),
+            )
+        }
+        CACHED_TOOLS.forEach { (name, policy) -> toolProvider.setCachePolicy(name, policy) }
+        INVALIDATING_TOOLS.forEach { (name, key) ->
+            toolProvider.setCachePolicy(name, ToolCachePolicy(invalidates = setOf(key)))
+        }
+
         Log.i(TAG, "Debug-bridge tools registered successfully")
     }
 
     override fun getProviderName(): String = "DebugBridge"
+
+    override fun onServerStopped() {
+        connectionPool.closeAll()
+    }
 }
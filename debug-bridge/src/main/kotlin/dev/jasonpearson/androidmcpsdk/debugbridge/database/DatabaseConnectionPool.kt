@@ -0,0 +1,230 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database
+
+import android.os.SystemClock
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Pool of long-lived database connections keyed on [DatabaseConfig].
+ *
+ * Opening a database is expensive, and for SQLCipher it re-derives the key on every open. The pool
+ * keeps handles open between tool calls and hands them out one caller at a time:
+ * - Writable configs get a single handle, since SQLite only allows one writer.
+ * - Read-only configs get up to [maxReadersPerDatabase] handles. Readers only run concurrently
+ *   once the database is known to be in WAL mode, where they never block on the writer.
+ *
+ * Connections idle for longer than [idleTimeoutMs] are closed by a timer on [scope], which only
+ * runs while the pool holds idle connections. One pool is meant to be shared by everything that
+ * opens app databases, and closed with [closeAll] when the server stops.
+ */
+class DatabaseConnectionPool(
+    private val databaseFactory: SqliteDatabaseFactory = StandardSqliteDatabaseFactory(),
+    private val maxReadersPerDatabase: Int = DEFAULT_MAX_READERS,
+    private val idleTimeoutMs: Long = DEFAULT_IDLE_TIMEOUT_MS,
+    private val clock: () -> Long = { SystemClock.elapsedRealtime() },
+    private val scope: CoroutineScope = McpDispatchers.scope(TAG),
+) {
+
+    companion object {
+        private const val TAG = "DatabaseConnectionPool"
+        const val DEFAULT_MAX_READERS = 4
+        const val DEFAULT_IDLE_TIMEOUT_MS = 60_000L
+    }
+
+    private class PooledConnection(val database: SqliteDatabase, var lastUsed: Long)
+
+    private inner class ConnectionSet(val config: DatabaseConfig) {
+        val permits = Semaphore(if (config.readOnly) maxReadersPerDatabase else 1)
+        val exclusive = Mutex()
+        val idle = ArrayDeque<PooledConnection>()
+
+        // Unknown until the first connection is opened; readers stay serialized until then
+        @Volatile var walMode = false
+
+        // Set once the pool drops this set; connections still in use are closed on release
+        private var closed = false
+
+        val serialized: Boolean
+            get() = !config.readOnly || !walMode
+
+        fun poll(): PooledConnection? = synchronized(idle) { idle.pollFirst() }
+
+        /** Return [connection] for reuse, or close it if this set has been closed meanwhile */
+        fun release(connection: PooledConnection): Boolean {
+            connection.lastUsed = clock()
+            val pooled =
+                synchronized(idle) {
+                    if (!closed) idle.addFirst(connection)
+                    !closed
+                }
+            if (!pooled) closeQuietly(connection.database)
+            return pooled
+        }
+
+        fun evictIdle(now: Long): Int {
+            val expired = mutableListOf<PooledConnection>()
+            synchronized(idle) {
+                val iterator = idle.iterator()
+                while (iterator.hasNext()) {
+                    val connection = iterator.next()
+                    if (now - connection.lastUsed >= idleTimeoutMs) {
+                        iterator.remove()
+                        expired.add(connection)
+                    }
+                }
+            }
+            expired.forEach { closeQuietly(it.database) }
+            return expired.size
+        }
+
+        fun oldestIdle(): Long? = synchronized(idle) { idle.minOfOrNull { it.lastUsed } }
+
+        fun closeAll(): Int {
+            val connections = synchronized(idle) { idle.toList().also { idle.clear() } }
+            connections.forEach { closeQuietly(it.database) }
+            return connections.size
+        }
+
+        /** Close the idle connections and any still in use as they are released */
+        fun close(): Int {
+            synchronized(idle) { closed = true }
+            return closeAll()
+        }
+    }
+
+    private val connectionSets = ConcurrentHashMap<DatabaseConfig, ConnectionSet>()
+    private val evictionScheduled = AtomicBoolean(false)
+
+    /**
+     * Run [block] with a pooled connection for [config]. The connection is owned exclusively by
+     * the caller until [block] returns and must not be closed or retained by it.
+     */
+    suspend fun <T> withConnection(config: DatabaseConfig, block: (SqliteDatabase) -> T): T {
+        evictIdleConnections()
+
+        val connectionSet = connectionSets.computeIfAbsent(config) { ConnectionSet(it) }
+        return connectionSet.permits.withPermit {
+            if (connectionSet.serialized) {
+                connectionSet.exclusive.withLock { useConnection(connectionSet, block) }
+            } else {
+                useConnection(connectionSet, block)
+            }
+        }
+    }
+
+    /** Close connections that have been idle for longer than the idle timeout. */
+    fun evictIdleConnections(): Int {
+        val now = clock()
+        val evicted = connectionSets.values.sumOf { it.evictIdle(now) }
+        if (evicted > 0) {
+            Log.d(TAG, "Closed $evicted idle database connections")
+        }
+        return evicted
+    }
+
+    /**
+     * Close the idle connections for [config] now rather than at the idle timeout, for callers
+     * that know they are done with a database. Connections in use are returned to the pool.
+     */
+    fun closeIdleConnections(config: DatabaseConfig): Int =
+        connectionSets[config]?.closeAll() ?: 0
+
+    /**
+     * Close all connections for the database at [path], e.g. after it was deleted. Connections in
+     * use are closed when their caller releases them.
+     */
+    fun invalidate(path: String) {
+        connectionSets.keys
+            .filter { it.path == path }
+            .forEach { config -> connectionSets.remove(config)?.close() }
+    }
+
+    /** Close every pooled connection, including ones in use as soon as they are released. */
+    fun closeAll() {
+        connectionSets.keys.toList().forEach { config -> connectionSets.remove(config)?.close() }
+        Log.d(TAG, "Closed all pooled database connections")
+    }
+
+    /** Number of open connections currently idle in the pool. */
+    fun idleConnectionCount(): Int =
+        connectionSets.values.sumOf { set -> synchronized(set.idle) { set.idle.size } }
+
+    private fun <T> useConnection(connectionSet: ConnectionSet, block: (SqliteDatabase) -> T): T {
+        val connection = connectionSet.poll() ?: openConnection(connectionSet)
+        var reusable = false
+        try {
+            val result = block(connection.database)
+            reusable = true
+            return result
+        } finally {
+            if (reusable && connection.database.isOpen() && !connection.database.inTransaction()) {
+                if (connectionSet.release(connection)) scheduleEviction()
+            } else {
+                closeQuietly(connection.database)
+            }
+        }
+    }
+
+    /** Start the eviction timer unless it is already running; it stops once the pool is empty */
+    private fun scheduleEviction() {
+        if (!evictionScheduled.compareAndSet(false, true)) return
+        scope.launch {
+            try {
+                while (true) {
+                    val wait = millisUntilNextExpiry() ?: break
+                    delay(wait)
+                    evictIdleConnections()
+                }
+            } finally {
+                evictionScheduled.set(false)
+            }
+            // A connection released after the last check found the timer still claimed
+            if (millisUntilNextExpiry() != null) scheduleEviction()
+        }
+    }
+
+    private fun millisUntilNextExpiry(): Long? {
+        val oldest = connectionSets.values.mapNotNull { it.oldestIdle() }.minOrNull() ?: return null
+        return (oldest + idleTimeoutMs - clock()).coerceAtLeast(0)
+    }
+
+    private fun openConnection(connectionSet: ConnectionSet): PooledConnection {
+        val database = DatabaseHelper(connectionSet.config, databaseFactory).openDatabase()
+        connectionSet.walMode = detectWalMode(database)
+        Log.d(
+            TAG,
+            "Opened ${if (connectionSet.config.readOnly) "read-only" else "writable"} connection " +
+                "to ${connectionSet.config.path} (wal=${connectionSet.walMode})",
+        )
+        return PooledConnection(database, clock())
+    }
+
+    private fun detectWalMode(database: SqliteDatabase): Boolean {
+        return try {
+            database.rawQuery("PRAGMA journal_mode", null).use { cursor ->
+                cursor.moveToFirst() && cursor.getString(0).equals("wal", ignoreCase = true)
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not determine journal mode", e)
+            false
+        }
+    }
+
+    private fun closeQuietly(database: SqliteDatabase) {
+        try {
+            database.close()
+        } catch (e: Exception) {
+            Log.w(TAG, "Error closing pooled database connection", e)
+        }
+    }
+}
@@ -4,16 +4,27 @@ import android.content.ContentValues
 import android.content.Context
 import android.database.Cursor
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.KeysetPagination
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.KeysetPlan
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.PageToken
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.QueryPlanAnalyzer
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.QueryPlanEstimate
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.SchemaIntrospector
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatementCache
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatementKind
 import java.io.File
 import kotlin.system.measureTimeMillis
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.json.put
 
-/** Main database operations engine for querying and editing databases. */
+/**
+ * Main database operations engine for querying and editing databases. Connections come from
+ * [connectionPool], which the caller owns and closes; it also decides how databases are opened.
+ */
 class DatabaseOperations(
     private val context: Context,
-    private val databaseFactory: SqliteDatabaseFactory = StandardSqliteDatabaseFactory(),
+    private val connectionPool: DatabaseConnectionPool,
 ) {
 
     companion object {
@@ -22,6 +33,9 @@ class DatabaseOperations(
         private const val DEFAULT_PAGE_SIZE = 100
     }
 
+    private val resultEncoder = QueryResultEncoder(MAX_QUERY_ROWS)
+    private val statementCache = SqlStatementCache.getInstance()
+
     /** Execute a SQL query and return results in JSON format. */
     suspend fun executeQuery(
         databasePath: String,
@@ -30,7 +44,7 @@ class DatabaseOperations(
         pageSize: Int = DEFAULT_PAGE_SIZE,
         pageOffset: Int = 0,
     ): DatabaseResult<QueryResult> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 if (!validateQuerySafety(query)) {
                     return@withContext DatabaseResult(
@@ -41,12 +55,9 @@ class DatabaseOperations(
 
                 val config = DatabaseConfig(path = databasePath, readOnly = true)
 
-                val helper = DatabaseHelper(config, databaseFactory)
-                val database = helper.openDatabase()
-
                 var queryResult: QueryResult? = null
                 val executionTime = measureTimeMillis {
-                    database.use { db ->
+                    connectionPool.withConnection(config) { db ->
                         val limitedQuery = addLimitToQuery(query, pageSize, pageOffset)
                         val cursor = db.rawQuery(limitedQuery, parameters)
                         cursor.use { c -> queryResult = processCursorToQueryResult(c, 0L) }
@@ -68,22 +79,114 @@ class DatabaseOperations(
             }
         }
 
+    /**
+     * Execute a SQL query and render the rows directly into [format]. Unlike [executeQuery] no
+     * intermediate row maps are built; the cursor is encoded as it is read.
+     *
+     * Single-table queries are paged by key rather than by offset: the result carries a
+     * `nextPageToken` that resumes after the last row returned, optionally ordered by
+     * [sortColumns]. An explicit [pageOffset] without a [pageToken] keeps OFFSET paging.
+     */
+    suspend fun executeQueryEncoded(
+        databasePath: String,
+        query: String,
+        parameters: Array<String> = emptyArray(),
+        pageSize: Int = DEFAULT_PAGE_SIZE,
+        pageOffset: Int = 0,
+        format: QueryOutputFormat = QueryOutputFormat.JSON,
+        pageToken: String? = null,
+        sortColumns: List<String> = emptyList(),
+    ): DatabaseResult<EncodedQueryResult> =
+        withContext(McpDispatchers.io) {
+            try {
+                if (!validateQuerySafety(query)) {
+                    return@withContext DatabaseResult(
+                        success = false,
+                        error = "Query contains potentially unsafe operations",
+                    )
+                }
+
+                val config = DatabaseConfig(path = databasePath, readOnly = true)
+                val token =
+                    pageToken?.let {
+                        PageToken.decode(it)
+                            ?: return@withContext DatabaseResult(
+                                success = false,
+                                error = "Invalid page token",
+                            )
+                    }
+                val limit = pageSize.coerceIn(1, MAX_QUERY_ROWS)
+
+                var encoded: EncodedQueryResult? = null
+                val executionTime = measureTimeMillis {
+                    connectionPool.withConnection(config) { db ->
+                        val plan =
+                            planKeysetPage(
+                                db,
+                                query,
+                                parameters,
+                                limit,
+                                pageOffset,
+                                token,
+                                sortColumns,
+                            )
+                        if (plan != null) {
+                            val cursor = db.rawQuery(plan.sql, parameters + plan.arguments)
+                            cursor.use { c ->
+                                val page =
+                                    resultEncoder.encode(
+                                        cursor = c,
+                                        format = format,
+                                        rowLimit = limit,
+                                        hiddenTrailingColumns = plan.keyColumns.size,
+                                    )
+                                encoded =
+                                    page.copy(
+                                        nextPageToken =
+                                            KeysetPagination.nextPageToken(
+                                                c,
+                                                plan,
+                                                page.rowCount,
+                                                page.hasMore,
+                                            )
+                                    )
+                            }
+                        } else {
+                            val limitedQuery = addLimitToQuery(query, pageSize, pageOffset)
+                            val cursor = db.rawQuery(limitedQuery, parameters)
+                            cursor.use { c -> encoded = resultEncoder.encode(c, format) }
+                        }
+                    }
+                }
+
+                DatabaseResult(
+                    success = true,
+                    data = encoded!!.copy(executionTimeMs = executionTime),
+                    executionTimeMs = executionTime,
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Query execution failed", e)
+                DatabaseResult(
+                    success = false,
+                    error = "Query failed: ${e.message}",
+                    executionTimeMs = 0,
+                )
+            }
+        }
+
     /** Insert a new record into a database table. */
     suspend fun insertRecord(
         databasePath: String,
         tableName: String,
         data: Map<String, Any?>,
     ): DatabaseResult<Long> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val config = DatabaseConfig(path = databasePath, readOnly = false)
 
-                val helper = DatabaseHelper(config, databaseFactory)
-                val database = helper.openDatabase()
-
                 var insertId = -1L
                 val executionTime = measureTimeMillis {
-                    database.use { db ->
+                    connectionPool.withConnection(config) { db ->
                         db.beginTransaction()
 
                         try {
@@ -144,16 +247,13 @@ class DatabaseOperations(
         whereClause: String,
         whereArgs: Array<String>,
     ): DatabaseResult<Int> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val config = DatabaseConfig(path = databasePath, readOnly = false)
 
-                val helper = DatabaseHelper(config, databaseFactory)
-                val database = helper.openDatabase()
-
                 var rowsUpdated = 0
                 val executionTime = measureTimeMillis {
-                    database.use { db ->
+                    connectionPool.withConnection(config) { db ->
                         db.beginTransaction()
 
                         try {
@@ -209,16 +309,13 @@ class DatabaseOperations(
         whereClause: String,
         whereArgs: Array<String>,
     ): DatabaseResult<Int> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val config = DatabaseConfig(path = databasePath, readOnly = false)
 
-                val helper = DatabaseHelper(config, databaseFactory)
-                val database = helper.openDatabase()
-
                 var rowsDeleted = 0
                 val executionTime = measureTimeMillis {
-                    database.use { db ->
+                    connectionPool.withConnection(config) { db ->
                         db.beginTransaction()
 
                         try {
@@ -252,14 +349,11 @@ class DatabaseOperations(
 
     /** Get database schema information. */
     suspend fun getDatabaseSchema(databasePath: String): DatabaseResult<DatabaseMetadata> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val config = DatabaseConfig(path = databasePath, readOnly = true)
 
-                val helper = DatabaseHelper(config, databaseFactory)
-                val database = helper.openDatabase()
-
-                database.use { db ->
+                connectionPool.withConnection(config) { db ->
                     val version = db.getVersion()
                     val tables = getTableSchemas(db)
                     val views = getViews(db)
@@ -282,6 +376,46 @@ class DatabaseOperations(
             }
         }
 
+    /**
+     * Estimate the cost of [query] from `EXPLAIN QUERY PLAN` and `sqlite_stat1`. The query is only
+     * prepared on a read-only connection, never run.
+     */
+    suspend fun explainQueryPlan(
+        databasePath: String,
+        query: String,
+    ): DatabaseResult<QueryPlanEstimate> =
+        withContext(McpDispatchers.io) {
+            try {
+                if (!validateQuerySafety(query)) {
+                    return@withContext DatabaseResult(
+                        success = false,
+                        error = "Query contains potentially unsafe operations",
+                    )
+                }
+
+                val config = DatabaseConfig(path = databasePath, readOnly = true)
+                connectionPool.withConnection(config) { db ->
+                    val steps = QueryPlanAnalyzer.explain(db, query)
+                    val tables =
+                        steps.mapNotNull { QueryPlanAnalyzer.parseAccess(it)?.table }.distinct()
+                    val statistics = QueryPlanAnalyzer.loadStatistics(db, tables)
+                    val tableColumns = SchemaIntrospector.readColumns(db)
+                    val columns =
+                        tables.associateWith { table ->
+                            tableColumns[table].orEmpty().map { it.name }
+                        }
+
+                    DatabaseResult(
+                        success = true,
+                        data = QueryPlanAnalyzer.estimate(steps, statistics, columns),
+                    )
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "Query plan failed", e)
+                DatabaseResult(success = false, error = "Query plan failed: ${e.message}")
+            }
+        }
+
     /** List available database files in the app's database directory. */
     fun listDatabaseFiles(): List<String> {
         val dbDir = File(context.getDatabasePath("dummy").parent!!)
@@ -300,24 +434,21 @@ class DatabaseOperations(
     }
 
     private fun validateQuerySafety(query: String): Boolean {
-        val trimmedQuery = query.trim().uppercase()
-
-        // Allow only SELECT statements for queries
-        if (!trimmedQuery.startsWith("SELECT")) {
-            return false
-        }
-
-        // Prevent potentially dangerous keywords
-        val dangerousKeywords =
-            listOf("DROP", "DELETE", "UPDATE", "INSERT", "ALTER", "CREATE", "PRAGMA")
-        return dangerousKeywords.none { keyword -> trimmedQuery.contains(keyword) }
+        // Exactly one SELECT: a write can't hide in a second statement, and names such as
+        // updated_at or a 'DROP' string literal no longer trip a keyword search
+        val statement = statementCache.parseOrNull(query) ?: return false
+        return statement.kind == SqlStatementKind.SELECT && statement.statementCount == 1
     }
 
     private fun addLimitToQuery(query: String, pageSize: Int, pageOffset: Int): String {
-        val trimmedQuery = query.trim()
+        val trimmedQuery = query.trim().removeSuffix(";").trimEnd()
         val limitClause = "LIMIT $pageSize OFFSET $pageOffset"
 
-        return if (trimmedQuery.uppercase().contains("LIMIT")) {
+        // Only a LIMIT on the outermost select counts, not one in a subquery or a string
+        val hasLimit =
+            statementCache.parseOrNull(query)?.hasLimit
+                ?: trimmedQuery.uppercase().contains("LIMIT")
+        return if (hasLimit) {
             // Query already has LIMIT, don't modify
             trimmedQuery
         } else {
@@ -325,6 +456,43 @@ class DatabaseOperations(
         }
     }
 
+    /**
+     * Plan a keyset page for [query], or return null to fall back to OFFSET paging. A token is only
+     * honoured for the exact query, arguments and key it was issued for.
+     */
+    private fun planKeysetPage(
+        database: SqliteDatabase,
+        query: String,
+        parameters: Array<String>,
+        pageSize: Int,
+        pageOffset: Int,
+        token: PageToken?,
+        sortColumns: List<String>,
+    ): KeysetPlan? {
+        if (token == null && pageOffset > 0) return null
+
+        val select = KeysetPagination.parseSimpleSelect(query)
+        val keyColumns =
+            select?.let { KeysetPagination.resolveKeyColumns(database, it.table, sortColumns) }
+        if (select == null || keyColumns == null) {
+            require(token == null) { "Page tokens are not supported for this query" }
+            return null
+        }
+
+        val fingerprint = KeysetPagination.fingerprint(query, parameters)
+        if (token != null) {
+            require(
+                token.fingerprint == fingerprint &&
+                    token.keyColumns == keyColumns &&
+                    token.lastKey.size == keyColumns.size &&
+                    token.keyTypes.size == keyColumns.size
+            ) {
+                "Page token does not match this query"
+            }
+        }
+        return KeysetPagination.plan(select, keyColumns, pageSize, fingerprint, token)
+    }
+
     private fun processCursorToQueryResult(cursor: Cursor, executionTime: Long): QueryResult {
         val rows = mutableListOf<Map<String, Any?>>()
         val columnNames = cursor.columnNames.toList()
@@ -359,7 +527,7 @@ class DatabaseOperations(
     }
 
     private fun getTableSchemas(database: SqliteDatabase): List<TableSchema> {
-        val tables = mutableListOf<TableSchema>()
+        val tableNames = mutableListOf<String>()
 
         val cursor =
             database.rawQuery(
@@ -369,104 +537,42 @@ class DatabaseOperations(
 
         cursor.use { c ->
             while (c.moveToNext()) {
-                val tableName = c.getString(0)
-                val columns = getTableColumns(database, tableName)
-                val indexes = getTableIndexes(database, tableName)
-                val foreignKeys = getTableForeignKeys(database, tableName)
-
-                tables.add(
-                    TableSchema(
-                        name = tableName,
-                        columns = columns,
-                        indexes = indexes,
-                        foreignKeys = foreignKeys,
-                    )
-                )
+                tableNames.add(c.getString(0))
             }
         }
 
-        return tables
-    }
-
-    private fun getTableColumns(database: SqliteDatabase, tableName: String): List<ColumnInfo> {
-        val columns = mutableListOf<ColumnInfo>()
-
-        val cursor = database.rawQuery("PRAGMA table_info($tableName)", null)
-        cursor.use { c ->
-            while (c.moveToNext()) {
-                val name = c.getString(1) // column name
-                val type = c.getString(2) // data type
-                val notNull = c.getInt(3) == 1 // not null constraint
-                val defaultValue = c.getString(4) // default value
-                val primaryKey = c.getInt(5) == 1 // primary key
-
-                columns.add(
-                    ColumnInfo(
-                        name = name,
-                        type = type,
-                        nullable = !notNull,
-                        primaryKey = primaryKey,
-                        defaultValue = defaultValue,
-                    )
-                )
-            }
-        }
-
-        return columns
-    }
-
-    private fun getTableIndexes(database: SqliteDatabase, tableName: String): List<IndexInfo> {
-        val indexes = mutableListOf<IndexInfo>()
-
-        val cursor = database.rawQuery("PRAGMA index_list($tableName)", null)
-        cursor.use { c ->
-            while (c.moveToNext()) {
-                val indexName = c.getString(1)
-                val unique = c.getInt(2) == 1
-
-                val indexColumns = getIndexColumns(database, indexName)
-
-                indexes.add(IndexInfo(name = indexName, unique = unique, columns = indexColumns))
-            }
-        }
-
-        return indexes
-    }
-
-    private fun getIndexColumns(database: SqliteDatabase, indexName: String): List<String> {
-        val columns = mutableListOf<String>()
-
-        val cursor = database.rawQuery("PRAGMA index_info($indexName)", null)
-        cursor.use { c ->
-            while (c.moveToNext()) {
-                val columnName = c.getString(2)
-                columns.add(columnName)
-            }
-        }
-
-        return columns
-    }
-
-    private fun getTableForeignKeys(
-        database: SqliteDatabase,
-        tableName: String,
-    ): List<ForeignKeyInfo> {
-        val foreignKeys = mutableListOf<ForeignKeyInfo>()
-
-        val cursor = database.rawQuery("PRAGMA foreign_key_list($tableName)", null)
-        cursor.use { c ->
-            while (c.moveToNext()) {
-                val table = c.getString(2) // referenced table
-                val from = c.getString(3) // column name
-                val to = c.getString(4) // referenced column
-
-                foreignKeys.add(
-                    ForeignKeyInfo(column = from, referencedTable = table, referencedColumn = to)
-                )
-            }
+        // One query each for all columns, indexes and foreign keys rather than several per table
+        val columns = SchemaIntrospector.readColumns(database)
+        val indexes = SchemaIntrospector.readIndexes(database)
+        val foreignKeys = SchemaIntrospector.readForeignKeys(database)
+
+        return tableNames.map { tableName ->
+            TableSchema(
+                name = tableName,
+                columns =
+                    columns[tableName].orEmpty().map { column ->
+                        ColumnInfo(
+                            name = column.name,
+                            type = column.type,
+                            nullable = !column.notNull,
+                            primaryKey = column.primaryKeyPosition > 0,
+                            defaultValue = column.defaultValue,
+                        )
+                    },
+                indexes =
+                    indexes[tableName].orEmpty().map { index ->
+                        IndexInfo(name = index.name, unique = index.unique, columns = index.columns)
+                    },
+                foreignKeys =
+                    foreignKeys[tableName].orEmpty().map { foreignKey ->
+                        ForeignKeyInfo(
+                            column = foreignKey.fromColumn,
+                            referencedTable = foreignKey.toTable,
+                            referencedColumn = foreignKey.toColumn,
+                        )
+                    },
+            )
         }
-
-        return foreignKeys
     }
 
     private fun getViews(database: SqliteDatabase): List<String> {
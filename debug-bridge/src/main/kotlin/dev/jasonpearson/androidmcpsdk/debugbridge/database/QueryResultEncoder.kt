@@ -0,0 +1,295 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database
+
+import android.database.Cursor
+import java.util.Base64
+
+/** Output formats supported by [QueryResultEncoder]. */
+enum class QueryOutputFormat {
+    JSON,
+    CSV,
+    TABLE;
+
+    companion object {
+        /** Resolve a tool's `outputFormat` argument, or null if it is not recognised. */
+        fun fromName(name: String): QueryOutputFormat? =
+            when (name.lowercase()) {
+                "json" -> JSON
+                "csv" -> CSV
+                "table" -> TABLE
+                else -> null
+            }
+    }
+}
+
+/** Query result that has already been rendered into its output format. */
+data class EncodedQueryResult(
+    val text: String,
+    val format: QueryOutputFormat,
+    val columnNames: List<String>,
+    val rowCount: Int,
+    val executionTimeMs: Long,
+    val hasMore: Boolean = false,
+    val nextPageToken: String? = null,
+)
+
+/**
+ * Renders query results as JSON, CSV or a text table.
+ *
+ * [encode] streams rows straight from the cursor into a per-thread buffer that is reused across
+ * calls. Values are written with the cursor's typed getters, so no per-row map or boxed value is
+ * allocated regardless of how wide the table is.
+ */
+class QueryResultEncoder(private val maxRows: Int = DEFAULT_MAX_ROWS) {
+
+    companion object {
+        const val DEFAULT_MAX_ROWS = 1000
+        private const val INITIAL_BUFFER_SIZE = 8 * 1024
+        private const val MAX_RETAINED_BUFFER_SIZE = 256 * 1024
+        private const val NO_DATA = "No data returned"
+
+        private val buffers = ThreadLocal.withInitial { StringBuilder(INITIAL_BUFFER_SIZE) }
+    }
+
+    /**
+     * Encode up to [rowLimit] rows from [cursor], starting at its current position. The last
+     * [hiddenTrailingColumns] columns are left out of the output, which lets callers select
+     * bookkeeping values such as pagination keys alongside the data. The cursor is left positioned
+     * after the last row read and is not closed.
+     */
+    fun encode(
+        cursor: Cursor,
+        format: QueryOutputFormat,
+        executionTimeMs: Long = 0,
+        rowLimit: Int = maxRows,
+        hiddenTrailingColumns: Int = 0,
+    ): EncodedQueryResult {
+        val buffer = acquireBuffer()
+        try {
+            val allColumns = cursor.columnNames
+            val columnNames =
+                Array(allColumns.size - hiddenTrailingColumns.coerceIn(0, allColumns.size)) {
+                    allColumns[it]
+                }
+            val limit = rowLimit.coerceIn(0, maxRows)
+            val rowCount =
+                when (format) {
+                    QueryOutputFormat.JSON -> writeJson(cursor, columnNames, limit, buffer)
+                    QueryOutputFormat.CSV -> writeCsv(cursor, columnNames, limit, buffer)
+                    QueryOutputFormat.TABLE -> writeTable(cursor, columnNames, limit, buffer)
+                }
+            val hasMore = rowCount >= limit && cursor.moveToNext()
+
+            return EncodedQueryResult(
+                text = buffer.toString(),
+                format = format,
+                columnNames = columnNames.toList(),
+                rowCount = rowCount,
+                executionTimeMs = executionTimeMs,
+                hasMore = hasMore,
+            )
+        } finally {
+            releaseBuffer(buffer)
+        }
+    }
+
+    private fun writeJson(
+        cursor: Cursor,
+        columnNames: Array<String>,
+        limit: Int,
+        out: StringBuilder,
+    ): Int {
+        // Quote and escape each key once per query rather than once per cell
+        val keys =
+            Array(columnNames.size) { i ->
+                StringBuilder().also { appendJsonString(columnNames[i], it) }.append(':')
+            }
+
+        var rowCount = 0
+        out.append('[')
+        while (rowCount < limit && cursor.moveToNext()) {
+            if (rowCount > 0) out.append(',')
+            out.append('{')
+            for (i in keys.indices) {
+                if (i > 0) out.append(',')
+                out.append(keys[i])
+                appendJsonCell(cursor, i, out)
+            }
+            out.append('}')
+            rowCount++
+        }
+        out.append(']')
+        return rowCount
+    }
+
+    private fun writeCsv(
+        cursor: Cursor,
+        columnNames: Array<String>,
+        limit: Int,
+        out: StringBuilder,
+    ): Int {
+        appendCsvHeader(columnNames, out)
+
+        var rowCount = 0
+        while (rowCount < limit && cursor.moveToNext()) {
+            for (i in columnNames.indices) {
+                if (i > 0) out.append(',')
+                when (cursor.getType(i)) {
+                    Cursor.FIELD_TYPE_NULL -> Unit
+                    Cursor.FIELD_TYPE_INTEGER -> out.append(cursor.getLong(i))
+                    Cursor.FIELD_TYPE_FLOAT -> out.append(cursor.getDouble(i))
+                    Cursor.FIELD_TYPE_BLOB -> out.append(encodeBlob(cursor.getBlob(i)))
+                    else -> appendCsvField(cursor.getString(i) ?: "", out)
+                }
+            }
+            out.append('\n')
+            rowCount++
+        }
+        return rowCount
+    }
+
+    /**
+     * Tables need every column width before the first row is written, so the cursor is read twice:
+     * once to measure and once to render.
+     */
+    private fun writeTable(
+        cursor: Cursor,
+        columnNames: Array<String>,
+        limit: Int,
+        out: StringBuilder,
+    ): Int {
+        val startPosition = cursor.position
+        val widths = IntArray(columnNames.size) { columnNames[it].length }
+        val scratch = StringBuilder(64)
+
+        var rowCount = 0
+        while (rowCount < limit && cursor.moveToNext()) {
+            for (i in columnNames.indices) {
+                scratch.setLength(0)
+                appendPlainCell(cursor, i, scratch)
+                if (scratch.length > widths[i]) widths[i] = scratch.length
+            }
+            rowCount++
+        }
+
+        if (rowCount == 0) {
+            out.append(NO_DATA)
+            return 0
+        }
+
+        appendTableHeader(columnNames, widths, out)
+        cursor.moveToPosition(startPosition)
+        repeat(rowCount) {
+            cursor.moveToNext()
+            for (i in columnNames.indices) {
+                if (i > 0) out.append(" | ")
+                val start = out.length
+                appendPlainCell(cursor, i, out)
+                pad(out, widths[i] - (out.length - start))
+            }
+            out.append('\n')
+        }
+        return rowCount
+    }
+
+    private fun appendJsonCell(cursor: Cursor, index: Int, out: StringBuilder) {
+        when (cursor.getType(index)) {
+            Cursor.FIELD_TYPE_NULL -> out.append("null")
+            Cursor.FIELD_TYPE_INTEGER -> out.append(cursor.getLong(index))
+            Cursor.FIELD_TYPE_FLOAT -> appendJsonDouble(cursor.getDouble(index), out)
+            Cursor.FIELD_TYPE_BLOB -> appendJsonString(encodeBlob(cursor.getBlob(index)), out)
+            else -> appendJsonString(cursor.getString(index) ?: "", out)
+        }
+    }
+
+    private fun appendPlainCell(cursor: Cursor, index: Int, out: StringBuilder) {
+        when (cursor.getType(index)) {
+            Cursor.FIELD_TYPE_NULL -> Unit
+            Cursor.FIELD_TYPE_INTEGER -> out.append(cursor.getLong(index))
+            Cursor.FIELD_TYPE_FLOAT -> out.append(cursor.getDouble(index))
+            Cursor.FIELD_TYPE_BLOB -> out.append(encodeBlob(cursor.getBlob(index)))
+            else -> out.append(cursor.getString(index) ?: "")
+        }
+    }
+
+    private fun appendJsonDouble(value: Double, out: StringBuilder) {
+        if (value.isFinite()) out.append(value) else out.append("null")
+    }
+
+    private fun appendJsonString(value: String, out: StringBuilder) {
+        out.append('"')
+        for (c in value) {
+            when (c) {
+                '"' -> out.append("\\\"")
+                '\\' -> out.append("\\\\")
+                '\n' -> out.append("\\n")
+                '\r' -> out.append("\\r")
+                '\t' -> out.append("\\t")
+                else ->
+                    if (c < ' ') {
+                        out.append("\\u").append(String.format("%04x", c.code))
+                    } else {
+                        out.append(c)
+                    }
+            }
+        }
+        out.append('"')
+    }
+
+    private fun appendCsvHeader(columnNames: Array<String>, out: StringBuilder) {
+        columnNames.forEachIndexed { i, name ->
+            if (i > 0) out.append(',')
+            appendCsvField(name, out)
+        }
+        out.append('\n')
+    }
+
+    private fun appendCsvField(value: String, out: StringBuilder) {
+        val needsQuoting = value.any { it == ',' || it == '"' || it == '\n' || it == '\r' }
+        if (!needsQuoting) {
+            out.append(value)
+            return
+        }
+        out.append('"')
+        for (c in value) {
+            if (c == '"') out.append('"')
+            out.append(c)
+        }
+        out.append('"')
+    }
+
+    private fun appendTableHeader(
+        columnNames: Array<String>,
+        widths: IntArray,
+        out: StringBuilder,
+    ) {
+        columnNames.forEachIndexed { i, name ->
+            if (i > 0) out.append(" | ")
+            out.append(name)
+            pad(out, widths[i] - name.length)
+        }
+        out.append('\n')
+        widths.forEachIndexed { i, width ->
+            if (i > 0) out.append("-|-")
+            repeat(width) { out.append('-') }
+        }
+        out.append('\n')
+    }
+
+    private fun pad(out: StringBuilder, count: Int) {
+        repeat(count) { out.append(' ') }
+    }
+
+    private fun encodeBlob(blob: ByteArray?): String =
+        if (blob == null) "" else Base64.getEncoder().encodeToString(blob)
+
+    private fun acquireBuffer(): StringBuilder = buffers.get().also { it.setLength(0) }
+
+    private fun releaseBuffer(buffer: StringBuilder) {
+        // Don't pin a huge buffer to the thread after an unusually large result
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.set(StringBuilder(INITIAL_BUFFER_SIZE))
+        } else {
+            buffer.setLength(0)
+        }
+    }
+}
@@ -132,7 +132,7 @@ class SqlCipherDatabaseFactory : SqliteDatabaseFactory {
  * val sqlCipherFactory = SqlCipherDatabaseFactory()
  * val databaseOperations = DatabaseOperations(
  *     context = context,
- *     databaseFactory = sqlCipherFactory
+ *     connectionPool = DatabaseConnectionPool(sqlCipherFactory)
  * )
  *
  * val config = DatabaseConfig(
@@ -0,0 +1,230 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.profiler
+
+import android.content.ContentValues
+import android.database.Cursor
+import android.database.CursorWrapper
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+
+/**
+ * Reflection proxies over the androidx.sqlite interfaces that time every statement the app runs
+ * and report it to a [SqlQueryProfiler].
+ *
+ * The factory's helpers hand out profiled databases. Profiled databases time `query`, `execSQL`,
+ * `insert`, `update` and `delete`, and hand out profiled statements. Cursors are filled lazily, so
+ * a query is timed from the `query` call until the cursor first moves or reports its count, which
+ * is where SQLite actually does the work.
+ */
+internal class ProfilingSqliteProxies(private val profiler: SqlQueryProfiler) {
+
+    companion object {
+        private const val PACKAGE = "androidx.sqlite.db"
+        private val openHelperClass by lazy { Class.forName("$PACKAGE.SupportSQLiteOpenHelper") }
+        private val factoryClass by lazy { Class.forName("${openHelperClass.name}\$Factory") }
+        private val databaseClass by lazy { Class.forName("$PACKAGE.SupportSQLiteDatabase") }
+        private val statementClass by lazy { Class.forName("$PACKAGE.SupportSQLiteStatement") }
+        private val programClass by lazy { Class.forName("$PACKAGE.SupportSQLiteProgram") }
+        private val queryClass by lazy { Class.forName("$PACKAGE.SupportSQLiteQuery") }
+    }
+
+    fun wrapFactory(factory: Any): Any {
+        require(factoryClass.isInstance(factory)) {
+            "${factory.javaClass.name} is not a SupportSQLiteOpenHelper.Factory"
+        }
+        return proxy(factoryClass, factory) { method, _, invoke ->
+            val helper = invoke()
+            if (method.name == "create" && helper != null) wrapOpenHelper(helper) else helper
+        }
+    }
+
+    private fun wrapOpenHelper(helper: Any): Any {
+        // Room asks for the database on every transaction; hand out one wrapper per database
+        var wrapped: Pair<Any, Any>? = null
+        return proxy(openHelperClass, helper) { method, _, invoke ->
+            val result = invoke()
+            if (
+                result == null ||
+                    (method.name != "getWritableDatabase" && method.name != "getReadableDatabase")
+            ) {
+                return@proxy result
+            }
+            synchronized(this) {
+                wrapped?.takeIf { it.first === result }?.second
+                    ?: wrapDatabase(result).also { wrapped = result to it }
+            }
+        }
+    }
+
+    private fun wrapDatabase(database: Any): Any =
+        proxy(databaseClass, database) { method, args, invoke ->
+            when (method.name) {
+                "query" -> profileQuery(args, invoke)
+                "execSQL" -> timed(args[0] as String, bindShape(args.getOrNull(1)), invoke)
+                "insert" ->
+                    timed("INSERT INTO ${args[0]}", valuesShape(args.getOrNull(2)), invoke)
+                "update" ->
+                    timed(
+                        "UPDATE ${args[0]} WHERE ${args.getOrNull(3)}",
+                        valuesShape(args.getOrNull(2)),
+                        invoke,
+                    )
+                "delete" ->
+                    timed(
+                        "DELETE FROM ${args[0]} WHERE ${args.getOrNull(1)}",
+                        bindShape(args.getOrNull(2)),
+                        invoke,
+                    )
+                "compileStatement" -> invoke()?.let { wrapStatement(args[0] as String, it) }
+                else -> invoke()
+            }
+        }
+
+    private fun wrapStatement(sql: String, statement: Any): Any {
+        val bound = BindRecorder()
+        return proxy(statementClass, statement) { method, args, invoke ->
+            bound.onCall(method, args)
+            if (method.name.startsWith("execute") || method.name.startsWith("simpleQueryFor")) {
+                timed(sql, bound.shape(), invoke)
+            } else {
+                invoke()
+            }
+        }
+    }
+
+    private fun profileQuery(args: Array<out Any?>, invoke: () -> Any?): Any? {
+        val query = args[0]
+        val sql: String
+        val shape: String
+        if (query is String) {
+            sql = query
+            shape = bindShape(args.getOrNull(1))
+        } else {
+            sql = queryClass.getMethod("getSql").invoke(query) as String
+            shape = queryShape(query)
+        }
+        val thread = Thread.currentThread()
+        val start = System.nanoTime()
+        val cursor =
+            try {
+                invoke() as Cursor?
+            } catch (e: Throwable) {
+                profiler.recordShape(sql, shape, System.nanoTime() - start, thread)
+                throw e
+            }
+        return cursor?.let { ProfilingCursor(it, sql, shape, start, thread) }
+    }
+
+    private fun timed(sql: String, shape: String, invoke: () -> Any?): Any? {
+        val start = System.nanoTime()
+        try {
+            return invoke()
+        } finally {
+            profiler.recordShape(sql, shape, System.nanoTime() - start, Thread.currentThread())
+        }
+    }
+
+    /** Bind shape of a `SupportSQLiteQuery`, captured by letting it bind to a recorder */
+    private fun queryShape(query: Any?): String =
+        try {
+            val recorder = BindRecorder()
+            val program =
+                Proxy.newProxyInstance(programClass.classLoader, arrayOf(programClass)) { _, m, a ->
+                    recorder.onCall(m, a ?: emptyArray())
+                    null
+                }
+            queryClass.getMethod("bindTo", programClass).invoke(query, program)
+            recorder.shape()
+        } catch (e: ReflectiveOperationException) {
+            "(?)"
+        }
+
+    private fun bindShape(args: Any?): String =
+        (args as? Array<*>)?.let { SqlQueryProfiler.bindShape(it.toList()) } ?: "()"
+
+    private fun valuesShape(values: Any?): String =
+        (values as? ContentValues)?.keySet()?.sorted()?.joinToString(", ", "(", ")") ?: "()"
+
+    /** Remembers the types of `bindX(index, value)` calls on a statement or program */
+    private class BindRecorder {
+        private val types = sortedMapOf<Int, String>()
+
+        @Synchronized
+        fun onCall(method: Method, args: Array<out Any?>) {
+            when (method.name) {
+                "clearBindings" -> types.clear()
+                "bindNull" -> types[args[0] as Int] = "null"
+                "bindLong" -> types[args[0] as Int] = "Long"
+                "bindDouble" -> types[args[0] as Int] = "Double"
+                "bindString" -> types[args[0] as Int] = "String"
+                "bindBlob" -> types[args[0] as Int] = "Blob"
+            }
+        }
+
+        @Synchronized fun shape(): String = types.values.joinToString(", ", "(", ")")
+    }
+
+    private inner class ProfilingCursor(
+        cursor: Cursor,
+        private val sql: String,
+        private val shape: String,
+        private val start: Long,
+        private val thread: Thread,
+    ) : CursorWrapper(cursor) {
+
+        private var recorded = false
+
+        private fun record() {
+            if (recorded) return
+            recorded = true
+            profiler.recordShape(sql, shape, System.nanoTime() - start, thread)
+        }
+
+        private inline fun <T> filling(block: () -> T): T = block().also { record() }
+
+        override fun getCount(): Int = filling { super.getCount() }
+
+        override fun moveToFirst(): Boolean = filling { super.moveToFirst() }
+
+        override fun moveToNext(): Boolean = filling { super.moveToNext() }
+
+        override fun moveToPosition(position: Int): Boolean = filling {
+            super.moveToPosition(position)
+        }
+
+        override fun moveToLast(): Boolean = filling { super.moveToLast() }
+
+        override fun close() {
+            record()
+            super.close()
+        }
+    }
+
+    private fun proxy(
+        type: Class<*>,
+        delegate: Any,
+        handler: (method: Method, args: Array<out Any?>, invoke: () -> Any?) -> Any?,
+    ): Any =
+        Proxy.newProxyInstance(
+            type.classLoader,
+            arrayOf(type),
+            InvocationHandler { proxy, method, args ->
+                val arguments = args ?: emptyArray()
+                when {
+                    method.declaringClass != Any::class.java ->
+                        handler(method, arguments) { invoke(method, delegate, arguments) }
+                    method.name == "equals" -> proxy === arguments[0]
+                    method.name == "hashCode" -> System.identityHashCode(proxy)
+                    else -> "Profiling($delegate)"
+                }
+            },
+        )
+
+    private fun invoke(method: Method, delegate: Any, args: Array<out Any?>): Any? =
+        try {
+            method.invoke(delegate, *args)
+        } catch (e: InvocationTargetException) {
+            throw e.targetException
+        }
+}
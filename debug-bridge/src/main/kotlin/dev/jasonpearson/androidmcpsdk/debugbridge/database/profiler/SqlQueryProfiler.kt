@@ -0,0 +1,232 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.profiler
+
+import android.os.Looper
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.features.tools.LatencyHistogram
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+import kotlinx.serialization.Serializable
+
+/** Aggregated timings for one normalized SQL statement */
+@Serializable
+data class SqlStatementStats(
+    val sql: String,
+    val bindShape: String,
+    val count: Long,
+    val mainThreadCount: Long,
+    val totalMs: Double,
+    val meanMs: Double,
+    val p50Ms: Double,
+    val p95Ms: Double,
+    val maxMs: Double,
+    val lastThread: String,
+)
+
+/** One execution that took longer than the slow query threshold */
+@Serializable
+data class SlowQuery(
+    val sql: String,
+    val bindShape: String,
+    val durationMs: Double,
+    val thread: String,
+    val mainThread: Boolean,
+    val timestampMs: Long,
+)
+
+enum class SqlStatementOrder {
+    TOTAL_TIME,
+    P95,
+    COUNT,
+    MAIN_THREAD,
+}
+
+/**
+ * Profiles the SQL the host app itself runs, as opposed to the queries agents send through
+ * [dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseOperations].
+ *
+ * The app opts in where it builds its database, since Room only accepts an open helper factory at
+ * build time: `profiler.attachToRoomBuilder(builder)` for Room, or [wrapOpenHelperFactory] for any
+ * `SupportSQLiteOpenHelper.Factory`. Like `RoomSchemaAnalyzer`, everything goes through reflection
+ * so neither Room nor androidx.sqlite is a dependency of this module.
+ *
+ * Statements are normalized (literals and `IN` lists collapsed) and aggregated into at most
+ * [maxStatements] entries, least recently run evicted first, each with a latency histogram. Runs
+ * slower than [slowThresholdMs] also go to a ring buffer of the last [slowLogSize].
+ */
+class SqlQueryProfiler(
+    private val maxStatements: Int = DEFAULT_MAX_STATEMENTS,
+    private val slowLogSize: Int = DEFAULT_SLOW_LOG_SIZE,
+) {
+
+    companion object {
+        private const val TAG = "SqlQueryProfiler"
+        const val DEFAULT_MAX_STATEMENTS = 256
+        const val DEFAULT_SLOW_LOG_SIZE = 100
+        // One frame at 60 Hz: anything slower drops a frame if it runs on the main thread
+        const val DEFAULT_SLOW_THRESHOLD_MS = 16L
+
+        private const val FACTORY_CLASS = "androidx.sqlite.db.SupportSQLiteOpenHelper\$Factory"
+        private const val FRAMEWORK_FACTORY_CLASS =
+            "androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory"
+        private const val MAX_NORMALIZED_CACHE = 1024
+
+        private val STRING_LITERAL = Regex("'(?:[^']|'')*'")
+        private val NUMBER_LITERAL = Regex("\\b\\d+(?:\\.\\d+)?\\b")
+        private val IN_LIST = Regex("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)")
+        private val WHITESPACE = Regex("\\s+")
+
+        private val INSTANCE by lazy { SqlQueryProfiler() }
+
+        /** The profiler the database tools report on */
+        fun getInstance(): SqlQueryProfiler = INSTANCE
+
+        /** [sql] with literals replaced by `?`, so runs differing only in values group together */
+        fun normalize(sql: String): String =
+            sql.replace(STRING_LITERAL, "?")
+                .replace(NUMBER_LITERAL, "?")
+                .replace(IN_LIST, "(?, ...)")
+                .replace(WHITESPACE, " ")
+                .trim()
+
+        /** Types of the bound values, e.g. `(Long, String, null)` */
+        fun bindShape(args: List<Any?>): String =
+            args.joinToString(", ", "(", ")") { arg ->
+                when (arg) {
+                    null -> "null"
+                    is ByteArray -> "Blob"
+                    else -> arg::class.java.simpleName
+                }
+            }
+    }
+
+    private class StatementMetrics(val sql: String) {
+        val latency = LatencyHistogram()
+        val mainThread = LongAdder()
+        @Volatile var bindShape = "()"
+        @Volatile var lastThread = ""
+    }
+
+    private val lock = Any()
+    private val statements = LinkedHashMap<String, StatementMetrics>(64, 0.75f, true)
+    private val slowLog = ArrayDeque<SlowQuery>()
+    // Apps run the same few statement strings over and over; don't re-run the regexes each time
+    private val normalized = ConcurrentHashMap<String, String>()
+
+    @Volatile var slowThresholdMs: Long = DEFAULT_SLOW_THRESHOLD_MS
+
+    /** Turn recording off without unhooking the app's database */
+    @Volatile var enabled: Boolean = true
+
+    /** Record one execution of [sql] with [bindArgs] that took [durationNanos] on [thread] */
+    fun record(
+        sql: String,
+        bindArgs: List<Any?>,
+        durationNanos: Long,
+        thread: Thread = Thread.currentThread(),
+    ) {
+        recordShape(sql, bindShape(bindArgs), durationNanos, thread)
+    }
+
+    internal fun recordShape(sql: String, shape: String, durationNanos: Long, thread: Thread) {
+        if (!enabled) return
+        val key =
+            normalized[sql]
+                ?: normalize(sql).also {
+                    if (normalized.size >= MAX_NORMALIZED_CACHE) normalized.clear()
+                    normalized[sql] = it
+                }
+        val onMainThread = thread === Looper.getMainLooper()?.thread
+        val metrics =
+            synchronized(lock) {
+                statements.getOrPut(key) { StatementMetrics(key) }.also {
+                    if (statements.size > maxStatements) {
+                        val eldest = statements.keys.iterator()
+                        eldest.next()
+                        eldest.remove()
+                    }
+                }
+            }
+        metrics.latency.record(durationNanos / 1_000)
+        if (onMainThread) metrics.mainThread.increment()
+        metrics.bindShape = shape
+        metrics.lastThread = thread.name
+
+        val durationMs = durationNanos / 1_000_000.0
+        if (durationMs >= slowThresholdMs) {
+            val now = System.currentTimeMillis()
+            val entry = SlowQuery(key, shape, durationMs, thread.name, onMainThread, now)
+            synchronized(lock) {
+                if (slowLog.size >= slowLogSize) slowLog.removeFirst()
+                slowLog.addLast(entry)
+            }
+            if (onMainThread) Log.w(TAG, "Slow query on main thread (${durationMs}ms): $key")
+        }
+    }
+
+    /** The [limit] statements that cost the most by [order] */
+    fun topStatements(
+        limit: Int = 20,
+        order: SqlStatementOrder = SqlStatementOrder.TOTAL_TIME,
+    ): List<SqlStatementStats> {
+        val snapshot = synchronized(lock) { statements.values.toList() }.map { it.stats() }
+        val sorted =
+            when (order) {
+                SqlStatementOrder.TOTAL_TIME -> snapshot.sortedByDescending { it.totalMs }
+                SqlStatementOrder.P95 -> snapshot.sortedByDescending { it.p95Ms }
+                SqlStatementOrder.COUNT -> snapshot.sortedByDescending { it.count }
+                SqlStatementOrder.MAIN_THREAD ->
+                    snapshot
+                        .filter { it.mainThreadCount > 0 }
+                        .sortedByDescending { it.mainThreadCount }
+            }
+        return sorted.take(limit)
+    }
+
+    /** The most recent slow runs, newest first */
+    fun slowQueries(limit: Int = slowLogSize): List<SlowQuery> =
+        synchronized(lock) { slowLog.reversed().take(limit) }
+
+    fun reset() {
+        synchronized(lock) {
+            statements.clear()
+            slowLog.clear()
+        }
+    }
+
+    /** Wrap a `SupportSQLiteOpenHelper.Factory` so every database it opens is profiled */
+    fun wrapOpenHelperFactory(factory: Any): Any = ProfilingSqliteProxies(this).wrapFactory(factory)
+
+    /**
+     * Make a `RoomDatabase.Builder` open its database through a profiled framework open helper.
+     * Returns false if Room or androidx.sqlite isn't available or the builder can't be configured.
+     */
+    fun attachToRoomBuilder(builder: Any): Boolean =
+        try {
+            val factoryClass = Class.forName(FACTORY_CLASS)
+            val framework = Class.forName(FRAMEWORK_FACTORY_CLASS).getConstructor().newInstance()
+            builder.javaClass
+                .getMethod("openHelperFactory", factoryClass)
+                .invoke(builder, wrapOpenHelperFactory(framework))
+            Log.i(TAG, "Profiling Room database built by ${builder.javaClass.name}")
+            true
+        } catch (e: ReflectiveOperationException) {
+            Log.w(TAG, "Could not attach SQL profiler to Room builder", e)
+            false
+        }
+
+    private fun StatementMetrics.stats(): SqlStatementStats {
+        val count = latency.totalCount
+        return SqlStatementStats(
+            sql = sql,
+            bindShape = bindShape,
+            count = count,
+            mainThreadCount = mainThread.sum(),
+            totalMs = latency.meanMicros * count / 1000.0,
+            meanMs = latency.meanMicros / 1000.0,
+            p50Ms = latency.percentileMicros(50.0) / 1000.0,
+            p95Ms = latency.percentileMicros(95.0) / 1000.0,
+            maxMs = latency.maxMicros / 1000.0,
+            lastThread = lastThread,
+        )
+    }
+}
@@ -1,30 +1,52 @@
 package dev.jasonpearson.androidmcpsdk.debugbridge.database.query
 
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseOperations
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.OptimizationType
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.QueryOptimization
-import kotlinx.coroutines.Dispatchers
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlResultColumn
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlSource
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatement
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatementCache
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatementKind
 import kotlinx.coroutines.withContext
 
-/** Intelligent query validator that validates queries against cached schemas. */
-class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
+/**
+ * Intelligent query validator that validates queries against cached schemas.
+ *
+ * With [databaseOperations], cost estimates and index advice come from SQLite's own query plan
+ * and `sqlite_stat1` row counts (see [QueryPlanAnalyzer]). Without it, or when the plan can't be
+ * read, they fall back to heuristics over the parsed query.
+ */
+class IntelligentQueryValidator(
+    private val schemaCache: DatabaseSchemaCache,
+    private val databaseOperations: DatabaseOperations? = null,
+) {
 
     companion object {
         private const val TAG = "QueryValidator"
-        private val DANGEROUS_KEYWORDS =
+        private val DANGEROUS_KINDS =
             setOf(
-                "DROP",
-                "DELETE",
-                "UPDATE",
-                "INSERT",
-                "ALTER",
-                "CREATE",
-                "PRAGMA",
-                "ATTACH",
-                "DETACH",
-                "VACUUM",
+                SqlStatementKind.DROP,
+                SqlStatementKind.DELETE,
+                SqlStatementKind.UPDATE,
+                SqlStatementKind.INSERT,
+                SqlStatementKind.ALTER,
+                SqlStatementKind.CREATE,
+                SqlStatementKind.PRAGMA,
+                SqlStatementKind.ATTACH,
+                SqlStatementKind.DETACH,
+                SqlStatementKind.VACUUM,
             )
+        // Names every rowid table answers to without declaring them
+        private val ROWID_ALIASES = setOf("rowid", "oid", "_rowid_")
+
+        // Scanning a table this small costs less than maintaining an index on it
+        private const val SMALL_TABLE_ROWS = 1_000L
+        private val EQUALITY_OPERATORS = setOf("=", "==", "IN")
+        private val RANGE_OPERATORS = setOf("<", ">", "<=", ">=", "BETWEEN")
     }
 
     data class QueryValidationResult(
@@ -55,6 +77,9 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         val complexity: ComplexityLevel,
         val indexUsage: IndexUsage,
         val scanType: ScanType,
+        val rowsExamined: Long = estimatedRows,
+        /** The query plan as an indented tree, when it came from SQLite */
+        val plan: List<String> = emptyList(),
     )
 
     data class IndexRecommendation(
@@ -92,8 +117,27 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         val groupByColumns: List<String>,
         val hasSubqueries: Boolean,
         val sql: String,
+        val predicates: List<ColumnPredicate> = emptyList(),
+        val statement: SqlStatement? = null,
+    )
+
+    /**
+     * A comparison on a column in a WHERE or ON clause, e.g. `u.age > ?`. [joinedTo] is the
+     * qualifier of the other side when the column is compared to another table's column.
+     */
+    data class ColumnPredicate(
+        val qualifier: String?,
+        val column: String,
+        val kind: PredicateKind,
+        val joinedTo: String? = null,
     )
 
+    enum class PredicateKind {
+        EQUALITY,
+        RANGE,
+        OTHER,
+    }
+
     enum class ErrorType {
         SCHEMA_UNAVAILABLE,
         TABLE_NOT_FOUND,
@@ -142,13 +186,15 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         UNKNOWN,
     }
 
+    private val statementCache = SqlStatementCache.getInstance()
+
     /** Validate a query against the cached schema. */
     suspend fun validateQuery(
         databaseUri: String,
         query: String,
         parameters: Map<String, Any> = emptyMap(),
     ): QueryValidationResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             Log.d(TAG, "Validating query for database: $databaseUri")
 
             val schema =
@@ -171,11 +217,21 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
 
             try {
                 val parsedQuery = parseQuery(query)
-                val errors = validateQueryAgainstSchema(parsedQuery, schema)
-                val warnings = analyzeQueryWarnings(parsedQuery, schema)
-                val optimizations = suggestOptimizations(parsedQuery, schema)
-                val cost = estimateQueryCost(parsedQuery, schema)
-                val indexes = recommendIndexes(parsedQuery, schema)
+                val planResult = databaseOperations?.explainQueryPlan(databaseUri, query)
+                val plan = planResult?.data
+                val errors =
+                    validateQueryAgainstSchema(parsedQuery, schema) +
+                        listOfNotNull(planResult?.error?.let(::planError))
+                val indexes =
+                    if (plan != null) recommendIndexes(parsedQuery, plan)
+                    else recommendIndexes(parsedQuery, schema)
+                val warnings =
+                    if (plan != null) analyzeQueryWarnings(parsedQuery, plan, indexes)
+                    else analyzeQueryWarnings(parsedQuery, schema)
+                val optimizations = suggestOptimizations(parsedQuery, plan)
+                val cost =
+                    if (plan != null) estimateQueryCost(plan)
+                    else estimateQueryCost(parsedQuery, schema)
 
                 QueryValidationResult(
                     isValid = errors.isEmpty(),
@@ -212,7 +268,7 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         pageSize: Int,
         sortColumns: List<String>,
     ): PaginationValidationResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val schema =
                 schemaCache.getOrLoadSchema(databaseUri)
                     ?: return@withContext PaginationValidationResult.SCHEMA_UNAVAILABLE
@@ -220,8 +276,8 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
             try {
                 val parsedQuery = parseQuery(query)
                 val hasAppropriateIndexes = validatePaginationIndexes(query, sortColumns, schema)
-                val optimizedQuery = optimizeForPagination(query, sortColumns, schema)
-                val cursorFields = suggestCursorFields(parsedQuery, schema)
+                val optimizedQuery = optimizeForPagination(query, sortColumns, pageSize, schema)
+                val cursorFields = suggestCursorFields(parsedQuery, sortColumns, schema)
                 val indexRecommendations =
                     suggestPaginationIndexes(parsedQuery, sortColumns, schema)
 
@@ -237,35 +293,53 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
             }
         }
 
+    /** Parse [query] through the shared statement cache; throws if it isn't valid SQLite */
     private fun parseQuery(query: String): ParsedQuery {
-        val trimmedQuery = query.trim().uppercase()
-
-        // Simple SQL parsing - in production, we'd use a proper SQL parser
+        val statement = statementCache.parse(query)
         val queryType =
-            when {
-                trimmedQuery.startsWith("SELECT") -> QueryType.SELECT
-                trimmedQuery.startsWith("INSERT") -> QueryType.INSERT
-                trimmedQuery.startsWith("UPDATE") -> QueryType.UPDATE
-                trimmedQuery.startsWith("DELETE") -> QueryType.DELETE
-                trimmedQuery.startsWith("CREATE") -> QueryType.CREATE
-                trimmedQuery.startsWith("DROP") -> QueryType.DROP
+            when (statement.kind) {
+                SqlStatementKind.SELECT -> QueryType.SELECT
+                SqlStatementKind.INSERT -> QueryType.INSERT
+                SqlStatementKind.UPDATE -> QueryType.UPDATE
+                SqlStatementKind.DELETE -> QueryType.DELETE
+                SqlStatementKind.CREATE -> QueryType.CREATE
+                SqlStatementKind.DROP -> QueryType.DROP
                 else -> QueryType.UNKNOWN
             }
 
-        // TODO: Implement proper SQL parsing
-        // For now, return a basic parsed query structure
+        val predicates =
+            statement.predicates
+                .map { predicate ->
+                    val other = predicate.other
+                    val kind =
+                        when {
+                            // Under OR or NOT, or against a column of an unknown table, no index
+                            // lookup can use it directly
+                            !predicate.conjunctive -> PredicateKind.OTHER
+                            other != null && other.qualifier == null -> PredicateKind.OTHER
+                            predicate.operator in EQUALITY_OPERATORS -> PredicateKind.EQUALITY
+                            predicate.operator in RANGE_OPERATORS -> PredicateKind.RANGE
+                            else -> PredicateKind.OTHER
+                        }
+                    val column = predicate.column
+                    ColumnPredicate(column.qualifier, column.name, kind, other?.qualifier)
+                }
+                .distinct()
+        val columns =
+            listOfNotNull("*".takeIf { statement.selectsAll }) +
+                statement.resultColumns.map { it.name }.distinct()
         return ParsedQuery(
             type = queryType,
-            tables = extractTables(query),
-            columns = extractColumns(query),
-            whereColumns = extractWhereColumns(query),
-            joinColumns = extractJoinColumns(query),
-            orderByColumns = extractOrderByColumns(query),
-            groupByColumns = extractGroupByColumns(query),
-            hasSubqueries =
-                query.uppercase().contains("SELECT") &&
-                    query.count { it.toString().uppercase() == "SELECT" } > 1,
+            tables = statement.tables.map { it.name }.distinct(),
+            columns = columns,
+            whereColumns = predicates.map { it.column }.distinct(),
+            joinColumns = statement.joinColumns.map { it.name }.distinct(),
+            orderByColumns = statement.orderBy.map { it.name },
+            groupByColumns = statement.groupBy.map { it.name },
+            hasSubqueries = statement.subqueryCount > 0,
             sql = query,
+            predicates = predicates,
+            statement = statement,
         )
     }
 
@@ -276,7 +350,13 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         val errors = mutableListOf<QueryError>()
 
         // Check for unsafe operations
-        if (DANGEROUS_KEYWORDS.any { parsedQuery.sql.uppercase().contains(it) }) {
+        val statement = parsedQuery.statement
+        // A write can hide after the first statement, so more than one is unsafe too
+        if (
+            statement == null ||
+                statement.kind in DANGEROUS_KINDS ||
+                statement.statementCount > 1
+        ) {
             errors.add(
                 QueryError(
                     type = ErrorType.UNSAFE_OPERATION,
@@ -286,9 +366,9 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
             )
         }
 
-        // Validate table existence
+        // Validate table existence; a schema without tables hasn't been loaded
         parsedQuery.tables.forEach { tableName ->
-            if (!schema.tables.containsKey(tableName)) {
+            if (schema.tables.isNotEmpty() && !schema.tables.containsKey(tableName)) {
                 errors.add(
                     QueryError(
                         type = ErrorType.TABLE_NOT_FOUND,
@@ -300,25 +380,64 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         }
 
         // Validate column existence
-        parsedQuery.columns.forEach { columnName ->
-            val columnExists =
-                parsedQuery.tables.any { tableName ->
-                    val tableSchema = schema.tables[tableName]
-                    tableSchema?.columns?.any { it.name == columnName } == true
-                }
+        statement?.let { errors.addAll(validateColumns(it, schema)) }
 
-            if (!columnExists && columnName != "*") {
-                errors.add(
-                    QueryError(
-                        type = ErrorType.COLUMN_NOT_FOUND,
-                        message = "Column '$columnName' not found in any referenced table",
-                        suggestion = "Check column name spelling or table aliases",
-                    )
+        return errors
+    }
+
+    /**
+     * Columns [statement] reads that none of its tables has. Only checked when every source is a
+     * table in the loaded schema; subqueries and CTEs would need their result columns resolved.
+     */
+    private fun validateColumns(
+        statement: SqlStatement,
+        schema: DatabaseSchemaCache.CachedDatabaseSchema,
+    ): List<QueryError> {
+        val select = statement.select ?: return emptyList()
+        val sources = statement.tables
+        val from = select.cores.flatMap { it.from }
+        val checkable =
+            statement.subqueryCount == 0 &&
+                from.isNotEmpty() &&
+                from.all { it.source is SqlSource.Table } &&
+                sources.all { it.schema == null && schema.tables.containsKey(it.name) }
+        if (!checkable) return emptyList()
+
+        // SQLite lets WHERE and ORDER BY refer to result column aliases
+        val aliases =
+            select.cores
+                .flatMap { it.resultColumns }
+                .filterIsInstance<SqlResultColumn.Expression>()
+                .mapNotNull { it.alias?.lowercase() }
+                .toSet()
+        val referenced = statement.resultColumns + statement.predicates.map { it.column }
+        return referenced
+            .distinct()
+            .filter { column ->
+                val name = column.name.lowercase()
+                if (name in ROWID_ALIASES || (column.qualifier == null && name in aliases)) {
+                    return@filter false
+                }
+                val candidates =
+                    column.qualifier?.let { qualifier ->
+                        sources.filter {
+                            (it.alias ?: it.name).equals(qualifier, ignoreCase = true)
+                        }
+                    } ?: sources
+                candidates.none { source ->
+                    schema.tables[source.name]?.columns?.any {
+                        it.name.equals(column.name, ignoreCase = true)
+                    } == true
+                }
+            }
+            .map { column ->
+                val name = listOfNotNull(column.qualifier, column.name).joinToString(".")
+                QueryError(
+                    type = ErrorType.COLUMN_NOT_FOUND,
+                    message = "Column '$name' not found in any referenced table",
+                    suggestion = "Check column name spelling or table aliases",
                 )
             }
-        }
-
-        return errors
     }
 
     private fun analyzeQueryWarnings(
@@ -368,7 +487,7 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
 
     private fun suggestOptimizations(
         parsedQuery: ParsedQuery,
-        schema: DatabaseSchemaCache.CachedDatabaseSchema,
+        plan: QueryPlanEstimate?,
     ): List<QueryOptimization> {
         val optimizations = mutableListOf<QueryOptimization>()
 
@@ -384,8 +503,9 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
             )
         }
 
-        // Suggest index usage optimization
-        if (parsedQuery.whereColumns.isNotEmpty()) {
+        // Suggest index usage optimization, unless the plan shows the indexes are already there
+        val scansTables = plan?.accesses?.any { it.access.fullScan || it.access.automaticIndex }
+        if (parsedQuery.whereColumns.isNotEmpty() && scansTables != false) {
             optimizations.add(
                 QueryOptimization(
                     type = OptimizationType.INDEX_USAGE,
@@ -464,39 +584,269 @@ class IntelligentQueryValidator(private val schemaCache: DatabaseSchemaCache) {
         return recommendations
     }
 
-    // Simple extraction methods - in production, use a proper SQL parser
-    private fun extractTables(query: String): List<String> = emptyList()
+    /** SQLite's verdict on a query it couldn't prepare, or null if the plan was just unavailable */
+    private fun planError(message: String): QueryError? {
+        val type =
+            when {
+                "no such table" in message -> ErrorType.TABLE_NOT_FOUND
+                "no such column" in message -> ErrorType.COLUMN_NOT_FOUND
+                "syntax error" in message || "incomplete input" in message ->
+                    ErrorType.INVALID_SYNTAX
+                else -> {
+                    Log.d(TAG, "No query plan, falling back to heuristics: $message")
+                    return null
+                }
+            }
+        val detail = message.removePrefix("Query plan failed: ").substringBefore(" (code")
+        return QueryError(type = type, message = detail)
+    }
+
+    private fun estimateQueryCost(plan: QueryPlanEstimate): QueryCost {
+        val accesses = plan.accesses.map { it.access }
+        val searches = accesses.count { !it.fullScan && !it.automaticIndex }
+        return QueryCost(
+            estimatedRows = plan.rowsReturned,
+            complexity =
+                when {
+                    plan.rowsExamined >= 1_000_000 -> ComplexityLevel.VERY_HIGH
+                    plan.rowsExamined >= 100_000 -> ComplexityLevel.HIGH
+                    plan.rowsExamined >= SMALL_TABLE_ROWS || plan.tempBTrees.isNotEmpty() ->
+                        ComplexityLevel.MEDIUM
+                    else -> ComplexityLevel.LOW
+                },
+            indexUsage =
+                when {
+                    accesses.isEmpty() -> IndexUsage.UNKNOWN
+                    searches == accesses.size -> IndexUsage.OPTIMAL
+                    searches > 0 -> IndexUsage.PARTIAL
+                    else -> IndexUsage.NONE
+                },
+            scanType =
+                when {
+                    accesses.any { it.fullScan } -> ScanType.TABLE_SCAN
+                    accesses.any { it.scanType == ScanType.RANGE_SCAN } -> ScanType.RANGE_SCAN
+                    accesses.isNotEmpty() -> ScanType.INDEX_SCAN
+                    else -> ScanType.UNKNOWN
+                },
+            rowsExamined = plan.rowsExamined,
+            plan = plan.describe(),
+        )
+    }
+
+    /** An index for every table the plan scans in full or builds a temporary index on */
+    private fun recommendIndexes(
+        parsedQuery: ParsedQuery,
+        plan: QueryPlanEstimate,
+    ): List<IndexRecommendation> =
+        plan.accesses
+            .filter { it.access.automaticIndex || (it.access.fullScan && !isSmall(it)) }
+            .mapNotNull { estimate ->
+                val access = estimate.access
+                val columns =
+                    if (access.automaticIndex) access.equalityColumns + access.rangeColumns
+                    else indexColumns(parsedQuery, plan, estimate)
+                if (columns.isEmpty()) return@mapNotNull null
+                IndexRecommendation(
+                    tableName = access.table,
+                    columns = columns,
+                    reason = describeScan(estimate),
+                    expectedImprovement =
+                        "An index search reads only matching rows instead of " +
+                            "${QueryPlanAnalyzer.formatRows(estimate.rowsExamined)}",
+                )
+            }
+            .distinctBy { it.tableName to it.columns }
 
-    private fun extractColumns(query: String): List<String> = emptyList()
+    private fun analyzeQueryWarnings(
+        parsedQuery: ParsedQuery,
+        plan: QueryPlanEstimate,
+        indexes: List<IndexRecommendation>,
+    ): List<QueryWarning> {
+        val warnings = mutableListOf<QueryWarning>()
+        val limited = parsedQuery.sql.contains("LIMIT", ignoreCase = true)
+
+        plan.accesses
+            .filter { it.access.automaticIndex || (it.access.fullScan && !isSmall(it)) }
+            .forEach { estimate ->
+                val table = estimate.access.table
+                val index = indexes.find { it.tableName == table }
+                val columns = index?.columns.orEmpty()
+                when {
+                    index != null ->
+                        warnings.add(
+                            QueryWarning(
+                                type = WarningType.MISSING_INDEX,
+                                message =
+                                    "${describeScan(estimate)}, add an index on " +
+                                        "(${columns.joinToString(", ")})",
+                                suggestion =
+                                    "CREATE INDEX idx_${table}_${columns.joinToString("_")} " +
+                                        "ON $table(${columns.joinToString(", ")})",
+                            )
+                        )
+                    // Nothing filters this table; a LIMIT stops the scan early
+                    !limited ->
+                        warnings.add(
+                            QueryWarning(
+                                type = WarningType.LARGE_RESULT_SET,
+                                message = describeScan(estimate),
+                                suggestion = "Consider adding WHERE conditions or LIMIT clause",
+                            )
+                        )
+                }
+            }
 
-    private fun extractWhereColumns(query: String): List<String> = emptyList()
+        plan.tempBTrees.forEach { purpose ->
+            warnings.add(
+                QueryWarning(
+                    type = WarningType.INEFFICIENT_QUERY,
+                    message = "Builds a temporary B-tree for $purpose on every run",
+                    suggestion = "An index whose columns match the $purpose avoids the extra pass",
+                )
+            )
+        }
 
-    private fun extractJoinColumns(query: String): List<String> = emptyList()
+        return warnings
+    }
 
-    private fun extractOrderByColumns(query: String): List<String> = emptyList()
+    /**
+     * Columns for an index that lets [estimate]'s table be searched instead of scanned: columns
+     * compared for equality, then one compared by range. Join conditions only help tables read in
+     * an inner loop. Without any, an index in ORDER BY order at least saves the sort.
+     */
+    private fun indexColumns(
+        parsedQuery: ParsedQuery,
+        plan: QueryPlanEstimate,
+        estimate: AccessEstimate,
+    ): List<String> {
+        val access = estimate.access
+        val tableColumns = plan.tableColumns[access.table].orEmpty()
+        val names = setOfNotNull(access.table, access.alias)
+        fun inTable(column: String) = tableColumns.any { it.equals(column, ignoreCase = true) }
+
+        val predicates =
+            parsedQuery.predicates.filter { predicate ->
+                val onTable =
+                    predicate.qualifier?.let { qualifier ->
+                        names.any { it.equals(qualifier, ignoreCase = true) }
+                    } ?: inTable(predicate.column)
+                onTable && (predicate.joinedTo == null || estimate.loops > 1)
+            }
+        val equality =
+            predicates.filter { it.kind == PredicateKind.EQUALITY }.map { it.column }.distinct()
+        val range =
+            predicates.firstOrNull { it.kind == PredicateKind.RANGE && it.column !in equality }
+        val filter = equality + listOfNotNull(range?.column)
+        if (filter.isNotEmpty()) return filter
+
+        return if (plan.tempBTrees.any { it.contains("ORDER BY") }) {
+            parsedQuery.orderByColumns.filter(::inTable)
+        } else {
+            emptyList()
+        }
+    }
 
-    private fun extractGroupByColumns(query: String): List<String> = emptyList()
+    /** A full scan that touches so few rows an index wouldn't pay for itself */
+    private fun isSmall(estimate: AccessEstimate): Boolean =
+        estimate.tableRows != null && estimate.rowsExamined < SMALL_TABLE_ROWS
+
+    private fun describeScan(estimate: AccessEstimate): String {
+        val table = estimate.access.table
+        val rows = estimate.tableRows?.let { "${QueryPlanAnalyzer.formatRows(it)} rows" }
+        return when {
+            estimate.access.automaticIndex ->
+                "SQLite builds a temporary index on $table" +
+                    rows?.let { " ($it)" }.orEmpty() +
+                    " every time this query runs"
+            estimate.loops > 1 ->
+                "Full scan of ${rows?.let { "$it in " }.orEmpty()}$table, repeated for each of " +
+                    "${QueryPlanAnalyzer.formatRows(estimate.loops)} outer rows"
+            else -> "Full scan of ${rows?.let { "$it in " }.orEmpty()}$table"
+        }
+    }
 
+    /**
+     * Keyset pagination is index-backed when the sort columns are a prefix of the primary key or of
+     * an index on the table. Without sort columns it seeks on the rowid or primary key.
+     */
     private fun validatePaginationIndexes(
         query: String,
         sortColumns: List<String>,
         schema: DatabaseSchemaCache.CachedDatabaseSchema,
-    ): Boolean = false
+    ): Boolean {
+        val select = KeysetPagination.parseSimpleSelect(query) ?: return false
+        val table = schema.tables[select.table] ?: return false
+        if (sortColumns.isEmpty()) return true
+
+        val indexedColumns =
+            listOf(table.primaryKey) +
+                schema.indexes.values.filter { it.tableName == table.name }.map { it.columns }
+        return indexedColumns.any { it.take(sortColumns.size) == sortColumns }
+    }
 
     private fun optimizeForPagination(
         query: String,
         sortColumns: List<String>,
+        pageSize: Int,
         schema: DatabaseSchemaCache.CachedDatabaseSchema,
-    ): String = query
+    ): String {
+        val select = KeysetPagination.parseSimpleSelect(query) ?: return query
+        val table = schema.tables[select.table] ?: return query
+        return KeysetPagination.plan(
+                select = select,
+                keyColumns = paginationKey(table, sortColumns),
+                pageSize = pageSize,
+                fingerprint = KeysetPagination.fingerprint(query, emptyArray()),
+            )
+            .sql
+    }
 
     private fun suggestCursorFields(
         parsedQuery: ParsedQuery,
+        sortColumns: List<String>,
         schema: DatabaseSchemaCache.CachedDatabaseSchema,
-    ): List<String> = emptyList()
+    ): List<String> {
+        val select = KeysetPagination.parseSimpleSelect(parsedQuery.sql) ?: return emptyList()
+        val table = schema.tables[select.table] ?: return emptyList()
+        return paginationKey(table, sortColumns)
+    }
 
     private fun suggestPaginationIndexes(
         parsedQuery: ParsedQuery,
         sortColumns: List<String>,
         schema: DatabaseSchemaCache.CachedDatabaseSchema,
-    ): List<IndexRecommendation> = emptyList()
+    ): List<IndexRecommendation> {
+        if (sortColumns.isEmpty()) return emptyList()
+        if (validatePaginationIndexes(parsedQuery.sql, sortColumns, schema)) return emptyList()
+
+        val select = KeysetPagination.parseSimpleSelect(parsedQuery.sql) ?: return emptyList()
+        val table = schema.tables[select.table] ?: return emptyList()
+        return listOf(
+            IndexRecommendation(
+                tableName = table.name,
+                columns = sortColumns,
+                reason = "Keyset pagination seeks on (${sortColumns.joinToString(", ")})",
+                expectedImprovement = "Each page is an index range scan instead of a full sort",
+            )
+        )
+    }
+
+    /** Sort columns followed by the table's unique key, so every row has a distinct position. */
+    private fun paginationKey(
+        table: DatabaseSchemaCache.TableSchema,
+        sortColumns: List<String>,
+    ): List<String> {
+        val integerPrimaryKey =
+            table.primaryKey.size == 1 &&
+                table.columns.any {
+                    it.name == table.primaryKey[0] && it.type.equals("INTEGER", ignoreCase = true)
+                }
+        val key =
+            KeysetPagination.selectKeyColumns(
+                primaryKey = table.primaryKey,
+                integerPrimaryKey = integerPrimaryKey,
+                withoutRowId = false,
+            )
+        return (sortColumns + key).distinct()
+    }
 }
@@ -0,0 +1,334 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.query
+
+import android.database.Cursor
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.SqliteDatabase
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.SqliteDataType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.SchemaIntrospector
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlExpr
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlResultColumn
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlSource
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatementCache
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlStatementKind
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlToken
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlTokenizer
+import java.util.Base64
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+
+/**
+ * Opaque continuation token for keyset pagination. Clients only ever see the encoded form and pass
+ * it back unchanged to fetch the next page.
+ *
+ * Bind arguments can only be strings, so each value in [lastKey] is kept as text alongside its
+ * storage class in [keyTypes], and the seek casts it back before comparing.
+ */
+@Serializable
+data class PageToken(
+    val fingerprint: Int,
+    val keyColumns: List<String>,
+    val lastKey: List<String>,
+    val keyTypes: List<KeyType>,
+) {
+    /** The storage class a key value was read with */
+    @Serializable
+    enum class KeyType {
+        INTEGER,
+        REAL,
+        TEXT,
+    }
+
+    fun encode(): String =
+        Base64.getUrlEncoder()
+            .withoutPadding()
+            .encodeToString(Json.encodeToString(serializer(), this).toByteArray())
+
+    companion object {
+        /** Decode a token produced by [encode], or null if it is malformed. */
+        fun decode(token: String): PageToken? =
+            try {
+                Json.decodeFromString(serializer(), String(Base64.getUrlDecoder().decode(token)))
+            } catch (e: Exception) {
+                null
+            }
+    }
+}
+
+/** A rewritten page query plus the bind arguments that resume it after the previous page. */
+data class KeysetPlan(
+    val sql: String,
+    val arguments: List<String>,
+    val keyColumns: List<String>,
+    val fingerprint: Int,
+)
+
+/**
+ * Keyset (seek) pagination for single-table SELECT queries.
+ *
+ * `LIMIT n OFFSET m` makes SQLite step over every skipped row, so page N costs O(N * pageSize).
+ * Keyset pagination orders by a unique key and resumes with `WHERE (key) > (last key)` instead,
+ * which is a range seek on the table B-tree or an index and costs the same for every page.
+ *
+ * Only queries of the form `SELECT ... FROM table [alias] [WHERE ...]` are rewritten. Anything with
+ * its own ordering, grouping, limits, joins or subqueries keeps using OFFSET pagination.
+ */
+object KeysetPagination {
+
+    private const val TAG = "KeysetPagination"
+    private const val ROWID = "rowid"
+    private const val KEY_ALIAS_PREFIX = "__mcp_key_"
+
+    private val AGGREGATE_FUNCTIONS = setOf("COUNT", "SUM", "AVG", "TOTAL", "GROUP_CONCAT")
+    // Text compared with an INTEGER or TEXT column keeps its meaning; other affinities can hold
+    // values whose order or precision a text round trip doesn't preserve
+    private val KEYSET_AFFINITIES = setOf(SqliteDataType.INTEGER, SqliteDataType.TEXT)
+
+    /** The parts of a single-table SELECT that keyset pagination needs. */
+    data class SimpleSelect(
+        val projection: String,
+        val tableExpression: String,
+        val table: String,
+        val alias: String?,
+        val where: String?,
+    )
+
+    /** Parse [query] as a single-table SELECT, or return null if it can't be keyset paginated. */
+    fun parseSimpleSelect(query: String): SimpleSelect? {
+        val statement = SqlStatementCache.getInstance().parseOrNull(query) ?: return null
+        if (statement.kind != SqlStatementKind.SELECT || statement.statementCount != 1) return null
+        val select = statement.select ?: return null
+        val core = select.cores.singleOrNull() ?: return null
+        val source = core.from.singleOrNull()?.source as? SqlSource.Table ?: return null
+        if (select.with.isNotEmpty() || select.orderBy.isNotEmpty() || select.limit != null) {
+            return null
+        }
+        if (core.distinct || core.groupBy.isNotEmpty() || core.having != null) return null
+        if (source.schema != null || statement.subqueryCount > 0) return null
+        val aggregate =
+            core.resultColumns.any { it is SqlResultColumn.Expression && isAggregate(it.expr) }
+        if (aggregate) return null
+
+        // The parser keeps no source positions, so the clauses are cut out of the original text
+        // at their top-level keywords
+        val tokens = SqlTokenizer.tokenize(query)
+        if (tokens.any { it.isKeyword("OVER") }) return null
+        val clauses = topLevelTokens(tokens)
+        val selectKeyword = clauses.first { it.isKeyword("SELECT") }
+        val from = clauses.indexOfFirst { it.isKeyword("FROM") }
+        val where = clauses.firstOrNull { it.isKeyword("WHERE") }
+        val last = tokens.last { !it.isPunctuation(';') }
+        return SimpleSelect(
+            projection = query.substring(selectKeyword.end, clauses[from].position).trim(),
+            tableExpression = clauses[from + 1].text,
+            table = source.name,
+            alias = source.alias,
+            where = where?.let { query.substring(it.end, last.end).trim() },
+        )
+    }
+
+    /**
+     * Choose the pagination key for a table. Rowid tables are keyed on the rowid B-tree itself,
+     * using the column name when an `INTEGER PRIMARY KEY` aliases it. `WITHOUT ROWID` tables are
+     * clustered on their primary key, which is used instead.
+     */
+    fun selectKeyColumns(
+        primaryKey: List<String>,
+        integerPrimaryKey: Boolean,
+        withoutRowId: Boolean,
+    ): List<String> =
+        when {
+            withoutRowId && primaryKey.isNotEmpty() -> primaryKey
+            integerPrimaryKey && primaryKey.size == 1 -> primaryKey
+            else -> listOf(ROWID)
+        }
+
+    /**
+     * Resolve the key columns for [table] on a live connection, prefixed by [sortColumns]. Returns
+     * null if [table] is not a table, a sort column is nullable, since NULLs can't be resumed from
+     * with a `>` comparison, or a key column has neither INTEGER nor TEXT affinity.
+     */
+    fun resolveKeyColumns(
+        database: SqliteDatabase,
+        table: String,
+        sortColumns: List<String> = emptyList(),
+    ): List<String>? {
+        val createSql =
+            database
+                .rawQuery(
+                    "SELECT type, sql FROM sqlite_master WHERE name = ? COLLATE NOCASE",
+                    arrayOf(table),
+                )
+                .use { cursor ->
+                    if (!cursor.moveToFirst() || cursor.getString(0) != "table") return null
+                    cursor.getString(1) ?: ""
+                }
+
+        val primaryKey = sortedMapOf<Int, String>()
+        val notNullColumns = mutableSetOf<String>()
+        val declaredTypes = mutableMapOf<String, String>()
+        var integerPrimaryKey = false
+        val tableInfo = "SELECT name, type, \"notnull\", pk FROM pragma_table_info(?)"
+        database.rawQuery(tableInfo, arrayOf(table)).use { cursor ->
+            while (cursor.moveToNext()) {
+                val name = cursor.getString(0)
+                val position = cursor.getInt(3)
+                declaredTypes[name] = cursor.getString(1) ?: ""
+                if (cursor.getInt(2) == 1) notNullColumns.add(name)
+                if (position > 0) {
+                    primaryKey[position] = name
+                    integerPrimaryKey = cursor.getString(1).equals("INTEGER", ignoreCase = true)
+                }
+            }
+        }
+
+        val keyColumns =
+            selectKeyColumns(
+                primaryKey = primaryKey.values.toList(),
+                integerPrimaryKey = integerPrimaryKey && primaryKey.size == 1,
+                withoutRowId = isWithoutRowId(createSql),
+            )
+        val nullableSortColumn =
+            sortColumns.firstOrNull { it !in notNullColumns && it !in keyColumns }
+        if (nullableSortColumn != null) {
+            Log.d(TAG, "Not using keyset pagination, '$nullableSortColumn' may be NULL")
+            return null
+        }
+        val columns = (sortColumns + keyColumns).distinct()
+        val untypedColumn =
+            columns.firstOrNull {
+                !it.equals(ROWID, ignoreCase = true) &&
+                    SchemaIntrospector.affinity(declaredTypes[it] ?: "") !in KEYSET_AFFINITIES
+            }
+        if (untypedColumn != null) {
+            Log.d(TAG, "Not using keyset pagination, '$untypedColumn' is not INTEGER or TEXT")
+            return null
+        }
+        return columns
+    }
+
+    /**
+     * Rewrite [select] to fetch one page ordered by [keyColumns], resuming after [token] if given.
+     * One extra row is requested so callers can tell whether another page exists, and the key
+     * values are appended as trailing columns for [nextPageToken] to read.
+     */
+    fun plan(
+        select: SimpleSelect,
+        keyColumns: List<String>,
+        pageSize: Int,
+        fingerprint: Int,
+        token: PageToken? = null,
+    ): KeysetPlan {
+        val qualifier = select.alias?.let { "$it." } ?: ""
+        val keys = keyColumns.map { qualifier + quoteIdentifier(it) }
+
+        val sql = buildString {
+            append("SELECT ").append(select.projection)
+            keys.forEachIndexed { i, key ->
+                append(", ").append(key).append(" AS ").append(KEY_ALIAS_PREFIX).append(i)
+            }
+            append(" FROM ").append(select.tableExpression)
+            select.alias?.let { append(' ').append(it) }
+
+            val conditions = mutableListOf<String>()
+            select.where?.let { conditions.add("($it)") }
+            if (token != null) {
+                conditions.add(
+                    keys.joinToString(", ", "(", ")") + " > " +
+                        token.keyTypes.joinToString(", ", "(", ")") { placeholder(it) }
+                )
+            }
+            if (conditions.isNotEmpty()) append(" WHERE ").append(conditions.joinToString(" AND "))
+
+            append(" ORDER BY ").append(keys.joinToString(", "))
+            append(" LIMIT ").append(pageSize + 1)
+        }
+
+        return KeysetPlan(
+            sql = sql,
+            arguments = token?.lastKey ?: emptyList(),
+            keyColumns = keyColumns,
+            fingerprint = fingerprint,
+        )
+    }
+
+    /**
+     * Build the token for the page after the [rowCount] rows just read from [cursor], or null if
+     * there are no more rows or the last key can't be carried in a token.
+     */
+    fun nextPageToken(cursor: Cursor, plan: KeysetPlan, rowCount: Int, hasMore: Boolean): String? {
+        if (!hasMore || rowCount == 0 || !cursor.moveToPosition(rowCount - 1)) return null
+
+        val firstKeyIndex = cursor.columnCount - plan.keyColumns.size
+        val lastKey = mutableListOf<String>()
+        val keyTypes = mutableListOf<PageToken.KeyType>()
+        plan.keyColumns.forEachIndexed { i, column ->
+            val index = firstKeyIndex + i
+            when (cursor.getType(index)) {
+                Cursor.FIELD_TYPE_INTEGER -> {
+                    lastKey.add(cursor.getLong(index).toString())
+                    keyTypes.add(PageToken.KeyType.INTEGER)
+                }
+                Cursor.FIELD_TYPE_FLOAT -> {
+                    // Double.toString is the shortest text that parses back to the same value
+                    lastKey.add(cursor.getDouble(index).toString())
+                    keyTypes.add(PageToken.KeyType.REAL)
+                }
+                Cursor.FIELD_TYPE_STRING -> {
+                    lastKey.add(cursor.getString(index))
+                    keyTypes.add(PageToken.KeyType.TEXT)
+                }
+                else -> {
+                    Log.w(TAG, "Can't resume after a NULL or BLOB $column")
+                    return null
+                }
+            }
+        }
+        return PageToken(plan.fingerprint, plan.keyColumns, lastKey, keyTypes).encode()
+    }
+
+    /** Identify a query and its arguments so a token can't be replayed against another query. */
+    fun fingerprint(query: String, parameters: Array<String>): Int =
+        31 * query.trim().hashCode() + parameters.contentHashCode()
+
+    private fun placeholder(type: PageToken.KeyType): String =
+        when (type) {
+            PageToken.KeyType.INTEGER -> "CAST(? AS INTEGER)"
+            PageToken.KeyType.REAL -> "CAST(? AS REAL)"
+            PageToken.KeyType.TEXT -> "?"
+        }
+
+    private fun isAggregate(expr: SqlExpr): Boolean {
+        if (expr is SqlExpr.FunctionCall) {
+            val name = expr.name.uppercase()
+            // min() and max() with several arguments are the scalar versions
+            val aggregate =
+                if (name == "MIN" || name == "MAX") expr.arguments.size == 1
+                else name in AGGREGATE_FUNCTIONS
+            if (aggregate) return true
+        }
+        return expr.children().any(::isAggregate)
+    }
+
+    /** Tokens outside any parentheses, where a statement's own clause keywords appear */
+    private fun topLevelTokens(tokens: List<SqlToken>): List<SqlToken> {
+        var depth = 0
+        return tokens.filter { token ->
+            when {
+                token.isPunctuation('(') -> depth++
+                token.isPunctuation(')') -> depth--
+            }
+            depth == 0 && !token.isPunctuation(')')
+        }
+    }
+
+    private fun isWithoutRowId(createSql: String): Boolean {
+        val tokens = runCatching { SqlTokenizer.tokenize(createSql) }.getOrNull() ?: return false
+        return tokens.zipWithNext().any { (a, b) -> a.isKeyword("WITHOUT") && b.isKeyword("ROWID") }
+    }
+
+    private val SqlToken.end: Int
+        get() = position + text.length
+
+    private fun quoteIdentifier(name: String): String =
+        if (name.equals(ROWID, ignoreCase = true)) name else "\"${name.replace("\"", "\"\"")}\""
+}
@@ -0,0 +1,264 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.query
+
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.SqliteDatabase
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.IntelligentQueryValidator.ScanType
+
+/** One row of `EXPLAIN QUERY PLAN` output. */
+data class QueryPlanStep(val id: Int, val parentId: Int, val detail: String)
+
+/** How one loop of a query plan reads a table, parsed from a `SCAN` or `SEARCH` step. */
+data class TableAccess(
+    val table: String,
+    val alias: String? = null,
+    val scanType: ScanType,
+    val index: String? = null,
+    val primaryKey: Boolean = false,
+    val automaticIndex: Boolean = false,
+    val covering: Boolean = false,
+    val equalityColumns: List<String> = emptyList(),
+    val rangeColumns: List<String> = emptyList(),
+    val parentId: Int = 0,
+) {
+    /** Every row is visited, in rowid order or in the order of [index] */
+    val fullScan: Boolean
+        get() = scanType == ScanType.TABLE_SCAN
+}
+
+/**
+ * Row counts for the tables a plan reads. [tableRows] comes from `sqlite_stat1` when the app has
+ * run `ANALYZE`, and from the largest rowid otherwise. [rowsPerKey] holds, per index, the average
+ * number of rows matching its first 1, 2, ... columns, which is what SQLite's own planner uses.
+ */
+data class TableStatistics(
+    val tableRows: Map<String, Long> = emptyMap(),
+    val rowsPerKey: Map<String, List<Long>> = emptyMap(),
+)
+
+/** A table access that reads [rowsPerLoop] rows for each of [loops] outer rows. */
+data class AccessEstimate(
+    val access: TableAccess,
+    val tableRows: Long?,
+    val rowsPerLoop: Long,
+    val loops: Long,
+    val rowsExamined: Long,
+)
+
+/** The cost of a query as SQLite plans to run it. */
+data class QueryPlanEstimate(
+    val steps: List<QueryPlanStep>,
+    val accesses: List<AccessEstimate>,
+    val tempBTrees: List<String>,
+    val rowsExamined: Long,
+    val rowsReturned: Long,
+    val tableColumns: Map<String, List<String>> = emptyMap(),
+) {
+    /** The plan as an indented tree, one step per line */
+    fun describe(): List<String> {
+        val depths = mutableMapOf<Int, Int>()
+        return steps.map { step ->
+            val depth = depths[step.parentId]?.plus(1) ?: 0
+            depths[step.id] = depth
+            "  ".repeat(depth) + step.detail
+        }
+    }
+}
+
+/**
+ * Estimates query cost from `EXPLAIN QUERY PLAN` and `sqlite_stat1`.
+ *
+ * The plan says how SQLite will read each table: a full `SCAN`, or a `SEARCH` through an index or
+ * the primary key with the constraints it can use. Row counts turn that into rows examined. Joins
+ * are nested loops in plan order, so each access runs once per row produced by the accesses before
+ * it under the same parent. Correlated subqueries are counted once, so their cost is a lower
+ * bound. Both the `SCAN TABLE t` format of older SQLite versions and the newer `SCAN t` are read.
+ */
+object QueryPlanAnalyzer {
+
+    /** Rows SQLite assumes an equality lookup matches on an index without statistics */
+    const val DEFAULT_ROWS_PER_KEY = 10L
+
+    // SQLite assumes a range constraint keeps about a quarter of the rows
+    private const val RANGE_SELECTIVITY = 4L
+
+    // SQLite's own assumption for a table it has no statistics for
+    private const val UNKNOWN_TABLE_ROWS = 1_000_000L
+
+    private val ACCESS = Regex("^(SCAN|SEARCH)(?: TABLE)? ([^\\s(]+)(?: AS (\\S+))?(.*)$")
+    private val USING_INDEX =
+        Regex("USING (AUTOMATIC )?(?:PARTIAL )?(COVERING )?INDEX(?: ([^\\s(]+))?")
+    private val CONSTRAINTS = Regex("\\(([^()]*)\\)\\s*$")
+    private const val TEMP_B_TREE = "USE TEMP B-TREE FOR "
+    private val NOT_TABLES = setOf("CONSTANT", "SUBQUERY")
+    private val RANGE_OPERATORS = setOf("<", ">", "<=", ">=")
+
+    /** Run `EXPLAIN QUERY PLAN` for [sql]. The statement is prepared but never run. */
+    fun explain(database: SqliteDatabase, sql: String): List<QueryPlanStep> =
+        database.rawQuery("EXPLAIN QUERY PLAN $sql", null).use { cursor ->
+            buildList {
+                while (cursor.moveToNext()) {
+                    add(QueryPlanStep(cursor.getInt(0), cursor.getInt(1), cursor.getString(3)))
+                }
+            }
+        }
+
+    /** Row counts for [tables], from `sqlite_stat1` or, for unanalyzed tables, the rowid */
+    fun loadStatistics(database: SqliteDatabase, tables: Collection<String>): TableStatistics {
+        val rows =
+            try {
+                database.rawQuery("SELECT tbl, idx, stat FROM sqlite_stat1", null).use { cursor ->
+                    buildList {
+                        while (cursor.moveToNext()) {
+                            val stat = cursor.getString(2)
+                            add(Triple(cursor.getString(0), cursor.getString(1), stat))
+                        }
+                    }
+                }
+            } catch (e: Exception) {
+                // No sqlite_stat1 until the app runs ANALYZE
+                emptyList()
+            }
+        val statistics = parseStat1(rows)
+
+        val tableRows = statistics.tableRows.toMutableMap()
+        tables
+            .filter { it !in tableRows }
+            .forEach { table -> maxRowId(database, table)?.let { tableRows[table] = it } }
+        return statistics.copy(tableRows = tableRows)
+    }
+
+    /** Parse `(tbl, idx, stat)` rows of `sqlite_stat1` */
+    fun parseStat1(rows: List<Triple<String, String?, String>>): TableStatistics {
+        val tableRows = mutableMapOf<String, Long>()
+        val rowsPerKey = mutableMapOf<String, List<Long>>()
+        rows.forEach { (table, index, stat) ->
+            // "N a1 a2 ..." optionally followed by flags such as "unordered" or "sz=..."
+            val numbers = stat.split(' ').mapNotNull { it.toLongOrNull() }
+            val total = numbers.firstOrNull() ?: return@forEach
+            // A partial index covers fewer rows than its table
+            tableRows[table] = maxOf(tableRows[table] ?: 0L, total)
+            if (index != null) rowsPerKey[index] = numbers.drop(1)
+        }
+        return TableStatistics(tableRows, rowsPerKey)
+    }
+
+    /** The table access described by [step], or null if it doesn't read a table */
+    fun parseAccess(step: QueryPlanStep): TableAccess? {
+        val match = ACCESS.find(step.detail) ?: return null
+        val (verb, table, alias, rest) = match.destructured
+        if (table in NOT_TABLES) return null
+
+        val index = USING_INDEX.find(rest)
+        val constraints =
+            if (verb == "SEARCH") {
+                CONSTRAINTS.find(rest)?.groupValues?.get(1)?.split(" AND ").orEmpty()
+            } else {
+                emptyList()
+            }
+        // Constraints look like "a=?", "b>?" or "rowid<?"
+        val operators =
+            constraints.map { constraint ->
+                val column = constraint.takeWhile { it !in "<>=" }
+                column to constraint.drop(column.length).removeSuffix("?")
+            }
+        val equalityColumns = operators.filter { it.second == "=" }.map { it.first }
+        val rangeColumns =
+            operators.filter { it.second in RANGE_OPERATORS }.map { it.first }.distinct()
+
+        return TableAccess(
+            table = table,
+            alias = alias.ifEmpty { null },
+            scanType =
+                when {
+                    verb == "SCAN" -> ScanType.TABLE_SCAN
+                    rangeColumns.isNotEmpty() -> ScanType.RANGE_SCAN
+                    else -> ScanType.INDEX_SCAN
+                },
+            index = index?.groupValues?.get(3)?.ifEmpty { null },
+            primaryKey = index == null && (rest.contains("PRIMARY KEY") || rest.contains("ROWID")),
+            automaticIndex = index?.groupValues?.get(1)?.isNotEmpty() == true,
+            covering = index?.groupValues?.get(2)?.isNotEmpty() == true,
+            equalityColumns = equalityColumns,
+            rangeColumns = rangeColumns,
+            parentId = step.parentId,
+        )
+    }
+
+    /** Cost of the plan [steps] given row counts from [statistics] */
+    fun estimate(
+        steps: List<QueryPlanStep>,
+        statistics: TableStatistics,
+        tableColumns: Map<String, List<String>> = emptyMap(),
+    ): QueryPlanEstimate {
+        val loopsByParent = mutableMapOf<Int, Long>()
+        var rowsExamined = 0L
+        val accesses =
+            steps.mapNotNull(::parseAccess).map { access ->
+                val tableRows = statistics.tableRows[access.table]
+                val rowsPerLoop = rowsPerLoop(access, tableRows ?: UNKNOWN_TABLE_ROWS, statistics)
+                val loops = loopsByParent[access.parentId] ?: 1L
+                loopsByParent[access.parentId] = maxOf(1L, times(loops, rowsPerLoop))
+
+                // An automatic index is built from a full scan every time the query runs
+                val build = if (access.automaticIndex) tableRows ?: UNKNOWN_TABLE_ROWS else 0L
+                val examined = plus(times(loops, rowsPerLoop), build)
+                rowsExamined = plus(rowsExamined, examined)
+                AccessEstimate(access, tableRows, rowsPerLoop, loops, examined)
+            }
+
+        val outermost = accesses.firstOrNull()?.access?.parentId
+        return QueryPlanEstimate(
+            steps = steps,
+            accesses = accesses,
+            tempBTrees =
+                steps
+                    .filter { it.detail.startsWith(TEMP_B_TREE) }
+                    .map { it.detail.removePrefix(TEMP_B_TREE) },
+            rowsExamined = rowsExamined,
+            rowsReturned = outermost?.let { loopsByParent[it] } ?: 0L,
+            tableColumns = tableColumns,
+        )
+    }
+
+    /** Human-readable row count: 950, 12k, 3.4M */
+    fun formatRows(rows: Long): String =
+        when {
+            rows < 1_000 -> rows.toString()
+            rows < 1_000_000 -> "${rows / 1_000}k"
+            else -> "%.1fM".format(rows / 1_000_000.0)
+        }
+
+    private fun rowsPerLoop(
+        access: TableAccess,
+        tableRows: Long,
+        statistics: TableStatistics,
+    ): Long {
+        val matched =
+            when {
+                access.fullScan -> return tableRows
+                access.primaryKey -> if (access.equalityColumns.isEmpty()) tableRows else 1L
+                access.equalityColumns.isEmpty() -> tableRows
+                else ->
+                    access.index?.let { statistics.rowsPerKey[it] }
+                        ?.getOrNull(access.equalityColumns.size - 1)
+                        ?: minOf(DEFAULT_ROWS_PER_KEY, tableRows)
+            }
+        return if (access.rangeColumns.isEmpty()) matched
+        else maxOf(1L, matched / RANGE_SELECTIVITY)
+    }
+
+    private fun maxRowId(database: SqliteDatabase, table: String): Long? =
+        try {
+            val quoted = "\"" + table.replace("\"", "\"\"") + "\""
+            database.rawQuery("SELECT MAX(rowid) FROM $quoted", null).use { cursor ->
+                if (cursor.moveToFirst() && !cursor.isNull(0)) cursor.getLong(0) else 0L
+            }
+        } catch (e: Exception) {
+            // WITHOUT ROWID tables have no rowid to go by
+            null
+        }
+
+    private fun times(a: Long, b: Long): Long =
+        if (a != 0L && b > Long.MAX_VALUE / a) Long.MAX_VALUE else a * b
+
+    private fun plus(a: Long, b: Long): Long = if (a > Long.MAX_VALUE - b) Long.MAX_VALUE else a + b
+}
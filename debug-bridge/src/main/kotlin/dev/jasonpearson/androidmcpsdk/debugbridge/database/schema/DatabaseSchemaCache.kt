@@ -3,28 +3,122 @@ package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
 import android.content.Context
 import android.util.Log
 import android.util.LruCache
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseConfig
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseConnectionPool
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.reflect.KClass
 import kotlin.reflect.KType
-import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
 import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 
-/** Enhanced database schema cache with Room/SQLDelight integration and intelligent caching. */
+/**
+ * Enhanced database schema cache with Room/SQLDelight integration and intelligent caching.
+ *
+ * Schemas are held in memory up to [maxCacheBytes] of estimated size and persisted to
+ * [diskCache], so a restarted process serves them without introspecting the database. Every
+ * entry is tagged with the database's `schema_version` and dropped once that moves on.
+ *
+ * Loads are serialized per database, so different databases load in parallel while concurrent
+ * callers asking for the same one wait for a single load.
+ */
 class DatabaseSchemaCache(
     private val context: Context,
     private val roomAnalyzer: RoomSchemaAnalyzer = RoomSchemaAnalyzer(context),
     private val sqlDelightAnalyzer: SqlDelightSchemaAnalyzer = SqlDelightSchemaAnalyzer(context),
+    private val connectionPool: DatabaseConnectionPool,
+    private val diskCache: SchemaDiskCache =
+        SchemaDiskCache(File(context.cacheDir, DISK_CACHE_DIRECTORY)),
+    maxCacheBytes: Int = DEFAULT_MAX_CACHE_BYTES,
 ) {
 
     companion object {
         private const val TAG = "DatabaseSchemaCache"
-        private const val CACHE_SIZE = 50
+        const val DEFAULT_MAX_CACHE_BYTES = 4 * 1024 * 1024
+        private const val DISK_CACHE_DIRECTORY = "mcp_schema_cache"
+        // Any name; only its parent directory is used
+        private const val DISCOVERY_PROBE = "probe"
+        private const val HEADER_MAGIC = "SQLite format 3\u0000"
+        private const val HEADER_SIZE = 100
+        private const val SCHEMA_COOKIE_OFFSET = 40
+        // Rough JVM overhead of one object and its references, in bytes
+        private const val OBJECT_BYTES = 48
+
+        /** Databases preloaded at once; leaves an SDK thread free for incoming tool calls */
+        val DEFAULT_PRELOAD_PARALLELISM = (McpDispatchers.poolSize - 1).coerceAtLeast(1)
+
+        /**
+         * The schema cookie from the header of the database [file], or null when the header
+         * can't be trusted: the file is missing or encrypted, or a WAL may hold newer pages.
+         */
+        internal fun readHeaderSchemaVersion(file: File): Int? {
+            if (File(file.path + "-wal").length() > 0) return null
+            val header = readHeader(file) ?: return null
+            return ByteBuffer.wrap(header).getInt(SCHEMA_COOKIE_OFFSET)
+        }
+
+        /** Whether [file] is a plain, unencrypted SQLite database, judged by its header */
+        internal fun isSqliteDatabase(file: File): Boolean = readHeader(file) != null
+
+        private fun readHeader(file: File): ByteArray? {
+            if (!file.isFile || file.length() < HEADER_SIZE) return null
+            val header = ByteArray(HEADER_SIZE)
+            return try {
+                RandomAccessFile(file, "r").use { it.readFully(header) }
+                val magic = String(header, 0, HEADER_MAGIC.length, Charsets.ISO_8859_1)
+                if (magic == HEADER_MAGIC) header else null
+            } catch (e: IOException) {
+                null
+            }
+        }
+
+        /** Approximate heap footprint of [schema], used to weigh memory cache entries */
+        internal fun estimateSizeBytes(schema: CachedDatabaseSchema): Int {
+            fun text(value: String?) = if (value == null) 0 else OBJECT_BYTES + value.length * 2
+            fun texts(values: Collection<String>) = values.sumOf { text(it) }
+            var size = OBJECT_BYTES + text(schema.databaseUri)
+            schema.tables.values.forEach { table ->
+                size += OBJECT_BYTES + text(table.name) + texts(table.primaryKey)
+                size += texts(table.indexes) + texts(table.checkConstraints)
+                table.columns.forEach { column ->
+                    size += OBJECT_BYTES + text(column.name) + text(column.type)
+                    size += text(column.defaultValue) + text(column.collation)
+                }
+                size += table.foreignKeys.size * OBJECT_BYTES * 3
+            }
+            schema.indexes.values.forEach { index ->
+                size += OBJECT_BYTES + text(index.name) + texts(index.columns)
+                size += text(index.whereClause)
+            }
+            schema.views.values.forEach { view ->
+                size += OBJECT_BYTES + text(view.name) + text(view.sql)
+                size += texts(view.dependentTables)
+            }
+            schema.triggers.values.forEach { trigger ->
+                size += OBJECT_BYTES + text(trigger.name) + text(trigger.sql)
+            }
+            size += schema.foreignKeys.size * OBJECT_BYTES * 3
+            size += schema.sourceCodeMappings.size * OBJECT_BYTES
+            return size
+        }
     }
 
-    private val schemaCache = LruCache<String, CachedDatabaseSchema>(CACHE_SIZE)
+    private val schemaCache =
+        object : LruCache<String, CachedDatabaseSchema>(maxCacheBytes) {
+            override fun sizeOf(key: String, value: CachedDatabaseSchema): Int =
+                estimateSizeBytes(value)
+        }
     private val cacheStats = CacheStats()
-    private val cacheMutex = Mutex()
+    private val loadLocks = ConcurrentHashMap<String, Mutex>()
 
     data class CachedDatabaseSchema(
         val databaseUri: String,
@@ -126,87 +220,124 @@ class DatabaseSchemaCache(
         var misses: Long = 0,
         var refreshes: Long = 0,
         var errors: Long = 0,
+        var diskHits: Long = 0,
+        var invalidations: Long = 0,
         val lastUpdated: Long = System.currentTimeMillis(),
     ) {
         val hitRate: Double
             get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
     }
 
-    /** Get or load database schema with caching. */
-    suspend fun getOrLoadSchema(databaseUri: String): CachedDatabaseSchema? =
-        cacheMutex.withLock {
+    /**
+     * Get or load database schema with caching. Content provider URIs are not supported and
+     * return null, since their columns can't be introspected like a database file's.
+     */
+    suspend fun getOrLoadSchema(databaseUri: String): CachedDatabaseSchema? {
+        if (isUnsupported(databaseUri)) return null
+        return lockFor(databaseUri).withLock {
             return@withLock try {
+                val version = currentSchemaVersion(databaseUri)
                 val cached = schemaCache.get(databaseUri)
-                if (cached != null) {
-                    cacheStats.hits++
+                if (cached != null && cached.schemaVersion == version) {
+                    record { hits++ }
                     Log.d(TAG, "Schema cache hit for: $databaseUri")
-                    cached
+                    return@withLock cached
+                }
+                if (cached != null) {
+                    record { invalidations++ }
+                    Log.d(TAG, "Schema of $databaseUri changed to version $version")
+                    schemaCache.remove(databaseUri)
+                }
+
+                val persisted = diskCache.read(databaseUri, version)
+                if (persisted != null) {
+                    record { diskHits++ }
+                    Log.d(TAG, "Schema disk cache hit for: $databaseUri")
+                    enhance(persisted, databaseUri).also { schemaCache.put(databaseUri, it) }
                 } else {
-                    cacheStats.misses++
+                    record { misses++ }
                     Log.d(TAG, "Schema cache miss for: $databaseUri")
-                    loadDatabaseSchema(databaseUri)
+                    loadDatabaseSchema(databaseUri, version)
                 }
             } catch (e: Exception) {
-                cacheStats.errors++
+                record { errors++ }
                 Log.e(TAG, "Failed to get/load schema for: $databaseUri", e)
                 null
             }
         }
+    }
 
     /** Force refresh of database schema. */
-    suspend fun refreshSchema(databaseUri: String): CachedDatabaseSchema? =
-        cacheMutex.withLock {
+    suspend fun refreshSchema(databaseUri: String): CachedDatabaseSchema? {
+        if (isUnsupported(databaseUri)) return null
+        return lockFor(databaseUri).withLock {
             return@withLock try {
-                cacheStats.refreshes++
+                record { refreshes++ }
                 Log.d(TAG, "Refreshing schema for: $databaseUri")
                 schemaCache.remove(databaseUri)
-                loadDatabaseSchema(databaseUri)
+                diskCache.remove(databaseUri)
+                loadDatabaseSchema(databaseUri, currentSchemaVersion(databaseUri))
             } catch (e: Exception) {
-                cacheStats.errors++
+                record { errors++ }
                 Log.e(TAG, "Failed to refresh schema for: $databaseUri", e)
                 null
             }
         }
+    }
 
     /** Validate that the cached schema version matches the current database. */
     suspend fun validateSchemaVersion(databaseUri: String): Boolean =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             return@withContext try {
                 val cached = schemaCache.get(databaseUri) ?: return@withContext false
-                // TODO: Implement actual version checking against database
-                // For now, consider all cached schemas valid
-                true
+                cached.schemaVersion == currentSchemaVersion(databaseUri)
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to validate schema version for: $databaseUri", e)
                 false
             }
         }
 
-    /** Preload all discoverable database schemas. */
-    suspend fun preloadAllDatabaseSchemas() =
-        withContext(Dispatchers.IO) {
+    /**
+     * Preload all discoverable database schemas, up to [parallelism] databases at a time. Schemas
+     * still current on disk are served from there, so after the first run this mostly reads file
+     * headers. Returns the number of schemas now cached.
+     *
+     * Nothing is likely to query most of these databases soon, so the read-only connections the
+     * preload leaves in [connectionPool] are closed when it finishes.
+     */
+    suspend fun preloadAllDatabaseSchemas(parallelism: Int = DEFAULT_PRELOAD_PARALLELISM): Int =
+        withContext(McpDispatchers.io) {
             Log.d(TAG, "Preloading all database schemas")
 
             try {
-                val roomDatabases = discoverRoomDatabases()
-                val sqliteDatabases = discoverSqliteDatabases()
-                val sqlDelightDatabases = discoverSqlDelightDatabases()
+                val files = discoverDatabaseFiles()
+                val roomDatabases = discoverRoomDatabases(files)
+                val sqliteDatabases = discoverSqliteDatabases(files)
+                val sqlDelightDatabases = discoverSqlDelightDatabases(files)
 
-                val allDatabases = roomDatabases + sqliteDatabases + sqlDelightDatabases
+                val allDatabases =
+                    (roomDatabases + sqliteDatabases + sqlDelightDatabases).distinct()
 
                 Log.d(TAG, "Found ${allDatabases.size} databases to preload")
 
-                allDatabases.forEach { databaseUri ->
-                    try {
-                        loadDatabaseSchema(databaseUri)
-                        Log.d(TAG, "Preloaded schema for: $databaseUri")
-                    } catch (e: Exception) {
-                        Log.w(TAG, "Failed to preload schema for: $databaseUri", e)
-                        cacheStats.errors++
+                val permits = Semaphore(parallelism)
+                try {
+                    allDatabases
+                        .map { databaseUri ->
+                            async { permits.withPermit { getOrLoadSchema(databaseUri) } }
+                        }
+                        .awaitAll()
+                        .count { it != null }
+                } finally {
+                    allDatabases.forEach { databaseUri ->
+                        connectionPool.closeIdleConnections(
+                            DatabaseConfig(path = databaseUri, readOnly = true)
+                        )
                     }
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "Failed to preload database schemas", e)
+                0
             }
         }
 
@@ -250,36 +381,43 @@ class DatabaseSchemaCache(
     }
 
     /** Get cache statistics. */
-    fun getCacheStatistics(): CacheStats = cacheStats.copy()
+    fun getCacheStatistics(): CacheStats = synchronized(cacheStats) { cacheStats.copy() }
 
     /** Clear the entire cache. */
     fun clearCache() {
-        cacheMutex.tryLock()
-        try {
-            schemaCache.evictAll()
-            Log.d(TAG, "Schema cache cleared")
-        } finally {
-            cacheMutex.unlock()
-        }
+        schemaCache.evictAll()
+        diskCache.clear()
+        Log.d(TAG, "Schema cache cleared")
     }
 
-    private suspend fun loadDatabaseSchema(databaseUri: String): CachedDatabaseSchema? =
-        withContext(Dispatchers.IO) {
+    private fun lockFor(databaseUri: String): Mutex =
+        loadLocks.computeIfAbsent(databaseUri) { Mutex() }
+
+    private fun isUnsupported(databaseUri: String): Boolean {
+        if (detectDatabaseType(databaseUri) != DatabaseType.CONTENT_PROVIDER) return false
+        Log.d(TAG, "Schema caching is not supported for content providers: $databaseUri")
+        return true
+    }
+
+    private fun record(update: CacheStats.() -> Unit) {
+        synchronized(cacheStats) { cacheStats.update() }
+    }
+
+    private suspend fun loadDatabaseSchema(
+        databaseUri: String,
+        schemaVersion: Int,
+    ): CachedDatabaseSchema? =
+        withContext(McpDispatchers.io) {
             Log.d(TAG, "Loading schema for: $databaseUri")
 
             try {
                 val databaseType = detectDatabaseType(databaseUri)
                 Log.d(TAG, "Detected database type: $databaseType for $databaseUri")
 
-                val baseSchema = loadBaseSchema(databaseUri, databaseType)
+                val baseSchema = loadBaseSchema(databaseUri, databaseType, schemaVersion)
+                diskCache.write(baseSchema)
 
-                val enhancedSchema =
-                    when (databaseType) {
-                        DatabaseType.ROOM -> enhanceWithRoomInformation(baseSchema, databaseUri)
-                        DatabaseType.SQLDELIGHT ->
-                            enhanceWithSqlDelightInformation(baseSchema, databaseUri)
-                        else -> baseSchema
-                    }
+                val enhancedSchema = enhance(baseSchema, databaseUri)
 
                 schemaCache.put(databaseUri, enhancedSchema)
                 Log.d(TAG, "Cached schema for: $databaseUri")
@@ -291,12 +429,34 @@ class DatabaseSchemaCache(
             }
         }
 
+    private suspend fun enhance(
+        schema: CachedDatabaseSchema,
+        databaseUri: String,
+    ): CachedDatabaseSchema =
+        when (schema.databaseType) {
+            DatabaseType.ROOM -> enhanceWithRoomInformation(schema, databaseUri)
+            DatabaseType.SQLDELIGHT -> enhanceWithSqlDelightInformation(schema, databaseUri)
+            else -> schema
+        }
+
+    /**
+     * The database's `schema_version`, read from the file header when that is current so a warm
+     * start doesn't have to open the database at all.
+     */
+    private suspend fun currentSchemaVersion(databaseUri: String): Int {
+        val headerVersion = readHeaderSchemaVersion(File(databaseUri))
+        if (headerVersion != null) return headerVersion
+        return connectionPool.withConnection(DatabaseConfig(path = databaseUri, readOnly = true)) {
+            SchemaIntrospector.schemaVersion(it)
+        }
+    }
+
     private fun detectDatabaseType(databaseUri: String): DatabaseType {
         // Heuristics to detect database type
         return when {
+            databaseUri.startsWith("content://") -> DatabaseType.CONTENT_PROVIDER
             databaseUri.contains("room") -> DatabaseType.ROOM
             databaseUri.contains("sqldelight") -> DatabaseType.SQLDELIGHT
-            databaseUri.startsWith("content://") -> DatabaseType.CONTENT_PROVIDER
             else -> DatabaseType.SQLITE_DIRECT
         }
     }
@@ -304,22 +464,11 @@ class DatabaseSchemaCache(
     private suspend fun loadBaseSchema(
         databaseUri: String,
         databaseType: DatabaseType,
-    ): CachedDatabaseSchema {
-        // TODO: Implement actual schema loading from database
-        // For now, return a basic schema structure
-
-        return CachedDatabaseSchema(
-            databaseUri = databaseUri,
-            databaseType = databaseType,
-            tables = emptyMap(),
-            views = emptyMap(),
-            indexes = emptyMap(),
-            foreignKeys = emptyList(),
-            triggers = emptyMap(),
-            sourceCodeMappings = emptyMap(),
-            schemaVersion = 1,
-        )
-    }
+        schemaVersion: Int,
+    ): CachedDatabaseSchema =
+        connectionPool.withConnection(DatabaseConfig(path = databaseUri, readOnly = true)) {
+            SchemaIntrospector.introspect(it, databaseUri, databaseType, schemaVersion)
+        }
 
     private suspend fun enhanceWithRoomInformation(
         schema: CachedDatabaseSchema,
@@ -347,20 +496,21 @@ class DatabaseSchemaCache(
         }
     }
 
-    private suspend fun discoverRoomDatabases(): List<String> {
-        // TODO: Implement Room database discovery
-        return emptyList()
+    /** Plain SQLite files in the app's database directory; encrypted ones can't be opened */
+    private fun discoverDatabaseFiles(): List<String> {
+        val directory = context.getDatabasePath(DISCOVERY_PROBE).parentFile ?: return emptyList()
+        return directory.listFiles { file -> isSqliteDatabase(file) }?.map { it.absolutePath }
+            ?: emptyList()
     }
 
-    private suspend fun discoverSqliteDatabases(): List<String> {
-        // TODO: Implement SQLite database discovery
-        return emptyList()
-    }
+    private fun discoverRoomDatabases(files: List<String>): List<String> =
+        files.filter { detectDatabaseType(it) == DatabaseType.ROOM }
 
-    private suspend fun discoverSqlDelightDatabases(): List<String> {
-        // TODO: Implement SQLDelight database discovery
-        return emptyList()
-    }
+    private fun discoverSqliteDatabases(files: List<String>): List<String> =
+        files.filter { detectDatabaseType(it) == DatabaseType.SQLITE_DIRECT }
+
+    private fun discoverSqlDelightDatabases(files: List<String>): List<String> =
+        files.filter { detectDatabaseType(it) == DatabaseType.SQLDELIGHT }
 }
 
 data class QueryOptimization(
@@ -2,9 +2,9 @@ package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
 
 import android.content.Context
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import kotlin.reflect.KClass
 import kotlin.reflect.KType
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 
 /**
@@ -80,7 +80,7 @@ class RoomSchemaAnalyzer(private val context: Context) {
      * Room dependencies.
      */
     suspend fun analyzeRoomDatabase(database: Any): RoomDatabaseInfo? =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             return@withContext try {
                 if (!isRoomAvailable()) {
                     Log.w(TAG, "Room not available, cannot analyze database")
@@ -124,7 +124,7 @@ class RoomSchemaAnalyzer(private val context: Context) {
         tableSchema: DatabaseSchemaCache.TableSchema,
         roomInfo: RoomDatabaseInfo,
     ): DatabaseSchemaCache.TableSchema =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val entityInfo =
                 roomInfo.entities.find { it.tableName == tableSchema.name }
                     ?: return@withContext tableSchema
@@ -0,0 +1,267 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
+
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.CachedDatabaseSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ColumnSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.DatabaseType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ForeignKeyConstraint
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.IndexSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.SqliteDataType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TableSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TriggerSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ViewSchema
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.security.MessageDigest
+
+/**
+ * Schemas persisted under [directory], one file per database, so a restarted process can serve
+ * them without introspecting the database again.
+ *
+ * A file records the `schema_version` it was written at and is only read back for that version;
+ * after a migration it is dropped on the next read. Only what comes from the database itself is
+ * stored, in a compact binary encoding. Room and SQLDelight mappings hold class references and
+ * are derived again after loading.
+ */
+class SchemaDiskCache(private val directory: File) {
+
+    companion object {
+        private const val TAG = "SchemaDiskCache"
+        private const val MAGIC = 0x4D435343
+        // Bump whenever the encoding changes; files in an older format are then replaced
+        private const val FORMAT_VERSION = 1
+        private const val SUFFIX = ".schema"
+    }
+
+    /** The schema stored for [databaseUri] at [schemaVersion], or null if there is none */
+    fun read(databaseUri: String, schemaVersion: Int): CachedDatabaseSchema? {
+        val file = fileFor(databaseUri)
+        if (!file.isFile) return null
+        val schema =
+            try {
+                val stream = BufferedInputStream(FileInputStream(file))
+                SchemaInput(stream, file.length()).use { input ->
+                    val current =
+                        input.readInt() == MAGIC &&
+                            input.readInt() == FORMAT_VERSION &&
+                            input.readString() == databaseUri &&
+                            input.readInt() == schemaVersion
+                    if (current) input.readSchema(databaseUri, schemaVersion) else null
+                }
+            } catch (e: Exception) {
+                // Any decode failure means the file is corrupt, not just an IOException
+                Log.w(TAG, "Unreadable schema cache file for $databaseUri", e)
+                null
+            }
+        // Stale or corrupt: it will never match again
+        if (schema == null) file.delete()
+        return schema
+    }
+
+    fun write(schema: CachedDatabaseSchema) {
+        val file = fileFor(schema.databaseUri)
+        val temp = File(directory, file.name + ".tmp")
+        try {
+            directory.mkdirs()
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(FORMAT_VERSION)
+                output.writeString(schema.databaseUri)
+                output.writeInt(schema.schemaVersion)
+                output.writeSchema(schema)
+            }
+            // Readers only ever see a complete file
+            if (!temp.renameTo(file)) temp.delete()
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to persist schema for ${schema.databaseUri}", e)
+            temp.delete()
+        }
+    }
+
+    fun remove(databaseUri: String) {
+        fileFor(databaseUri).delete()
+    }
+
+    fun clear() {
+        directory.listFiles { file -> file.name.endsWith(SUFFIX) }?.forEach { it.delete() }
+    }
+
+    /** Input from a cache file of [length] bytes, which bounds every count and length read */
+    private class SchemaInput(input: InputStream, val length: Long) : DataInputStream(input)
+
+    private fun fileFor(databaseUri: String): File {
+        val digest = MessageDigest.getInstance("SHA-1").digest(databaseUri.toByteArray())
+        return File(directory, digest.joinToString("") { "%02x".format(it) } + SUFFIX)
+    }
+
+    private fun DataOutputStream.writeSchema(schema: CachedDatabaseSchema) {
+        writeInt(schema.databaseType.ordinal)
+        writeLong(schema.lastUpdated)
+        writeList(schema.tables.values) { table ->
+            writeString(table.name)
+            writeList(table.columns) { column ->
+                writeString(column.name)
+                writeString(column.type)
+                writeInt(column.sqliteType.ordinal)
+                writeBoolean(column.isNullable)
+                writeNullableString(column.defaultValue)
+                writeBoolean(column.isAutoIncrement)
+                writeNullableString(column.collation)
+            }
+            writeStrings(table.primaryKey)
+            writeStrings(table.indexes)
+            writeList(table.foreignKeys) { writeForeignKey(it) }
+            writeStrings(table.checkConstraints)
+            writeLong(table.estimatedRowCount)
+        }
+        writeList(schema.views.values) { view ->
+            writeString(view.name)
+            writeString(view.sql)
+            writeStrings(view.dependentTables)
+        }
+        writeList(schema.indexes.values) { index ->
+            writeString(index.name)
+            writeString(index.tableName)
+            writeStrings(index.columns)
+            writeBoolean(index.isUnique)
+            writeNullableString(index.whereClause)
+            writeLong(index.cardinality)
+        }
+        writeList(schema.foreignKeys) { writeForeignKey(it) }
+        writeList(schema.triggers.values) { trigger ->
+            writeString(trigger.name)
+            writeString(trigger.tableName)
+            writeString(trigger.event)
+            writeString(trigger.timing)
+            writeString(trigger.sql)
+        }
+    }
+
+    private fun SchemaInput.readSchema(
+        databaseUri: String,
+        schemaVersion: Int,
+    ): CachedDatabaseSchema {
+        val databaseType = readEnum(DatabaseType.entries)
+        val lastUpdated = readLong()
+        val tables = readList {
+            TableSchema(
+                name = readString(),
+                columns =
+                    readList {
+                        ColumnSchema(
+                            name = readString(),
+                            type = readString(),
+                            sqliteType = readEnum(SqliteDataType.entries),
+                            isNullable = readBoolean(),
+                            defaultValue = readNullableString(),
+                            isAutoIncrement = readBoolean(),
+                            collation = readNullableString(),
+                        )
+                    },
+                primaryKey = readStrings(),
+                indexes = readStrings(),
+                foreignKeys = readList { readForeignKey() },
+                checkConstraints = readStrings(),
+                estimatedRowCount = readLong(),
+            )
+        }
+        val views = readList { ViewSchema(readString(), readString(), readStrings()) }
+        val indexes = readList {
+            IndexSchema(
+                name = readString(),
+                tableName = readString(),
+                columns = readStrings(),
+                isUnique = readBoolean(),
+                whereClause = readNullableString(),
+                cardinality = readLong(),
+            )
+        }
+        val foreignKeys = readList { readForeignKey() }
+        val triggers = readList {
+            TriggerSchema(readString(), readString(), readString(), readString(), readString())
+        }
+        return CachedDatabaseSchema(
+            databaseUri = databaseUri,
+            databaseType = databaseType,
+            tables = tables.associateBy { it.name },
+            views = views.associateBy { it.name },
+            indexes = indexes.associateBy { it.name },
+            foreignKeys = foreignKeys,
+            triggers = triggers.associateBy { it.name },
+            sourceCodeMappings = emptyMap(),
+            lastUpdated = lastUpdated,
+            schemaVersion = schemaVersion,
+        )
+    }
+
+    private fun DataOutputStream.writeForeignKey(foreignKey: ForeignKeyConstraint) {
+        writeString(foreignKey.fromTable)
+        writeString(foreignKey.fromColumn)
+        writeString(foreignKey.toTable)
+        writeString(foreignKey.toColumn)
+        writeNullableString(foreignKey.onDelete)
+        writeNullableString(foreignKey.onUpdate)
+    }
+
+    private fun SchemaInput.readForeignKey(): ForeignKeyConstraint =
+        ForeignKeyConstraint(
+            fromTable = readString(),
+            fromColumn = readString(),
+            toTable = readString(),
+            toColumn = readString(),
+            onDelete = readNullableString(),
+            onUpdate = readNullableString(),
+        )
+
+    private inline fun <T> DataOutputStream.writeList(items: Collection<T>, item: (T) -> Unit) {
+        writeInt(items.size)
+        items.forEach(item)
+    }
+
+    private inline fun <T> SchemaInput.readList(item: () -> T): List<T> {
+        val size = readInt()
+        // Every item takes at least four bytes, so a larger count can only come from corruption
+        if (size < 0 || size > length / 4) throw IOException("Bad list size $size")
+        return List(size) { item() }
+    }
+
+    private fun <E> SchemaInput.readEnum(entries: List<E>): E {
+        val ordinal = readInt()
+        return entries.getOrNull(ordinal) ?: throw IOException("Bad ordinal $ordinal")
+    }
+
+    private fun DataOutputStream.writeStrings(strings: Collection<String>) =
+        writeList(strings) { writeString(it) }
+
+    private fun SchemaInput.readStrings(): List<String> = readList { readString() }
+
+    // Length-prefixed UTF-8; writeUTF can't hold the SQL of a large trigger or view
+    private fun DataOutputStream.writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun SchemaInput.readString(): String =
+        readNullableString() ?: throw IOException("Unexpected null string")
+
+    private fun DataOutputStream.writeNullableString(value: String?) {
+        if (value == null) writeInt(-1) else writeString(value)
+    }
+
+    private fun SchemaInput.readNullableString(): String? {
+        val size = readInt()
+        if (size < 0) return null
+        if (size > length) throw IOException("Bad string length $size")
+        val bytes = ByteArray(size)
+        readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+}
@@ -0,0 +1,288 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
+
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.SqliteDatabase
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.QueryPlanAnalyzer
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.CachedDatabaseSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ColumnSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.DatabaseType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ForeignKeyConstraint
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.IndexSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.SqliteDataType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TableSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TriggerSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ViewSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlParser
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.sql.SqlTokenizer
+
+/**
+ * Reads a [CachedDatabaseSchema] from `sqlite_master` and the schema PRAGMAs.
+ *
+ * Columns, indexes and foreign keys of every table each come from a single join over the
+ * table-valued PRAGMA functions, so a database costs the same handful of queries no matter how
+ * many tables it has.
+ */
+internal object SchemaIntrospector {
+
+    private const val TAG = "SchemaIntrospector"
+    private val TRIGGER_TIMINGS = listOf("BEFORE", "AFTER", "INSTEAD")
+    private val TRIGGER_EVENTS = listOf("INSERT", "UPDATE", "DELETE")
+
+    private const val USER_TABLES = "m.type = 'table' AND m.name NOT LIKE 'sqlite_%'"
+    private const val COLUMNS_QUERY =
+        "SELECT m.name, p.name, p.type, p.\"notnull\", p.dflt_value, p.pk " +
+            "FROM sqlite_master AS m JOIN pragma_table_info(m.name) AS p " +
+            "WHERE $USER_TABLES ORDER BY m.name, p.cid"
+    private const val INDEXES_QUERY =
+        "SELECT m.name, l.name, l.\"unique\", i.name " +
+            "FROM sqlite_master AS m JOIN pragma_index_list(m.name) AS l " +
+            "LEFT JOIN pragma_index_info(l.name) AS i " +
+            "WHERE $USER_TABLES ORDER BY m.name, l.name, i.seqno"
+    private const val FOREIGN_KEYS_QUERY =
+        "SELECT m.name, f.\"from\", f.\"table\", f.\"to\", f.on_update, f.on_delete " +
+            "FROM sqlite_master AS m JOIN pragma_foreign_key_list(m.name) AS f " +
+            "WHERE $USER_TABLES ORDER BY m.name, f.id, f.seq"
+
+    private data class MasterRow(
+        val type: String,
+        val name: String,
+        val table: String,
+        val sql: String,
+    )
+
+    /** A row of `table_info`; [primaryKeyPosition] is 0 outside the primary key */
+    data class ColumnRow(
+        val name: String,
+        val type: String,
+        val notNull: Boolean,
+        val defaultValue: String?,
+        val primaryKeyPosition: Int,
+    )
+
+    data class IndexRow(val name: String, val unique: Boolean, val columns: List<String>)
+
+    /** The schema cookie SQLite bumps on every schema change */
+    fun schemaVersion(database: SqliteDatabase): Int =
+        database.rawQuery("PRAGMA schema_version", null).use { cursor ->
+            if (cursor.moveToFirst()) cursor.getInt(0) else 0
+        }
+
+    fun introspect(
+        database: SqliteDatabase,
+        databaseUri: String,
+        databaseType: DatabaseType,
+        schemaVersion: Int,
+    ): CachedDatabaseSchema {
+        val master =
+            database
+                .rawQuery(
+                    "SELECT type, name, tbl_name, sql FROM sqlite_master " +
+                        "WHERE name NOT LIKE 'sqlite_%'",
+                    null,
+                )
+                .use { cursor ->
+                    buildList {
+                        while (cursor.moveToNext()) {
+                            val sql = if (cursor.isNull(3)) "" else cursor.getString(3)
+                            add(
+                                MasterRow(
+                                    cursor.getString(0),
+                                    cursor.getString(1),
+                                    cursor.getString(2),
+                                    sql,
+                                )
+                            )
+                        }
+                    }
+                }
+        val rowCounts = QueryPlanAnalyzer.loadStatistics(database, emptyList()).tableRows
+        val columns = readColumns(database)
+        val indexRows = readIndexes(database)
+        val foreignKeys = readForeignKeys(database)
+        val sql = master.associate { it.name to it.sql }
+
+        val indexes =
+            indexRows
+                .flatMap { (table, rows) ->
+                    rows.map { row ->
+                        IndexSchema(
+                            name = row.name,
+                            tableName = table,
+                            columns = row.columns,
+                            isUnique = row.unique,
+                            whereClause = sql[row.name]?.let(::partialWhere),
+                        )
+                    }
+                }
+                .associateBy { it.name }
+        val tables =
+            master
+                .filter { it.type == "table" }
+                .associate { row ->
+                    row.name to
+                        tableSchema(
+                            row,
+                            columns[row.name].orEmpty(),
+                            indexRows[row.name].orEmpty().map { it.name },
+                            foreignKeys[row.name].orEmpty(),
+                            rowCounts[row.name] ?: 0L,
+                        )
+                }
+
+        return CachedDatabaseSchema(
+            databaseUri = databaseUri,
+            databaseType = databaseType,
+            tables = tables,
+            views =
+                master
+                    .filter { it.type == "view" }
+                    .associate { it.name to ViewSchema(it.name, it.sql, viewTables(it.sql)) },
+            indexes = indexes,
+            foreignKeys = tables.values.flatMap { it.foreignKeys },
+            triggers =
+                master.filter { it.type == "trigger" }.associate { it.name to trigger(it) },
+            sourceCodeMappings = emptyMap(),
+            schemaVersion = schemaVersion,
+        )
+    }
+
+    /** Columns of every table, keyed by table name */
+    fun readColumns(database: SqliteDatabase): Map<String, List<ColumnRow>> =
+        database.rawQuery(COLUMNS_QUERY, null).use { cursor ->
+            val columns = LinkedHashMap<String, MutableList<ColumnRow>>()
+            while (cursor.moveToNext()) {
+                columns
+                    .getOrPut(cursor.getString(0)) { mutableListOf() }
+                    .add(
+                        ColumnRow(
+                            name = cursor.getString(1),
+                            type = cursor.getString(2).orEmpty(),
+                            notNull = cursor.getInt(3) != 0,
+                            defaultValue = if (cursor.isNull(4)) null else cursor.getString(4),
+                            primaryKeyPosition = cursor.getInt(5),
+                        )
+                    )
+            }
+            columns
+        }
+
+    /** Indexes of every table with their named columns, keyed by table name */
+    fun readIndexes(database: SqliteDatabase): Map<String, List<IndexRow>> =
+        database.rawQuery(INDEXES_QUERY, null).use { cursor ->
+            val indexes = LinkedHashMap<String, LinkedHashMap<String, IndexRow>>()
+            while (cursor.moveToNext()) {
+                val tableIndexes = indexes.getOrPut(cursor.getString(0)) { LinkedHashMap() }
+                val name = cursor.getString(1)
+                val index =
+                    tableIndexes.getOrPut(name) {
+                        IndexRow(name, cursor.getInt(2) == 1, emptyList())
+                    }
+                // Expression columns have no name
+                if (!cursor.isNull(3)) {
+                    tableIndexes[name] = index.copy(columns = index.columns + cursor.getString(3))
+                }
+            }
+            indexes.mapValues { it.value.values.toList() }
+        }
+
+    /** Foreign keys of every table, keyed by the child table */
+    fun readForeignKeys(database: SqliteDatabase): Map<String, List<ForeignKeyConstraint>> =
+        database.rawQuery(FOREIGN_KEYS_QUERY, null).use { cursor ->
+            val foreignKeys = LinkedHashMap<String, MutableList<ForeignKeyConstraint>>()
+            while (cursor.moveToNext()) {
+                val table = cursor.getString(0)
+                foreignKeys
+                    .getOrPut(table) { mutableListOf() }
+                    .add(
+                        ForeignKeyConstraint(
+                            fromTable = table,
+                            fromColumn = cursor.getString(1),
+                            toTable = cursor.getString(2),
+                            // Null when the parent's primary key is implied
+                            toColumn = if (cursor.isNull(3)) "" else cursor.getString(3),
+                            onUpdate = cursor.getString(4),
+                            onDelete = cursor.getString(5),
+                        )
+                    )
+            }
+            foreignKeys
+        }
+
+    private fun tableSchema(
+        row: MasterRow,
+        columns: List<ColumnRow>,
+        indexes: List<String>,
+        foreignKeys: List<ForeignKeyConstraint>,
+        rowCount: Long,
+    ): TableSchema {
+        val autoIncrement = row.sql.contains("AUTOINCREMENT", ignoreCase = true)
+        return TableSchema(
+            name = row.name,
+            columns =
+                columns.map { column ->
+                    ColumnSchema(
+                        name = column.name,
+                        type = column.type,
+                        sqliteType = affinity(column.type),
+                        isNullable = !column.notNull,
+                        defaultValue = column.defaultValue,
+                        isAutoIncrement = autoIncrement && column.primaryKeyPosition > 0,
+                    )
+                },
+            primaryKey =
+                columns
+                    .filter { it.primaryKeyPosition > 0 }
+                    .sortedBy { it.primaryKeyPosition }
+                    .map { it.name },
+            indexes = indexes,
+            foreignKeys = foreignKeys,
+            checkConstraints = emptyList(),
+            estimatedRowCount = rowCount,
+        )
+    }
+
+    /** Column affinity by SQLite's rules for a declared type */
+    fun affinity(type: String): SqliteDataType {
+        val upper = type.uppercase()
+        return when {
+            "INT" in upper -> SqliteDataType.INTEGER
+            "CHAR" in upper || "CLOB" in upper || "TEXT" in upper -> SqliteDataType.TEXT
+            "BLOB" in upper || upper.isEmpty() -> SqliteDataType.BLOB
+            "REAL" in upper || "FLOA" in upper || "DOUB" in upper -> SqliteDataType.REAL
+            else -> SqliteDataType.NUMERIC
+        }
+    }
+
+    private fun partialWhere(sql: String): String? {
+        val tokens = runCatching { SqlTokenizer.tokenize(sql) }.getOrNull() ?: return null
+        val where = tokens.firstOrNull { it.isKeyword("WHERE") } ?: return null
+        return sql.substring(where.position + "WHERE".length).trim()
+    }
+
+    /** Tables a view reads, from the SELECT after `AS` */
+    private fun viewTables(sql: String): List<String> =
+        try {
+            val select = SqlTokenizer.tokenize(sql).first { it.isKeyword("AS") }
+            SqlParser.parse(sql.substring(select.position + 2)).tables.map { it.name }.distinct()
+        } catch (e: Exception) {
+            Log.d(TAG, "Could not read the tables of view: $sql")
+            emptyList()
+        }
+
+    private fun trigger(row: MasterRow): TriggerSchema {
+        val words =
+            runCatching { SqlTokenizer.tokenize(row.sql) }
+                .getOrDefault(emptyList())
+                .takeWhile { !it.isKeyword("ON") }
+                .map { it.text.uppercase() }
+        val timing = words.firstOrNull { it in TRIGGER_TIMINGS }
+        return TriggerSchema(
+            name = row.name,
+            tableName = row.table,
+            event = words.firstOrNull { it in TRIGGER_EVENTS } ?: "",
+            // SQLite defaults to BEFORE
+            timing = if (timing == "INSTEAD") "INSTEAD OF" else timing ?: "BEFORE",
+            sql = row.sql,
+        )
+    }
+}
@@ -0,0 +1,83 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
+
+import android.app.Activity
+import android.app.ActivityManager
+import android.app.Application
+import android.content.Context
+import android.os.Bundle
+import android.os.Looper
+import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlinx.coroutines.launch
+
+/**
+ * Warms [schemaCache] for every app database in the background, so the first schema-aware tool
+ * call doesn't pay for introspecting them all.
+ *
+ * Nothing runs until the first activity has resumed and the main thread has gone idle, keeping the
+ * work out of app startup. The preload then runs on [McpDispatchers.io], whose threads run at
+ * background priority, and opens databases through the cache's shared connection pool, closing
+ * them again once it is done.
+ */
+class SchemaPreloader(
+    private val context: Context,
+    private val schemaCache: DatabaseSchemaCache,
+) {
+
+    companion object {
+        private const val TAG = "SchemaPreloader"
+    }
+
+    private val scope = McpDispatchers.scope(TAG)
+    private val started = AtomicBoolean(false)
+
+    /** Schedule the preload; only the first call has any effect */
+    fun start() {
+        if (!started.compareAndSet(false, true)) return
+        val application = context.applicationContext as? Application ?: return
+
+        if (isInForeground()) {
+            // An activity is already showing, so just wait for the main thread to settle
+            preloadWhenIdle()
+            return
+        }
+
+        application.registerActivityLifecycleCallbacks(
+            object : Application.ActivityLifecycleCallbacks {
+                override fun onActivityCreated(activity: Activity, savedInstanceState: Bundle?) {}
+
+                override fun onActivityStarted(activity: Activity) {}
+
+                override fun onActivityResumed(activity: Activity) {
+                    application.unregisterActivityLifecycleCallbacks(this)
+                    preloadWhenIdle()
+                }
+
+                override fun onActivityPaused(activity: Activity) {}
+
+                override fun onActivityStopped(activity: Activity) {}
+
+                override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
+
+                override fun onActivityDestroyed(activity: Activity) {}
+            }
+        )
+    }
+
+    private fun preloadWhenIdle() {
+        Looper.getMainLooper().queue.addIdleHandler {
+            scope.launch {
+                val count = schemaCache.preloadAllDatabaseSchemas()
+                Log.i(TAG, "Preloaded $count database schemas")
+            }
+            false
+        }
+    }
+
+    private fun isInForeground(): Boolean {
+        val state = ActivityManager.RunningAppProcessInfo()
+        ActivityManager.getMyMemoryState(state)
+        return state.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND
+    }
+}
@@ -2,9 +2,9 @@ package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
 
 import android.content.Context
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import kotlin.reflect.KClass
 import kotlin.reflect.KType
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 
 /**
@@ -67,7 +67,7 @@ class SqlDelightSchemaAnalyzer(private val context: Context) {
 
     /** Analyze a SQLDelight database and extract comprehensive information. */
     suspend fun analyzeSqlDelightDatabase(databasePath: String): SqlDelightDatabaseInfo? =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             return@withContext try {
                 if (!isSqlDelightAvailable()) {
                     Log.w(TAG, "SQLDelight not available, cannot analyze database")
@@ -106,7 +106,7 @@ class SqlDelightSchemaAnalyzer(private val context: Context) {
         tableSchema: DatabaseSchemaCache.TableSchema,
         sqlDelightInfo: SqlDelightDatabaseInfo,
     ): DatabaseSchemaCache.TableSchema =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val sqlDelightTable =
                 sqlDelightInfo.tables.find { it.name == tableSchema.name }
                     ?: return@withContext tableSchema
@@ -0,0 +1,652 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+/**
+ * Recursive descent parser for the SQLite dialect.
+ *
+ * SELECT statements, including CTEs, compound selects, subqueries, joins and window functions, are
+ * parsed into a [SqlSelect]. Other statements only need to be recognized, so they are skipped to
+ * the next `;` once their kind is known. Every statement in the input is counted, so a second
+ * statement hidden after the first can't go unnoticed.
+ */
+class SqlParser private constructor(private val tokens: List<SqlToken>, private val length: Int) {
+
+    private var pos = 0
+
+    companion object {
+        /** Parse [sql], throwing [SqlParseException] if it isn't valid SQLite */
+        fun parse(sql: String): SqlStatement =
+            try {
+                SqlParser(SqlTokenizer.tokenize(sql), sql.length).parseStatement(sql)
+            } catch (e: StackOverflowError) {
+                throw SqlParseException("Statement is nested too deeply", 0)
+            }
+
+        // Words that end an expression or a FROM item, so they can't be read as a bare alias
+        private val RESERVED =
+            setOf(
+                "ALL", "AND", "AS", "ASC", "BETWEEN", "BY", "CASE", "COLLATE", "CROSS", "DESC",
+                "DISTINCT", "ELSE", "END", "ESCAPE", "EXCEPT", "EXISTS", "FILTER", "FROM", "FULL",
+                "GLOB", "GROUP", "HAVING", "IN", "INDEXED", "INNER", "INTERSECT", "IS", "ISNULL",
+                "JOIN", "LEFT", "LIKE", "LIMIT", "MATCH", "NATURAL", "NOT", "NOTNULL", "NULL",
+                "NULLS", "OFFSET", "ON", "OR", "ORDER", "OUTER", "OVER", "REGEXP", "RETURNING",
+                "RIGHT", "SELECT", "THEN", "UNION", "USING", "VALUES", "WHEN", "WHERE", "WINDOW",
+            )
+        private val JOIN_WORDS =
+            setOf("NATURAL", "LEFT", "RIGHT", "FULL", "OUTER", "INNER", "CROSS")
+        private val EQUALITY_OPERATORS = setOf("=", "==", "!=", "<>")
+        private val UNARY_OPERATORS = setOf("-", "+", "~")
+        private val PATTERN_OPERATORS = setOf("LIKE", "GLOB", "MATCH", "REGEXP")
+        private val LITERAL_WORDS =
+            setOf("NULL", "TRUE", "FALSE", "CURRENT_TIME", "CURRENT_DATE", "CURRENT_TIMESTAMP")
+        private val TRANSACTION_WORDS =
+            setOf("BEGIN", "COMMIT", "END", "ROLLBACK", "SAVEPOINT", "RELEASE")
+        private val KINDS = SqlStatementKind.entries.associateBy { it.name }
+        private val WRITE_KINDS =
+            setOf(SqlStatementKind.INSERT, SqlStatementKind.UPDATE, SqlStatementKind.DELETE)
+    }
+
+    private fun parseStatement(sql: String): SqlStatement {
+        while (acceptPunctuation(';')) Unit
+        val first = peek() ?: throw SqlParseException("Empty statement", 0)
+
+        var select: SqlSelect? = null
+        val kind: SqlStatementKind
+        var target: String? = null
+        val with = if (first.isKeyword("WITH")) parseWith() else emptyList()
+        if (peekKeyword("SELECT") || peekKeyword("VALUES")) {
+            select = parseSelectBody(with)
+            kind = SqlStatementKind.SELECT
+        } else {
+            kind = kindOf(peek() ?: throw unexpected())
+            target = readTarget(kind)
+            skipStatement()
+        }
+        if (!atEnd && peek()?.isPunctuation(';') != true) throw unexpected()
+
+        var count = 1
+        while (!atEnd) {
+            if (acceptPunctuation(';')) continue
+            kindOf(peek()!!)
+            count++
+            skipStatement()
+        }
+        return SqlStatement(sql, kind, count, select, target)
+    }
+
+    private fun kindOf(token: SqlToken): SqlStatementKind {
+        if (token.type != SqlTokenType.WORD) throw unexpected(token)
+        return when (val word = token.text.uppercase()) {
+            "SELECT",
+            "VALUES" -> SqlStatementKind.SELECT
+            "REPLACE" -> SqlStatementKind.INSERT
+            in TRANSACTION_WORDS -> SqlStatementKind.TRANSACTION
+            else -> KINDS[word] ?: SqlStatementKind.OTHER
+        }
+    }
+
+    /** The table an INSERT, UPDATE or DELETE writes to, read without consuming anything */
+    private fun readTarget(kind: SqlStatementKind): String? {
+        if (kind !in WRITE_KINDS) return null
+        val start = pos
+        return try {
+            pos++
+            if (acceptKeyword("OR")) pos++
+            if (!acceptKeyword("INTO")) acceptKeyword("FROM")
+            qualifiedName().second
+        } catch (e: SqlParseException) {
+            null
+        } finally {
+            pos = start
+        }
+    }
+
+    /** Skip to the `;` ending the current statement, reading a trigger body as one statement */
+    private fun skipStatement() {
+        val trigger =
+            peekKeyword("CREATE") && (peekKeyword("TRIGGER", 1) || peekKeyword("TRIGGER", 2))
+        var inBody = false
+        var cases = 0
+        while (!atEnd) {
+            val token = tokens[pos]
+            when {
+                trigger && !inBody && token.isKeyword("BEGIN") -> inBody = true
+                inBody && token.isKeyword("CASE") -> cases++
+                inBody && token.isKeyword("END") -> if (cases > 0) cases-- else inBody = false
+                !inBody && token.isPunctuation(';') -> return
+            }
+            pos++
+        }
+    }
+
+    private fun parseWith(): List<SqlCommonTableExpression> {
+        expectKeyword("WITH")
+        acceptKeyword("RECURSIVE")
+        return commaList {
+            val name = identifier()
+            val columns = if (acceptPunctuation('(')) parenthesizedNames() else emptyList()
+            expectKeyword("AS")
+            acceptKeyword("NOT")
+            acceptKeyword("MATERIALIZED")
+            expectPunctuation('(')
+            val select = parseSelect()
+            expectPunctuation(')')
+            SqlCommonTableExpression(name, columns, select)
+        }
+    }
+
+    private fun parseSelect(): SqlSelect =
+        parseSelectBody(if (peekKeyword("WITH")) parseWith() else emptyList())
+
+    private fun parseSelectBody(with: List<SqlCommonTableExpression>): SqlSelect {
+        val cores = mutableListOf(parseSelectCore())
+        val operators = mutableListOf<String>()
+        while (true) {
+            val operator =
+                when {
+                    acceptKeyword("UNION") -> if (acceptKeyword("ALL")) "UNION ALL" else "UNION"
+                    acceptKeyword("INTERSECT") -> "INTERSECT"
+                    acceptKeyword("EXCEPT") -> "EXCEPT"
+                    else -> break
+                }
+            operators.add(operator)
+            cores.add(parseSelectCore())
+        }
+
+        val orderBy = if (acceptKeywords("ORDER", "BY")) parseOrderingTerms() else emptyList()
+        var limit: SqlExpr? = null
+        var offset: SqlExpr? = null
+        if (acceptKeyword("LIMIT")) {
+            limit = parseExpr()
+            if (acceptKeyword("OFFSET")) {
+                offset = parseExpr()
+            } else if (acceptPunctuation(',')) {
+                // LIMIT offset, count
+                offset = limit
+                limit = parseExpr()
+            }
+        }
+        return SqlSelect(with, cores, operators, orderBy, limit, offset)
+    }
+
+    private fun parseSelectCore(): SqlSelectCore {
+        if (acceptKeyword("VALUES")) {
+            return SqlSelectCore(
+                values =
+                    commaList {
+                        expectPunctuation('(')
+                        commaList { parseExpr() }.also { expectPunctuation(')') }
+                    }
+            )
+        }
+        expectKeyword("SELECT")
+        val distinct = acceptKeyword("DISTINCT")
+        if (!distinct) acceptKeyword("ALL")
+        val resultColumns = commaList { parseResultColumn() }
+        val from = if (acceptKeyword("FROM")) parseJoinClause() else emptyList()
+        val where = if (acceptKeyword("WHERE")) parseExpr() else null
+        val groupBy = if (acceptKeywords("GROUP", "BY")) commaList { parseExpr() } else emptyList()
+        val having = if (acceptKeyword("HAVING")) parseExpr() else null
+        if (acceptKeyword("WINDOW")) {
+            commaList {
+                identifier()
+                expectKeyword("AS")
+                skipParenthesized()
+            }
+        }
+        return SqlSelectCore(distinct, resultColumns, from, where, groupBy, having)
+    }
+
+    private fun parseResultColumn(): SqlResultColumn {
+        if (peek()?.isOperator("*") == true) {
+            pos++
+            return SqlResultColumn.Star(null)
+        }
+        val qualifiedStar = peek(1)?.isPunctuation('.') == true && peek(2)?.isOperator("*") == true
+        if (isName(peek()) && qualifiedStar) {
+            val qualifier = tokens[pos].identifier
+            pos += 3
+            return SqlResultColumn.Star(qualifier)
+        }
+        val expr = parseExpr()
+        return SqlResultColumn.Expression(expr, optionalAlias())
+    }
+
+    private fun parseOrderingTerms(): List<SqlOrderingTerm> = commaList {
+        val expr = parseExpr()
+        val descending = acceptKeyword("DESC")
+        if (!descending) acceptKeyword("ASC")
+        if (acceptKeyword("NULLS")) {
+            if (!acceptKeyword("FIRST")) expectKeyword("LAST")
+        }
+        SqlOrderingTerm(expr, descending)
+    }
+
+    private fun parseJoinClause(): List<SqlJoin> {
+        val joins = mutableListOf<SqlJoin>()
+        parseJoinSource("", joins)
+        while (true) {
+            val operator = joinOperator() ?: break
+            parseJoinSource(operator, joins)
+        }
+        return joins
+    }
+
+    private fun joinOperator(): String? {
+        if (acceptPunctuation(',')) return ","
+        val start = pos
+        val words = mutableListOf<String>()
+        while (true) {
+            val word = peek()?.takeIf { it.type == SqlTokenType.WORD }?.text?.uppercase()
+            if (word !in JOIN_WORDS) break
+            words.add(word!!)
+            pos++
+        }
+        if (!acceptKeyword("JOIN")) {
+            pos = start
+            return null
+        }
+        return (words + "JOIN").joinToString(" ")
+    }
+
+    private fun parseJoinSource(operator: String, joins: MutableList<SqlJoin>) {
+        if (peek()?.isPunctuation('(') == true && !startsSelect(peek(1))) {
+            // A parenthesized join is flattened into the enclosing one
+            pos++
+            val nested = parseJoinClause()
+            expectPunctuation(')')
+            optionalAlias()
+            val (on, using) = parseJoinConstraint()
+            joins.add(nested.first().copy(operator = operator, on = on, using = using))
+            joins.addAll(nested.drop(1))
+            return
+        }
+        val source = parseSource()
+        val (on, using) = parseJoinConstraint()
+        joins.add(SqlJoin(operator, source, on, using))
+    }
+
+    private fun parseJoinConstraint(): Pair<SqlExpr?, List<String>> =
+        when {
+            acceptKeyword("ON") -> parseExpr() to emptyList()
+            acceptKeyword("USING") -> {
+                expectPunctuation('(')
+                null to parenthesizedNames()
+            }
+            else -> null to emptyList()
+        }
+
+    private fun parseSource(): SqlSource {
+        if (acceptPunctuation('(')) {
+            val select = parseSelect()
+            expectPunctuation(')')
+            return SqlSource.Subquery(select, optionalAlias())
+        }
+        val (schema, name) = qualifiedName()
+        if (acceptPunctuation('(')) {
+            val arguments = if (acceptPunctuation(')')) emptyList() else parseArgumentsRest()
+            return SqlSource.TableFunction(name, arguments, optionalAlias())
+        }
+        val alias = optionalAlias()
+        if (acceptKeywords("INDEXED", "BY")) {
+            identifier()
+        } else if (peekKeyword("NOT") && peekKeyword("INDEXED", 1)) {
+            pos += 2
+        }
+        return SqlSource.Table(name, schema, alias)
+    }
+
+    private fun parseExpr(): SqlExpr = parseOr()
+
+    private fun parseOr(): SqlExpr {
+        var left = parseAnd()
+        while (acceptKeyword("OR")) left = SqlExpr.Binary("OR", left, parseAnd())
+        return left
+    }
+
+    private fun parseAnd(): SqlExpr {
+        var left = parseNot()
+        while (acceptKeyword("AND")) left = SqlExpr.Binary("AND", left, parseNot())
+        return left
+    }
+
+    private fun parseNot(): SqlExpr =
+        if (acceptKeyword("NOT")) SqlExpr.Unary("NOT", parseNot()) else parseEquality()
+
+    private fun parseEquality(): SqlExpr {
+        var left = parseComparison()
+        while (true) {
+            val token = peek() ?: break
+            left =
+                when {
+                    token.isKeyword("ISNULL") || token.isKeyword("NOTNULL") -> {
+                        pos++
+                        SqlExpr.Postfix(token.text.uppercase(), left)
+                    }
+                    token.isKeyword("NOT") && peekKeyword("NULL", 1) -> {
+                        pos += 2
+                        SqlExpr.Postfix("NOTNULL", left)
+                    }
+                    token.isKeyword("IS") -> {
+                        pos++
+                        var negated = acceptKeyword("NOT")
+                        if (acceptKeywords("DISTINCT", "FROM")) negated = !negated
+                        SqlExpr.Binary(if (negated) "IS NOT" else "IS", left, parseComparison())
+                    }
+                    token.type == SqlTokenType.OPERATOR && token.text in EQUALITY_OPERATORS -> {
+                        pos++
+                        SqlExpr.Binary(token.text, left, parseComparison())
+                    }
+                    else -> parseNegatableOperator(left) ?: break
+                }
+        }
+        return left
+    }
+
+    /** `[NOT] IN`, `[NOT] BETWEEN` and `[NOT] LIKE` and its relatives, or null for none of them */
+    private fun parseNegatableOperator(left: SqlExpr): SqlExpr? {
+        val start = pos
+        val negated = acceptKeyword("NOT")
+        val prefix = if (negated) "NOT " else ""
+        val token = peek()
+        val word = token?.takeIf { it.type == SqlTokenType.WORD }?.text?.uppercase()
+        when {
+            word == "IN" -> {
+                pos++
+                return SqlExpr.Binary(prefix + "IN", left, parseInTarget())
+            }
+            word == "BETWEEN" -> {
+                pos++
+                val low = parseComparison()
+                expectKeyword("AND")
+                return SqlExpr.Between(left, low, parseComparison(), negated)
+            }
+            word in PATTERN_OPERATORS -> {
+                pos++
+                val pattern = parseComparison()
+                if (acceptKeyword("ESCAPE")) parseComparison()
+                return SqlExpr.Binary(prefix + word, left, pattern)
+            }
+        }
+        pos = start
+        return null
+    }
+
+    private fun parseInTarget(): SqlExpr {
+        if (acceptPunctuation('(')) {
+            val target =
+                when {
+                    peek()?.isPunctuation(')') == true -> SqlExpr.ListExpr(emptyList())
+                    startsSelect(peek()) -> SqlExpr.Subquery(parseSelect())
+                    else -> SqlExpr.ListExpr(commaList { parseExpr() })
+                }
+            expectPunctuation(')')
+            return target
+        }
+        val (_, name) = qualifiedName()
+        if (acceptPunctuation('(')) {
+            val arguments = if (acceptPunctuation(')')) emptyList() else parseArgumentsRest()
+            return SqlExpr.FunctionCall(name, arguments)
+        }
+        return SqlExpr.Literal(name)
+    }
+
+    private fun parseComparison(): SqlExpr =
+        parseBinary(setOf("<", "<=", ">", ">="), ::parseBitwise)
+
+    private fun parseBitwise(): SqlExpr = parseBinary(setOf("&", "|", "<<", ">>"), ::parseAdditive)
+
+    private fun parseAdditive(): SqlExpr = parseBinary(setOf("+", "-"), ::parseMultiplicative)
+
+    private fun parseMultiplicative(): SqlExpr = parseBinary(setOf("*", "/", "%"), ::parseConcat)
+
+    private fun parseConcat(): SqlExpr = parseBinary(setOf("||", "->", "->>"), ::parseCollate)
+
+    private inline fun parseBinary(operators: Set<String>, operand: () -> SqlExpr): SqlExpr {
+        var left = operand()
+        while (true) {
+            val token = peek()
+            if (token?.type != SqlTokenType.OPERATOR || token.text !in operators) break
+            pos++
+            left = SqlExpr.Binary(token.text, left, operand())
+        }
+        return left
+    }
+
+    private fun parseCollate(): SqlExpr {
+        var expr = parseUnary()
+        while (acceptKeyword("COLLATE")) {
+            identifier()
+            expr = SqlExpr.Postfix("COLLATE", expr)
+        }
+        return expr
+    }
+
+    private fun parseUnary(): SqlExpr {
+        val token = peek()
+        if (token?.type == SqlTokenType.OPERATOR && token.text in UNARY_OPERATORS) {
+            pos++
+            return SqlExpr.Unary(token.text, parseUnary())
+        }
+        return parsePrimary()
+    }
+
+    private fun parsePrimary(): SqlExpr {
+        val token = peek() ?: throw unexpected()
+        when (token.type) {
+            SqlTokenType.NUMBER,
+            SqlTokenType.STRING,
+            SqlTokenType.BLOB -> {
+                pos++
+                return SqlExpr.Literal(token.text)
+            }
+            SqlTokenType.PARAMETER -> {
+                pos++
+                return SqlExpr.Parameter(token.text)
+            }
+            SqlTokenType.OPERATOR -> throw unexpected(token)
+            SqlTokenType.PUNCTUATION -> {
+                if (!token.isPunctuation('(')) throw unexpected(token)
+                pos++
+                val expr =
+                    if (startsSelect(peek())) {
+                        SqlExpr.Subquery(parseSelect())
+                    } else {
+                        commaList { parseExpr() }.let { it.singleOrNull() ?: SqlExpr.ListExpr(it) }
+                    }
+                expectPunctuation(')')
+                return expr
+            }
+            SqlTokenType.WORD,
+            SqlTokenType.QUOTED_IDENTIFIER -> Unit
+        }
+
+        val word = if (token.type == SqlTokenType.WORD) token.text.uppercase() else ""
+        when {
+            word in LITERAL_WORDS -> {
+                pos++
+                return SqlExpr.Literal(word)
+            }
+            word == "EXISTS" -> {
+                pos++
+                expectPunctuation('(')
+                return SqlExpr.Subquery(parseSelect(), exists = true).also {
+                    expectPunctuation(')')
+                }
+            }
+            word == "CASE" -> return parseCase()
+            word == "CAST" && peek(1)?.isPunctuation('(') == true -> {
+                pos += 2
+                val operand = parseExpr()
+                expectKeyword("AS")
+                val type = buildList {
+                    while (!atEnd && peek()?.isPunctuation(')') != true) {
+                        if (peek()?.isPunctuation('(') == true) skipParenthesized()
+                        else add(tokens[pos++].text)
+                    }
+                }
+                expectPunctuation(')')
+                return SqlExpr.Cast(operand, type.joinToString(" "))
+            }
+            word == "RAISE" && peek(1)?.isPunctuation('(') == true -> {
+                pos++
+                skipParenthesized()
+                return SqlExpr.FunctionCall("RAISE", emptyList())
+            }
+            // like(x, y) and its relatives are also functions
+            word in RESERVED && !(word in PATTERN_OPERATORS && peekPunctuation('(', 1)) ->
+                throw unexpected(token)
+        }
+
+        pos++
+        if (peek()?.isPunctuation('(') == true) return parseFunctionCall(token.identifier)
+        // name, table.name or schema.table.name
+        val parts = mutableListOf(token.identifier)
+        while (peek()?.isPunctuation('.') == true && isName(peek(1))) {
+            pos++
+            parts.add(tokens[pos++].identifier)
+        }
+        return SqlExpr.Column(parts.getOrNull(parts.size - 2), parts.last())
+    }
+
+    private fun parseFunctionCall(name: String): SqlExpr {
+        expectPunctuation('(')
+        val call =
+            when {
+                acceptPunctuation(')') -> SqlExpr.FunctionCall(name, emptyList())
+                peek()?.isOperator("*") == true -> {
+                    pos++
+                    expectPunctuation(')')
+                    SqlExpr.FunctionCall(name, emptyList(), star = true)
+                }
+                else -> {
+                    val distinct = acceptKeyword("DISTINCT")
+                    SqlExpr.FunctionCall(name, parseArgumentsRest(), distinct = distinct)
+                }
+            }
+        if (acceptKeyword("FILTER")) skipParenthesized()
+        if (acceptKeyword("OVER")) {
+            if (peek()?.isPunctuation('(') == true) skipParenthesized() else identifier()
+        }
+        return call
+    }
+
+    /** Arguments after an opening parenthesis, through the closing one */
+    private fun parseArgumentsRest(): List<SqlExpr> {
+        val arguments = commaList { parseExpr() }
+        // Aggregates such as group_concat(x ORDER BY y)
+        if (acceptKeywords("ORDER", "BY")) parseOrderingTerms()
+        expectPunctuation(')')
+        return arguments
+    }
+
+    private fun parseCase(): SqlExpr {
+        expectKeyword("CASE")
+        val operand = if (peekKeyword("WHEN")) null else parseExpr()
+        val branches = mutableListOf<Pair<SqlExpr, SqlExpr>>()
+        while (acceptKeyword("WHEN")) {
+            val condition = parseExpr()
+            expectKeyword("THEN")
+            branches.add(condition to parseExpr())
+        }
+        if (branches.isEmpty()) throw unexpected()
+        val otherwise = if (acceptKeyword("ELSE")) parseExpr() else null
+        expectKeyword("END")
+        return SqlExpr.Case(operand, branches, otherwise)
+    }
+
+    private fun optionalAlias(): String? {
+        if (acceptKeyword("AS")) return identifier()
+        val token = peek() ?: return null
+        val alias =
+            token.type == SqlTokenType.QUOTED_IDENTIFIER ||
+                token.type == SqlTokenType.STRING ||
+                (token.type == SqlTokenType.WORD && token.text.uppercase() !in RESERVED)
+        if (!alias) return null
+        pos++
+        return token.identifier
+    }
+
+    /** `name` or `schema.name`, as (schema, name) */
+    private fun qualifiedName(): Pair<String?, String> {
+        val first = identifier()
+        if (peek()?.isPunctuation('.') == true && isName(peek(1))) {
+            pos++
+            return first to identifier()
+        }
+        return null to first
+    }
+
+    /** Names up to and including the closing parenthesis */
+    private fun parenthesizedNames(): List<String> =
+        commaList { identifier() }.also { expectPunctuation(')') }
+
+    private fun identifier(): String {
+        val token = peek() ?: throw unexpected()
+        if (!isName(token)) throw unexpected(token)
+        pos++
+        return token.identifier
+    }
+
+    private fun isName(token: SqlToken?): Boolean =
+        token?.type == SqlTokenType.WORD ||
+            token?.type == SqlTokenType.QUOTED_IDENTIFIER ||
+            token?.type == SqlTokenType.STRING
+
+    private fun startsSelect(token: SqlToken?): Boolean =
+        token != null &&
+            (token.isKeyword("SELECT") || token.isKeyword("VALUES") || token.isKeyword("WITH"))
+
+    private fun skipParenthesized() {
+        expectPunctuation('(')
+        var depth = 1
+        while (depth > 0) {
+            val token = peek() ?: throw unexpected()
+            if (token.isPunctuation('(')) depth++ else if (token.isPunctuation(')')) depth--
+            pos++
+        }
+    }
+
+    private inline fun <T> commaList(item: () -> T): List<T> {
+        val items = mutableListOf(item())
+        while (acceptPunctuation(',')) items.add(item())
+        return items
+    }
+
+    private val atEnd: Boolean
+        get() = pos >= tokens.size
+
+    private fun peek(offset: Int = 0): SqlToken? = tokens.getOrNull(pos + offset)
+
+    private fun peekKeyword(keyword: String, offset: Int = 0): Boolean =
+        peek(offset)?.isKeyword(keyword) == true
+
+    private fun peekPunctuation(char: Char, offset: Int = 0): Boolean =
+        peek(offset)?.isPunctuation(char) == true
+
+    private fun acceptKeyword(keyword: String): Boolean =
+        peekKeyword(keyword).also { if (it) pos++ }
+
+    /** Accept [first] and [second] together, or neither */
+    private fun acceptKeywords(first: String, second: String): Boolean {
+        if (!peekKeyword(first) || !peekKeyword(second, 1)) return false
+        pos += 2
+        return true
+    }
+
+    private fun acceptPunctuation(char: Char): Boolean =
+        (peek()?.isPunctuation(char) == true).also { if (it) pos++ }
+
+    private fun expectKeyword(keyword: String) {
+        if (!acceptKeyword(keyword)) throw unexpected(peek(), "Expected $keyword")
+    }
+
+    private fun expectPunctuation(char: Char) {
+        if (!acceptPunctuation(char)) throw unexpected(peek(), "Expected '$char'")
+    }
+
+    private fun unexpected(token: SqlToken? = peek(), expected: String? = null): SqlParseException {
+        val found = token?.let { "'${it.text}'" } ?: "end of input"
+        val message = expected?.let { "$it but found $found" } ?: "Unexpected $found"
+        return SqlParseException(message, token?.position ?: length)
+    }
+}
@@ -0,0 +1,376 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+enum class SqlStatementKind {
+    SELECT,
+    INSERT,
+    UPDATE,
+    DELETE,
+    CREATE,
+    DROP,
+    ALTER,
+    PRAGMA,
+    ATTACH,
+    DETACH,
+    VACUUM,
+    REINDEX,
+    ANALYZE,
+    TRANSACTION,
+    EXPLAIN,
+    OTHER,
+}
+
+/** An expression, as far as query analysis needs to see into it. */
+sealed interface SqlExpr {
+
+    /** `name`, `table.name` or `schema.table.name`; [qualifier] is the table part */
+    data class Column(val qualifier: String?, val name: String) : SqlExpr
+
+    /** A number, string, blob, NULL or CURRENT_TIMESTAMP-style constant */
+    data class Literal(val text: String) : SqlExpr
+
+    data class Parameter(val text: String) : SqlExpr
+
+    /** `-x`, `+x`, `~x` or `NOT x` */
+    data class Unary(val operator: String, val operand: SqlExpr) : SqlExpr
+
+    /**
+     * A binary operator, uppercased and with any NOT folded in: `=`, `<`, `AND`, `IS NOT`,
+     * `NOT IN`, `LIKE`, `||` and so on. The right side of `IN` is a [ListExpr], a [Subquery] or,
+     * for `IN table`, a [Literal] naming the table.
+     */
+    data class Binary(val operator: String, val left: SqlExpr, val right: SqlExpr) : SqlExpr
+
+    data class Between(
+        val operand: SqlExpr,
+        val low: SqlExpr,
+        val high: SqlExpr,
+        val negated: Boolean,
+    ) : SqlExpr
+
+    /** `x ISNULL`, `x NOTNULL` or `x COLLATE name` */
+    data class Postfix(val operator: String, val operand: SqlExpr) : SqlExpr
+
+    data class FunctionCall(
+        val name: String,
+        val arguments: List<SqlExpr>,
+        val star: Boolean = false,
+        val distinct: Boolean = false,
+    ) : SqlExpr
+
+    /** A parenthesized list such as the right side of `IN (1, 2)` or a row value */
+    data class ListExpr(val items: List<SqlExpr>) : SqlExpr
+
+    data class Subquery(val select: SqlSelect, val exists: Boolean = false) : SqlExpr
+
+    data class Case(
+        val operand: SqlExpr?,
+        val branches: List<Pair<SqlExpr, SqlExpr>>,
+        val otherwise: SqlExpr?,
+    ) : SqlExpr
+
+    data class Cast(val operand: SqlExpr, val type: String) : SqlExpr
+
+    /** Direct subexpressions, not descending into subqueries */
+    fun children(): List<SqlExpr> =
+        when (this) {
+            is Column,
+            is Literal,
+            is Parameter,
+            is Subquery -> emptyList()
+            is Unary -> listOf(operand)
+            is Binary -> listOf(left, right)
+            is Between -> listOf(operand, low, high)
+            is Postfix -> listOf(operand)
+            is FunctionCall -> arguments
+            is ListExpr -> items
+            is Case -> listOfNotNull(operand, otherwise) + branches.flatMap { it.toList() }
+            is Cast -> listOf(operand)
+        }
+}
+
+/** Something a FROM clause reads rows from. */
+sealed interface SqlSource {
+    val alias: String?
+
+    data class Table(val name: String, val schema: String? = null, override val alias: String?) :
+        SqlSource
+
+    data class Subquery(val select: SqlSelect, override val alias: String?) : SqlSource
+
+    /** A table-valued function such as `json_each(x)` */
+    data class TableFunction(
+        val name: String,
+        val arguments: List<SqlExpr>,
+        override val alias: String?,
+    ) : SqlSource
+}
+
+/**
+ * One entry of a FROM clause. [operator] is empty for the first source, `,` for a comma join and
+ * the join keywords otherwise, e.g. `LEFT JOIN`.
+ */
+data class SqlJoin(
+    val operator: String,
+    val source: SqlSource,
+    val on: SqlExpr? = null,
+    val using: List<String> = emptyList(),
+)
+
+sealed interface SqlResultColumn {
+    /** `*` or `table.*` */
+    data class Star(val qualifier: String?) : SqlResultColumn
+
+    data class Expression(val expr: SqlExpr, val alias: String?) : SqlResultColumn
+}
+
+data class SqlOrderingTerm(val expr: SqlExpr, val descending: Boolean)
+
+/** A `SELECT ...` or `VALUES ...` part of a possibly compound select. */
+data class SqlSelectCore(
+    val distinct: Boolean = false,
+    val resultColumns: List<SqlResultColumn> = emptyList(),
+    val from: List<SqlJoin> = emptyList(),
+    val where: SqlExpr? = null,
+    val groupBy: List<SqlExpr> = emptyList(),
+    val having: SqlExpr? = null,
+    val values: List<List<SqlExpr>> = emptyList(),
+)
+
+data class SqlCommonTableExpression(
+    val name: String,
+    val columns: List<String>,
+    val select: SqlSelect,
+)
+
+/** A full select: CTEs, one or more cores joined by UNION/INTERSECT/EXCEPT, ORDER BY and LIMIT. */
+data class SqlSelect(
+    val with: List<SqlCommonTableExpression> = emptyList(),
+    val cores: List<SqlSelectCore>,
+    val compoundOperators: List<String> = emptyList(),
+    val orderBy: List<SqlOrderingTerm> = emptyList(),
+    val limit: SqlExpr? = null,
+    val offset: SqlExpr? = null,
+)
+
+/**
+ * A comparison on a column. [other] is set when the column is compared with another column, as in
+ * a join condition. [conjunctive] is false under OR or NOT, where no index can serve it directly.
+ */
+data class SqlPredicate(
+    val column: SqlExpr.Column,
+    val operator: String,
+    val other: SqlExpr.Column? = null,
+    val conjunctive: Boolean = true,
+)
+
+/**
+ * A parsed SQL string. Only SELECT statements are parsed in full into [select]; for everything
+ * else the kind and, for INSERT, UPDATE and DELETE, the [target] table are enough.
+ */
+data class SqlStatement(
+    val sql: String,
+    val kind: SqlStatementKind,
+    /** Number of statements in [sql]; anything but 1 means more than one thing would run */
+    val statementCount: Int,
+    val select: SqlSelect? = null,
+    val target: String? = null,
+) {
+
+    private val selects: List<SqlSelect> by lazy {
+        buildList { select?.let { collectSelects(it, this) } }
+    }
+
+    private val cteNames: Set<String> by lazy {
+        selects.flatMap { it.with }.map { it.name.lowercase() }.toSet()
+    }
+
+    /** Every table read anywhere in the statement, CTEs excluded, in order of appearance */
+    val tables: List<SqlSource.Table> by lazy {
+        selects
+            .flatMap { it.cores }
+            .flatMap { it.from }
+            .map { it.source }
+            .filterIsInstance<SqlSource.Table>()
+            .filter { it.schema != null || it.name.lowercase() !in cteNames }
+            .distinctBy { Triple(it.schema, it.name, it.alias) }
+    }
+
+    /** Subqueries and CTEs, at any depth */
+    val subqueryCount: Int
+        get() = (selects.size - 1).coerceAtLeast(0)
+
+    /** Whether any result column is `*` or `table.*` */
+    val selectsAll: Boolean by lazy {
+        selects.flatMap { it.cores }.flatMap { it.resultColumns }.any { it is SqlResultColumn.Star }
+    }
+
+    /** Columns referenced by result columns, across every select */
+    val resultColumns: List<SqlExpr.Column> by lazy {
+        selects
+            .flatMap { it.cores }
+            .flatMap { it.resultColumns }
+            .filterIsInstance<SqlResultColumn.Expression>()
+            .flatMap { columnsIn(it.expr) }
+            .distinct()
+    }
+
+    /** Column comparisons in every WHERE and ON clause, plus the columns of USING joins */
+    val predicates: List<SqlPredicate> by lazy {
+        buildList {
+            selects.flatMap { it.cores }.forEach { core ->
+                core.where?.let { collectPredicates(it, true, this) }
+                core.from.forEach { join ->
+                    join.on?.let { collectPredicates(it, true, this) }
+                    val left = core.from.first().source
+                    join.using.forEach { name ->
+                        val right = SqlExpr.Column(nameOf(join.source), name)
+                        add(SqlPredicate(right, "=", SqlExpr.Column(nameOf(left), name)))
+                    }
+                }
+            }
+        }
+    }
+
+    /** The joins of the outermost select, without its first source */
+    val joins: List<SqlJoin> by lazy { select?.cores?.flatMap { it.from.drop(1) }.orEmpty() }
+
+    /** Columns in the join conditions of every select */
+    val joinColumns: List<SqlExpr.Column> by lazy {
+        selects
+            .flatMap { it.cores }
+            .flatMap { it.from }
+            .flatMap { join ->
+                join.on?.let(::columnsIn).orEmpty() +
+                    join.using.map { SqlExpr.Column(nameOf(join.source), it) }
+            }
+            .distinct()
+    }
+
+    /** Columns of the outermost ORDER BY, in order */
+    val orderBy: List<SqlExpr.Column> by lazy {
+        select?.orderBy?.mapNotNull { columnOf(it.expr) }.orEmpty()
+    }
+
+    /** Columns of the outermost GROUP BY, in order */
+    val groupBy: List<SqlExpr.Column> by lazy {
+        select?.cores?.flatMap { it.groupBy }?.mapNotNull(::columnOf).orEmpty()
+    }
+
+    /** Whether the outermost select has its own LIMIT */
+    val hasLimit: Boolean
+        get() = select?.limit != null
+
+    private companion object {
+        val FLIPPED = mapOf("<" to ">", ">" to "<", "<=" to ">=", ">=" to "<=")
+        val COMPARISONS =
+            setOf(
+                "=",
+                "==",
+                "!=",
+                "<>",
+                "<",
+                "<=",
+                ">",
+                ">=",
+                "IS",
+                "IS NOT",
+                "IN",
+                "NOT IN",
+                "LIKE",
+                "NOT LIKE",
+                "GLOB",
+                "NOT GLOB",
+                "MATCH",
+                "NOT MATCH",
+                "REGEXP",
+                "NOT REGEXP",
+            )
+
+        fun nameOf(source: SqlSource): String? =
+            source.alias ?: (source as? SqlSource.Table)?.name
+
+        /** The column [expr] sorts or groups by, looking through COLLATE */
+        fun columnOf(expr: SqlExpr): SqlExpr.Column? =
+            when (expr) {
+                is SqlExpr.Column -> expr
+                is SqlExpr.Postfix -> columnOf(expr.operand)
+                else -> null
+            }
+
+        fun columnsIn(expr: SqlExpr): List<SqlExpr.Column> =
+            if (expr is SqlExpr.Column) listOf(expr) else expr.children().flatMap(::columnsIn)
+
+        fun collectSelects(select: SqlSelect, into: MutableList<SqlSelect>) {
+            into.add(select)
+            select.with.forEach { collectSelects(it.select, into) }
+            val expressions = mutableListOf<SqlExpr>()
+            select.cores.forEach { core ->
+                core.resultColumns.filterIsInstance<SqlResultColumn.Expression>().forEach {
+                    expressions.add(it.expr)
+                }
+                core.from.forEach { join ->
+                    when (val source = join.source) {
+                        is SqlSource.Subquery -> collectSelects(source.select, into)
+                        is SqlSource.TableFunction -> expressions.addAll(source.arguments)
+                        is SqlSource.Table -> Unit
+                    }
+                    join.on?.let(expressions::add)
+                }
+                listOfNotNull(core.where, core.having).forEach(expressions::add)
+                expressions.addAll(core.groupBy)
+                core.values.forEach(expressions::addAll)
+            }
+            select.orderBy.forEach { expressions.add(it.expr) }
+            listOfNotNull(select.limit, select.offset).forEach(expressions::add)
+            expressions.forEach { collectSubqueries(it, into) }
+        }
+
+        fun collectSubqueries(expr: SqlExpr, into: MutableList<SqlSelect>) {
+            if (expr is SqlExpr.Subquery) collectSelects(expr.select, into)
+            expr.children().forEach { collectSubqueries(it, into) }
+        }
+
+        fun collectPredicates(
+            expr: SqlExpr,
+            conjunctive: Boolean,
+            into: MutableList<SqlPredicate>,
+        ) {
+            when {
+                expr is SqlExpr.Binary && expr.operator == "AND" -> {
+                    collectPredicates(expr.left, conjunctive, into)
+                    collectPredicates(expr.right, conjunctive, into)
+                }
+                expr is SqlExpr.Binary && expr.operator == "OR" -> {
+                    collectPredicates(expr.left, false, into)
+                    collectPredicates(expr.right, false, into)
+                }
+                expr is SqlExpr.Unary && expr.operator == "NOT" ->
+                    collectPredicates(expr.operand, false, into)
+                expr is SqlExpr.Binary && expr.operator in COMPARISONS -> {
+                    val left = columnOf(expr.left)
+                    val right = columnOf(expr.right)
+                    when {
+                        left != null && right != null -> {
+                            into.add(SqlPredicate(left, expr.operator, right, conjunctive))
+                            val flipped = FLIPPED[expr.operator] ?: expr.operator
+                            into.add(SqlPredicate(right, flipped, left, conjunctive))
+                        }
+                        left != null ->
+                            into.add(SqlPredicate(left, expr.operator, null, conjunctive))
+                        right != null && expr.operator in FLIPPED.keys + "=" + "==" -> {
+                            val flipped = FLIPPED[expr.operator] ?: expr.operator
+                            into.add(SqlPredicate(right, flipped, null, conjunctive))
+                        }
+                    }
+                }
+                expr is SqlExpr.Between -> {
+                    val column = expr.operand as? SqlExpr.Column ?: return
+                    val operator = if (expr.negated) "NOT BETWEEN" else "BETWEEN"
+                    into.add(SqlPredicate(column, operator, null, conjunctive))
+                }
+                expr is SqlExpr.Postfix && expr.operand is SqlExpr.Column ->
+                    into.add(SqlPredicate(expr.operand, expr.operator, null, conjunctive))
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+/**
+ * Parsed statements keyed by their SQL text, least recently used evicted first.
+ *
+ * A query is usually validated, analyzed and then run, often several times while paging, so the
+ * same text would otherwise be parsed over and over. Parse failures are cached as well so a bad
+ * query fails fast on retry. Text longer than [maxSqlLength] is parsed but not kept, to bound the
+ * memory a single huge statement can pin.
+ */
+class SqlStatementCache(
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    private val maxSqlLength: Int = DEFAULT_MAX_SQL_LENGTH,
+) {
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 256
+        const val DEFAULT_MAX_SQL_LENGTH = 16 * 1024
+
+        private val INSTANCE by lazy { SqlStatementCache() }
+
+        /** The cache shared by query validation and execution */
+        fun getInstance(): SqlStatementCache = INSTANCE
+    }
+
+    private val lock = Any()
+    // Holds either a SqlStatement or the SqlParseException parsing failed with
+    private val entries = LinkedHashMap<String, Any>(64, 0.75f, true)
+
+    @Volatile
+    var hits = 0L
+        private set
+
+    @Volatile
+    var misses = 0L
+        private set
+
+    val size: Int
+        get() = synchronized(lock) { entries.size }
+
+    /** The parsed form of [sql], throwing [SqlParseException] if it doesn't parse */
+    fun parse(sql: String): SqlStatement {
+        val cached =
+            synchronized(lock) { entries[sql].also { if (it != null) hits++ else misses++ } }
+        val entry = cached ?: parseUncached(sql).also { store(sql, it) }
+        if (entry is SqlParseException) throw entry
+        return entry as SqlStatement
+    }
+
+    /** The parsed form of [sql], or null if it doesn't parse */
+    fun parseOrNull(sql: String): SqlStatement? =
+        try {
+            parse(sql)
+        } catch (e: SqlParseException) {
+            null
+        }
+
+    fun clear() {
+        synchronized(lock) { entries.clear() }
+    }
+
+    private fun parseUncached(sql: String): Any =
+        try {
+            SqlParser.parse(sql)
+        } catch (e: SqlParseException) {
+            e
+        }
+
+    private fun store(sql: String, entry: Any) {
+        if (sql.length > maxSqlLength) return
+        synchronized(lock) {
+            entries[sql] = entry
+            if (entries.size > maxEntries) {
+                val eldest = entries.keys.iterator()
+                eldest.next()
+                eldest.remove()
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+/** SQL that can't be tokenized or parsed. [position] is the offset of the offending character. */
+class SqlParseException(message: String, val position: Int) :
+    IllegalArgumentException("$message at position $position")
+
+enum class SqlTokenType {
+    /** A bare identifier or keyword; which one depends on where it appears */
+    WORD,
+    /** `"name"`, `` `name` `` or `[name]` */
+    QUOTED_IDENTIFIER,
+    STRING,
+    BLOB,
+    NUMBER,
+    /** `?`, `?1`, `:name`, `@name` or `$name` */
+    PARAMETER,
+    OPERATOR,
+    /** `(`, `)`, `,`, `;` or `.` */
+    PUNCTUATION,
+}
+
+data class SqlToken(val type: SqlTokenType, val text: String, val position: Int) {
+
+    /** Whether this is the bare word [keyword], in any case */
+    fun isKeyword(keyword: String): Boolean =
+        type == SqlTokenType.WORD && text.equals(keyword, ignoreCase = true)
+
+    fun isPunctuation(char: Char): Boolean =
+        type == SqlTokenType.PUNCTUATION && text.length == 1 && text[0] == char
+
+    fun isOperator(operator: String): Boolean = type == SqlTokenType.OPERATOR && text == operator
+
+    /** The name this token refers to, with quoting removed */
+    val identifier: String
+        get() =
+            if (type != SqlTokenType.QUOTED_IDENTIFIER && type != SqlTokenType.STRING) text
+            else if (text.startsWith("[")) text.substring(1, text.length - 1)
+            else text.substring(1, text.length - 1).replace("${text[0]}${text[0]}", "${text[0]}")
+}
+
+/**
+ * Splits SQL into tokens following SQLite's lexical rules: line and block comments, `''`
+ * escapes in strings, the three identifier quoting styles, `X'..'` blobs, hex numbers and all four
+ * parameter forms. Keywords are not recognized here; SQLite lets most of them be used as names, so
+ * [SqlParser] decides from context.
+ */
+object SqlTokenizer {
+
+    private val MULTI_CHAR_OPERATORS =
+        listOf("->>", "||", "==", "!=", "<>", "<=", ">=", "<<", ">>", "->")
+    private const val SINGLE_CHAR_OPERATORS = "=<>+-*/%&|~"
+    private const val PUNCTUATION = "(),;."
+
+    fun tokenize(sql: String): List<SqlToken> {
+        val tokens = mutableListOf<SqlToken>()
+        var i = 0
+        while (i < sql.length) {
+            val c = sql[i]
+            val next = sql.getOrNull(i + 1)
+            val start = i
+            when {
+                c.isWhitespace() -> {
+                    i++
+                    continue
+                }
+                c == '-' && next == '-' -> {
+                    i = sql.indexOf('\n', i).let { if (it < 0) sql.length else it + 1 }
+                    continue
+                }
+                c == '/' && next == '*' -> {
+                    // SQLite accepts a comment left open at the end of the input
+                    i = sql.indexOf("*/", i + 2).let { if (it < 0) sql.length else it + 2 }
+                    continue
+                }
+                (c == 'x' || c == 'X') && next == '\'' -> {
+                    i = quotedEnd(sql, i + 1, '\'', "blob")
+                    tokens.add(SqlToken(SqlTokenType.BLOB, sql.substring(start, i), start))
+                }
+                c == '\'' -> {
+                    i = quotedEnd(sql, i, '\'', "string")
+                    tokens.add(SqlToken(SqlTokenType.STRING, sql.substring(start, i), start))
+                }
+                c == '"' || c == '`' || c == '[' -> {
+                    i = quotedEnd(sql, i, if (c == '[') ']' else c, "identifier")
+                    val text = sql.substring(start, i)
+                    tokens.add(SqlToken(SqlTokenType.QUOTED_IDENTIFIER, text, start))
+                }
+                c.isDigit() || (c == '.' && next?.isDigit() == true) -> {
+                    i = numberEnd(sql, i)
+                    tokens.add(SqlToken(SqlTokenType.NUMBER, sql.substring(start, i), start))
+                }
+                isWordStart(c) -> {
+                    i++
+                    while (i < sql.length && isWordPart(sql[i])) i++
+                    tokens.add(SqlToken(SqlTokenType.WORD, sql.substring(start, i), start))
+                }
+                c == '?' -> {
+                    i++
+                    while (i < sql.length && sql[i].isDigit()) i++
+                    tokens.add(SqlToken(SqlTokenType.PARAMETER, sql.substring(start, i), start))
+                }
+                (c == ':' || c == '@' || c == '$') && next != null && isWordPart(next) -> {
+                    i++
+                    while (i < sql.length && isWordPart(sql[i])) i++
+                    tokens.add(SqlToken(SqlTokenType.PARAMETER, sql.substring(start, i), start))
+                }
+                c in PUNCTUATION -> {
+                    i++
+                    tokens.add(SqlToken(SqlTokenType.PUNCTUATION, c.toString(), start))
+                }
+                else -> {
+                    val operator =
+                        MULTI_CHAR_OPERATORS.firstOrNull { sql.startsWith(it, i) }
+                            ?: c.toString().takeIf { c in SINGLE_CHAR_OPERATORS }
+                            ?: throw SqlParseException("Unexpected character '$c'", i)
+                    i += operator.length
+                    tokens.add(SqlToken(SqlTokenType.OPERATOR, operator, start))
+                }
+            }
+        }
+        return tokens
+    }
+
+    /** End of the quoted text opening at [start], where a doubled [close] is an escape */
+    private fun quotedEnd(sql: String, start: Int, close: Char, what: String): Int {
+        var i = start + 1
+        while (i < sql.length) {
+            if (sql[i] == close) {
+                if (close != ']' && sql.getOrNull(i + 1) == close) i += 2 else return i + 1
+            } else {
+                i++
+            }
+        }
+        throw SqlParseException("Unterminated $what", start)
+    }
+
+    private fun numberEnd(sql: String, start: Int): Int {
+        var i = start
+        if (sql[i] == '0' && sql.getOrNull(i + 1)?.lowercaseChar() == 'x') {
+            i += 2
+            while (i < sql.length && sql[i].isLetterOrDigit()) i++
+            return i
+        }
+        while (i < sql.length && (sql[i].isDigit() || sql[i] == '.')) i++
+        if (i < sql.length && sql[i].lowercaseChar() == 'e') {
+            val sign = if (sql.getOrNull(i + 1) == '+' || sql.getOrNull(i + 1) == '-') 1 else 0
+            if (sql.getOrNull(i + 1 + sign)?.isDigit() == true) {
+                i += 1 + sign
+                while (i < sql.length && sql[i].isDigit()) i++
+            }
+        }
+        return i
+    }
+
+    private fun isWordStart(c: Char): Boolean = c.isLetter() || c == '_' || c.code >= 0x80
+
+    private fun isWordPart(c: Char): Boolean = isWordStart(c) || c.isDigit() || c == '$'
+}
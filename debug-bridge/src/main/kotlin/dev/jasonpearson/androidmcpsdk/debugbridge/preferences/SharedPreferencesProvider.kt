@@ -3,9 +3,9 @@ package dev.jasonpearson.androidmcpsdk.debugbridge.preferences
 import android.content.Context
 import android.content.SharedPreferences
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import java.io.File
 import java.util.concurrent.ConcurrentHashMap
-import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.Serializable
 
@@ -68,7 +68,7 @@ class SharedPreferencesProvider(private val context: Context) {
 
     /** Add or configure a SharedPreferences file for MCP access */
     suspend fun addPreferencesFile(uri: String, config: PreferencesConfig): Result<Unit> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val preferences = context.getSharedPreferences(config.fileName, config.mode)
                 preferencesCache[config.fileName] = preferences
@@ -87,7 +87,7 @@ class SharedPreferencesProvider(private val context: Context) {
 
     /** Get all available SharedPreferences files */
     suspend fun getAllPreferenceFiles(): List<PreferencesFileInfo> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val files = mutableListOf<PreferencesFileInfo>()
 
             try {
@@ -126,7 +126,7 @@ class SharedPreferencesProvider(private val context: Context) {
 
     /** Get content of a specific SharedPreferences file */
     suspend fun getPreferencesContent(fileName: String): PreferencesContent =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val preferences = getOrCreatePreferences(fileName)
             val allPrefs = preferences.all
 
@@ -153,7 +153,7 @@ class SharedPreferencesProvider(private val context: Context) {
 
     /** Get a specific preference value */
     suspend fun getPreferenceValue(fileName: String, key: String): PreferenceValue? =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val preferences = getOrCreatePreferences(fileName)
                 val value = preferences.all[key] ?: return@withContext null
@@ -177,7 +177,7 @@ class SharedPreferencesProvider(private val context: Context) {
         value: String,
         type: PreferenceType,
     ): Result<Unit> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val preferences = getOrCreatePreferences(fileName)
                 val editor = preferences.edit()
@@ -205,7 +205,7 @@ class SharedPreferencesProvider(private val context: Context) {
 
     /** Remove a preference key */
     suspend fun removePreferenceKey(fileName: String, key: String): Result<Unit> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val preferences = getOrCreatePreferences(fileName)
                 preferences.edit().remove(key).apply()
@@ -219,7 +219,7 @@ class SharedPreferencesProvider(private val context: Context) {
 
     /** Clear all preferences in a file */
     suspend fun clearPreferences(fileName: String): Result<Unit> =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             try {
                 val preferences = getOrCreatePreferences(fileName)
                 preferences.edit().clear().apply()
@@ -23,6 +23,7 @@ import androidx.core.view.accessibility.AccessibilityNodeInfoCompat
 import androidx.core.view.children
 import androidx.core.view.isEmpty
 import androidx.core.view.isVisible
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import dev.jasonpearson.androidmcpsdk.core.features.tools.McpToolProvider
 import dev.jasonpearson.androidmcpsdk.core.features.tools.addTool
 import io.modelcontextprotocol.kotlin.sdk.CallToolResult
@@ -192,7 +193,7 @@ class AccessibilityInspectionToolProvider(internal val context: Context) {
     }
 
     internal suspend fun getAccessibilityServiceStatus(): CallToolResult {
-        return withContext(Dispatchers.IO) {
+        return withContext(McpDispatchers.io) {
             try {
                 val accessibilityManager =
                     context.getSystemService(Context.ACCESSIBILITY_SERVICE) as AccessibilityManager
@@ -0,0 +1,33 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import java.lang.ref.SoftReference
+import java.util.WeakHashMap
+
+/**
+ * Computes metadata once per [Class] and reuses it for every instance of that class.
+ *
+ * Classes are held weakly so a cache entry never keeps a class loader alive. Values are held
+ * through a [SoftReference] because reflected [java.lang.reflect.Field] and
+ * [java.lang.reflect.Method] handles point back at their declaring class, and a strongly held value
+ * would pin its own key. Thread-safe.
+ */
+internal class ClassMetadataCache<T : Any>(private val compute: (Class<*>) -> T) {
+
+    private val entries = WeakHashMap<Class<*>, SoftReference<T>>()
+
+    operator fun get(clazz: Class<*>): T {
+        synchronized(entries) { entries[clazz]?.get()?.let { return it } }
+
+        // Computed outside the lock; a racing thread may compute the same value, which is harmless
+        val metadata = compute(clazz)
+        synchronized(entries) { entries[clazz] = SoftReference(metadata) }
+        return metadata
+    }
+
+    val size: Int
+        get() = synchronized(entries) { entries.size }
+
+    fun clear() {
+        synchronized(entries) { entries.clear() }
+    }
+}
@@ -4,24 +4,31 @@ import android.content.Context
 import android.util.Log
 import dev.jasonpearson.androidmcpsdk.core.features.tools.McpToolProvider
 import dev.jasonpearson.androidmcpsdk.core.features.tools.addTool
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseConnectionPool
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseOperations
-import dev.jasonpearson.androidmcpsdk.debugbridge.database.StandardSqliteDatabaseFactory
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryOutputFormat
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.profiler.SqlQueryProfiler
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.profiler.SqlStatementOrder
 import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.TextContent
 import kotlinx.serialization.Serializable
-import kotlinx.serialization.json.Json
-import kotlinx.serialization.json.buildJsonObject
-import kotlinx.serialization.json.put
 
-/** Provides database tools for the debug bridge. */
-class DatabaseToolProvider(private val context: Context) {
+/**
+ * Provides database tools for the debug bridge. Connections come from [connectionPool], which the
+ * caller owns and closes.
+ */
+class DatabaseToolProvider(
+    private val context: Context,
+    connectionPool: DatabaseConnectionPool,
+) {
 
     companion object {
         private const val TAG = "DatabaseToolProvider"
     }
 
     private val databaseOperations =
-        DatabaseOperations(context = context, databaseFactory = StandardSqliteDatabaseFactory())
+        DatabaseOperations(context = context, connectionPool = connectionPool)
+    private val profiler = SqlQueryProfiler.getInstance()
 
     @Serializable
     data class DatabaseQueryInput(
@@ -31,6 +38,7 @@ class DatabaseToolProvider(private val context: Context) {
         val pageSize: Int = 100,
         val pageOffset: Int = 0,
         val outputFormat: String = "json",
+        val pageToken: String? = null,
     )
 
     @Serializable
@@ -65,6 +73,16 @@ class DatabaseToolProvider(private val context: Context) {
 
     @Serializable data class EmptyInput(val placeholder: String? = null)
 
+    @Serializable
+    data class DatabaseProfileInput(
+        val limit: Int = 20,
+        val orderBy: String = "total_time",
+        val reset: Boolean = false,
+    )
+
+    @Serializable
+    data class DatabaseSlowQueriesInput(val limit: Int = 50, val thresholdMs: Long? = null)
+
     fun registerTools(toolProvider: McpToolProvider) {
         Log.d(TAG, "Registering database tools")
 
@@ -116,18 +134,39 @@ class DatabaseToolProvider(private val context: Context) {
             listDatabases()
         }
 
+        toolProvider.addTool<DatabaseProfileInput>(
+            name = "database_profile_top",
+            description =
+                "Show the app's own most expensive SQL statements: count, total/p50/p95 time and " +
+                    "main-thread runs. orderBy: total_time, p95, count or main_thread",
+        ) { input ->
+            profileTopStatements(input)
+        }
+
+        toolProvider.addTool<DatabaseSlowQueriesInput>(
+            name = "database_slow_queries",
+            description =
+                "Show the app's most recent SQL statements slower than the threshold " +
+                    "(default 16ms), with thread and whether they ran on the main thread",
+        ) { input ->
+            slowQueries(input)
+        }
+
         Log.d(TAG, "Database tools registered")
     }
 
     private suspend fun executeQuery(input: DatabaseQueryInput): CallToolResult {
         return try {
+            val outputFormat = QueryOutputFormat.fromName(input.outputFormat)
             val result =
-                databaseOperations.executeQuery(
+                databaseOperations.executeQueryEncoded(
                     databasePath = input.databasePath,
                     query = input.query,
                     parameters = input.parameters.toTypedArray(),
                     pageSize = input.pageSize,
                     pageOffset = input.pageOffset,
+                    format = outputFormat ?: QueryOutputFormat.JSON,
+                    pageToken = input.pageToken,
                 )
 
             if (result.success && result.data != null) {
@@ -137,29 +176,18 @@ class DatabaseToolProvider(private val context: Context) {
                     appendLine("- Execution time: ${result.executionTimeMs}ms")
                     appendLine("- Rows returned: ${queryResult.rowCount}")
                     appendLine("- Has more data: ${queryResult.hasMore}")
+                    queryResult.nextPageToken?.let { appendLine("- Next page token: $it") }
                     appendLine()
 
-                    when (input.outputFormat.lowercase()) {
-                        "json" -> {
-                            appendLine("Results (JSON):")
-                            appendLine(formatAsJson(queryResult))
-                        }
-
-                        "csv" -> {
-                            appendLine("Results (CSV):")
-                            appendLine(formatAsCsv(queryResult))
-                        }
-
-                        "table" -> {
-                            appendLine("Results (Table):")
-                            appendLine(formatAsTable(queryResult))
-                        }
-
-                        else -> {
-                            appendLine("Results (JSON - default):")
-                            appendLine(formatAsJson(queryResult))
+                    val label =
+                        when (outputFormat) {
+                            QueryOutputFormat.JSON -> "JSON"
+                            QueryOutputFormat.CSV -> "CSV"
+                            QueryOutputFormat.TABLE -> "Table"
+                            null -> "JSON - default"
                         }
-                    }
+                    appendLine("Results ($label):")
+                    appendLine(queryResult.text)
                 }
 
                 CallToolResult(content = listOf(TextContent(text = output)), isError = false)
@@ -411,6 +439,58 @@ class DatabaseToolProvider(private val context: Context) {
         }
     }
 
+    private fun profileTopStatements(input: DatabaseProfileInput): CallToolResult {
+        val order =
+            SqlStatementOrder.entries.find { it.name.equals(input.orderBy, ignoreCase = true) }
+                ?: return CallToolResult(
+                    content = listOf(TextContent(text = "Unknown orderBy: ${input.orderBy}")),
+                    isError = true,
+                )
+        val statements = profiler.topStatements(input.limit, order)
+        if (input.reset) profiler.reset()
+
+        val output = buildString {
+            appendLine("App SQL statements by ${order.name.lowercase()}:")
+            if (statements.isEmpty()) {
+                appendLine("No statements recorded. The app has to build its database with")
+                appendLine("SqlQueryProfiler.getInstance().attachToRoomBuilder(builder) or pass")
+                appendLine("its open helper factory through wrapOpenHelperFactory().")
+            }
+            statements.forEachIndexed { index, stats ->
+                appendLine()
+                appendLine("${index + 1}. ${stats.sql}")
+                appendLine("   - Binds: ${stats.bindShape}")
+                appendLine(
+                    "   - Runs: ${stats.count} (${stats.mainThreadCount} on main thread), " +
+                        "last on ${stats.lastThread}"
+                )
+                appendLine(
+                    "   - Total %.1fms, mean %.2fms, p50 %.2fms, p95 %.2fms, max %.2fms"
+                        .format(stats.totalMs, stats.meanMs, stats.p50Ms, stats.p95Ms, stats.maxMs)
+                )
+            }
+        }
+        return CallToolResult(content = listOf(TextContent(text = output)), isError = false)
+    }
+
+    private fun slowQueries(input: DatabaseSlowQueriesInput): CallToolResult {
+        input.thresholdMs?.let { profiler.slowThresholdMs = it }
+        val queries = profiler.slowQueries(input.limit)
+
+        val output = buildString {
+            appendLine("SQL statements slower than ${profiler.slowThresholdMs}ms, newest first:")
+            if (queries.isEmpty()) appendLine("None recorded")
+            queries.forEach { query ->
+                val where = if (query.mainThread) "MAIN THREAD" else query.thread
+                appendLine(
+                    "- %.2fms on %s: %s %s"
+                        .format(query.durationMs, where, query.sql, query.bindShape)
+                )
+            }
+        }
+        return CallToolResult(content = listOf(TextContent(text = output)), isError = false)
+    }
+
     private suspend fun listDatabases(): CallToolResult {
         return try {
             val databases = databaseOperations.listDatabaseFiles()
@@ -451,100 +531,4 @@ class DatabaseToolProvider(private val context: Context) {
             }
         }
     }
-
-    private fun formatAsJson(
-        queryResult: dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryResult
-    ): String {
-        return try {
-            Json.encodeToString(
-                kotlinx.serialization.json.JsonArray.serializer(),
-                kotlinx.serialization.json.buildJsonArray {
-                    queryResult.rows.forEach { row ->
-                        add(
-                            buildJsonObject {
-                                row.forEach { (key, value) ->
-                                    when (value) {
-                                        null -> put(key, kotlinx.serialization.json.JsonNull)
-                                        is String -> put(key, value)
-                                        is Number -> put(key, value)
-                                        is Boolean -> put(key, value)
-                                        else -> put(key, value.toString())
-                                    }
-                                }
-                            }
-                        )
-                    }
-                },
-            )
-        } catch (e: Exception) {
-            "Error formatting JSON: ${e.message}"
-        }
-    }
-
-    private fun formatAsCsv(
-        queryResult: dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryResult
-    ): String {
-        return buildString {
-            // Headers
-            appendLine(queryResult.columnNames.joinToString(","))
-
-            // Data rows
-            queryResult.rows.forEach { row ->
-                val values =
-                    queryResult.columnNames.map { columnName ->
-                        val value = row[columnName]?.toString() ?: ""
-                        if (value.contains(",") || value.contains("\"")) {
-                            "\"${value.replace("\"", "\"\"")}\""
-                        } else {
-                            value
-                        }
-                    }
-                appendLine(values.joinToString(","))
-            }
-        }
-    }
-
-    private fun formatAsTable(
-        queryResult: dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryResult
-    ): String {
-        if (queryResult.rows.isEmpty()) {
-            return "No data returned"
-        }
-
-        // Calculate column widths
-        val columnWidths =
-            queryResult.columnNames.associateWith { columnName ->
-                maxOf(
-                    columnName.length,
-                    queryResult.rows.maxOfOrNull { row -> row[columnName]?.toString()?.length ?: 0 }
-                        ?: 0,
-                )
-            }
-
-        return buildString {
-            // Header
-            val header =
-                queryResult.columnNames.joinToString(" | ") { columnName ->
-                    columnName.padEnd(columnWidths[columnName]!!)
-                }
-            appendLine(header)
-
-            // Separator
-            val separator =
-                queryResult.columnNames.joinToString("-|-") { columnName ->
-                    "-".repeat(columnWidths[columnName]!!)
-                }
-            appendLine(separator)
-
-            // Data rows
-            queryResult.rows.forEach { row ->
-                val rowString =
-                    queryResult.columnNames.joinToString(" | ") { columnName ->
-                        val value = row[columnName]?.toString() ?: ""
-                        value.padEnd(columnWidths[columnName]!!)
-                    }
-                appendLine(rowString)
-            }
-        }
-    }
 }
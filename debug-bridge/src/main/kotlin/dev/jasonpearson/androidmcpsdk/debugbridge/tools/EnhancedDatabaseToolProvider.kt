@@ -4,27 +4,38 @@ import android.content.Context
 import android.util.Log
 import dev.jasonpearson.androidmcpsdk.core.features.tools.McpToolProvider
 import dev.jasonpearson.androidmcpsdk.core.features.tools.addTool
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseConnectionPool
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseOperations
-import dev.jasonpearson.androidmcpsdk.debugbridge.database.StandardSqliteDatabaseFactory
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryOutputFormat
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.IntelligentQueryValidator
 import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.SchemaPreloader
 import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.TextContent
 import kotlinx.serialization.Serializable
-import kotlinx.serialization.json.buildJsonObject
-import kotlinx.serialization.json.put
 
-/** Enhanced database tool provider with intelligent schema caching and query optimization. */
-class EnhancedDatabaseToolProvider(private val context: Context) {
+/**
+ * Enhanced database tool provider with intelligent schema caching and query optimization. Queries
+ * and schema introspection share [connectionPool], which the caller owns and closes.
+ */
+class EnhancedDatabaseToolProvider(
+    private val context: Context,
+    connectionPool: DatabaseConnectionPool,
+) {
 
     companion object {
         private const val TAG = "EnhancedDatabaseToolProvider"
     }
 
-    private val schemaCache = DatabaseSchemaCache(context)
-    private val queryValidator = IntelligentQueryValidator(schemaCache)
+    private val schemaCache = DatabaseSchemaCache(context, connectionPool = connectionPool)
     private val databaseOperations =
-        DatabaseOperations(context = context, databaseFactory = StandardSqliteDatabaseFactory())
+        DatabaseOperations(context = context, connectionPool = connectionPool)
+    private val queryValidator = IntelligentQueryValidator(schemaCache, databaseOperations)
+
+    init {
+        // Have every schema ready before the first schema-aware call asks for one
+        SchemaPreloader(context, schemaCache).start()
+    }
 
     @Serializable
     data class ListTablesInput(
@@ -343,13 +354,16 @@ class EnhancedDatabaseToolProvider(private val context: Context) {
             }
 
             // Execute the query using existing DatabaseOperations
+            val outputFormat = QueryOutputFormat.fromName(input.outputFormat)
             val result =
-                databaseOperations.executeQuery(
+                databaseOperations.executeQueryEncoded(
                     databasePath = input.databaseUri,
                     query = input.query,
                     parameters = input.parameters.values.toTypedArray(),
                     pageSize = input.pagination?.pageSize ?: 100,
-                    pageOffset = 0, // TODO: Handle page tokens
+                    format = outputFormat ?: QueryOutputFormat.JSON,
+                    pageToken = input.pagination?.pageToken,
+                    sortColumns = input.pagination?.sortColumns ?: emptyList(),
                 )
 
             if (result.success && result.data != null) {
@@ -361,31 +375,20 @@ class EnhancedDatabaseToolProvider(private val context: Context) {
                     appendLine("- Execution time: ${result.executionTimeMs}ms")
                     appendLine("- Rows returned: ${queryResult.rowCount}")
                     appendLine("- Has more data: ${queryResult.hasMore}")
+                    queryResult.nextPageToken?.let { appendLine("- Next page token: $it") }
                     appendLine("- Estimated cost: ${validation.estimatedCost.complexity}")
                     appendLine("- Index usage: ${validation.estimatedCost.indexUsage}")
                     appendLine()
 
-                    when (input.outputFormat.lowercase()) {
-                        "json" -> {
-                            appendLine("Results (JSON):")
-                            appendLine(formatAsJson(queryResult))
-                        }
-
-                        "csv" -> {
-                            appendLine("Results (CSV):")
-                            appendLine(formatAsCsv(queryResult))
-                        }
-
-                        "table" -> {
-                            appendLine("Results (Table):")
-                            appendLine(formatAsTable(queryResult))
+                    val label =
+                        when (outputFormat) {
+                            QueryOutputFormat.JSON -> "JSON"
+                            QueryOutputFormat.CSV -> "CSV"
+                            QueryOutputFormat.TABLE -> "Table"
+                            null -> "JSON - default"
                         }
-
-                        else -> {
-                            appendLine("Results (JSON - default):")
-                            appendLine(formatAsJson(queryResult))
-                        }
-                    }
+                    appendLine("Results ($label):")
+                    appendLine(queryResult.text)
                 }
 
                 CallToolResult(content = listOf(TextContent(text = output)), isError = false)
@@ -441,11 +444,18 @@ class EnhancedDatabaseToolProvider(private val context: Context) {
 
                 appendLine("COST ANALYSIS:")
                 appendLine("  Estimated Rows: ${validation.estimatedCost.estimatedRows}")
+                appendLine("  Rows Examined: ${validation.estimatedCost.rowsExamined}")
                 appendLine("  Complexity: ${validation.estimatedCost.complexity}")
                 appendLine("  Index Usage: ${validation.estimatedCost.indexUsage}")
                 appendLine("  Scan Type: ${validation.estimatedCost.scanType}")
                 appendLine()
 
+                if (input.includeExecutionPlan && validation.estimatedCost.plan.isNotEmpty()) {
+                    appendLine("EXECUTION PLAN:")
+                    validation.estimatedCost.plan.forEach { appendLine("  $it") }
+                    appendLine()
+                }
+
                 if (validation.optimizations.isNotEmpty()) {
                     appendLine("OPTIMIZATION SUGGESTIONS:")
                     validation.optimizations.forEach { optimization ->
@@ -668,8 +678,10 @@ class EnhancedDatabaseToolProvider(private val context: Context) {
                 appendLine("======================")
                 appendLine("Cache Hits: ${stats.hits}")
                 appendLine("Cache Misses: ${stats.misses}")
+                appendLine("Disk Cache Hits: ${stats.diskHits}")
                 appendLine("Hit Rate: ${String.format("%.2f%%", stats.hitRate * 100)}")
                 appendLine("Refreshes: ${stats.refreshes}")
+                appendLine("Invalidations: ${stats.invalidations}")
                 appendLine("Errors: ${stats.errors}")
                 appendLine("Last Updated: ${java.time.Instant.ofEpochMilli(stats.lastUpdated)}")
 
@@ -716,100 +728,4 @@ class EnhancedDatabaseToolProvider(private val context: Context) {
             }
         }
     }
-
-    private fun formatAsJson(
-        queryResult: dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryResult
-    ): String {
-        return try {
-            kotlinx.serialization.json.Json.encodeToString(
-                kotlinx.serialization.json.JsonArray.serializer(),
-                kotlinx.serialization.json.buildJsonArray {
-                    queryResult.rows.forEach { row ->
-                        add(
-                            buildJsonObject {
-                                row.forEach { (key, value) ->
-                                    when (value) {
-                                        null -> put(key, kotlinx.serialization.json.JsonNull)
-                                        is String -> put(key, value)
-                                        is Number -> put(key, value)
-                                        is Boolean -> put(key, value)
-                                        else -> put(key, value.toString())
-                                    }
-                                }
-                            }
-                        )
-                    }
-                },
-            )
-        } catch (e: Exception) {
-            "Error formatting JSON: ${e.message}"
-        }
-    }
-
-    private fun formatAsCsv(
-        queryResult: dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryResult
-    ): String {
-        return buildString {
-            // Headers
-            appendLine(queryResult.columnNames.joinToString(","))
-
-            // Data rows
-            queryResult.rows.forEach { row ->
-                val values =
-                    queryResult.columnNames.map { columnName ->
-                        val value = row[columnName]?.toString() ?: ""
-                        if (value.contains(",") || value.contains("\"")) {
-                            "\"${value.replace("\"", "\"\"")}\""
-                        } else {
-                            value
-                        }
-                    }
-                appendLine(values.joinToString(","))
-            }
-        }
-    }
-
-    private fun formatAsTable(
-        queryResult: dev.jasonpearson.androidmcpsdk.debugbridge.database.QueryResult
-    ): String {
-        if (queryResult.rows.isEmpty()) {
-            return "No data returned"
-        }
-
-        // Calculate column widths
-        val columnWidths =
-            queryResult.columnNames.associateWith { columnName ->
-                maxOf(
-                    columnName.length,
-                    queryResult.rows.maxOfOrNull { row -> row[columnName]?.toString()?.length ?: 0 }
-                        ?: 0,
-                )
-            }
-
-        return buildString {
-            // Header
-            val header =
-                queryResult.columnNames.joinToString(" | ") { columnName ->
-                    columnName.padEnd(columnWidths[columnName]!!)
-                }
-            appendLine(header)
-
-            // Separator
-            val separator =
-                queryResult.columnNames.joinToString("-|-") { columnName ->
-                    "-".repeat(columnWidths[columnName]!!)
-                }
-            appendLine(separator)
-
-            // Data rows
-            queryResult.rows.forEach { row ->
-                val rowString =
-                    queryResult.columnNames.joinToString(" | ") { columnName ->
-                        val value = row[columnName]?.toString() ?: ""
-                        value.padEnd(columnWidths[columnName]!!)
-                    }
-                appendLine(rowString)
-            }
-        }
-    }
 }
@@ -0,0 +1,70 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Fixed-capacity, lock-free ring buffer for captured network requests.
+ *
+ * Each request is identified by a monotonically increasing sequence number (the numeric part of
+ * its `req_N` id) and lives in slot `sequence % capacity`. Storing a request therefore evicts the
+ * entry that is exactly [capacity] requests older in O(1), without scanning, and lookups by id are
+ * a single slot read. Requests complete out of order, so a slot is only overwritten by a newer
+ * sequence; a slow request finishing after its slot was reused is dropped as already evicted.
+ */
+internal class NetworkCaptureBuffer(val capacity: Int) {
+
+    private class Entry(val sequence: Long, val request: NetworkInspector.NetworkRequest)
+
+    private val slots = AtomicReferenceArray<Entry?>(capacity)
+    private val highestSequence = AtomicLong(-1)
+
+    init {
+        require(capacity > 0) { "Capacity must be positive: $capacity" }
+    }
+
+    /** Store a completed request, evicting the entry that previously occupied its slot */
+    fun put(sequence: Long, request: NetworkInspector.NetworkRequest) {
+        val index = slotIndex(sequence)
+        val entry = Entry(sequence, request)
+        while (true) {
+            val current = slots.get(index)
+            if (current != null && current.sequence > sequence) return
+            if (slots.compareAndSet(index, current, entry)) break
+        }
+        highestSequence.accumulateAndGet(sequence) { a, b -> maxOf(a, b) }
+    }
+
+    /** Get a request by sequence number, or null if it was never stored or has been evicted */
+    fun get(sequence: Long): NetworkInspector.NetworkRequest? {
+        if (sequence < 0) return null
+        val entry = slots.get(slotIndex(sequence)) ?: return null
+        return if (entry.sequence == sequence) entry.request else null
+    }
+
+    /**
+     * Iterate stored requests from newest to oldest. This walks the ring in place without copying
+     * or sorting; entries written concurrently may or may not be observed.
+     */
+    fun newestFirst(): Sequence<NetworkInspector.NetworkRequest> = sequence {
+        val newest = highestSequence.get()
+        if (newest < 0) return@sequence
+        val oldest = maxOf(0L, newest - capacity + 1)
+        var sequence = newest
+        while (sequence >= oldest) {
+            get(sequence)?.let { yield(it) }
+            sequence--
+        }
+    }
+
+    /** Number of requests currently held */
+    fun size(): Int {
+        var count = 0
+        for (i in 0 until capacity) {
+            if (slots.get(i) != null) count++
+        }
+        return count
+    }
+
+    private fun slotIndex(sequence: Long): Int = (sequence % capacity).toInt()
+}
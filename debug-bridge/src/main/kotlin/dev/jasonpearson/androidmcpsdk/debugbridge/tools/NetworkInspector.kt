@@ -3,7 +3,6 @@ package dev.jasonpearson.androidmcpsdk.debugbridge.tools
 import android.content.Context
 import android.util.Log
 import java.io.IOException
-import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
@@ -19,13 +18,19 @@ class NetworkInspector(private val context: Context) {
 
     companion object {
         private const val TAG = "NetworkInspector"
-        private const val MAX_STORED_REQUESTS = 1000
+        /** Upper bound on [MonitoringConfig.maxRequests]; the buffer is allocated up front */
+        const val MAX_STORED_REQUESTS = 1000
+        private const val REQUEST_ID_PREFIX = "req_"
     }
 
     private val requestIdGenerator = AtomicLong(0)
-    private val storedRequests = ConcurrentHashMap<String, NetworkRequest>()
+    @Volatile private var captureBuffer = NetworkCaptureBuffer(MAX_STORED_REQUESTS)
     private val mutex = Mutex()
-    private var isMonitoring = false
+    @Volatile private var isMonitoring = false
+
+    /** Number of completed requests kept before the oldest are evicted */
+    val captureCapacity: Int
+        get() = captureBuffer.capacity
 
     @Serializable
     data class MonitoringConfig(
@@ -100,8 +105,9 @@ class NetworkInspector(private val context: Context) {
                     return Result.success(Unit)
                 }
 
+                val capacity = config.maxRequests.coerceIn(1, MAX_STORED_REQUESTS)
+                captureBuffer = NetworkCaptureBuffer(capacity)
                 isMonitoring = true
-                storedRequests.clear()
                 Log.i(TAG, "Network monitoring started with config: $config")
                 Result.success(Unit)
             } catch (e: Exception) {
@@ -123,9 +129,8 @@ class NetworkInspector(private val context: Context) {
         }
 
     suspend fun getNetworkRequests(filter: RequestFilter): List<NetworkRequest> {
-        val requests = storedRequests.values.toList()
-
-        return requests
+        return captureBuffer
+            .newestFirst()
             .filter { request ->
                 (filter.domain == null || request.url.contains(filter.domain, ignoreCase = true)) &&
                     (filter.method == null ||
@@ -134,12 +139,12 @@ class NetworkInspector(private val context: Context) {
                     (filter.minDuration == null || (request.duration ?: 0) >= filter.minDuration) &&
                     (filter.maxDuration == null || (request.duration ?: 0) <= filter.maxDuration)
             }
-            .sortedByDescending { it.startTime }
             .take(filter.limit)
+            .toList()
     }
 
     suspend fun analyzeRequest(requestId: String): RequestAnalysis? {
-        val request = storedRequests[requestId] ?: return null
+        val request = getStoredRequest(requestId) ?: return null
 
         val performance =
             PerformanceMetrics(
@@ -174,7 +179,8 @@ class NetworkInspector(private val context: Context) {
     }
 
     suspend fun getStoredRequest(requestId: String): NetworkRequest? {
-        return storedRequests[requestId]
+        val sequence = parseSequence(requestId) ?: return null
+        return captureBuffer.get(sequence)
     }
 
     fun createInterceptor(): Interceptor {
@@ -184,20 +190,20 @@ class NetworkInspector(private val context: Context) {
     private fun storeRequest(request: NetworkRequest) {
         if (!isMonitoring) return
 
-        // Remove oldest requests if we're at capacity
-        if (storedRequests.size >= MAX_STORED_REQUESTS) {
-            val oldestKey = storedRequests.values.minByOrNull { it.startTime }?.id
-            oldestKey?.let { storedRequests.remove(it) }
-        }
+        val sequence = parseSequence(request.id) ?: return
 
-        storedRequests[request.id] = request
+        // The ring buffer evicts the oldest request in O(1) once it is at capacity
+        captureBuffer.put(sequence, request)
         Log.d(TAG, "Stored network request: ${request.method} ${request.url}")
     }
 
+    private fun parseSequence(requestId: String): Long? =
+        requestId.removePrefix(REQUEST_ID_PREFIX).toLongOrNull()
+
     private inner class McpNetworkInterceptor : Interceptor {
         override fun intercept(chain: Interceptor.Chain): Response {
             val request = chain.request()
-            val requestId = "req_${requestIdGenerator.incrementAndGet()}"
+            val requestId = "$REQUEST_ID_PREFIX${requestIdGenerator.incrementAndGet()}"
             val startTime = System.currentTimeMillis()
 
             val networkRequest =
@@ -2,6 +2,7 @@ package dev.jasonpearson.androidmcpsdk.debugbridge.tools
 
 import android.content.Context
 import android.util.Log
+import dev.jasonpearson.androidmcpsdk.core.McpDispatchers
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
 import kotlinx.coroutines.*
@@ -156,7 +157,7 @@ class NetworkReplayEngine(private val context: Context) {
         request: NetworkInspector.NetworkRequest,
         modifications: RequestModifications? = null,
     ): ReplayResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val replayId = "replay_${replayIdGenerator.incrementAndGet()}"
             val session =
                 ReplaySession(
@@ -223,7 +224,7 @@ class NetworkReplayEngine(private val context: Context) {
         config: BatchConfig,
         modifications: Map<String, RequestModifications> = emptyMap(),
     ): BatchReplayResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val batchId = "batch_${replayIdGenerator.incrementAndGet()}"
             val session =
                 ReplaySession(
@@ -344,7 +345,7 @@ class NetworkReplayEngine(private val context: Context) {
         loadConfig: LoadTestConfig,
         modifications: RequestModifications? = null,
     ): LoadTestResult =
-        withContext(Dispatchers.IO) {
+        withContext(McpDispatchers.io) {
             val testId = "load_${replayIdGenerator.incrementAndGet()}"
             val session =
                 ReplaySession(
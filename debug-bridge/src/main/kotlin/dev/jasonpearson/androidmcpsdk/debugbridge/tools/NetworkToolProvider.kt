@@ -26,7 +26,7 @@ class NetworkToolProvider(private val context: Context) {
 
     @Serializable
     data class StartMonitoringInput(
-        val maxRequests: Int = 1000,
+        val maxRequests: Int = NetworkInspector.MAX_STORED_REQUESTS,
         val captureRequestBody: Boolean = false,
         val captureResponseBody: Boolean = false,
         val domains: List<String> = emptyList(),
@@ -149,7 +149,7 @@ class NetworkToolProvider(private val context: Context) {
                         appendLine("✅ Network monitoring started successfully")
                         appendLine()
                         appendLine("Configuration:")
-                        appendLine("- Max requests: ${input.maxRequests}")
+                        appendLine("- Max requests: ${networkInspector.captureCapacity}")
                         appendLine("- Capture request body: ${input.captureRequestBody}")
                         appendLine("- Capture response body: ${input.captureResponseBody}")
                         if (input.domains.isNotEmpty()) {
@@ -0,0 +1,268 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import android.graphics.Rect
+import android.os.SystemClock
+import android.view.View
+import android.view.ViewGroup
+import java.util.WeakHashMap
+import kotlinx.serialization.Serializable
+
+/** Flat snapshot of a single view. Children are referenced by key rather than nested. */
+@Serializable
+data class ViewNodeState(
+    val key: Long,
+    val parentKey: Long?,
+    val id: String?,
+    val className: String,
+    val fullClassName: String,
+    val bounds: String,
+    val text: String?,
+    val contentDescription: String?,
+    val isVisible: Boolean,
+    val isClickable: Boolean,
+    val isFocusable: Boolean,
+    val isEnabled: Boolean,
+    val depth: Int,
+    val childKeys: List<Long>,
+)
+
+@Serializable
+enum class ViewPatchType {
+    ADD,
+    UPDATE,
+    REMOVE,
+}
+
+@Serializable
+data class ViewNodePatch(val type: ViewPatchType, val key: Long, val node: ViewNodeState? = null)
+
+/**
+ * One set of changes to the view hierarchy. [sequence] increases by one per batch, so a consumer
+ * that sees a gap has missed a batch and should restart streaming to get a new full snapshot.
+ */
+@Serializable
+data class ViewHierarchyPatchBatch(
+    val sequence: Long,
+    val timestampMs: Long,
+    val fullSnapshot: Boolean,
+    val patches: List<ViewNodePatch>,
+)
+
+/**
+ * Diffs the live view tree against a shadow copy of the previous walk and reports only what
+ * changed.
+ *
+ * Views are keyed by identity through a weak map, so a view keeps its key for as long as it stays
+ * attached, even if it moves. Each walk compares the raw view properties against the shadow node
+ * and only builds a [ViewNodeState] for views that were added or changed. A walk over an unchanged
+ * tree allocates almost nothing.
+ *
+ * Must be used from the main thread.
+ */
+internal class ViewHierarchyDiffer(
+    private val includeInvisible: Boolean,
+    private val maxDepth: Int?,
+    private val textOf: (View) -> CharSequence?,
+    private val idNameOf: (View) -> String?,
+) {
+
+    private class ShadowNode(val key: Long) {
+        var generation = 0L
+        var parentKey: Long? = null
+        var depth = 0
+        var viewId = View.NO_ID
+        var idName: String? = null
+        var left = 0
+        var top = 0
+        var right = 0
+        var bottom = 0
+        var text: String? = null
+        var contentDescription: String? = null
+        var flags = 0
+        var childKeys: LongArray = EMPTY_KEYS
+        var state: ViewNodeState? = null
+    }
+
+    private class PendingPatch(val patch: ViewNodePatch, val depth: Int)
+
+    private val shadow = WeakHashMap<View, ShadowNode>()
+    private val bounds = Rect()
+    private var generation = 0L
+    private var nextKey = 1L
+    private var sequence = 0L
+
+    /** Walk the tree under [root] and return the changes since the last call, or null if none. */
+    fun diff(root: View): ViewHierarchyPatchBatch? {
+        val fullSnapshot = shadow.isEmpty()
+        generation++
+
+        val pending = ArrayList<PendingPatch>()
+        visit(root, parentKey = null, depth = 0, pending)
+
+        val iterator = shadow.values.iterator()
+        while (iterator.hasNext()) {
+            val node = iterator.next()
+            if (node.generation != generation) {
+                pending.add(PendingPatch(ViewNodePatch(ViewPatchType.REMOVE, node.key), node.depth))
+                iterator.remove()
+            }
+        }
+
+        if (pending.isEmpty()) return null
+
+        // Parents before children so consumers can apply patches in order
+        pending.sortWith(compareBy({ it.patch.type.ordinal }, { it.depth }))
+        return ViewHierarchyPatchBatch(
+            sequence = ++sequence,
+            timestampMs = SystemClock.uptimeMillis(),
+            fullSnapshot = fullSnapshot,
+            patches = pending.map { it.patch },
+        )
+    }
+
+    /** Forget the shadow tree so the next [diff] reports a full snapshot. */
+    fun reset() {
+        shadow.clear()
+    }
+
+    private fun visit(
+        view: View,
+        parentKey: Long?,
+        depth: Int,
+        pending: MutableList<PendingPatch>,
+    ): Long {
+        val existing = shadow[view]
+        val node = existing ?: ShadowNode(nextKey++).also { shadow[view] = it }
+        node.generation = generation
+
+        var childrenChanged = false
+        var childKeys = node.childKeys
+        if (view is ViewGroup && (maxDepth == null || depth < maxDepth)) {
+            var count = 0
+            for (i in 0 until view.childCount) {
+                val child = view.getChildAt(i)
+                if (!includeInvisible && child.visibility != View.VISIBLE) continue
+                val childKey = visit(child, node.key, depth + 1, pending)
+                if (count >= childKeys.size || childKeys[count] != childKey) {
+                    if (!childrenChanged) {
+                        childKeys = childKeys.copyOf(view.childCount)
+                        childrenChanged = true
+                    }
+                }
+                if (childrenChanged) childKeys[count] = childKey
+                count++
+            }
+            if (count != childKeys.size) {
+                childKeys = childKeys.copyOf(count)
+                childrenChanged = true
+            }
+        } else if (childKeys.isNotEmpty()) {
+            childKeys = EMPTY_KEYS
+            childrenChanged = true
+        }
+
+        val changed = updateShadow(view, node, parentKey, depth) || childrenChanged
+        node.childKeys = childKeys
+
+        if (existing == null || changed) {
+            val state = buildState(view, node)
+            node.state = state
+            val type = if (existing == null) ViewPatchType.ADD else ViewPatchType.UPDATE
+            pending.add(PendingPatch(ViewNodePatch(type, node.key, state), depth))
+        }
+        return node.key
+    }
+
+    /** Copy the view's current properties into [node], returning true if any of them changed. */
+    private fun updateShadow(view: View, node: ShadowNode, parentKey: Long?, depth: Int): Boolean {
+        var changed = false
+
+        if (node.parentKey != parentKey || node.depth != depth) {
+            node.parentKey = parentKey
+            node.depth = depth
+            changed = true
+        }
+
+        if (node.viewId != view.id) {
+            node.viewId = view.id
+            node.idName = idNameOf(view)
+            changed = true
+        }
+
+        if (!view.getGlobalVisibleRect(bounds)) bounds.setEmpty()
+        if (
+            node.left != bounds.left ||
+                node.top != bounds.top ||
+                node.right != bounds.right ||
+                node.bottom != bounds.bottom
+        ) {
+            node.left = bounds.left
+            node.top = bounds.top
+            node.right = bounds.right
+            node.bottom = bounds.bottom
+            changed = true
+        }
+
+        val text = textOf(view)
+        if (!contentEquals(node.text, text)) {
+            node.text = text?.toString()
+            changed = true
+        }
+
+        val contentDescription = view.contentDescription
+        if (!contentEquals(node.contentDescription, contentDescription)) {
+            node.contentDescription = contentDescription?.toString()
+            changed = true
+        }
+
+        val flags = flagsOf(view)
+        if (node.flags != flags) {
+            node.flags = flags
+            changed = true
+        }
+
+        return changed
+    }
+
+    private fun buildState(view: View, node: ShadowNode): ViewNodeState =
+        ViewNodeState(
+            key = node.key,
+            parentKey = node.parentKey,
+            id = node.idName,
+            className = view.javaClass.simpleName,
+            fullClassName = view.javaClass.name,
+            bounds = "${node.left},${node.top},${node.right},${node.bottom}",
+            text = node.text,
+            contentDescription = node.contentDescription,
+            isVisible = node.flags and FLAG_VISIBLE != 0,
+            isClickable = node.flags and FLAG_CLICKABLE != 0,
+            isFocusable = node.flags and FLAG_FOCUSABLE != 0,
+            isEnabled = node.flags and FLAG_ENABLED != 0,
+            depth = node.depth,
+            childKeys = node.childKeys.asList(),
+        )
+
+    private fun flagsOf(view: View): Int {
+        var flags = 0
+        if (view.visibility == View.VISIBLE) flags = flags or FLAG_VISIBLE
+        if (view.isClickable) flags = flags or FLAG_CLICKABLE
+        if (view.isFocusable) flags = flags or FLAG_FOCUSABLE
+        if (view.isEnabled) flags = flags or FLAG_ENABLED
+        return flags
+    }
+
+    private fun contentEquals(previous: String?, current: CharSequence?): Boolean =
+        if (previous == null || current == null) {
+            previous == null && current == null
+        } else {
+            previous.contentEquals(current)
+        }
+
+    private companion object {
+        val EMPTY_KEYS = LongArray(0)
+        const val FLAG_VISIBLE = 1
+        const val FLAG_CLICKABLE = 1 shl 1
+        const val FLAG_FOCUSABLE = 1 shl 2
+        const val FLAG_ENABLED = 1 shl 3
+    }
+}
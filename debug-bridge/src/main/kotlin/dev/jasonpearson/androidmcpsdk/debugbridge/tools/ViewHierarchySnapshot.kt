@@ -0,0 +1,306 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import android.graphics.Rect
+import android.view.View
+import android.view.ViewGroup
+import android.view.ViewParent
+import dev.jasonpearson.androidmcpsdk.debugbridge.tools.ViewHierarchyToolProvider.FrameworkInfo
+import kotlinx.coroutines.yield
+
+/**
+ * Flat, reusable record of a view tree, filled on the main thread and read on a background thread.
+ *
+ * Nodes are stored in pre-order as parallel arrays, so a node's children always follow it and
+ * [parent] points back to an earlier index. Everything that reads a live view, including its id
+ * name and framework state, is copied on the main thread; views themselves are never stored, so the
+ * background phase only classifies by class and formats. Arrays grow by doubling and are kept
+ * between captures.
+ */
+internal class ViewSnapshotBuffer(initialCapacity: Int = 256) {
+
+    var size = 0
+        private set
+
+    var classes = arrayOfNulls<Class<*>>(initialCapacity)
+        private set
+
+    var parent = IntArray(initialCapacity)
+        private set
+
+    var depth = IntArray(initialCapacity)
+        private set
+
+    /** left, top, right, bottom for each node. */
+    var bounds = IntArray(initialCapacity * 4)
+        private set
+
+    var flags = IntArray(initialCapacity)
+        private set
+
+    var ids = arrayOfNulls<String>(initialCapacity)
+        private set
+
+    var text = arrayOfNulls<String>(initialCapacity)
+        private set
+
+    var contentDescription = arrayOfNulls<String>(initialCapacity)
+        private set
+
+    var frameworkInfo = arrayOfNulls<FrameworkInfo>(initialCapacity)
+        private set
+
+    var recompositions = LongArray(initialCapacity)
+        private set
+
+    fun add(
+        view: View,
+        parentIndex: Int,
+        nodeDepth: Int,
+        rect: Rect,
+        nodeId: String?,
+        nodeText: String?,
+        nodeContentDescription: String?,
+        nodeFrameworkInfo: FrameworkInfo?,
+        recompositionCount: Long,
+    ): Int {
+        if (size == classes.size) grow()
+        val index = size++
+        classes[index] = view.javaClass
+        parent[index] = parentIndex
+        depth[index] = nodeDepth
+        bounds[index * 4] = rect.left
+        bounds[index * 4 + 1] = rect.top
+        bounds[index * 4 + 2] = rect.right
+        bounds[index * 4 + 3] = rect.bottom
+        flags[index] = flagsOf(view)
+        ids[index] = nodeId
+        text[index] = nodeText
+        contentDescription[index] = nodeContentDescription
+        frameworkInfo[index] = nodeFrameworkInfo
+        recompositions[index] = recompositionCount
+        return index
+    }
+
+    fun hasFlag(index: Int, flag: Int): Boolean = flags[index] and flag != 0
+
+    fun boundsString(index: Int): String {
+        val offset = index * 4
+        return "${bounds[offset]},${bounds[offset + 1]},${bounds[offset + 2]},${bounds[offset + 3]}"
+    }
+
+    /** Drop all references so pooled buffers don't keep classes, text or framework state alive. */
+    fun clear() {
+        classes.fill(null, 0, size)
+        ids.fill(null, 0, size)
+        text.fill(null, 0, size)
+        contentDescription.fill(null, 0, size)
+        frameworkInfo.fill(null, 0, size)
+        size = 0
+    }
+
+    private fun grow() {
+        val capacity = classes.size * 2
+        classes = classes.copyOf(capacity)
+        parent = parent.copyOf(capacity)
+        depth = depth.copyOf(capacity)
+        bounds = bounds.copyOf(capacity * 4)
+        flags = flags.copyOf(capacity)
+        ids = ids.copyOf(capacity)
+        text = text.copyOf(capacity)
+        contentDescription = contentDescription.copyOf(capacity)
+        frameworkInfo = frameworkInfo.copyOf(capacity)
+        recompositions = recompositions.copyOf(capacity)
+    }
+
+    private fun flagsOf(view: View): Int {
+        var result = 0
+        if (view.visibility == View.VISIBLE) result = result or FLAG_VISIBLE
+        if (view.isClickable) result = result or FLAG_CLICKABLE
+        if (view.isFocusable) result = result or FLAG_FOCUSABLE
+        if (view.isEnabled) result = result or FLAG_ENABLED
+        return result
+    }
+
+    companion object {
+        const val FLAG_VISIBLE = 1
+        const val FLAG_CLICKABLE = 1 shl 1
+        const val FLAG_FOCUSABLE = 1 shl 2
+        const val FLAG_ENABLED = 1 shl 3
+    }
+}
+
+/**
+ * Main-thread time spent filling a [ViewSnapshotBuffer], and how often the tree changed under the
+ * walk while it was yielding.
+ */
+data class MainThreadCost(
+    val totalNanos: Long,
+    val slices: Int,
+    val maxSliceNanos: Long,
+    val nodeCount: Int,
+    val frameBudgetMs: Long,
+    val restarts: Int = 0,
+    /** False if the tree kept changing and the snapshot may mix views from before and after */
+    val consistent: Boolean = true,
+) {
+    fun describe(): String = buildString {
+        append(
+            "%.2fms over %d slice(s), longest %.2fms (budget %dms), %d views"
+                .format(totalNanos / 1e6, slices, maxSliceNanos / 1e6, frameBudgetMs, nodeCount)
+        )
+        if (restarts > 0) append(", restarted $restarts time(s) after the tree changed")
+        if (!consistent) append(", tree changed during capture so views may be inconsistent")
+    }
+}
+
+/**
+ * Walks a view tree on the main thread and copies it into a [ViewSnapshotBuffer].
+ *
+ * The walk is iterative and checks the clock after every view. Once a slice has used
+ * [frameBudgetMs] it yields the main thread, so the next frame can be drawn, and resumes where it
+ * left off. Views are only read, never retained.
+ *
+ * The app keeps running while the walk yields. On resume, every view still waiting to be visited
+ * is checked against the parent it was found under and the root's attachment to its window. If
+ * any has moved, the walk starts over from the root, up to [MAX_RESTARTS] times; after that it
+ * finishes anyway and reports the snapshot as not [MainThreadCost.consistent]. Views already
+ * copied are not re-checked, so one removed during a yield can still appear in the snapshot.
+ */
+internal class ViewHierarchySnapshotter(
+    private val textOf: (View) -> CharSequence?,
+    private val idOf: (View) -> String?,
+    private val frameworkInfoOf: (View) -> FrameworkInfo?,
+    private val recompositionCountOf: (View) -> Long,
+) {
+
+    companion object {
+        const val MAX_RESTARTS = 3
+    }
+
+    private val rect = Rect()
+    private var viewStack = arrayOfNulls<View>(64)
+    private var parentViewStack = arrayOfNulls<ViewParent>(64)
+    private var parentStack = IntArray(64)
+    private var depthStack = IntArray(64)
+
+    /** Must be called on the main thread. */
+    suspend fun capture(
+        root: View,
+        buffer: ViewSnapshotBuffer,
+        includeInvisible: Boolean,
+        maxDepth: Int?,
+        trackRecompositions: Boolean,
+        frameBudgetMs: Long,
+    ): MainThreadCost {
+        val budgetNanos = frameBudgetMs.coerceAtLeast(1) * 1_000_000
+        var totalNanos = 0L
+        var maxSliceNanos = 0L
+        var slices = 0
+        var restarts = 0
+        var consistent = true
+        val rootAttached = root.isAttachedToWindow
+
+        var top = 0
+        push(top++, root, root.parent, parentIndex = -1, depth = 0)
+        try {
+            while (top > 0) {
+                val sliceStart = System.nanoTime()
+                while (top > 0 && System.nanoTime() - sliceStart < budgetNanos) {
+                    top--
+                    val view = viewStack[top]!!
+                    viewStack[top] = null
+                    val depth = depthStack[top]
+                    if (!view.getGlobalVisibleRect(rect)) rect.setEmpty()
+                    val index =
+                        buffer.add(
+                            view = view,
+                            parentIndex = parentStack[top],
+                            nodeDepth = depth,
+                            rect = rect,
+                            nodeId = idOf(view),
+                            nodeText = textOf(view)?.toString(),
+                            nodeContentDescription = view.contentDescription?.toString(),
+                            nodeFrameworkInfo = frameworkInfoOf(view),
+                            recompositionCount =
+                                if (trackRecompositions) recompositionCountOf(view) else -1,
+                        )
+
+                    if (view is ViewGroup && (maxDepth == null || depth < maxDepth)) {
+                        // Push in reverse so children are recorded in layout order
+                        for (i in view.childCount - 1 downTo 0) {
+                            val child = view.getChildAt(i)
+                            if (includeInvisible || child.visibility == View.VISIBLE) {
+                                push(top++, child, view, index, depth + 1)
+                            }
+                        }
+                    }
+                }
+                val sliceNanos = System.nanoTime() - sliceStart
+                totalNanos += sliceNanos
+                maxSliceNanos = maxOf(maxSliceNanos, sliceNanos)
+                slices++
+                if (top > 0) {
+                    yield()
+                    if (consistent && treeChanged(root, rootAttached, top)) {
+                        if (restarts < MAX_RESTARTS) {
+                            restarts++
+                            buffer.clear()
+                            clearStack(top)
+                            top = 0
+                            push(top++, root, root.parent, parentIndex = -1, depth = 0)
+                        } else {
+                            consistent = false
+                        }
+                    }
+                }
+            }
+        } finally {
+            clearStack(viewStack.size)
+        }
+
+        return MainThreadCost(
+            totalNanos = totalNanos,
+            slices = slices,
+            maxSliceNanos = maxSliceNanos,
+            nodeCount = buffer.size,
+            frameBudgetMs = frameBudgetMs,
+            restarts = restarts,
+            consistent = consistent,
+        )
+    }
+
+    /** Whether a view still to be visited was detached or moved while the walk was yielding */
+    private fun treeChanged(root: View, rootAttached: Boolean, top: Int): Boolean {
+        if (root.isAttachedToWindow != rootAttached) return true
+        for (i in 0 until top) {
+            val view = viewStack[i]!!
+            if (view.parent !== parentViewStack[i]) return true
+            if (view.isAttachedToWindow != rootAttached) return true
+        }
+        return false
+    }
+
+    private fun clearStack(top: Int) {
+        viewStack.fill(null, 0, top)
+        parentViewStack.fill(null, 0, top)
+    }
+
+    private fun push(
+        position: Int,
+        view: View,
+        parentView: ViewParent?,
+        parentIndex: Int,
+        depth: Int,
+    ) {
+        if (position == viewStack.size) {
+            viewStack = viewStack.copyOf(position * 2)
+            parentViewStack = parentViewStack.copyOf(position * 2)
+            parentStack = parentStack.copyOf(position * 2)
+            depthStack = depthStack.copyOf(position * 2)
+        }
+        viewStack[position] = view
+        parentViewStack[position] = parentView
+        parentStack[position] = parentIndex
+        depthStack[position] = depth
+    }
+}
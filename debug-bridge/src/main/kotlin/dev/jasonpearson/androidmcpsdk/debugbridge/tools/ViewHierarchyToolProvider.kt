@@ -7,6 +7,7 @@ import android.graphics.Rect
 import android.os.Bundle
 import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
 import android.view.View
 import android.view.ViewGroup
@@ -16,18 +17,23 @@ import dev.jasonpearson.androidmcpsdk.core.features.tools.McpToolProvider
 import dev.jasonpearson.androidmcpsdk.core.features.tools.addTool
 import io.modelcontextprotocol.kotlin.sdk.CallToolResult
 import io.modelcontextprotocol.kotlin.sdk.TextContent
+import java.lang.reflect.AccessibleObject
 import java.lang.reflect.Field
 import java.lang.reflect.Method
 import java.util.WeakHashMap
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.BufferOverflow
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import kotlinx.serialization.Serializable
 
 /** Provides UI view hierarchy inspection tools for the debug bridge. */
@@ -36,6 +42,9 @@ class ViewHierarchyToolProvider(private val context: Context) {
     companion object {
         private const val TAG = "ViewHierarchyProvider"
         private const val DEFAULT_POLLING_INTERVAL_MS = 1000L
+        private const val DEFAULT_FRAME_BUDGET_MS = 8L
+        private const val STREAMING_MODE_POLL = "poll"
+        private const val STREAMING_MODE_DIFF = "diff"
         private const val ANDROIDX_PACKAGE_PREFIX = "androidx."
         private const val ANDROID_PACKAGE_PREFIX = "android."
         private const val COMPOSE_VIEW_CLASS = "androidx.compose.ui.platform.ComposeView"
@@ -47,6 +56,8 @@ class ViewHierarchyToolProvider(private val context: Context) {
         val maxDepth: Int? = null,
         val trackRecompositions: Boolean = false,
         val includePackageInfo: Boolean = true,
+        /** Longest the main thread is held at once before the capture yields to the next frame. */
+        val frameBudgetMs: Long = DEFAULT_FRAME_BUDGET_MS,
     )
 
     @Serializable
@@ -69,6 +80,11 @@ class ViewHierarchyToolProvider(private val context: Context) {
         val includeInvisible: Boolean = false,
         val maxDepth: Int? = null,
         val trackRecompositions: Boolean = true,
+        /**
+         * "poll" re-captures the full tree every [intervalMs]. "diff" captures only after layout
+         * or draw and emits add/update/remove patches, at most once per [intervalMs].
+         */
+        val mode: String = STREAMING_MODE_POLL,
     )
 
     @Serializable
@@ -112,12 +128,27 @@ class ViewHierarchyToolProvider(private val context: Context) {
 
     private var currentActivity: Activity? = null
     private val hierarchyStream = MutableSharedFlow<ViewNode>(replay = 1)
+    private val patchStream =
+        MutableSharedFlow<ViewHierarchyPatchBatch>(
+            replay = 1,
+            extraBufferCapacity = 16,
+            onBufferOverflow = BufferOverflow.DROP_OLDEST,
+        )
+    private var hierarchyChangeObserver: HierarchyChangeObserver? = null
     private var streamingJob: Job? = null
     private var isStreamingEnabled = false
     private var streamingConfig = StreamingConfigInput(enabled = false)
     private val mainHandler = Handler(Looper.getMainLooper())
     private val recompositionTracker = RecompositionTracker()
     private val viewTreeObservers = WeakHashMap<Activity, ViewTreeObserver.OnGlobalLayoutListener>()
+    private val viewIdNames = ConcurrentHashMap<Int, String>()
+    private val snapshotBufferPool = AtomicReference<ViewSnapshotBuffer?>(ViewSnapshotBuffer())
+
+    // Search index state is only touched on the main thread
+    private var searchIndex: ViewSearchIndex? = null
+    private var indexedRootView: View? = null
+    private val searchIndexInvalidator =
+        ViewTreeObserver.OnGlobalLayoutListener { searchIndex = null }
 
     init {
         // Register activity lifecycle callbacks to track current activity
@@ -149,6 +180,7 @@ class ViewHierarchyToolProvider(private val context: Context) {
                     if (currentActivity == activity) {
                         currentActivity = null
                         cleanupViewTreeObserver(activity)
+                        releaseSearchIndex()
                         stopStreaming()
                     }
                 }
@@ -238,23 +270,23 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
 
         try {
-            val rootView = activity.findViewById<View>(android.R.id.content)
-            val hierarchy =
-                captureViewNode(
-                    rootView,
+            val captured =
+                captureHierarchy(
+                    activity,
                     includeInvisible,
                     maxDepth,
-                    0,
                     trackRecompositions,
                     includePackageInfo,
+                    input.frameBudgetMs,
                 )
 
             val result = buildString {
                 appendLine("View Hierarchy:")
                 appendLine("Activity: ${activity.javaClass.simpleName}")
                 appendLine("Package: ${activity.javaClass.`package`?.name ?: "unknown"}")
+                appendLine("Main thread: ${captured.mainThreadCost.describe()}")
                 appendLine()
-                appendViewNode(hierarchy, 0)
+                appendViewNode(captured.root, 0)
             }
 
             return CallToolResult(content = listOf(TextContent(text = result)), isError = false)
@@ -289,6 +321,7 @@ class ViewHierarchyToolProvider(private val context: Context) {
             appendLine("Streaming configuration updated:")
             appendLine("- Enabled: $enabled")
             if (enabled) {
+                appendLine("- Mode: ${input.mode}")
                 appendLine("- Interval: ${intervalMs}ms")
                 appendLine("- Include invisible: $includeInvisible")
                 appendLine("- Max depth: ${maxDepth ?: "unlimited"}")
@@ -323,22 +356,26 @@ class ViewHierarchyToolProvider(private val context: Context) {
     private fun startStreaming() {
         stopStreaming() // Stop any existing streaming
 
+        if (streamingConfig.mode.equals(STREAMING_MODE_DIFF, ignoreCase = true)) {
+            startDiffStreaming()
+            return
+        }
+
         streamingJob =
             CoroutineScope(Dispatchers.Main).launch {
                 while (isActive && isStreamingEnabled) {
                     currentActivity?.let { activity ->
                         try {
-                            val rootView = activity.findViewById<View>(android.R.id.content)
-                            val hierarchy =
-                                captureViewNode(
-                                    rootView,
+                            val captured =
+                                captureHierarchy(
+                                    activity,
                                     streamingConfig.includeInvisible,
                                     streamingConfig.maxDepth,
-                                    0,
                                     streamingConfig.trackRecompositions,
                                     true,
+                                    DEFAULT_FRAME_BUDGET_MS,
                                 )
-                            hierarchyStream.emit(hierarchy)
+                            hierarchyStream.emit(captured.root)
                         } catch (e: Exception) {
                             Log.w(TAG, "Error during streaming capture", e)
                         }
@@ -348,9 +385,87 @@ class ViewHierarchyToolProvider(private val context: Context) {
             }
     }
 
+    private fun startDiffStreaming() {
+        val rootView = currentActivity?.findViewById<View>(android.R.id.content) ?: return
+        val differ =
+            ViewHierarchyDiffer(
+                includeInvisible = streamingConfig.includeInvisible,
+                maxDepth = streamingConfig.maxDepth,
+                textOf = ::getRawViewText,
+                idNameOf = ::getViewIdName,
+            )
+        val observer = HierarchyChangeObserver(rootView, differ, streamingConfig.intervalMs)
+        hierarchyChangeObserver = observer
+        runOnMainThread { observer.attach() }
+    }
+
     private fun stopStreaming() {
         streamingJob?.cancel()
         streamingJob = null
+
+        hierarchyChangeObserver?.let { observer -> runOnMainThread { observer.detach() } }
+        hierarchyChangeObserver = null
+    }
+
+    private fun runOnMainThread(block: () -> Unit) {
+        if (Looper.myLooper() == Looper.getMainLooper()) block() else mainHandler.post(block)
+    }
+
+    /**
+     * Runs a [ViewHierarchyDiffer] whenever the view tree lays out or draws, instead of on a timer.
+     * Bursts of callbacks, such as every frame of an animation, are coalesced into at most one
+     * diff per [minIntervalMs]. An idle screen costs nothing.
+     */
+    private inner class HierarchyChangeObserver(
+        private val rootView: View,
+        private val differ: ViewHierarchyDiffer,
+        private val minIntervalMs: Long,
+    ) : ViewTreeObserver.OnGlobalLayoutListener, ViewTreeObserver.OnDrawListener, Runnable {
+
+        private var attached = false
+        private var scheduled = false
+        private var lastDiffAt = 0L
+
+        fun attach() {
+            val observer = rootView.viewTreeObserver
+            observer.addOnGlobalLayoutListener(this)
+            observer.addOnDrawListener(this)
+            attached = true
+            scheduleDiff()
+        }
+
+        fun detach() {
+            attached = false
+            mainHandler.removeCallbacks(this)
+            val observer = rootView.viewTreeObserver
+            if (observer.isAlive) {
+                observer.removeOnGlobalLayoutListener(this)
+                observer.removeOnDrawListener(this)
+            }
+            differ.reset()
+        }
+
+        override fun onGlobalLayout() = scheduleDiff()
+
+        override fun onDraw() = scheduleDiff()
+
+        private fun scheduleDiff() {
+            if (!attached || scheduled) return
+            scheduled = true
+            val delayMs = (lastDiffAt + minIntervalMs - SystemClock.uptimeMillis()).coerceAtLeast(0)
+            mainHandler.postDelayed(this, delayMs)
+        }
+
+        override fun run() {
+            scheduled = false
+            if (!attached) return
+            lastDiffAt = SystemClock.uptimeMillis()
+            try {
+                differ.diff(rootView)?.let { patchStream.tryEmit(it) }
+            } catch (e: Exception) {
+                Log.w(TAG, "Error during hierarchy diff", e)
+            }
+        }
     }
 
     private fun setupViewTreeObserver(activity: Activity) {
@@ -371,6 +486,106 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
     }
 
+    private class CapturedHierarchy(val root: ViewNode, val mainThreadCost: MainThreadCost)
+
+    /**
+     * Captures the content view of [activity] in two phases. The main thread copies everything read
+     * from a live view, including id names and framework state through the per-class reflection
+     * cache, into a pooled [ViewSnapshotBuffer], yielding whenever a slice uses up [frameBudgetMs].
+     * Building the nodes then runs on [Dispatchers.Default] from the copy alone. If the tree
+     * changes while the walk is yielding it starts over, and [MainThreadCost.consistent] reports
+     * when it kept changing; see [ViewHierarchySnapshotter].
+     */
+    private suspend fun captureHierarchy(
+        activity: Activity,
+        includeInvisible: Boolean,
+        maxDepth: Int?,
+        trackRecompositions: Boolean,
+        includePackageInfo: Boolean,
+        frameBudgetMs: Long,
+    ): CapturedHierarchy {
+        val buffer = snapshotBufferPool.getAndSet(null) ?: ViewSnapshotBuffer()
+        try {
+            val cost =
+                withContext(Dispatchers.Main) {
+                    val rootView = activity.findViewById<View>(android.R.id.content)
+                    ViewHierarchySnapshotter(
+                            textOf = ::getRawViewText,
+                            idOf = ::getViewIdName,
+                            frameworkInfoOf = { view ->
+                                extractFrameworkInfo(view, viewClassInfo[view.javaClass])
+                            },
+                            recompositionCountOf = recompositionTracker::getRecompositionCount,
+                        )
+                        .capture(
+                            rootView,
+                            buffer,
+                            includeInvisible,
+                            maxDepth,
+                            trackRecompositions,
+                            frameBudgetMs,
+                        )
+                }
+            val root =
+                withContext(Dispatchers.Default) { buildViewNodes(buffer, includePackageInfo) }
+            return CapturedHierarchy(root, cost)
+        } finally {
+            buffer.clear()
+            snapshotBufferPool.set(buffer)
+        }
+    }
+
+    private fun buildViewNodes(buffer: ViewSnapshotBuffer, includePackageInfo: Boolean): ViewNode {
+        // Nodes are in pre-order, so walking backwards finishes every child before its parent
+        val children = arrayOfNulls<MutableList<ViewNode>>(buffer.size)
+        var root: ViewNode? = null
+        for (index in buffer.size - 1 downTo 0) {
+            val node =
+                buildViewNode(
+                    buffer,
+                    index,
+                    children[index]?.apply { reverse() } ?: emptyList(),
+                    includePackageInfo,
+                )
+            val parent = buffer.parent[index]
+            if (parent < 0) {
+                root = node
+            } else {
+                (children[parent] ?: ArrayList<ViewNode>().also { children[parent] = it }).add(node)
+            }
+        }
+        return checkNotNull(root) { "Snapshot is empty" }
+    }
+
+    private fun buildViewNode(
+        buffer: ViewSnapshotBuffer,
+        index: Int,
+        children: List<ViewNode>,
+        includePackageInfo: Boolean,
+    ): ViewNode {
+        val viewClass = buffer.classes[index]!!
+        val fullClassName = viewClass.name
+
+        return ViewNode(
+            id = buffer.ids[index],
+            className = viewClass.simpleName,
+            packageName = if (includePackageInfo) extractPackageName(fullClassName) else null,
+            fullClassName = fullClassName,
+            bounds = buffer.boundsString(index),
+            text = buffer.text[index],
+            contentDescription = buffer.contentDescription[index],
+            isVisible = buffer.hasFlag(index, ViewSnapshotBuffer.FLAG_VISIBLE),
+            isClickable = buffer.hasFlag(index, ViewSnapshotBuffer.FLAG_CLICKABLE),
+            isFocusable = buffer.hasFlag(index, ViewSnapshotBuffer.FLAG_FOCUSABLE),
+            isEnabled = buffer.hasFlag(index, ViewSnapshotBuffer.FLAG_ENABLED),
+            depth = buffer.depth[index],
+            viewType = viewClassInfo[viewClass].viewType,
+            frameworkInfo = buffer.frameworkInfo[index],
+            recompositionCount = buffer.recompositions[index].takeIf { it >= 0 },
+            children = children,
+        )
+    }
+
     private fun captureViewNode(
         view: View,
         includeInvisible: Boolean,
@@ -406,8 +621,9 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
 
         val fullClassName = view.javaClass.name
-        val viewType = determineViewType(view, fullClassName)
-        val frameworkInfo = extractFrameworkInfo(view, viewType)
+        val classInfo = viewClassInfo[view.javaClass]
+        val viewType = classInfo.viewType
+        val frameworkInfo = extractFrameworkInfo(view, classInfo)
         val recompositionCount =
             if (trackRecompositions) {
                 recompositionTracker.getRecompositionCount(view)
@@ -433,33 +649,75 @@ class ViewHierarchyToolProvider(private val context: Context) {
         )
     }
 
-    private fun determineViewType(view: View, fullClassName: String): ViewType {
+    /**
+     * Everything about a view that depends only on its class, resolved once per class. Field and
+     * method handles are already made accessible.
+     */
+    private class ViewClassInfo(
+        val viewType: ViewType,
+        val screenField: Field? = null,
+        val hasCompositionMethod: Method? = null,
+        val workflowInfo: FrameworkInfo? = null,
+    )
+
+    private val viewClassInfo = ClassMetadataCache(::inspectViewClass)
+
+    private fun inspectViewClass(viewClass: Class<*>): ViewClassInfo {
+        return when (val viewType = classifyViewClass(viewClass, viewClass.name)) {
+            ViewType.CIRCUIT_SCREEN ->
+                ViewClassInfo(
+                    viewType,
+                    screenField = findFieldByType(viewClass, "Screen")?.makeAccessible(),
+                )
+            ViewType.WORKFLOW_RENDERING ->
+                ViewClassInfo(viewType, workflowInfo = buildWorkflowInfo(viewClass))
+            ViewType.COMPOSE_NODE ->
+                ViewClassInfo(
+                    viewType,
+                    hasCompositionMethod =
+                        findMethodByName(viewClass, "hasComposition")?.makeAccessible(),
+                )
+            else -> ViewClassInfo(viewType)
+        }
+    }
+
+    private fun <T : AccessibleObject> T.makeAccessible(): T? {
+        return try {
+            isAccessible = true
+            this
+        } catch (e: Exception) {
+            Log.w(TAG, "Cannot access $this", e)
+            null
+        }
+    }
+
+    private fun classifyViewClass(viewClass: Class<*>, fullClassName: String): ViewType {
         return when {
             fullClassName.startsWith(ANDROID_PACKAGE_PREFIX) -> ViewType.ANDROID_WIDGET
             fullClassName.startsWith(ANDROIDX_PACKAGE_PREFIX) -> ViewType.ANDROIDX_COMPONENT
-            isComposeView(view, fullClassName) -> ViewType.COMPOSE_NODE
-            isCircuitScreen(view, fullClassName) -> ViewType.CIRCUIT_SCREEN
-            isWorkflowRendering(view, fullClassName) -> ViewType.WORKFLOW_RENDERING
+            isComposeView(fullClassName) -> ViewType.COMPOSE_NODE
+            isCircuitScreen(viewClass, fullClassName) -> ViewType.CIRCUIT_SCREEN
+            isWorkflowRendering(viewClass, fullClassName) -> ViewType.WORKFLOW_RENDERING
             isCustomView(fullClassName) -> ViewType.CUSTOM_VIEW
             else -> ViewType.UNKNOWN
         }
     }
 
-    private fun isComposeView(view: View, fullClassName: String): Boolean {
+    private fun isComposeView(fullClassName: String): Boolean {
         return fullClassName == COMPOSE_VIEW_CLASS ||
             fullClassName.contains("compose", ignoreCase = true)
     }
 
-    private fun isCircuitScreen(view: View, fullClassName: String): Boolean {
+    private fun isCircuitScreen(viewClass: Class<*>, fullClassName: String): Boolean {
         return fullClassName.contains("circuit", ignoreCase = true) ||
             fullClassName.contains("slack", ignoreCase = true) ||
-            hasCircuitAnnotations(view.javaClass)
+            hasCircuitAnnotations(viewClass)
     }
 
-    private fun isWorkflowRendering(view: View, fullClassName: String): Boolean {
+    private fun isWorkflowRendering(viewClass: Class<*>, fullClassName: String): Boolean {
         return fullClassName.contains("workflow", ignoreCase = true) ||
             fullClassName.contains("square", ignoreCase = true) ||
-            hasWorkflowInterfaces(view.javaClass)
+            hasWorkflowInterfaces(viewClass)
     }
 
     private fun isCustomView(fullClassName: String): Boolean {
@@ -496,23 +754,21 @@ class ViewHierarchyToolProvider(private val context: Context) {
         } else null
     }
 
-    private fun extractFrameworkInfo(view: View, viewType: ViewType): FrameworkInfo? {
-        return when (viewType) {
-            ViewType.CIRCUIT_SCREEN -> extractCircuitInfo(view)
-            ViewType.WORKFLOW_RENDERING -> extractWorkflowInfo(view)
-            ViewType.COMPOSE_NODE -> extractComposeInfo(view)
+    private fun extractFrameworkInfo(view: View, classInfo: ViewClassInfo): FrameworkInfo? {
+        return when (classInfo.viewType) {
+            ViewType.CIRCUIT_SCREEN -> extractCircuitInfo(view, classInfo)
+            ViewType.WORKFLOW_RENDERING -> classInfo.workflowInfo
+            ViewType.COMPOSE_NODE -> extractComposeInfo(view, classInfo)
             else -> null
         }
     }
 
-    private fun extractCircuitInfo(view: View): FrameworkInfo? {
+    private fun extractCircuitInfo(view: View, classInfo: ViewClassInfo): FrameworkInfo? {
         return try {
             val stateInfo = mutableMapOf<String, String>()
 
             // Try to extract Circuit-specific information using reflection
-            val screenField = findFieldByType(view.javaClass, "Screen")
-            screenField?.let { field ->
-                field.isAccessible = true
+            classInfo.screenField?.let { field ->
                 val screen = field.get(view)
                 stateInfo["screen"] = screen?.javaClass?.simpleName ?: "Unknown"
             }
@@ -529,12 +785,12 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
     }
 
-    private fun extractWorkflowInfo(view: View): FrameworkInfo? {
+    private fun buildWorkflowInfo(viewClass: Class<*>): FrameworkInfo {
         return try {
             val stateInfo = mutableMapOf<String, String>()
 
             // Try to extract Workflow-specific information
-            val renderingMethod = findMethodByName(view.javaClass, "render")
+            val renderingMethod = findMethodByName(viewClass, "render")
             renderingMethod?.let { stateInfo["hasRenderMethod"] = "true" }
 
             FrameworkInfo(
@@ -548,14 +804,12 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
     }
 
-    private fun extractComposeInfo(view: View): FrameworkInfo? {
+    private fun extractComposeInfo(view: View, classInfo: ViewClassInfo): FrameworkInfo? {
         return try {
             val stateInfo = mutableMapOf<String, String>()
 
             // Try to check if it's a ComposeView using reflection
-            val hasCompositionMethod = findMethodByName(view.javaClass, "hasComposition")
-            hasCompositionMethod?.let { method ->
-                method.isAccessible = true
+            classInfo.hasCompositionMethod?.let { method ->
                 val hasComposition = method.invoke(view) as? Boolean
                 stateInfo["hasComposition"] = hasComposition.toString()
             }
@@ -611,16 +865,10 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
 
         try {
-            val rootView = activity.findViewById<View>(android.R.id.content)
-            val matchingViews = mutableListOf<ViewNode>()
-            findViewsByTextRecursive(
-                rootView,
-                searchText,
-                exactMatch,
-                matchingViews,
-                0,
-                includePackageInfo,
-            )
+            val matchingViews =
+                searchViews(activity, includePackageInfo) { index ->
+                    index.findByText(searchText, exactMatch)
+                }
 
             val result = buildString {
                 appendLine("Views containing text '$searchText' (exact match: $exactMatch):")
@@ -672,9 +920,8 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
 
         try {
-            val rootView = activity.findViewById<View>(android.R.id.content)
-            val matchingViews = mutableListOf<ViewNode>()
-            findViewsByIdRecursive(rootView, searchId, matchingViews, 0, includePackageInfo)
+            val matchingViews =
+                searchViews(activity, includePackageInfo) { index -> index.findById(searchId) }
 
             val result = buildString {
                 appendLine("Views with ID '$searchId':")
@@ -726,9 +973,10 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
 
         try {
-            val rootView = activity.findViewById<View>(android.R.id.content)
-            val matchingViews = mutableListOf<ViewNode>()
-            findViewsByClassRecursive(rootView, searchClass, matchingViews, 0, includePackageInfo)
+            val matchingViews =
+                searchViews(activity, includePackageInfo) { index ->
+                    index.findByClass(searchClass)
+                }
 
             val result = buildString {
                 appendLine("Views with class '$searchClass':")
@@ -761,125 +1009,70 @@ class ViewHierarchyToolProvider(private val context: Context) {
         }
     }
 
-    private fun findViewsByTextRecursive(
-        view: View,
-        searchText: String,
-        exactMatch: Boolean,
-        matches: MutableList<ViewNode>,
-        depth: Int,
+    /** Runs [search] against the current layout's index and captures each match. */
+    private suspend fun searchViews(
+        activity: Activity,
         includePackageInfo: Boolean,
-    ) {
-        val viewText = getViewText(view)
-        val contentDesc = view.contentDescription?.toString()
-
-        val textMatches =
-            if (exactMatch) {
-                viewText == searchText || contentDesc == searchText
-            } else {
-                viewText?.contains(searchText, ignoreCase = true) == true ||
-                    contentDesc?.contains(searchText, ignoreCase = true) == true
+        search: (ViewSearchIndex) -> List<ViewSearchIndex.Match>,
+    ): List<ViewNode> =
+        withContext(Dispatchers.Main) {
+            val rootView = activity.findViewById<View>(android.R.id.content)
+            search(searchIndexFor(rootView)).map { match ->
+                captureViewNode(match.view, false, 0, match.depth, false, includePackageInfo)
             }
-
-        if (textMatches) {
-            matches.add(captureViewNode(view, false, 0, depth, false, includePackageInfo))
         }
 
-        if (view is ViewGroup) {
-            for (i in 0 until view.childCount) {
-                findViewsByTextRecursive(
-                    view.getChildAt(i),
-                    searchText,
-                    exactMatch,
-                    matches,
-                    depth + 1,
-                    includePackageInfo,
-                )
-            }
+    /**
+     * Returns the search index for [rootView], building it on first use after a layout pass. Must
+     * be called on the main thread.
+     */
+    private fun searchIndexFor(rootView: View): ViewSearchIndex {
+        searchIndex?.takeIf { indexedRootView === rootView }?.let { return it }
+
+        if (indexedRootView !== rootView) {
+            releaseSearchIndex()
+            rootView.viewTreeObserver.addOnGlobalLayoutListener(searchIndexInvalidator)
+            indexedRootView = rootView
         }
-    }
-
-    private fun findViewsByIdRecursive(
-        view: View,
-        searchId: String,
-        matches: MutableList<ViewNode>,
-        depth: Int,
-        includePackageInfo: Boolean,
-    ) {
-        val viewId = getViewIdName(view)
-        if (
-            viewId != null &&
-                (viewId == searchId ||
-                    viewId.endsWith(":id/$searchId") ||
-                    viewId.endsWith("/$searchId"))
-        ) {
-            matches.add(captureViewNode(view, false, 0, depth, false, includePackageInfo))
-        }
-
-        if (view is ViewGroup) {
-            for (i in 0 until view.childCount) {
-                findViewsByIdRecursive(
-                    view.getChildAt(i),
-                    searchId,
-                    matches,
-                    depth + 1,
-                    includePackageInfo,
-                )
-            }
+        return ViewSearchIndex.build(rootView, ::getViewText, ::getViewIdName).also {
+            searchIndex = it
         }
     }
 
-    private fun findViewsByClassRecursive(
-        view: View,
-        searchClass: String,
-        matches: MutableList<ViewNode>,
-        depth: Int,
-        includePackageInfo: Boolean,
-    ) {
-        val className = view.javaClass.simpleName
-        val fullClassName = view.javaClass.name
-
-        if (
-            className == searchClass ||
-                fullClassName == searchClass ||
-                fullClassName.endsWith(".$searchClass")
-        ) {
-            matches.add(captureViewNode(view, false, 0, depth, false, includePackageInfo))
-        }
-
-        if (view is ViewGroup) {
-            for (i in 0 until view.childCount) {
-                findViewsByClassRecursive(
-                    view.getChildAt(i),
-                    searchClass,
-                    matches,
-                    depth + 1,
-                    includePackageInfo,
-                )
-            }
+    private fun releaseSearchIndex() {
+        indexedRootView?.viewTreeObserver?.let { observer ->
+            if (observer.isAlive) observer.removeOnGlobalLayoutListener(searchIndexInvalidator)
         }
+        indexedRootView = null
+        searchIndex = null
     }
 
     private fun getViewIdName(view: View): String? {
-        return try {
-            if (view.id != View.NO_ID) {
-                view.context.resources.getResourceEntryName(view.id)?.let { entryName ->
-                    view.context.resources.getResourceName(view.id)
-                } ?: view.id.toString()
-            } else null
-        } catch (e: Exception) {
-            view.id.takeIf { it != View.NO_ID }?.toString()
+        val id = view.id
+        if (id == View.NO_ID) return null
+        // An id names the same resource for the life of the process, so look each one up once
+        return viewIdNames.getOrPut(id) {
+            try {
+                view.context.resources.getResourceEntryName(id)?.let { entryName ->
+                    view.context.resources.getResourceName(id)
+                } ?: id.toString()
+            } catch (e: Exception) {
+                id.toString()
+            }
         }
     }
 
-    private fun getViewText(view: View): String? {
+    private fun getViewText(view: View): String? = getRawViewText(view)?.toString()
+
+    private fun getRawViewText(view: View): CharSequence? {
         return when (view) {
-            is android.widget.TextView -> view.text?.toString()
-            is android.widget.Button -> view.text?.toString()
+            is android.widget.TextView -> view.text
+            is android.widget.Button -> view.text
             is android.widget.EditText ->
                 if (view.inputType and android.text.InputType.TYPE_TEXT_VARIATION_PASSWORD != 0) {
                     "[PASSWORD FIELD]"
                 } else {
-                    view.text?.toString()
+                    view.text
                 }
             else -> null
         }
@@ -915,6 +1108,9 @@ class ViewHierarchyToolProvider(private val context: Context) {
 
     // Expose the hierarchy stream for SSE integration
     fun getHierarchyStream(): SharedFlow<ViewNode> = hierarchyStream
+
+    /** Patches emitted while streaming in "diff" mode. */
+    fun getHierarchyPatchStream(): SharedFlow<ViewHierarchyPatchBatch> = patchStream
 }
 
 /** Tracks Compose recomposition counts and performance metrics */
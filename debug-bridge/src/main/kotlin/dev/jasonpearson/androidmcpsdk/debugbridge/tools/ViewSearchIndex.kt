@@ -0,0 +1,153 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import android.view.View
+import android.view.ViewGroup
+import java.util.Locale
+
+/**
+ * Lookup tables over one layout pass of a view tree, so repeated searches don't walk the tree.
+ *
+ * Views are numbered in pre-order and every table maps a key to those numbers, so results come
+ * back in tree order. Exact text, resource id and class lookups are a single hash probe. Substring
+ * text lookups go through an inverted index of lowercase word tokens: every word of the query must
+ * appear inside some token of a matching view, so only views owning such tokens are checked.
+ *
+ * Build and query on the main thread, and throw the index away on the next layout pass.
+ */
+internal class ViewSearchIndex
+private constructor(
+    private val views: List<View>,
+    private val depths: IntArray,
+    private val texts: Array<String?>,
+    private val contentDescriptions: Array<String?>,
+    private val byExactText: Map<String, List<Int>>,
+    private val byToken: Map<String, List<Int>>,
+    private val byIdName: Map<String, List<Int>>,
+    private val byClassName: Map<String, List<Int>>,
+) {
+
+    class Match(val view: View, val depth: Int)
+
+    val size: Int
+        get() = views.size
+
+    fun findByText(query: String, exactMatch: Boolean): List<Match> {
+        if (exactMatch) return matches(byExactText[query].orEmpty())
+
+        val words = tokenize(query)
+        if (words.isEmpty()) return matches(views.indices.filter { containsText(it, query) })
+
+        // Narrow with the longest word, it is the most selective
+        val word = words.maxBy { it.length }
+        val candidates = sortedSetOf<Int>()
+        byToken[word]?.let(candidates::addAll)
+        for ((token, postings) in byToken) {
+            if (token.length > word.length && token.contains(word)) candidates.addAll(postings)
+        }
+        return matches(candidates.filter { containsText(it, query) })
+    }
+
+    /** Matches the full resource name, or the part after `:id/` or any `/`. */
+    fun findById(id: String): List<Match> = matches(byIdName[id].orEmpty())
+
+    /** Matches the simple name, the full name, or any dotted suffix of the full name. */
+    fun findByClass(className: String): List<Match> = matches(byClassName[className].orEmpty())
+
+    private fun containsText(index: Int, query: String): Boolean =
+        texts[index]?.contains(query, ignoreCase = true) == true ||
+            contentDescriptions[index]?.contains(query, ignoreCase = true) == true
+
+    private fun matches(indices: Collection<Int>): List<Match> =
+        indices.map { Match(views[it], depths[it]) }
+
+    companion object {
+        private val TOKEN_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+
+        fun build(
+            root: View,
+            textOf: (View) -> String?,
+            idNameOf: (View) -> String?,
+        ): ViewSearchIndex {
+            val views = ArrayList<View>()
+            val depths = ArrayList<Int>()
+            collect(root, 0, views, depths)
+
+            val texts = arrayOfNulls<String>(views.size)
+            val contentDescriptions = arrayOfNulls<String>(views.size)
+            val byExactText = HashMap<String, MutableList<Int>>()
+            val byToken = HashMap<String, MutableList<Int>>()
+            val byIdName = HashMap<String, MutableList<Int>>()
+            val byClassName = HashMap<String, MutableList<Int>>()
+
+            views.forEachIndexed { index, view ->
+                val text = textOf(view)
+                val contentDescription = view.contentDescription?.toString()
+                texts[index] = text
+                contentDescriptions[index] = contentDescription
+
+                for (value in listOfNotNull(text, contentDescription)) {
+                    byExactText.addPosting(value, index)
+                    tokenize(value).forEach { byToken.addPosting(it, index) }
+                }
+
+                idNameOf(view)?.let { idName ->
+                    byIdName.addPosting(idName, index)
+                    suffixesAfter(idName, '/').forEach { byIdName.addPosting(it, index) }
+                }
+
+                val viewClass = view.javaClass
+                byClassName.addPosting(viewClass.simpleName, index)
+                byClassName.addPosting(viewClass.name, index)
+                suffixesAfter(viewClass.name, '.').forEach { byClassName.addPosting(it, index) }
+            }
+
+            return ViewSearchIndex(
+                views = views,
+                depths = depths.toIntArray(),
+                texts = texts,
+                contentDescriptions = contentDescriptions,
+                byExactText = byExactText,
+                byToken = byToken,
+                byIdName = byIdName,
+                byClassName = byClassName,
+            )
+        }
+
+        private fun collect(
+            view: View,
+            depth: Int,
+            views: MutableList<View>,
+            depths: MutableList<Int>,
+        ) {
+            views.add(view)
+            depths.add(depth)
+            if (view is ViewGroup) {
+                for (i in 0 until view.childCount) {
+                    collect(view.getChildAt(i), depth + 1, views, depths)
+                }
+            }
+        }
+
+        private fun tokenize(value: String): Set<String> =
+            value
+                .lowercase(Locale.ROOT)
+                .split(TOKEN_SEPARATOR)
+                .filterTo(HashSet()) { it.isNotEmpty() }
+
+        private fun suffixesAfter(value: String, separator: Char): List<String> {
+            val suffixes = ArrayList<String>()
+            var index = value.indexOf(separator)
+            while (index >= 0) {
+                suffixes.add(value.substring(index + 1))
+                index = value.indexOf(separator, index + 1)
+            }
+            return suffixes
+        }
+
+        private fun HashMap<String, MutableList<Int>>.addPosting(key: String, index: Int) {
+            val postings = getOrPut(key) { ArrayList(1) }
+            // A view can produce the same key twice, e.g. equal text and content description
+            if (postings.lastOrNull() != index) postings.add(index)
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database
+
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class DatabaseConnectionPoolTest {
+
+    private lateinit var mockDatabaseFactory: SqliteDatabaseFactory
+    private lateinit var mockDatabase: SqliteDatabase
+    private var now = 0L
+
+    @Before
+    fun setUp() {
+        mockDatabase = mockk(relaxed = true)
+        every { mockDatabase.isOpen() } returns true
+        every { mockDatabase.inTransaction() } returns false
+
+        mockDatabaseFactory = mockk()
+        every { mockDatabaseFactory.openDatabase(any(), any(), any()) } returns mockDatabase
+        now = 0L
+    }
+
+    @Test
+    fun `should reuse an open connection across calls`() = runTest {
+        val pool = DatabaseConnectionPool(mockDatabaseFactory, clock = { now })
+        val config = DatabaseConfig(path = "/test/app.db", readOnly = true)
+
+        val first = pool.withConnection(config) { it }
+        val second = pool.withConnection(config) { it }
+
+        assertSame(first, second)
+        verify(exactly = 1) { mockDatabaseFactory.openDatabase("/test/app.db", any(), null) }
+        assertEquals(1, pool.idleConnectionCount())
+    }
+
+    @Test
+    fun `should keep read-only and writable handles separate`() = runTest {
+        val pool = DatabaseConnectionPool(mockDatabaseFactory, clock = { now })
+
+        pool.withConnection(DatabaseConfig(path = "/test/app.db", readOnly = true)) {}
+        pool.withConnection(DatabaseConfig(path = "/test/app.db", readOnly = false)) {}
+
+        verify(exactly = 2) { mockDatabaseFactory.openDatabase("/test/app.db", any(), null) }
+        assertEquals(2, pool.idleConnectionCount())
+    }
+
+    @Test
+    fun `should close connections that exceed the idle timeout`() = runTest {
+        val pool =
+            DatabaseConnectionPool(mockDatabaseFactory, idleTimeoutMs = 1_000L, clock = { now })
+        pool.withConnection(DatabaseConfig(path = "/test/app.db", readOnly = true)) {}
+
+        now = 1_500L
+        val evicted = pool.evictIdleConnections()
+
+        assertEquals(1, evicted)
+        assertEquals(0, pool.idleConnectionCount())
+        verify { mockDatabase.close() }
+    }
+
+    @Test
+    fun `should close idle connections on a timer without further calls`() = runTest {
+        val pool =
+            DatabaseConnectionPool(
+                mockDatabaseFactory,
+                idleTimeoutMs = 1_000L,
+                clock = { testScheduler.currentTime },
+                scope = backgroundScope,
+            )
+        pool.withConnection(DatabaseConfig(path = "/test/app.db", readOnly = true)) {}
+
+        advanceTimeBy(1_001L)
+
+        assertEquals(0, pool.idleConnectionCount())
+        verify { mockDatabase.close() }
+    }
+
+    @Test
+    fun `should close a connection released after the pool was closed`() = runTest {
+        val pool = DatabaseConnectionPool(mockDatabaseFactory, clock = { now })
+        val config = DatabaseConfig(path = "/test/app.db", readOnly = true)
+
+        pool.withConnection(config) {
+            pool.closeAll()
+            verify(exactly = 0) { mockDatabase.close() }
+        }
+
+        assertEquals(0, pool.idleConnectionCount())
+        verify(exactly = 1) { mockDatabase.close() }
+    }
+
+    @Test
+    fun `should discard a connection when the block throws`() = runTest {
+        val pool = DatabaseConnectionPool(mockDatabaseFactory, clock = { now })
+        val config = DatabaseConfig(path = "/test/app.db", readOnly = true)
+
+        runCatching { pool.withConnection(config) { throw IllegalStateException("boom") } }
+
+        assertEquals(0, pool.idleConnectionCount())
+        verify { mockDatabase.close() }
+    }
+}
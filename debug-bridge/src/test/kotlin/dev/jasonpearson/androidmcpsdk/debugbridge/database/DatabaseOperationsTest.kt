@@ -17,7 +17,8 @@ class DatabaseOperationsTest {
     fun setUp() {
         mockContext = mockk()
         mockDatabaseFactory = mockk()
-        databaseOperations = DatabaseOperations(mockContext, mockDatabaseFactory)
+        databaseOperations =
+            DatabaseOperations(mockContext, DatabaseConnectionPool(mockDatabaseFactory))
     }
 
     @After
@@ -76,6 +77,48 @@ class DatabaseOperationsTest {
         }
     }
 
+    @Test
+    fun `validateQuerySafety should judge statements rather than keywords`() {
+        // Arrange
+        val method =
+            DatabaseOperations::class
+                .java
+                .getDeclaredMethod("validateQuerySafety", String::class.java)
+        method.isAccessible = true
+
+        // Act
+        val safe = { query: String -> method.invoke(databaseOperations, query) as Boolean }
+
+        // Assert
+        assertTrue(safe("SELECT updated_at, created_by FROM users WHERE note = 'DROP'"))
+        assertTrue(safe("WITH recent AS (SELECT * FROM orders) SELECT * FROM recent"))
+        assertFalse(safe("SELECT * FROM users; DELETE FROM users"))
+        assertFalse(safe("WITH x AS (SELECT 1) DELETE FROM users"))
+        assertFalse(safe("SELECT * FROM"))
+    }
+
+    @Test
+    fun `addLimitToQuery should ignore a LIMIT inside a subquery`() {
+        // Arrange
+        val method =
+            DatabaseOperations::class
+                .java
+                .getDeclaredMethod(
+                    "addLimitToQuery",
+                    String::class.java,
+                    Int::class.java,
+                    Int::class.java,
+                )
+        method.isAccessible = true
+
+        // Act
+        val query = "SELECT * FROM (SELECT * FROM users LIMIT 5000);"
+        val result = method.invoke(databaseOperations, query, 100, 0) as String
+
+        // Assert
+        assertEquals("SELECT * FROM (SELECT * FROM users LIMIT 5000) LIMIT 100 OFFSET 0", result)
+    }
+
     @Test
     fun `addLimitToQuery should add LIMIT and OFFSET correctly`() {
         // Use reflection to access private method
@@ -0,0 +1,159 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database
+
+import android.database.MatrixCursor
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class QueryResultEncoderTest {
+
+    private val encoder = QueryResultEncoder()
+
+    @Test
+    fun `JSON should handle empty result set`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("id", "name"))
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.JSON)
+
+        // Assert
+        assertEquals("[]", result.text)
+        assertEquals(0, result.rowCount)
+    }
+
+    @Test
+    fun `CSV should include headers and data`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("id", "name", "email"))
+        cursor.addRow(arrayOf<Any?>(1, "John", "john@example.com"))
+        cursor.addRow(arrayOf<Any?>(2, "Jane", "jane@example.com"))
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.CSV)
+
+        // Assert
+        val lines = result.text.split("\n").filter { it.isNotEmpty() }
+        assertEquals(3, lines.size) // header + 2 data rows
+        assertEquals("id,name,email", lines[0])
+        assertEquals("1,John,john@example.com", lines[1])
+        assertEquals("2,Jane,jane@example.com", lines[2])
+    }
+
+    @Test
+    fun `CSV should handle commas and quotes in data`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("id", "name", "notes"))
+        cursor.addRow(arrayOf<Any?>(1, "John, Jr.", "He said \"Hello\""))
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.CSV)
+
+        // Assert
+        val lines = result.text.split("\n").filter { it.isNotEmpty() }
+        assertEquals(2, lines.size)
+        assertTrue(lines[1].contains("\"John, Jr.\""))
+        assertTrue(lines[1].contains("\"He said \"\"Hello\"\"\""))
+    }
+
+    @Test
+    fun `table should create proper table layout`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("id", "name"))
+        cursor.addRow(arrayOf<Any?>(1, "John"))
+        cursor.addRow(arrayOf<Any?>(2, "Jane"))
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.TABLE)
+
+        // Assert
+        val lines = result.text.split("\n").filter { it.isNotEmpty() }
+        assertEquals(4, lines.size) // header + separator + 2 data rows
+        assertEquals("id | name", lines[0])
+        assertEquals("---|-----", lines[1])
+        assertEquals("1  | John", lines[2])
+        assertEquals("2  | Jane", lines[3])
+    }
+
+    @Test
+    fun `table should handle empty result`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("id", "name"))
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.TABLE)
+
+        // Assert
+        assertEquals("No data returned", result.text)
+    }
+
+    @Test
+    fun `should stream typed cursor values into JSON`() {
+        // Arrange
+        val cursor = createCursor()
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.JSON)
+
+        // Assert
+        assertEquals(
+            "[{\"id\":1,\"name\":\"A \\\"quoted\\\" name\",\"score\":2.5,\"note\":null}]",
+            result.text,
+        )
+        assertEquals(1, result.rowCount)
+        assertEquals(listOf("id", "name", "score", "note"), result.columnNames)
+        assertFalse(result.hasMore)
+    }
+
+    @Test
+    fun `should render a table from a cursor in two passes`() {
+        // Arrange
+        val cursor = createCursor()
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.TABLE)
+
+        // Assert
+        val lines = result.text.split("\n").filter { it.isNotEmpty() }
+        assertEquals(3, lines.size)
+        assertTrue(lines[0].startsWith("id | name"))
+        assertTrue(lines[2].contains("A \"quoted\" name"))
+    }
+
+    @Test
+    fun `should report more rows when the row limit is reached`() {
+        // Arrange
+        val limited = QueryResultEncoder(maxRows = 1)
+        val cursor = createCursor(rowCount = 2)
+
+        // Act
+        val result = limited.encode(cursor, QueryOutputFormat.CSV)
+
+        // Assert
+        assertEquals(1, result.rowCount)
+        assertTrue(result.hasMore)
+    }
+
+    @Test
+    fun `should leave hidden trailing columns out of the output`() {
+        // Arrange
+        val cursor = createCursor()
+
+        // Act
+        val result = encoder.encode(cursor, QueryOutputFormat.CSV, hiddenTrailingColumns = 2)
+
+        // Assert
+        assertEquals("id,name\n1,\"A \"\"quoted\"\" name\"\n", result.text)
+        assertEquals(listOf("id", "name"), result.columnNames)
+    }
+
+    private fun createCursor(rowCount: Int = 1): MatrixCursor {
+        val cursor = MatrixCursor(arrayOf("id", "name", "score", "note"))
+        repeat(rowCount) { cursor.addRow(arrayOf<Any?>(1L, "A \"quoted\" name", 2.5, null)) }
+        return cursor
+    }
+}
@@ -0,0 +1,108 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.profiler
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SqlQueryProfilerTest {
+
+    private val thread = Thread.currentThread()
+
+    private fun ms(value: Long) = value * 1_000_000
+
+    @Test
+    fun `normalize should collapse literals and IN lists`() {
+        // Act
+        val normalized =
+            SqlQueryProfiler.normalize(
+                "SELECT * FROM users2\n  WHERE id IN (?, ?, ?) AND name = 'O''Brien' AND age > 42"
+            )
+
+        // Assert
+        assertEquals(
+            "SELECT * FROM users2 WHERE id IN (?, ...) AND name = ? AND age > ?",
+            normalized,
+        )
+    }
+
+    @Test
+    fun `statements differing only in literals should aggregate together`() {
+        // Arrange
+        val profiler = SqlQueryProfiler()
+
+        // Act
+        profiler.record("SELECT * FROM users WHERE id = 1", emptyList(), ms(2), thread)
+        profiler.record("SELECT * FROM users WHERE id = 2", emptyList(), ms(4), thread)
+        profiler.record("DELETE FROM logs", emptyList(), ms(1), thread)
+
+        // Assert
+        val top = profiler.topStatements()
+        assertEquals(2, top.size)
+        assertEquals("SELECT * FROM users WHERE id = ?", top[0].sql)
+        assertEquals(2L, top[0].count)
+        assertEquals(6.0, top[0].totalMs, 0.5)
+        assertEquals(thread.name, top[0].lastThread)
+    }
+
+    @Test
+    fun `top statements should follow the requested order`() {
+        // Arrange
+        val profiler = SqlQueryProfiler()
+        repeat(10) { profiler.record("SELECT * FROM frequent", emptyList(), ms(1), thread) }
+        profiler.record("SELECT * FROM slow", listOf(1L), ms(50), thread)
+
+        // Act
+        val byTotal = profiler.topStatements(order = SqlStatementOrder.TOTAL_TIME)
+        val byCount = profiler.topStatements(order = SqlStatementOrder.COUNT)
+        val onMain = profiler.topStatements(order = SqlStatementOrder.MAIN_THREAD)
+
+        // Assert
+        assertEquals("SELECT * FROM slow", byTotal[0].sql)
+        assertEquals("(Long)", byTotal[0].bindShape)
+        assertEquals(10L, byCount[0].count)
+        assertTrue(onMain.isEmpty())
+    }
+
+    @Test
+    fun `least recently run statements should be evicted past the bound`() {
+        // Arrange
+        val profiler = SqlQueryProfiler(maxStatements = 2)
+
+        // Act
+        profiler.record("SELECT a FROM t", emptyList(), ms(1), thread)
+        profiler.record("SELECT b FROM t", emptyList(), ms(1), thread)
+        profiler.record("SELECT a FROM t", emptyList(), ms(1), thread)
+        profiler.record("SELECT c FROM t", emptyList(), ms(1), thread)
+
+        // Assert
+        val sql = profiler.topStatements().map { it.sql }.toSet()
+        assertEquals(setOf("SELECT a FROM t", "SELECT c FROM t"), sql)
+    }
+
+    @Test
+    fun `slow log should keep the newest runs over the threshold`() {
+        // Arrange
+        val profiler = SqlQueryProfiler(slowLogSize = 2)
+        profiler.slowThresholdMs = 10
+
+        // Act
+        profiler.record("SELECT 1 FROM fast", emptyList(), ms(5), thread)
+        profiler.record("SELECT * FROM one", emptyList(), ms(20), thread)
+        profiler.record("SELECT * FROM two", emptyList(), ms(30), thread)
+        profiler.record("SELECT * FROM three", emptyList(), ms(40), thread)
+
+        // Assert
+        val slow = profiler.slowQueries()
+        assertEquals(listOf("SELECT * FROM three", "SELECT * FROM two"), slow.map { it.sql })
+        assertEquals(40.0, slow[0].durationMs, 0.001)
+    }
+
+    @Test
+    fun `bind shape should name the type of each argument`() {
+        // Act
+        val shape = SqlQueryProfiler.bindShape(listOf(1L, "name", null, byteArrayOf(1), 2.5))
+
+        // Assert
+        assertEquals("(Long, String, null, Blob, Double)", shape)
+    }
+}
@@ -0,0 +1,111 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.query
+
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseOperations
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseResult
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.IntelligentQueryValidator.ErrorType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.IntelligentQueryValidator.ScanType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache
+import io.mockk.coEvery
+import io.mockk.mockk
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class IntelligentQueryValidatorTest {
+
+    private val databasePath = "/data/data/app/databases/app.db"
+    private val schemaCache = mockk<DatabaseSchemaCache>()
+    private val databaseOperations = mockk<DatabaseOperations>()
+    private val validator = IntelligentQueryValidator(schemaCache, databaseOperations)
+
+    init {
+        coEvery { schemaCache.getOrLoadSchema(databasePath) } returns
+            DatabaseSchemaCache.CachedDatabaseSchema(
+                databaseUri = databasePath,
+                databaseType = DatabaseSchemaCache.DatabaseType.SQLITE_DIRECT,
+                tables = emptyMap(),
+                views = emptyMap(),
+                indexes = emptyMap(),
+                foreignKeys = emptyList(),
+                triggers = emptyMap(),
+                sourceCodeMappings = emptyMap(),
+                schemaVersion = 1,
+            )
+    }
+
+    @Test
+    fun `full scan should be costed from the plan and advise an index`() = runTest {
+        // Arrange
+        val query = "SELECT * FROM users WHERE a = ? AND b > ?"
+        val plan =
+            QueryPlanAnalyzer.estimate(
+                steps = listOf(QueryPlanStep(2, 0, "SCAN users")),
+                statistics = TableStatistics(tableRows = mapOf("users" to 400_000L)),
+                tableColumns = mapOf("users" to listOf("id", "a", "b", "c")),
+            )
+        coEvery { databaseOperations.explainQueryPlan(databasePath, query) } returns
+            DatabaseResult(success = true, data = plan)
+
+        // Act
+        val result = validator.validateQuery(databasePath, query)
+
+        // Assert
+        assertTrue(result.isValid)
+        assertEquals(ScanType.TABLE_SCAN, result.estimatedCost.scanType)
+        assertEquals(400_000L, result.estimatedCost.rowsExamined)
+        assertEquals(listOf("a", "b"), result.recommendedIndexes.single().columns)
+        assertTrue(
+            result.warnings.any {
+                it.message == "Full scan of 400k rows in users, add an index on (a, b)"
+            }
+        )
+    }
+
+    @Test
+    fun `join conditions should only index the table read in the inner loop`() = runTest {
+        // Arrange
+        val query = "SELECT * FROM users u JOIN orders o ON o.user_id = u.id WHERE u.active = 1"
+        val plan =
+            QueryPlanAnalyzer.estimate(
+                steps =
+                    listOf(
+                        QueryPlanStep(2, 0, "SCAN users AS u"),
+                        QueryPlanStep(3, 0, "SCAN orders AS o"),
+                    ),
+                statistics =
+                    TableStatistics(tableRows = mapOf("users" to 5_000L, "orders" to 9_000L)),
+                tableColumns = mapOf("orders" to listOf("id", "user_id")),
+            )
+        coEvery { databaseOperations.explainQueryPlan(databasePath, query) } returns
+            DatabaseResult(success = true, data = plan)
+
+        // Act
+        val result = validator.validateQuery(databasePath, query)
+
+        // Assert
+        val orders = result.recommendedIndexes.single { it.tableName == "orders" }
+        assertEquals(listOf("user_id"), orders.columns)
+        assertFalse(result.recommendedIndexes.any { it.tableName == "users" && "id" in it.columns })
+    }
+
+    @Test
+    fun `a query SQLite cannot prepare should be invalid`() = runTest {
+        // Arrange
+        val query = "SELECT * FROM missing"
+        coEvery { databaseOperations.explainQueryPlan(databasePath, query) } returns
+            DatabaseResult(
+                success = false,
+                error = "Query plan failed: no such table: missing (code 1 SQLITE_ERROR)",
+            )
+
+        // Act
+        val result = validator.validateQuery(databasePath, query)
+
+        // Assert
+        assertFalse(result.isValid)
+        assertEquals(ErrorType.TABLE_NOT_FOUND, result.errors.single().type)
+        assertEquals("no such table: missing", result.errors.single().message)
+    }
+}
@@ -0,0 +1,143 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.query
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class KeysetPaginationTest {
+
+    @Test
+    fun `should parse a single-table select with alias and where clause`() {
+        // Act
+        val select =
+            KeysetPagination.parseSimpleSelect("SELECT u.name FROM \"users\" u WHERE u.age > ?")
+
+        // Assert
+        assertNotNull(select)
+        assertEquals("u.name", select!!.projection)
+        assertEquals("users", select.table)
+        assertEquals("u", select.alias)
+        assertEquals("u.age > ?", select.where)
+    }
+
+    @Test
+    fun `should not rewrite queries with their own ordering, limits or joins`() {
+        listOf(
+                "SELECT * FROM users ORDER BY name",
+                "SELECT * FROM users LIMIT 10",
+                "SELECT * FROM users u JOIN orders o ON o.user_id = u.id",
+                "SELECT COUNT(*) FROM users",
+                "SELECT * FROM users WHERE id IN (SELECT user_id FROM orders)",
+                "SELECT DISTINCT name FROM users",
+                "SELECT name, row_number() OVER (ORDER BY name) FROM users",
+                "SELECT * FROM users; DELETE FROM users",
+            )
+            .forEach { query -> assertNull(query, KeysetPagination.parseSimpleSelect(query)) }
+    }
+
+    @Test
+    fun `should only split clauses on keywords outside strings and parentheses`() {
+        // Act
+        val select =
+            KeysetPagination.parseSimpleSelect(
+                "SELECT substr(name, 1, 3) FROM users WHERE note = 'FROM x ORDER BY y';"
+            )
+
+        // Assert
+        assertNotNull(select)
+        assertEquals("substr(name, 1, 3)", select!!.projection)
+        assertEquals("users", select.tableExpression)
+        assertEquals("note = 'FROM x ORDER BY y'", select.where)
+    }
+
+    @Test
+    fun `should seek past the last key when resuming from a token`() {
+        // Arrange
+        val select = KeysetPagination.parseSimpleSelect("SELECT * FROM users WHERE active = 1")!!
+        val token =
+            PageToken(
+                fingerprint = 7,
+                keyColumns = listOf("id"),
+                lastKey = listOf("42"),
+                keyTypes = listOf(PageToken.KeyType.INTEGER),
+            )
+
+        // Act
+        val plan = KeysetPagination.plan(select, listOf("id"), pageSize = 50, 7, token)
+
+        // Assert
+        assertEquals(
+            "SELECT *, \"id\" AS __mcp_key_0 FROM users WHERE (active = 1) AND (\"id\") > " +
+                "(CAST(? AS INTEGER)) ORDER BY \"id\" LIMIT 51",
+            plan.sql,
+        )
+        assertEquals(listOf("42"), plan.arguments)
+    }
+
+    @Test
+    fun `should bind each key with the type it was read as`() {
+        // Arrange
+        val select = KeysetPagination.parseSimpleSelect("SELECT * FROM readings")!!
+        val token =
+            PageToken(
+                fingerprint = 7,
+                keyColumns = listOf("label", "value", "rowid"),
+                lastKey = listOf("a", "0.30000000000000004", "9"),
+                keyTypes =
+                    listOf(
+                        PageToken.KeyType.TEXT,
+                        PageToken.KeyType.REAL,
+                        PageToken.KeyType.INTEGER,
+                    ),
+            )
+
+        // Act
+        val plan = KeysetPagination.plan(select, token.keyColumns, pageSize = 10, 7, token)
+
+        // Assert
+        assertTrue(
+            plan.sql,
+            plan.sql.contains(
+                "(\"label\", \"value\", rowid) > (?, CAST(? AS REAL), CAST(? AS INTEGER))"
+            ),
+        )
+        assertEquals(token.lastKey, plan.arguments)
+    }
+
+    @Test
+    fun `should prefer the integer primary key and fall back to rowid`() {
+        assertEquals(
+            listOf("id"),
+            KeysetPagination.selectKeyColumns(listOf("id"), integerPrimaryKey = true, false),
+        )
+        assertEquals(
+            listOf("rowid"),
+            KeysetPagination.selectKeyColumns(listOf("uuid"), integerPrimaryKey = false, false),
+        )
+        assertEquals(
+            listOf("a", "b"),
+            KeysetPagination.selectKeyColumns(listOf("a", "b"), false, withoutRowId = true),
+        )
+    }
+
+    @Test
+    fun `should round trip page tokens and reject garbage`() {
+        // Arrange
+        val token =
+            PageToken(
+                fingerprint = 1,
+                keyColumns = listOf("a", "b"),
+                lastKey = listOf("x", "2"),
+                keyTypes = listOf(PageToken.KeyType.TEXT, PageToken.KeyType.INTEGER),
+            )
+
+        // Act
+        val decoded = PageToken.decode(token.encode())
+
+        // Assert
+        assertEquals(token, decoded)
+        assertNull(PageToken.decode("not a token"))
+    }
+}
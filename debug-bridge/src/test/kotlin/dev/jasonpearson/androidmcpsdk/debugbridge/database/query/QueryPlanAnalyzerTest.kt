@@ -0,0 +1,147 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.query
+
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.query.IntelligentQueryValidator.ScanType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class QueryPlanAnalyzerTest {
+
+    private fun step(detail: String, id: Int = 2, parentId: Int = 0) =
+        QueryPlanStep(id, parentId, detail)
+
+    @Test
+    fun `should parse index searches with their constraints`() {
+        // Act
+        val range =
+            QueryPlanAnalyzer.parseAccess(
+                step("SEARCH users AS u USING INDEX idx_users_age (age>? AND age<?)")
+            )!!
+        val equality =
+            QueryPlanAnalyzer.parseAccess(
+                step("SEARCH orders USING COVERING INDEX idx_orders (user_id=? AND status=?)")
+            )!!
+
+        // Assert
+        assertEquals("users", range.table)
+        assertEquals("u", range.alias)
+        assertEquals("idx_users_age", range.index)
+        assertEquals(ScanType.RANGE_SCAN, range.scanType)
+        assertEquals(listOf("age"), range.rangeColumns)
+        assertEquals(ScanType.INDEX_SCAN, equality.scanType)
+        assertEquals(listOf("user_id", "status"), equality.equalityColumns)
+        assertTrue(equality.covering)
+    }
+
+    @Test
+    fun `should parse the older TABLE format, primary keys and automatic indexes`() {
+        // Act
+        val scan = QueryPlanAnalyzer.parseAccess(step("SCAN TABLE users"))!!
+        val rowid =
+            QueryPlanAnalyzer.parseAccess(
+                step("SEARCH TABLE users USING INTEGER PRIMARY KEY (rowid=?)")
+            )!!
+        val automatic =
+            QueryPlanAnalyzer.parseAccess(
+                step("SEARCH TABLE tags USING AUTOMATIC COVERING INDEX (name=?)")
+            )!!
+
+        // Assert
+        assertTrue(scan.fullScan)
+        assertTrue(rowid.primaryKey)
+        assertEquals(listOf("rowid"), rowid.equalityColumns)
+        assertTrue(automatic.automaticIndex)
+        assertNull(automatic.index)
+        assertEquals(listOf("name"), automatic.equalityColumns)
+    }
+
+    @Test
+    fun `steps that read no table should not parse as accesses`() {
+        listOf("SCAN CONSTANT ROW", "SCAN SUBQUERY 1", "USE TEMP B-TREE FOR ORDER BY").forEach {
+            assertNull(it, QueryPlanAnalyzer.parseAccess(step(it)))
+        }
+    }
+
+    @Test
+    fun `should read table rows and rows per key from sqlite_stat1`() {
+        // Act
+        val statistics =
+            QueryPlanAnalyzer.parseStat1(
+                listOf(
+                    Triple("users", "idx_users_age", "400000 40"),
+                    Triple("users", "idx_users_active", "1200 600"),
+                    Triple("tags", null, "50"),
+                    Triple("orders", "idx_orders", "90000 9 1 unordered"),
+                )
+            )
+
+        // Assert
+        assertEquals(400_000L, statistics.tableRows["users"])
+        assertEquals(50L, statistics.tableRows["tags"])
+        assertEquals(listOf(9L, 1L), statistics.rowsPerKey["idx_orders"])
+    }
+
+    @Test
+    fun `join loops should multiply rows by the outer loop`() {
+        // Arrange
+        val steps =
+            listOf(
+                step("SCAN users", id = 2),
+                step("SEARCH orders USING INDEX idx_orders_user (user_id=?)", id = 4),
+            )
+        val statistics =
+            TableStatistics(
+                tableRows = mapOf("users" to 1_000L, "orders" to 4_000L),
+                rowsPerKey = mapOf("idx_orders_user" to listOf(4L)),
+            )
+
+        // Act
+        val estimate = QueryPlanAnalyzer.estimate(steps, statistics)
+
+        // Assert
+        val orders = estimate.accesses[1]
+        assertEquals(1_000L, orders.loops)
+        assertEquals(4L, orders.rowsPerLoop)
+        assertEquals(5_000L, estimate.rowsExamined)
+        assertEquals(4_000L, estimate.rowsReturned)
+    }
+
+    @Test
+    fun `lookups without statistics should use SQLite's defaults`() {
+        // Arrange
+        val steps = listOf(step("SEARCH users USING INDEX idx_users_name (name=?)"))
+        val statistics = TableStatistics(tableRows = mapOf("users" to 50_000L))
+
+        // Act
+        val estimate = QueryPlanAnalyzer.estimate(steps, statistics)
+
+        // Assert
+        assertEquals(QueryPlanAnalyzer.DEFAULT_ROWS_PER_KEY, estimate.rowsExamined)
+    }
+
+    @Test
+    fun `should report temp b-trees and describe the plan as a tree`() {
+        // Arrange
+        val steps =
+            listOf(
+                step("SCAN users", id = 2),
+                step("CORRELATED SCALAR SUBQUERY 1", id = 5),
+                step("SEARCH orders USING INDEX idx_orders_user (user_id=?)", id = 9, parentId = 5),
+                step("USE TEMP B-TREE FOR ORDER BY", id = 20),
+            )
+
+        // Act
+        val estimate = QueryPlanAnalyzer.estimate(steps, TableStatistics())
+
+        // Assert
+        assertEquals(listOf("ORDER BY"), estimate.tempBTrees)
+        assertEquals(
+            "  SEARCH orders USING INDEX idx_orders_user (user_id=?)",
+            estimate.describe()[2],
+        )
+        assertFalse(estimate.accesses[1].access.fullScan)
+        assertEquals("400k", QueryPlanAnalyzer.formatRows(400_123))
+    }
+}
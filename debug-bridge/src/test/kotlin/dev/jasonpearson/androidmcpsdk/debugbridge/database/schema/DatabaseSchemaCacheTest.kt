@@ -0,0 +1,213 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
+
+import android.content.Context
+import android.database.MatrixCursor
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.DatabaseConnectionPool
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.SqliteDatabase
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.SqliteDatabaseFactory
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.CachedDatabaseSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ColumnSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.DatabaseType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.SqliteDataType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TableSchema
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.io.File
+import java.nio.ByteBuffer
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(RobolectricTestRunner::class)
+class DatabaseSchemaCacheTest {
+
+    @get:Rule val temporaryFolder = TemporaryFolder()
+
+    private lateinit var context: Context
+    private lateinit var databaseFactory: SqliteDatabaseFactory
+    private lateinit var diskCache: SchemaDiskCache
+    private lateinit var databaseFile: File
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        databaseFactory = mockk()
+        diskCache = SchemaDiskCache(temporaryFolder.newFolder("schemas"))
+        databaseFile = temporaryFolder.newFile("app.db")
+    }
+
+    @Test
+    fun `should serve a persisted schema without opening the database`() = runTest {
+        // Arrange
+        writeHeader(databaseFile, schemaVersion = 7)
+        diskCache.write(sampleSchema(databaseFile.path, schemaVersion = 7))
+        val cache = newCache()
+
+        // Act
+        val schema = cache.getOrLoadSchema(databaseFile.path)
+
+        // Assert
+        assertEquals(setOf("users"), schema?.tables?.keys)
+        assertEquals(1L, cache.getCacheStatistics().diskHits)
+        verify(exactly = 0) { databaseFactory.openDatabase(any(), any(), any()) }
+    }
+
+    @Test
+    fun `should invalidate the cached schema when the schema version changes`() = runTest {
+        // Arrange
+        every { databaseFactory.openDatabase(any(), any(), any()) } throws
+            IllegalStateException("database is locked")
+        writeHeader(databaseFile, schemaVersion = 7)
+        diskCache.write(sampleSchema(databaseFile.path, schemaVersion = 7))
+        val cache = newCache()
+        cache.getOrLoadSchema(databaseFile.path)
+
+        // Act
+        writeHeader(databaseFile, schemaVersion = 8)
+        val schema = cache.getOrLoadSchema(databaseFile.path)
+
+        // Assert
+        assertNull(schema)
+        assertEquals(1L, cache.getCacheStatistics().invalidations)
+        assertNull(diskCache.read(databaseFile.path, schemaVersion = 7))
+    }
+
+    @Test
+    fun `should preload every plain SQLite database in the database directory`() = runTest {
+        // Arrange
+        val directory = context.getDatabasePath("probe").parentFile!!.apply { mkdirs() }
+        val databases = listOf(File(directory, "app.db"), File(directory, "cache"))
+        databases.forEach { file ->
+            writeHeader(file, schemaVersion = 3)
+            diskCache.write(sampleSchema(file.absolutePath, schemaVersion = 3))
+        }
+        File(directory, "app.db-journal").writeBytes(ByteArray(512))
+        File(directory, "secure.db").writeBytes(ByteArray(4096) { 0x5A })
+        val cache = newCache()
+
+        // Act
+        val preloaded = cache.preloadAllDatabaseSchemas(parallelism = 2)
+
+        // Assert
+        assertEquals(2, preloaded)
+        assertEquals(2L, cache.getCacheStatistics().diskHits)
+        verify(exactly = 0) { databaseFactory.openDatabase(any(), any(), any()) }
+    }
+
+    @Test
+    fun `should close the connections it opened once the preload finishes`() = runTest {
+        // Arrange
+        val database = mockk<SqliteDatabase>(relaxed = true)
+        every { database.isOpen() } returns true
+        every { database.inTransaction() } returns false
+        every { database.rawQuery(any(), any()) } answers { MatrixCursor(arrayOf("value")) }
+        every { databaseFactory.openDatabase(any(), any(), any()) } returns database
+        val directory = context.getDatabasePath("probe").parentFile!!.apply { mkdirs() }
+        writeHeader(File(directory, "app.db"), schemaVersion = 3)
+        val pool = DatabaseConnectionPool(databaseFactory, scope = backgroundScope)
+        val cache = newCache(pool)
+
+        // Act
+        val preloaded = cache.preloadAllDatabaseSchemas()
+
+        // Assert
+        assertEquals(1, preloaded)
+        assertEquals(0, pool.idleConnectionCount())
+        verify { database.close() }
+    }
+
+    @Test
+    fun `should not cache schemas for content providers`() = runTest {
+        // Arrange
+        val cache = newCache()
+
+        // Act
+        val schema = cache.getOrLoadSchema("content://com.example.provider/users")
+
+        // Assert
+        assertNull(schema)
+        assertEquals(0L, cache.getCacheStatistics().misses)
+        verify(exactly = 0) { databaseFactory.openDatabase(any(), any(), any()) }
+    }
+
+    @Test
+    fun `should not trust the header while a WAL is pending`() {
+        // Arrange
+        writeHeader(databaseFile, schemaVersion = 7)
+        File(databaseFile.path + "-wal").writeBytes(ByteArray(32))
+
+        // Act
+        val version = DatabaseSchemaCache.readHeaderSchemaVersion(databaseFile)
+
+        // Assert
+        assertNull(version)
+    }
+
+    @Test
+    fun `should weigh schemas by their size`() {
+        // Arrange
+        val small = sampleSchema("/data/app.db", schemaVersion = 1)
+        val tables = (1..50).associate { "table_$it" to small.tables.getValue("users") }
+        val large = small.copy(tables = tables)
+
+        // Act
+        val smallSize = DatabaseSchemaCache.estimateSizeBytes(small)
+        val largeSize = DatabaseSchemaCache.estimateSizeBytes(large)
+
+        // Assert
+        assertTrue(largeSize > smallSize * 10)
+    }
+
+    private fun newCache(
+        connectionPool: DatabaseConnectionPool = DatabaseConnectionPool(databaseFactory)
+    ) =
+        DatabaseSchemaCache(
+            context = context,
+            connectionPool = connectionPool,
+            diskCache = diskCache,
+        )
+
+    private fun writeHeader(file: File, schemaVersion: Int) {
+        val header = ByteBuffer.allocate(100)
+        header.put("SQLite format 3\u0000".toByteArray(Charsets.ISO_8859_1))
+        header.putInt(40, schemaVersion)
+        file.writeBytes(header.array())
+    }
+
+    private fun sampleSchema(databaseUri: String, schemaVersion: Int) =
+        CachedDatabaseSchema(
+            databaseUri = databaseUri,
+            databaseType = DatabaseType.SQLITE_DIRECT,
+            tables =
+                mapOf(
+                    "users" to
+                        TableSchema(
+                            name = "users",
+                            columns =
+                                listOf(
+                                    ColumnSchema("id", "INTEGER", SqliteDataType.INTEGER, false),
+                                    ColumnSchema("email", "TEXT", SqliteDataType.TEXT, true),
+                                ),
+                            primaryKey = listOf("id"),
+                            indexes = emptyList(),
+                            foreignKeys = emptyList(),
+                            checkConstraints = emptyList(),
+                        )
+                ),
+            views = emptyMap(),
+            indexes = emptyMap(),
+            foreignKeys = emptyList(),
+            triggers = emptyMap(),
+            sourceCodeMappings = emptyMap(),
+            schemaVersion = schemaVersion,
+        )
+}
@@ -0,0 +1,179 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
+
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.CachedDatabaseSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ColumnSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.DatabaseType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ForeignKeyConstraint
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.IndexSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.SqliteDataType
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TableSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.TriggerSchema
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.ViewSchema
+import java.io.File
+import java.io.RandomAccessFile
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class SchemaDiskCacheTest {
+
+    @get:Rule val temporaryFolder = TemporaryFolder()
+
+    @Test
+    fun `should read back the schema it wrote for the same version`() {
+        // Arrange
+        val cache = SchemaDiskCache(temporaryFolder.newFolder("schemas"))
+        val schema = sampleSchema("/data/app.db", schemaVersion = 7)
+
+        // Act
+        cache.write(schema)
+        val restored = cache.read("/data/app.db", schemaVersion = 7)
+
+        // Assert
+        assertEquals(schema, restored)
+    }
+
+    @Test
+    fun `should drop the entry once the schema version moves on`() {
+        // Arrange
+        val directory = temporaryFolder.newFolder("schemas")
+        val cache = SchemaDiskCache(directory)
+        cache.write(sampleSchema("/data/app.db", schemaVersion = 7))
+
+        // Act
+        val restored = cache.read("/data/app.db", schemaVersion = 8)
+
+        // Assert
+        assertNull(restored)
+        assertEquals(0, directory.listFiles()!!.size)
+    }
+
+    @Test
+    fun `should ignore a corrupt file`() {
+        // Arrange
+        val directory = temporaryFolder.newFolder("schemas")
+        val cache = SchemaDiskCache(directory)
+        cache.write(sampleSchema("/data/app.db", schemaVersion = 7))
+        val file = directory.listFiles()!!.single()
+        file.writeBytes(file.readBytes().copyOf(file.length().toInt() / 2))
+
+        // Act
+        val restored = cache.read("/data/app.db", schemaVersion = 7)
+
+        // Assert
+        assertNull(restored)
+        assertEquals(0, directory.listFiles()!!.size)
+    }
+
+    @Test
+    fun `should delete a file with an unknown database type`() {
+        // Arrange
+        val directory = temporaryFolder.newFolder("schemas")
+        val cache = SchemaDiskCache(directory)
+        cache.write(sampleSchema("/data/app.db", schemaVersion = 7))
+        overwriteInt(directory.listFiles()!!.single(), schemaOffset("/data/app.db"), 99)
+
+        // Act
+        val restored = cache.read("/data/app.db", schemaVersion = 7)
+
+        // Assert
+        assertNull(restored)
+        assertEquals(0, directory.listFiles()!!.size)
+    }
+
+    @Test
+    fun `should delete a file with a table count larger than the file`() {
+        // Arrange
+        val directory = temporaryFolder.newFolder("schemas")
+        val cache = SchemaDiskCache(directory)
+        cache.write(sampleSchema("/data/app.db", schemaVersion = 7))
+        // The table count follows the database type and the last-updated timestamp
+        val tableCount = schemaOffset("/data/app.db") + 4 + 8
+        overwriteInt(directory.listFiles()!!.single(), tableCount, Int.MAX_VALUE)
+
+        // Act
+        val restored = cache.read("/data/app.db", schemaVersion = 7)
+
+        // Assert
+        assertNull(restored)
+        assertEquals(0, directory.listFiles()!!.size)
+    }
+
+    // Magic, format version, length-prefixed URI and schema version precede the schema itself
+    private fun schemaOffset(databaseUri: String): Long =
+        4L + 4 + 4 + databaseUri.toByteArray().size + 4
+
+    private fun overwriteInt(file: File, offset: Long, value: Int) {
+        RandomAccessFile(file, "rw").use {
+            it.seek(offset)
+            it.writeInt(value)
+        }
+    }
+
+    private fun sampleSchema(databaseUri: String, schemaVersion: Int): CachedDatabaseSchema {
+        val foreignKey =
+            ForeignKeyConstraint("orders", "user_id", "users", "id", onDelete = "CASCADE")
+        val users =
+            TableSchema(
+                name = "users",
+                columns =
+                    listOf(
+                        ColumnSchema("id", "INTEGER", SqliteDataType.INTEGER, false),
+                        ColumnSchema(
+                            "email",
+                            "TEXT",
+                            SqliteDataType.TEXT,
+                            true,
+                            defaultValue = "''",
+                            collation = "NOCASE",
+                        ),
+                    ),
+                primaryKey = listOf("id"),
+                indexes = listOf("idx_users_email"),
+                foreignKeys = emptyList(),
+                checkConstraints = emptyList(),
+                estimatedRowCount = 1_200,
+            )
+        val orders =
+            TableSchema(
+                name = "orders",
+                columns = listOf(ColumnSchema("user_id", "INTEGER", SqliteDataType.INTEGER, true)),
+                primaryKey = emptyList(),
+                indexes = emptyList(),
+                foreignKeys = listOf(foreignKey),
+                checkConstraints = emptyList(),
+            )
+        return CachedDatabaseSchema(
+            databaseUri = databaseUri,
+            databaseType = DatabaseType.SQLITE_DIRECT,
+            tables = mapOf("users" to users, "orders" to orders),
+            views =
+                mapOf(
+                    "active" to ViewSchema("active", "CREATE VIEW active", listOf("users"))
+                ),
+            indexes =
+                mapOf(
+                    "idx_users_email" to
+                        IndexSchema(
+                            "idx_users_email",
+                            "users",
+                            listOf("email"),
+                            isUnique = true,
+                            whereClause = "email IS NOT NULL",
+                            cardinality = 1_200,
+                        )
+                ),
+            foreignKeys = listOf(foreignKey),
+            triggers =
+                mapOf(
+                    "audit" to
+                        TriggerSchema("audit", "users", "UPDATE", "AFTER", "CREATE TRIGGER audit")
+                ),
+            sourceCodeMappings = emptyMap(),
+            lastUpdated = 1_000L,
+            schemaVersion = schemaVersion,
+        )
+    }
+}
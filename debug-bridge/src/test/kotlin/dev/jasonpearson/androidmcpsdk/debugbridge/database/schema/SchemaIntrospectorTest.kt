@@ -0,0 +1,70 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.schema
+
+import android.database.MatrixCursor
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.SqliteDatabase
+import dev.jasonpearson.androidmcpsdk.debugbridge.database.schema.DatabaseSchemaCache.SqliteDataType
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class SchemaIntrospectorTest {
+
+    @Test
+    fun `should read the columns of every table in one query`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("table", "name", "type", "notnull", "dflt_value", "pk"))
+        cursor.addRow(arrayOf<Any?>("orders", "id", "INTEGER", 1, null, 1))
+        cursor.addRow(arrayOf<Any?>("orders", "user_id", "INTEGER", 0, null, 2))
+        cursor.addRow(arrayOf<Any?>("users", "email", "TEXT", 1, "''", 0))
+        val database = mockk<SqliteDatabase>()
+        every { database.rawQuery(any(), any()) } returns cursor
+
+        // Act
+        val columns = SchemaIntrospector.readColumns(database)
+
+        // Assert
+        assertEquals(listOf("orders", "users"), columns.keys.toList())
+        assertEquals(listOf("id", "user_id"), columns.getValue("orders").map { it.name })
+        assertEquals(2, columns.getValue("orders")[1].primaryKeyPosition)
+        assertEquals("''", columns.getValue("users").single().defaultValue)
+        verify(exactly = 1) { database.rawQuery(match { "pragma_table_info" in it }, any()) }
+    }
+
+    @Test
+    fun `should group index rows and skip expression columns`() {
+        // Arrange
+        val cursor = MatrixCursor(arrayOf("table", "index", "unique", "column"))
+        cursor.addRow(arrayOf<Any?>("orders", "idx_expr", 0, null))
+        cursor.addRow(arrayOf<Any?>("orders", "idx_expr", 0, "user_id"))
+        cursor.addRow(arrayOf<Any?>("users", "idx_email", 1, "email"))
+        val database = mockk<SqliteDatabase>()
+        every { database.rawQuery(any(), any()) } returns cursor
+
+        // Act
+        val indexes = SchemaIntrospector.readIndexes(database)
+
+        // Assert
+        assertEquals(
+            listOf(SchemaIntrospector.IndexRow("idx_expr", false, listOf("user_id"))),
+            indexes.getValue("orders"),
+        )
+        assertEquals(
+            listOf(SchemaIntrospector.IndexRow("idx_email", true, listOf("email"))),
+            indexes.getValue("users"),
+        )
+    }
+
+    @Test
+    fun `should map declared types to SQLite affinities`() {
+        assertEquals(SqliteDataType.INTEGER, SchemaIntrospector.affinity("BIGINT"))
+        assertEquals(SqliteDataType.TEXT, SchemaIntrospector.affinity("VARCHAR(20)"))
+        assertEquals(SqliteDataType.BLOB, SchemaIntrospector.affinity(""))
+        assertEquals(SqliteDataType.REAL, SchemaIntrospector.affinity("DOUBLE"))
+        assertEquals(SqliteDataType.NUMERIC, SchemaIntrospector.affinity("DECIMAL"))
+    }
+}
@@ -0,0 +1,152 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SqlParserTest {
+
+    private fun failure(sql: String) =
+        runCatching { SqlParser.parse(sql) }.exceptionOrNull() as SqlParseException
+
+    @Test
+    fun `should read tables, joins and predicates of a select`() {
+        // Act
+        val statement =
+            SqlParser.parse(
+                "SELECT u.name, COUNT(*) AS n FROM users u LEFT JOIN orders AS o " +
+                    "ON o.user_id = u.id WHERE u.age >= ? AND u.status IN ('a', 'b') " +
+                    "GROUP BY u.name ORDER BY n DESC LIMIT 10"
+            )
+
+        // Assert
+        assertEquals(SqlStatementKind.SELECT, statement.kind)
+        assertEquals(listOf("u", "o"), statement.tables.map { it.alias })
+        assertEquals("LEFT JOIN", statement.joins.single().operator)
+        assertEquals(
+            listOf(
+                SqlPredicate(SqlExpr.Column("u", "age"), ">="),
+                SqlPredicate(SqlExpr.Column("u", "status"), "IN"),
+                SqlPredicate(SqlExpr.Column("o", "user_id"), "=", SqlExpr.Column("u", "id")),
+                SqlPredicate(SqlExpr.Column("u", "id"), "=", SqlExpr.Column("o", "user_id")),
+            ),
+            statement.predicates,
+        )
+        assertEquals(listOf(SqlExpr.Column("u", "name")), statement.groupBy)
+        assertEquals(listOf(SqlExpr.Column(null, "n")), statement.orderBy)
+        assertTrue(statement.hasLimit)
+    }
+
+    @Test
+    fun `predicates under OR or NOT should not be conjunctive and flip to put the column first`() {
+        // Act
+        val predicates =
+            SqlParser.parse("SELECT * FROM t WHERE (5 < a OR b BETWEEN 1 AND 2) AND NOT c = 1")
+                .predicates
+
+        // Assert
+        assertEquals(
+            listOf(
+                SqlPredicate(SqlExpr.Column(null, "a"), ">", conjunctive = false),
+                SqlPredicate(SqlExpr.Column(null, "b"), "BETWEEN", conjunctive = false),
+                SqlPredicate(SqlExpr.Column(null, "c"), "=", conjunctive = false),
+            ),
+            predicates,
+        )
+    }
+
+    @Test
+    fun `CTE names should not count as tables and subqueries should be found at any depth`() {
+        // Act
+        val statement =
+            SqlParser.parse(
+                "WITH recent AS (SELECT * FROM orders WHERE created > ?) " +
+                    "SELECT * FROM recent r WHERE r.user_id IN (SELECT id FROM users WHERE active)"
+            )
+        val nested = SqlParser.parse("SELECT * FROM (SELECT * FROM t LIMIT 5)")
+
+        // Assert
+        assertEquals(listOf("orders", "users"), statement.tables.map { it.name })
+        assertEquals(2, statement.subqueryCount)
+        assertTrue(statement.selectsAll)
+        assertFalse(nested.hasLimit)
+    }
+
+    @Test
+    fun `should count statements and find the target of writes`() {
+        // Act
+        val chained = SqlParser.parse("SELECT 1; DROP TABLE users")
+        val delete = SqlParser.parse("WITH x AS (SELECT 1) DELETE FROM t")
+        val insert = SqlParser.parse("INSERT OR REPLACE INTO main.t VALUES (1)")
+        val trigger =
+            SqlParser.parse(
+                "CREATE TRIGGER tr AFTER INSERT ON t BEGIN " +
+                    "UPDATE x SET a = CASE WHEN 1 THEN 2 END; DELETE FROM y; END; SELECT 2;"
+            )
+
+        // Assert
+        assertEquals(SqlStatementKind.SELECT, chained.kind)
+        assertEquals(2, chained.statementCount)
+        assertEquals(SqlStatementKind.DELETE, delete.kind)
+        assertEquals("t", delete.target)
+        assertEquals(SqlStatementKind.INSERT, insert.kind)
+        assertEquals("t", insert.target)
+        assertEquals(SqlStatementKind.CREATE, trigger.kind)
+        assertEquals(2, trigger.statementCount)
+        assertEquals(1, SqlParser.parse("SELECT 1;").statementCount)
+    }
+
+    @Test
+    fun `names containing or quoting keywords should read as columns`() {
+        // Act
+        val statement =
+            SqlParser.parse(
+                "SELECT updated_at, \"order\", [group] FROM t WHERE deleted_at IS NULL"
+            )
+
+        // Assert
+        assertEquals(
+            listOf("updated_at", "order", "group"),
+            statement.resultColumns.map { it.name },
+        )
+        assertEquals(
+            SqlPredicate(SqlExpr.Column(null, "deleted_at"), "IS"),
+            statement.predicates.single(),
+        )
+    }
+
+    @Test
+    fun `should parse window functions, CASE, CAST and both LIMIT forms`() {
+        // Act
+        val statement =
+            SqlParser.parse(
+                "SELECT row_number() OVER (PARTITION BY a ORDER BY b) AS rn, " +
+                    "CASE WHEN x > 0 THEN 'p' ELSE 'n' END kind, CAST(y AS INTEGER) " +
+                    "FROM t LIMIT 10, 20"
+            )
+
+        // Assert
+        val select = statement.select!!
+        assertEquals(listOf("x", "y"), statement.resultColumns.map { it.name })
+        assertEquals(
+            listOf("rn", "kind", null),
+            select.cores.single().resultColumns.map { (it as SqlResultColumn.Expression).alias },
+        )
+        assertEquals(SqlExpr.Literal("20"), select.limit)
+        assertEquals(SqlExpr.Literal("10"), select.offset)
+    }
+
+    @Test
+    fun `invalid SQL should fail with the position of the problem`() {
+        // Act
+        val misplaced = failure("SELECT FROM t")
+        val truncated = failure("SELECT * FROM t WHERE")
+
+        // Assert
+        assertEquals(7, misplaced.position)
+        assertEquals(21, truncated.position)
+        assertNull(runCatching { SqlParser.parse("SELECT (1") }.getOrNull())
+    }
+}
@@ -0,0 +1,60 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class SqlStatementCacheTest {
+
+    @Test
+    fun `repeated text should be parsed once`() {
+        // Arrange
+        val cache = SqlStatementCache()
+
+        // Act
+        val first = cache.parse("SELECT * FROM users")
+        val second = cache.parse("SELECT * FROM users")
+
+        // Assert
+        assertSame(first, second)
+        assertEquals(1L, cache.misses)
+        assertEquals(1L, cache.hits)
+    }
+
+    @Test
+    fun `parse failures should be cached too`() {
+        // Arrange
+        val cache = SqlStatementCache()
+
+        // Act
+        val first = cache.parseOrNull("SELECT FROM")
+        val second = cache.parseOrNull("SELECT FROM")
+
+        // Assert
+        assertNull(first)
+        assertNull(second)
+        assertEquals(1L, cache.hits)
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun `should evict the least recently used entry and skip oversized text`() {
+        // Arrange
+        val cache = SqlStatementCache(maxEntries = 2, maxSqlLength = 40)
+
+        // Act
+        cache.parse("SELECT 1")
+        cache.parse("SELECT 2")
+        cache.parse("SELECT 1")
+        cache.parse("SELECT 3")
+        cache.parse("SELECT * FROM t WHERE " + "a = 1 AND ".repeat(5) + "b = 2")
+        cache.parse("SELECT 1")
+
+        // Assert
+        assertEquals(2, cache.size)
+        // SELECT 2 was evicted, SELECT 1 survived
+        assertEquals(2L, cache.hits)
+        assertEquals(4L, cache.misses)
+    }
+}
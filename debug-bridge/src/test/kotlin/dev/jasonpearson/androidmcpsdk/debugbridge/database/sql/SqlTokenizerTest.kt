@@ -0,0 +1,77 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.database.sql
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class SqlTokenizerTest {
+
+    private fun types(sql: String) = SqlTokenizer.tokenize(sql).map { it.type }
+
+    private fun failure(sql: String) =
+        runCatching { SqlTokenizer.tokenize(sql) }.exceptionOrNull() as SqlParseException
+
+    @Test
+    fun `should skip comments and keep escaped quotes inside strings`() {
+        // Act
+        val tokens =
+            SqlTokenizer.tokenize("SELECT 'it''s' -- trailing\n/* block */ FROM \"my \"\"t\"\"\"")
+
+        // Assert
+        assertEquals(
+            listOf("SELECT", "'it''s'", "FROM", "\"my \"\"t\"\"\""),
+            tokens.map { it.text },
+        )
+        assertEquals("it's", tokens[1].identifier)
+        assertEquals("my \"t\"", tokens[3].identifier)
+    }
+
+    @Test
+    fun `should read every identifier quoting style, blobs, numbers and parameters`() {
+        // Act
+        val tokens = SqlTokenizer.tokenize("[a b] `c` X'0F' 0x1F 1.5e-3 .5 ? ?2 :id @id \$id")
+
+        // Assert
+        assertEquals(
+            listOf(
+                SqlTokenType.QUOTED_IDENTIFIER,
+                SqlTokenType.QUOTED_IDENTIFIER,
+                SqlTokenType.BLOB,
+                SqlTokenType.NUMBER,
+                SqlTokenType.NUMBER,
+                SqlTokenType.NUMBER,
+                SqlTokenType.PARAMETER,
+                SqlTokenType.PARAMETER,
+                SqlTokenType.PARAMETER,
+                SqlTokenType.PARAMETER,
+                SqlTokenType.PARAMETER,
+            ),
+            tokens.map { it.type },
+        )
+        assertEquals("a b", tokens[0].identifier)
+        assertEquals("1.5e-3", tokens[4].text)
+    }
+
+    @Test
+    fun `should prefer the longest operator`() {
+        // Act
+        val tokens = SqlTokenizer.tokenize("a->>'x' || b <> c <= d")
+
+        // Assert
+        assertEquals(
+            listOf("->>", "||", "<>", "<="),
+            tokens.filter { it.type == SqlTokenType.OPERATOR }.map { it.text },
+        )
+        assertEquals(SqlTokenType.WORD, types("updated_at").single())
+    }
+
+    @Test
+    fun `should reject unterminated strings and unknown characters with their position`() {
+        // Act
+        val unterminated = failure("SELECT 'oops")
+        val unknown = failure("SELECT #")
+
+        // Assert
+        assertEquals(7, unterminated.position)
+        assertEquals(7, unknown.position)
+    }
+}
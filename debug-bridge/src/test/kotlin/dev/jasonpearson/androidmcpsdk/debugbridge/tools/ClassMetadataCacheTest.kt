@@ -0,0 +1,40 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class ClassMetadataCacheTest {
+
+    @Test
+    fun `should compute metadata once per class`() {
+        // Arrange
+        var computations = 0
+        val cache = ClassMetadataCache { clazz ->
+            computations++
+            clazz.declaredMethods.size
+        }
+
+        // Act
+        val first = cache[String::class.java]
+        val second = cache[String::class.java]
+        cache[Int::class.java]
+
+        // Assert
+        assertEquals(first, second)
+        assertEquals(2, computations)
+        assertEquals(2, cache.size)
+    }
+
+    @Test
+    fun `should return the cached instance until cleared`() {
+        // Arrange
+        val cache = ClassMetadataCache { clazz -> StringBuilder(clazz.name) }
+        val cached = cache[String::class.java]
+
+        // Act & Assert
+        assertSame(cached, cache[String::class.java])
+        cache.clear()
+        assertEquals(0, cache.size)
+    }
+}
@@ -16,7 +16,7 @@ class DatabaseToolProviderTest {
     @Before
     fun setUp() {
         mockContext = mockk()
-        databaseToolProvider = DatabaseToolProvider(mockContext)
+        databaseToolProvider = DatabaseToolProvider(mockContext, DatabaseConnectionPool())
     }
 
     @After
@@ -182,115 +182,6 @@ class DatabaseToolProviderTest {
         assertEquals("   ", result["space_field"])
     }
 
-    @Test
-    fun `formatAsJson should handle empty result set`() {
-        // Arrange
-        val queryResult =
-            QueryResult(
-                rows = emptyList(),
-                columnNames = listOf("id", "name"),
-                rowCount = 0,
-                executionTimeMs = 5L,
-            )
-
-        // Act
-        val result = databaseToolProvider.formatAsJson(queryResult)
-
-        // Assert
-        assertEquals("[]", result)
-    }
-
-    @Test
-    fun `formatAsCsv should include headers and data`() {
-        // Arrange
-        val queryResult =
-            QueryResult(
-                rows =
-                    listOf(
-                        mapOf("id" to 1, "name" to "John", "email" to "john@example.com"),
-                        mapOf("id" to 2, "name" to "Jane", "email" to "jane@example.com"),
-                    ),
-                columnNames = listOf("id", "name", "email"),
-                rowCount = 2,
-                executionTimeMs = 10L,
-            )
-
-        // Act
-        val result = databaseToolProvider.formatAsCsv(queryResult)
-
-        // Assert
-        val lines = result.split("\n").filter { it.isNotEmpty() }
-        assertEquals(3, lines.size) // header + 2 data rows
-        assertEquals("id,name,email", lines[0])
-        assertTrue(lines[1].contains("John"))
-        assertTrue(lines[2].contains("Jane"))
-    }
-
-    @Test
-    fun `formatAsCsv should handle commas and quotes in data`() {
-        // Arrange
-        val queryResult =
-            QueryResult(
-                rows =
-                    listOf(mapOf("id" to 1, "name" to "John, Jr.", "notes" to "He said \"Hello\"")),
-                columnNames = listOf("id", "name", "notes"),
-                rowCount = 1,
-                executionTimeMs = 5L,
-            )
-
-        // Act
-        val result = databaseToolProvider.formatAsCsv(queryResult)
-
-        // Assert
-        val lines = result.split("\n").filter { it.isNotEmpty() }
-        assertEquals(2, lines.size)
-        assertTrue(lines[1].contains("\"John, Jr.\""))
-        assertTrue(lines[1].contains("\"He said \"\"Hello\"\"\""))
-    }
-
-    @Test
-    fun `formatAsTable should create proper table layout`() {
-        // Arrange
-        val queryResult =
-            QueryResult(
-                rows =
-                    listOf(mapOf("id" to 1, "name" to "John"), mapOf("id" to 2, "name" to "Jane")),
-                columnNames = listOf("id", "name"),
-                rowCount = 2,
-                executionTimeMs = 8L,
-            )
-
-        // Act
-        val result = databaseToolProvider.formatAsTable(queryResult)
-
-        // Assert
-        val lines = result.split("\n").filter { it.isNotEmpty() }
-        assertEquals(4, lines.size) // header + separator + 2 data rows
-        assertTrue(lines[0].contains("id"))
-        assertTrue(lines[0].contains("name"))
-        assertTrue(lines[1].contains("-"))
-        assertTrue(lines[2].contains("John"))
-        assertTrue(lines[3].contains("Jane"))
-    }
-
-    @Test
-    fun `formatAsTable should handle empty result`() {
-        // Arrange
-        val queryResult =
-            QueryResult(
-                rows = emptyList(),
-                columnNames = listOf("id", "name"),
-                rowCount = 0,
-                executionTimeMs = 1L,
-            )
-
-        // Act
-        val result = databaseToolProvider.formatAsTable(queryResult)
-
-        // Assert
-        assertEquals("No data returned", result)
-    }
-
     @Test
     fun `EmptyInput should be serializable`() {
         // Act
@@ -319,22 +210,4 @@ class DatabaseToolProviderTest {
         @Suppress("UNCHECKED_CAST")
         return method.invoke(this, data) as Map<String, Any?>
     }
-
-    private fun DatabaseToolProvider.formatAsJson(queryResult: QueryResult): String {
-        val method = this::class.java.getDeclaredMethod("formatAsJson", QueryResult::class.java)
-        method.isAccessible = true
-        return method.invoke(this, queryResult) as String
-    }
-
-    private fun DatabaseToolProvider.formatAsCsv(queryResult: QueryResult): String {
-        val method = this::class.java.getDeclaredMethod("formatAsCsv", QueryResult::class.java)
-        method.isAccessible = true
-        return method.invoke(this, queryResult) as String
-    }
-
-    private fun DatabaseToolProvider.formatAsTable(queryResult: QueryResult): String {
-        val method = this::class.java.getDeclaredMethod("formatAsTable", QueryResult::class.java)
-        method.isAccessible = true
-        return method.invoke(this, queryResult) as String
-    }
 }
@@ -0,0 +1,58 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class NetworkCaptureBufferTest {
+
+    @Test
+    fun `should evict oldest entry once capacity is reached`() {
+        val buffer = NetworkCaptureBuffer(capacity = 3)
+
+        (1L..4L).forEach { buffer.put(it, createRequest(it)) }
+
+        assertNull(buffer.get(1))
+        assertNotNull(buffer.get(4))
+        assertEquals(3, buffer.size())
+    }
+
+    @Test
+    fun `should iterate newest first`() {
+        val buffer = NetworkCaptureBuffer(capacity = 5)
+
+        (1L..7L).forEach { buffer.put(it, createRequest(it)) }
+
+        val ids = buffer.newestFirst().map { it.id }.toList()
+        assertEquals(listOf("req_7", "req_6", "req_5", "req_4", "req_3"), ids)
+    }
+
+    @Test
+    fun `should not overwrite a newer entry with a late completing older request`() {
+        val buffer = NetworkCaptureBuffer(capacity = 2)
+
+        buffer.put(3, createRequest(3))
+        buffer.put(1, createRequest(1))
+
+        assertNull(buffer.get(1))
+        assertEquals("req_3", buffer.get(3)?.id)
+    }
+
+    @Test
+    fun `should return nothing when empty`() {
+        val buffer = NetworkCaptureBuffer(capacity = 4)
+
+        assertEquals(0, buffer.newestFirst().count())
+        assertNull(buffer.get(0))
+    }
+
+    private fun createRequest(sequence: Long) =
+        NetworkInspector.NetworkRequest(
+            id = "req_$sequence",
+            url = "https://example.com/$sequence",
+            method = "GET",
+            headers = emptyMap(),
+            startTime = sequence,
+        )
+}
@@ -0,0 +1,35 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(RobolectricTestRunner::class)
+class NetworkInspectorTest {
+
+    private val inspector = NetworkInspector(RuntimeEnvironment.getApplication())
+
+    @Test
+    fun `should clamp an oversized capture capacity`() = runTest {
+        // Act
+        val result =
+            inspector.startMonitoring(NetworkInspector.MonitoringConfig(maxRequests = 2_000_000_000))
+
+        // Assert
+        assertTrue(result.isSuccess)
+        assertEquals(NetworkInspector.MAX_STORED_REQUESTS, inspector.captureCapacity)
+    }
+
+    @Test
+    fun `should keep at least one request`() = runTest {
+        // Act
+        inspector.startMonitoring(NetworkInspector.MonitoringConfig(maxRequests = 0))
+
+        // Assert
+        assertEquals(1, inspector.captureCapacity)
+    }
+}
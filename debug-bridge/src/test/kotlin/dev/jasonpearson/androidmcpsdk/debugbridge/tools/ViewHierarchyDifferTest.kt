@@ -0,0 +1,95 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import android.content.Context
+import android.view.View
+import android.widget.FrameLayout
+import android.widget.TextView
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(AndroidJUnit4::class)
+class ViewHierarchyDifferTest {
+
+    private lateinit var context: Context
+    private lateinit var differ: ViewHierarchyDiffer
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        differ =
+            ViewHierarchyDiffer(
+                includeInvisible = false,
+                maxDepth = null,
+                textOf = { view -> (view as? TextView)?.text },
+                idNameOf = { view -> view.id.takeIf { it != View.NO_ID }?.toString() },
+            )
+    }
+
+    @Test
+    fun `first diff should add every view parents first`() {
+        // Arrange
+        val root = FrameLayout(context).apply { addView(TextView(context).apply { text = "a" }) }
+
+        // Act
+        val batch = differ.diff(root)!!
+
+        // Assert
+        assertTrue(batch.fullSnapshot)
+        assertEquals(listOf(ViewPatchType.ADD, ViewPatchType.ADD), batch.patches.map { it.type })
+        assertEquals(0, batch.patches[0].node!!.depth)
+        assertEquals(batch.patches[0].key, batch.patches[1].node!!.parentKey)
+    }
+
+    @Test
+    fun `unchanged tree should produce no patches`() {
+        // Arrange
+        val root = FrameLayout(context).apply { addView(TextView(context)) }
+        differ.diff(root)
+
+        // Act & Assert
+        assertNull(differ.diff(root))
+    }
+
+    @Test
+    fun `text change should update only the changed view`() {
+        // Arrange
+        val label = TextView(context).apply { text = "before" }
+        val root = FrameLayout(context).apply { addView(label) }
+        val initial = differ.diff(root)!!
+
+        // Act
+        label.text = "after"
+        val batch = differ.diff(root)!!
+
+        // Assert
+        assertEquals(1, batch.patches.size)
+        assertEquals(ViewPatchType.UPDATE, batch.patches[0].type)
+        assertEquals(initial.patches[1].key, batch.patches[0].key)
+        assertEquals("after", batch.patches[0].node!!.text)
+        assertEquals(initial.sequence + 1, batch.sequence)
+    }
+
+    @Test
+    fun `removed child should be reported and parent children updated`() {
+        // Arrange
+        val child = TextView(context)
+        val root = FrameLayout(context).apply { addView(child) }
+        val initial = differ.diff(root)!!
+
+        // Act
+        root.removeView(child)
+        val batch = differ.diff(root)!!
+
+        // Assert
+        val update = batch.patches.single { it.type == ViewPatchType.UPDATE }
+        val remove = batch.patches.single { it.type == ViewPatchType.REMOVE }
+        assertEquals(emptyList<Long>(), update.node!!.childKeys)
+        assertEquals(initial.patches[1].key, remove.key)
+    }
+}
@@ -0,0 +1,129 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import android.content.Context
+import android.view.View
+import android.widget.FrameLayout
+import android.widget.LinearLayout
+import android.widget.TextView
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(AndroidJUnit4::class)
+class ViewHierarchySnapshotTest {
+
+    private lateinit var context: Context
+    private lateinit var snapshotter: ViewHierarchySnapshotter
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        snapshotter =
+            ViewHierarchySnapshotter(
+                textOf = { view -> (view as? TextView)?.text },
+                idOf = { view -> "id/${view.id}".takeIf { view.id != View.NO_ID } },
+                frameworkInfoOf = { null },
+                recompositionCountOf = { 0L },
+            )
+    }
+
+    @Test
+    fun `capture should record views in layout pre-order with parent indexes`() = runTest {
+        // Arrange
+        val inner = LinearLayout(context).apply { addView(TextView(context).apply { text = "b" }) }
+        val root =
+            FrameLayout(context).apply {
+                id = 7
+                addView(TextView(context).apply { text = "a" })
+                addView(inner)
+            }
+        val buffer = ViewSnapshotBuffer(initialCapacity = 1)
+
+        // Act
+        val cost = snapshotter.capture(root, buffer, false, null, false, frameBudgetMs = 8)
+
+        // Assert
+        assertEquals(4, buffer.size)
+        assertEquals(4, cost.nodeCount)
+        assertEquals(listOf(-1, 0, 0, 2), (0 until 4).map { buffer.parent[it] })
+        assertEquals(listOf(0, 1, 1, 2), (0 until 4).map { buffer.depth[it] })
+        assertEquals(listOf(null, "a", null, "b"), (0 until 4).map { buffer.text[it] })
+        assertEquals(listOf("id/7", null, null, null), (0 until 4).map { buffer.ids[it] })
+        assertEquals(-1L, buffer.recompositions[0])
+        assertTrue(cost.slices >= 1)
+    }
+
+    @Test
+    fun `capture should skip invisible views and respect max depth`() = runTest {
+        // Arrange
+        val inner = FrameLayout(context).apply { addView(TextView(context)) }
+        val root =
+            FrameLayout(context).apply {
+                addView(inner)
+                addView(TextView(context).apply { visibility = View.GONE })
+            }
+        val buffer = ViewSnapshotBuffer()
+
+        // Act
+        snapshotter.capture(root, buffer, false, maxDepth = 1, false, frameBudgetMs = 8)
+
+        // Assert
+        assertEquals(2, buffer.size)
+        assertTrue(buffer.hasFlag(1, ViewSnapshotBuffer.FLAG_VISIBLE))
+    }
+
+    @Test
+    fun `capture should restart when a pending view is moved during a yield`() = runTest {
+        // Arrange
+        val moved = TextView(context)
+        val root =
+            FrameLayout(context).apply {
+                addView(TextView(context))
+                addView(moved)
+            }
+        // Every view overruns the 1ms budget, so the walk yields after each one
+        val slow =
+            ViewHierarchySnapshotter(
+                textOf = {
+                    Thread.sleep(2)
+                    null
+                },
+                idOf = { null },
+                frameworkInfoOf = { null },
+                recompositionCountOf = { 0L },
+            )
+        val buffer = ViewSnapshotBuffer()
+        launch { root.removeView(moved) }
+
+        // Act
+        val cost = slow.capture(root, buffer, false, null, false, frameBudgetMs = 1)
+
+        // Assert
+        assertEquals(1, cost.restarts)
+        assertTrue(cost.consistent)
+        assertEquals(2, buffer.size)
+    }
+
+    @Test
+    fun `clear should release references so pooled buffers do not leak them`() = runTest {
+        // Arrange
+        val buffer = ViewSnapshotBuffer()
+        val view = TextView(context).apply { id = 3 }
+        snapshotter.capture(view, buffer, false, null, false, frameBudgetMs = 8)
+
+        // Act
+        buffer.clear()
+
+        // Assert
+        assertEquals(0, buffer.size)
+        assertNull(buffer.classes[0])
+        assertNull(buffer.ids[0])
+    }
+}
@@ -0,0 +1,81 @@
+package dev.jasonpearson.androidmcpsdk.debugbridge.tools
+
+import android.content.Context
+import android.widget.Button
+import android.widget.FrameLayout
+import android.widget.LinearLayout
+import android.widget.TextView
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RuntimeEnvironment
+
+@RunWith(AndroidJUnit4::class)
+class ViewSearchIndexTest {
+
+    private lateinit var context: Context
+    private lateinit var title: TextView
+    private lateinit var submit: Button
+    private lateinit var index: ViewSearchIndex
+
+    @Before
+    fun setUp() {
+        context = RuntimeEnvironment.getApplication()
+        title = TextView(context).apply { text = "Hello World" }
+        submit =
+            Button(context).apply {
+                text = "Submit order"
+                contentDescription = "Place the order"
+            }
+        val root =
+            FrameLayout(context).apply {
+                addView(title)
+                addView(LinearLayout(context).apply { addView(submit) })
+            }
+        index =
+            ViewSearchIndex.build(
+                root,
+                textOf = { view -> (view as? TextView)?.text?.toString() },
+                idNameOf = { view -> if (view === submit) "com.example:id/submit" else null },
+            )
+    }
+
+    @Test
+    fun `substring text search should match inside and across tokens`() {
+        // Act
+        val partial = index.findByText("ELL", exactMatch = false)
+        val acrossWords = index.findByText("lo wor", exactMatch = false)
+        val description = index.findByText("the ord", exactMatch = false)
+
+        // Assert
+        assertEquals(listOf(title), partial.map { it.view })
+        assertEquals(listOf(title), acrossWords.map { it.view })
+        assertEquals(listOf(submit), description.map { it.view })
+        assertEquals(2, description.single().depth)
+    }
+
+    @Test
+    fun `exact text search should require the whole text`() {
+        assertEquals(listOf(submit), index.findByText("Submit order", true).map { it.view })
+        assertTrue(index.findByText("Submit", exactMatch = true).isEmpty())
+    }
+
+    @Test
+    fun `id search should match full and short resource names`() {
+        assertSame(submit, index.findById("com.example:id/submit").single().view)
+        assertSame(submit, index.findById("submit").single().view)
+        assertTrue(index.findById("sub").isEmpty())
+    }
+
+    @Test
+    fun `class search should match simple, full and dotted suffix names`() {
+        assertEquals(listOf(title), index.findByClass("TextView").map { it.view })
+        assertSame(submit, index.findByClass("Button").single().view)
+        assertSame(submit, index.findByClass("android.widget.Button").single().view)
+        assertSame(submit, index.findByClass("widget.Button").single().view)
+    }
+}